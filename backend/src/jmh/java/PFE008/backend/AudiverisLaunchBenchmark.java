@@ -0,0 +1,82 @@
+package PFE008.backend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of a cold launch of the Audiveris JVM, printing its help,
+ * without and with the class archive of {@link AudiverisCds}. The archive
+ * is dumped by one launch before the measured ones. The launcher is read
+ * from the maestro.audiveris property, Audiveris/dist/bin/Audiveris under
+ * the working directory otherwise.
+ *
+ * @version 2026.10.17
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AudiverisLaunchBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Launcher {
+        @Param({"off", "on"})
+        public String archive;
+
+        Path dir;
+        String path;
+        AudiverisCds cds;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException, InterruptedException {
+            path = System.getProperty("maestro.audiveris",
+                Path.of("Audiveris", "dist", "bin", "Audiveris").toAbsolutePath().toString());
+            if (!Files.isExecutable(Path.of(path))) {
+                throw new IllegalStateException("No Audiveris launcher at " + path + ", set -Dmaestro.audiveris");
+            }
+            dir = Files.createTempDirectory("maestro-jmh-cds");
+            cds = new AudiverisCds("on".equals(archive), dir.toString(), 1);
+            AudiverisCds.Launch dumping = cds.prepare(path);
+            if (dumping != null) {
+                cds.finish(dumping, launch(this, dumping).isSuccess());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            FileSystemUtils.deleteRecursively(dir);
+        }
+    }
+
+    @Benchmark
+    public ProcessResult help(Launcher launcher) throws IOException, InterruptedException {
+        ProcessResult result = launch(launcher, launcher.cds.prepare(launcher.path));
+        if (!result.isSuccess()) {
+            throw new IllegalStateException("Audiveris exited with " + result.exitCode() + ": " + result.stderr());
+        }
+        return result;
+    }
+
+    private static ProcessResult launch(Launcher launcher, AudiverisCds.Launch launch) throws IOException, InterruptedException {
+        List<String> command = File.separatorChar == '\\' ? List.of("cmd.exe", "/c", launcher.path, "-help")
+            : List.of("sh", launcher.path, "-help");
+        return ProcessSupervisor.run("audiveris", command,
+            Map.of("JAVA_OPTS", launch != null ? launch.javaOptions() : ""), Duration.ofMinutes(2), null);
+    }
+}
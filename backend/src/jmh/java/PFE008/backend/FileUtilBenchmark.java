@@ -0,0 +1,120 @@
+package PFE008.backend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the ingestion of an upload by the UploadIngestor, which
+ * detects its type, hashes it and saves it for every conversion, of the
+ * validation and saving of FileUtil it replaced, and of the deletion of
+ * a conversion workspace
+ * 
+ * @version 2026.10.17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileUtilBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Upload {
+        @Param({"test06-Hauteur.pdf", "[Free-scores.com]_chopin-frederic-nocturnes-opus-9-no-2-1508.pdf", "Imagine.pdf"})
+        public String fixture;
+
+        MockMultipartFile file;
+        Path dir;
+        Path saved;
+        UploadIngestor ingestor;
+        Workspace workspace;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            file = new MockMultipartFile("file", fixture, "application/pdf", Files.readAllBytes(Fixtures.pdf(fixture)));
+            dir = Files.createTempDirectory("maestro-jmh-upload");
+            ingestor = new UploadIngestor(Long.MAX_VALUE);
+            workspace = new Workspace("jmh", dir);
+        }
+
+        @TearDown(Level.Invocation)
+        public void deleteSaved() throws IOException {
+            if (saved != null) {
+                Files.deleteIfExists(saved);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            FileSystemUtils.deleteRecursively(dir);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Workspaces {
+        @Param({"1000", "5000"})
+        public int workspaceCount;
+
+        Path root;
+        WorkspaceManager manager;
+        Workspace workspace;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            root = Files.createTempDirectory("maestro-jmh-work");
+            manager = new WorkspaceManager(root.toString(), 60, Long.MAX_VALUE);
+            for (int i = 0; i < workspaceCount; i++) {
+                Files.write(manager.create().dir().resolve("f.pdf"), new byte[16]);
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void createConversionFiles() throws IOException {
+            // The files of one conversion, among the workspaces of all the others
+            workspace = manager.create();
+            for (String extension : new String[]{".pdf", ".mxl", ".omr", ".mid"}) {
+                Files.write(workspace.dir().resolve("abcd1234" + extension), new byte[1024]);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            FileSystemUtils.deleteRecursively(root);
+        }
+    }
+
+    @Benchmark
+    public SavedUpload ingest(Upload upload) throws IOException {
+        SavedUpload saved = upload.ingestor.ingest(upload.file, upload.workspace);
+        upload.saved = saved.path();
+        return saved;
+    }
+
+    @Benchmark
+    public boolean isValidFile(Upload upload) throws IOException {
+        return FileUtil.isValidFile(upload.file);
+    }
+
+    @Benchmark
+    public Path saveFile(Upload upload) throws IOException {
+        upload.saved = FileUtil.saveFile(".pdf", upload.file, upload.dir.toString());
+        return upload.saved;
+    }
+
+    @Benchmark
+    public void deleteWorkspace(Workspaces workspaces) {
+        workspaces.manager.delete(workspaces.workspace);
+    }
+}
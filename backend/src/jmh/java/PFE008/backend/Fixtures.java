@@ -0,0 +1,38 @@
+package PFE008.backend;
+
+import java.nio.file.Path;
+
+/**
+ * Fixtures class
+ * 
+ * Locates the music sheets under src/test/.../resources/manual_tests, and
+ * the images under resources/tests_java, used as benchmark inputs. The jmh task passes the directory in the
+ * maestro.fixtures property, the working directory is used otherwise.
+ * 
+ * @version 2026.10.17
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static Path dir() {
+        String dir = System.getProperty("maestro.fixtures");
+        if (dir != null) {
+            return Path.of(dir);
+        }
+        return Path.of(System.getProperty("user.dir"), "src", "test", "java", "PFE008", "backend", "resources", "manual_tests");
+    }
+
+    static Path pdf(String name) {
+        return dir().resolve("PDF").resolve(name);
+    }
+
+    static Path mxl(String name) {
+        return dir().resolve("mxl").resolve(name);
+    }
+
+    static Path image(String name) {
+        return dir().resolveSibling("tests_java").resolve(name);
+    }
+}
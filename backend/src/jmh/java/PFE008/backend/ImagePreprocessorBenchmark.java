@@ -0,0 +1,131 @@
+package PFE008.backend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the image pre-processing, from the upload to the PNG file
+ * handed to Audiveris. The imageTest.jpg fixture is small and has no
+ * staff, so a 12 MP version of it and a 12 MP photo of drawn staves, both
+ * slightly rotated, are measured too. The peak resident memory of the
+ * benchmark JVM is printed at the end of each trial.
+ *
+ * @version 2026.10.17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImagePreprocessorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Upload {
+        @Param({"imageTest.jpg", "imageTest-12MP.jpg", "staves-12MP.jpg"})
+        public String fixture;
+
+        Path dir;
+        Path input;
+        ImagePreprocessor preprocessor;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("maestro-jmh-image");
+            input = dir.resolve(fixture);
+            Path original = Fixtures.image("imageTest.jpg");
+            switch (fixture) {
+                case "imageTest.jpg" -> Files.copy(original, input);
+                case "imageTest-12MP.jpg" -> ImageIO.write(photo(ImageIO.read(original.toFile()), 4000, 3000, 1.5), "jpg", input.toFile());
+                default -> ImageIO.write(staves(3000, 4000, 60, 1.5), "jpg", input.toFile());
+            }
+            preprocessor = new ImagePreprocessor(true, 20, 8000000, true, 5, false, null);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            FileSystemUtils.deleteRecursively(dir);
+            System.out.println("\nPeak RSS: " + peakRss());
+        }
+    }
+
+    @Benchmark
+    public Path prepare(Upload upload) {
+        return upload.preprocessor.prepare(upload.input);
+    }
+
+    private static BufferedImage photo(BufferedImage image, int width, int height, double skewDegrees) {
+        BufferedImage photo = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = photo.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.rotate(Math.toRadians(skewDegrees), width / 2.0, height / 2.0);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return photo;
+    }
+
+    /**
+     * @return A page of staves of five lines, about as a phone would shoot it
+     */
+    private static BufferedImage staves(int width, int height, int interline, double skewDegrees) {
+        BufferedImage page = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = page.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setColor(new Color(235, 232, 225));
+            graphics.fillRect(0, 0, width, height);
+            graphics.setColor(new Color(30, 30, 30));
+            graphics.setStroke(new BasicStroke(interline / 10f));
+            graphics.rotate(Math.toRadians(skewDegrees), width / 2.0, height / 2.0);
+            for (int top = height / 10; top + 4 * interline < height * 9 / 10; top += 8 * interline) {
+                for (int line = 0; line < 5; line++) {
+                    graphics.drawLine(width / 20, top + line * interline, width * 19 / 20, top + line * interline);
+                }
+                // A few note heads on the staff
+                for (int x = width / 10; x < width * 9 / 10; x += 3 * interline) {
+                    graphics.fillOval(x, top + (x / interline % 8) * interline / 2, interline * 13 / 10, interline);
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return page;
+    }
+
+    /**
+     * @return The VmHWM line of /proc/self/status, where available
+     */
+    private static String peakRss() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return line.substring("VmHWM:".length()).trim();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not on Linux
+        }
+        return "unknown";
+    }
+}
@@ -0,0 +1,83 @@
+package PFE008.backend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the MusicXML scanning (measures, tempo words, notes) done by
+ * the MxlToMidiConverter, on the .mxl fixtures
+ * 
+ * @version 2026.10.17
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class MusicXmlBenchmark {
+
+    @Param({"Pachelbel-test.mxl", "[Free-scores.com]_chopin-frederic-nocturnes-opus-9-no-2-1508.mxl", "Imagine.mxl"})
+    public String fixture;
+
+    private Path mxlPath;
+    private Path xmlPath;
+    private Path midiPath;
+    private Path dir;
+    private MxlToMidiConverter converter;
+    private MxlToMidiConverter converterWithTempos;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("maestro-jmh-mxl");
+        mxlPath = Fixtures.mxl(fixture);
+        xmlPath = dir.resolve("score.xml");
+        midiPath = dir.resolve("score.mid");
+        MxlToMidiConverter.extractScore(mxlPath, xmlPath);
+
+        converter = new MxlToMidiConverter();
+        converterWithTempos = new MxlToMidiConverter("[{\"measure\": 3, \"tempo\": 90}, {\"measure\": 8, \"tempo\": 140}]");
+    }
+
+    @TearDown
+    public void teardown() throws IOException {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public void extractScore() throws IOException {
+        MxlToMidiConverter.extractScore(mxlPath, xmlPath);
+    }
+
+    @Benchmark
+    public void convertMxl() throws IOException {
+        converter.convert(mxlPath, midiPath);
+    }
+
+    @Benchmark
+    public void convertXml() throws IOException {
+        converter.convert(xmlPath, midiPath);
+    }
+
+    @Benchmark
+    public void convertWithCustomTempos() throws IOException {
+        converterWithTempos.convert(mxlPath, midiPath);
+    }
+
+    @Benchmark
+    public Integer tempoFromWords() {
+        Integer bpm = MxlToMidiConverter.tempoFromWords("J = 96");
+        Integer word = MxlToMidiConverter.tempoFromWords("Lento (molto)");
+        return bpm + word;
+    }
+}
@@ -0,0 +1,305 @@
+package PFE008.backend;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LoadTest class
+ *
+ * Starts the backend with the {@link StubAudiverisMain} in place of
+ * Audiveris, drives /convert with the PDF fixtures from a number of
+ * concurrent clients, and reports throughput, latency percentiles and
+ * error rate. The MIDI stage runs the in-process Java engine, so neither
+ * Audiveris nor Python is needed.
+ *
+ * The results are compared to a stored baseline, and the run fails when
+ * the throughput drops, or the p50/p95 latency or the error rate grows,
+ * by more than the threshold. Run with "gradle loadTest", see build.gradle
+ * for the settings.
+ *
+ * @version 2026.10.17
+ */
+public class LoadTest {
+    private static final String BOUNDARY = "maestro-load-test";
+
+    private final int concurrency = Integer.getInteger("loadtest.concurrency", 4);
+    private final int requests = Integer.getInteger("loadtest.requests", 200);
+    private final int warmupRequests = Integer.getInteger("loadtest.warmup-requests", 20);
+    private final long omrLatencyMs = Long.getLong("loadtest.omr-latency-ms", 200);
+    private final long omrCpuMs = Long.getLong("loadtest.omr-cpu-ms", 50);
+    private final double threshold = Double.parseDouble(System.getProperty("loadtest.threshold", "0.2"));
+    private final boolean updateBaseline = Boolean.getBoolean("loadtest.update-baseline");
+    private final Path fixturesDir = Path.of(System.getProperty("loadtest.fixtures"));
+    private final Path baselinePath = Path.of(System.getProperty("loadtest.baseline"));
+    private final Path reportPath = Path.of(System.getProperty("loadtest.report"));
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final String runId = UUID.randomUUID().toString();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private List<byte[]> fixtures;
+    private URI convertUri;
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new LoadTest().run());
+    }
+
+    private int run() throws Exception {
+        fixtures = readFixtures();
+
+        ConfigurableApplicationContext context = startBackend();
+        Map<String, Object> report;
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            convertUri = URI.create("http://localhost:" + port + "/convert");
+
+            System.out.println("Load test: " + warmupRequests + " warm-up requests, then " + requests + " requests from "
+                + concurrency + " clients");
+            drive(warmupRequests);
+            report = summarize(drive(requests));
+        } finally {
+            context.close();
+        }
+
+        Files.createDirectories(reportPath.getParent());
+        mapper.writeValue(reportPath.toFile(), report);
+        System.out.println("Load test results, written to " + reportPath + ":\n" + mapper.writeValueAsString(report));
+
+        if (updateBaseline || !Files.exists(baselinePath)) {
+            mapper.writeValue(baselinePath.toFile(), report);
+            System.out.println("Baseline written to " + baselinePath);
+            return 0;
+        }
+        return compare(report, mapper.readValue(baselinePath.toFile(), Map.class));
+    }
+
+    private ConfigurableApplicationContext startBackend() throws IOException {
+        Path stubMxl = fixturesDir.resolve("mxl").resolve(System.getProperty("loadtest.mxl", "Pachelbel-test.mxl"));
+        if (!Files.exists(stubMxl)) {
+            throw new IOException("Stub score not found: " + stubMxl);
+        }
+
+        String workerScript = System.getProperty("loadtest.worker-script");
+        String[] args = {
+            "--server.port=0",
+            "--maestro.midi.engine=java",
+            "--maestro.audiveris.export-mode=single",
+            "--maestro.audiveris.pool.enabled=true",
+            "--maestro.audiveris.pool.size=" + concurrency,
+            "--maestro.audiveris.pool.max-jobs-per-worker=" + Integer.MAX_VALUE,
+            "--maestro.audiveris.pool.acquire-timeout-ms=600000",
+            "--maestro.audiveris.pool.main-class=" + StubAudiverisMain.class.getName(),
+            "--maestro.audiveris.pool.class-path=" + System.getProperty("java.class.path"),
+            "--maestro.audiveris.pool.worker-script=" + workerScript,
+            "--maestro.audiveris.pool.jvm-options=-Xmx256m"
+                + " -Dmaestro.stub.mxl=" + stubMxl.toAbsolutePath()
+                + " -Dmaestro.stub.latency-ms=" + omrLatencyMs
+                + " -Dmaestro.stub.cpu-ms=" + omrCpuMs,
+        };
+        return SpringApplication.run(BackendApplication.class, args);
+    }
+
+    private List<byte[]> readFixtures() throws IOException {
+        File[] pdfs = fixturesDir.resolve("PDF").toFile().listFiles((dir, name) -> name.toLowerCase().endsWith(".pdf"));
+        if (pdfs == null || pdfs.length == 0) {
+            throw new IOException("No PDF fixture in " + fixturesDir);
+        }
+        Arrays.sort(pdfs);
+
+        List<byte[]> contents = new ArrayList<>();
+        for (File pdf : pdfs) {
+            contents.add(Files.readAllBytes(pdf.toPath()));
+        }
+        return contents;
+    }
+
+    /**
+     * Send requests from the concurrent clients
+     *
+     * @param count Number of requests
+     * @return The samples of the requests
+     */
+    private Samples drive(int count) throws Exception {
+        Samples samples = new Samples();
+        AtomicInteger remaining = new AtomicInteger(count);
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(clients.submit(() -> {
+                    while (remaining.getAndDecrement() > 0) {
+                        samples.add(send());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        samples.elapsedNanos = System.nanoTime() - start;
+        return samples;
+    }
+
+    /**
+     * Upload one fixture to /convert
+     *
+     * @return The latency in nanoseconds, negative if the request failed
+     */
+    private long send() {
+        int n = sequence.getAndIncrement();
+        byte[] pdf = fixtures.get(n % fixtures.size());
+        long start = System.nanoTime();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(convertUri)
+                .timeout(Duration.ofMinutes(10))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(multipart(pdf, runId + " " + n)))
+                .build();
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            long latency = System.nanoTime() - start;
+            if (response.statusCode() != 200) {
+                System.out.println("Request " + n + " failed with status " + response.statusCode() + ": "
+                    + new String(response.body(), StandardCharsets.UTF_8));
+                return -latency;
+            }
+            return latency;
+        } catch (IOException | InterruptedException e) {
+            System.out.println("Request " + n + " failed: " + e.getMessage());
+            return -(System.nanoTime() - start);
+        }
+    }
+
+    private static byte[] multipart(byte[] pdf, String uploadId) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(pdf.length + 512);
+        body.write(("--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"sheet.pdf\"\r\n"
+            + "Content-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(pdf);
+        // A comment after the end of the PDF makes every upload unique, so the
+        // conversion cache and the OMR store don't skip the stages under test
+        body.write(("\n%maestro-load-test " + uploadId + "\n").getBytes(StandardCharsets.UTF_8));
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    private Map<String, Object> summarize(Samples samples) {
+        List<Long> latencies = new ArrayList<>();
+        int errors = 0;
+        for (long sample : samples.values) {
+            if (sample < 0) {
+                errors++;
+            }
+            latencies.add(Math.abs(sample));
+        }
+        Collections.sort(latencies);
+
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("concurrency", concurrency);
+        settings.put("requests", requests);
+        settings.put("omrLatencyMs", omrLatencyMs);
+        settings.put("omrCpuMs", omrCpuMs);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("settings", settings);
+        report.put("throughput", round(samples.values.size() / (samples.elapsedNanos / 1e9)));
+        report.put("p50Ms", round(percentile(latencies, 50) / 1e6));
+        report.put("p95Ms", round(percentile(latencies, 95) / 1e6));
+        report.put("p99Ms", round(percentile(latencies, 99) / 1e6));
+        report.put("errorRate", round((double) errors / samples.values.size()));
+        return report;
+    }
+
+    /**
+     * Compare the results to the baseline
+     *
+     * @return 0 if they are within the threshold, 1 if they regressed
+     */
+    private int compare(Map<String, Object> report, Map<?, ?> baseline) {
+        if (!String.valueOf(report.get("settings")).equals(String.valueOf(baseline.get("settings")))) {
+            System.out.println("The baseline was recorded with other settings " + baseline.get("settings")
+                + ", not compared. Run with -PloadTest.updateBaseline=true to record a new one.");
+            return 0;
+        }
+
+        List<String> regressions = new ArrayList<>();
+        double throughput = number(report, "throughput");
+        double baselineThroughput = number(baseline, "throughput");
+        if (throughput < baselineThroughput * (1 - threshold)) {
+            regressions.add("throughput " + throughput + "/s, baseline " + baselineThroughput + "/s");
+        }
+        for (String latency : List.of("p50Ms", "p95Ms")) {
+            if (number(report, latency) > number(baseline, latency) * (1 + threshold)) {
+                regressions.add(latency + " " + number(report, latency) + ", baseline " + number(baseline, latency));
+            }
+        }
+        if (number(report, "errorRate") > number(baseline, "errorRate") + 0.01) {
+            regressions.add("error rate " + number(report, "errorRate") + ", baseline " + number(baseline, "errorRate"));
+        }
+
+        if (regressions.isEmpty()) {
+            System.out.println("No regression against " + baselinePath + " (threshold " + (int) (threshold * 100) + " %)");
+            return 0;
+        }
+        System.out.println("Regression against " + baselinePath + " (threshold " + (int) (threshold * 100) + " %):\n  "
+            + String.join("\n  ", regressions));
+        return 1;
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(rank - 1, 0));
+    }
+
+    private static double number(Map<?, ?> values, String key) {
+        return ((Number) values.get(key)).doubleValue();
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    /**
+     * Latencies of the requests in nanoseconds, negative for the failed ones
+     */
+    private static class Samples {
+        final List<Long> values = Collections.synchronizedList(new ArrayList<>());
+        long elapsedNanos;
+
+        void add(long value) {
+            values.add(value);
+        }
+    }
+}
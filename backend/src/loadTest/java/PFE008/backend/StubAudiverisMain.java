@@ -0,0 +1,71 @@
+package PFE008.backend;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * StubAudiverisMain class
+ * 
+ * Stands in for org.audiveris.omr.Main in the load test. It is run by the
+ * warm workers of the AudiverisWorkerPool, so the OMR stage goes through
+ * the same pool, permits and metrics as with Audiveris. Each run burns
+ * CPU, sleeps, then writes a fixture .mxl where Audiveris would have
+ * exported the score.
+ * 
+ * Set with system properties in maestro.audiveris.pool.jvm-options:
+ * maestro.stub.mxl (score to export), maestro.stub.latency-ms (sleep)
+ * and maestro.stub.cpu-ms (CPU time burnt).
+ * 
+ * @version 2026.10.17
+ */
+public class StubAudiverisMain {
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String outputDir = null;
+        String inputFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-output") && i + 1 < args.length) {
+                outputDir = args[i + 1];
+            } else if (args[i].equals("--") && i + 1 < args.length) {
+                inputFile = args[i + 1];
+            }
+        }
+        if (outputDir == null || inputFile == null) {
+            System.out.println("Usage: -output <dir> -- <file>");
+            System.exit(1);
+        }
+
+        burnCpu(Long.getLong("maestro.stub.cpu-ms", 0));
+        Thread.sleep(Long.getLong("maestro.stub.latency-ms", 0));
+
+        String fileName = Path.of(inputFile).getFileName().toString();
+        String baseName = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+        Files.createDirectories(Path.of(outputDir));
+        Files.copy(Path.of(System.getProperty("maestro.stub.mxl")), Path.of(outputDir, baseName + ".mxl"),
+            StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Stub OMR exported " + baseName + ".mxl");
+    }
+
+    /**
+     * Keep the current thread busy for some CPU time, whatever the other threads do
+     * 
+     * @param cpuMs CPU time to burn in milliseconds
+     */
+    private static void burnCpu(long cpuMs) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long end = threads.getCurrentThreadCpuTime() + cpuMs * 1000000;
+        long value = 0;
+        while (threads.getCurrentThreadCpuTime() < end) {
+            for (int i = 0; i < 10000; i++) {
+                value = value * 31 + i;
+            }
+        }
+        sink = value;
+    }
+}
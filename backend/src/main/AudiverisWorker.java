@@ -0,0 +1,121 @@
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.Permission;
+
+/**
+ * Long-lived Audiveris worker, started by AudiverisWorkerPool.
+ *
+ * It is run from source, with the Audiveris lib directory on the class path:
+ *   java -Djava.security.manager=allow -cp "dist/lib/*" AudiverisWorker.java org.audiveris.omr.Main
+ *
+ * The JVM stays up between jobs, so class loading, JIT warm-up and model
+ * loading are only paid once. Commands are read from stdin, one per line:
+ *   PING                    answers "@@maestro PONG <used heap bytes>"
+ *   RUN <arg>\t<arg>\t...   runs Audiveris with these arguments, then answers
+ *                           "@@maestro DONE <exit code> <used heap bytes>"
+ *   QUIT                    stops the worker
+ * Every other output line comes from Audiveris itself.
+ *
+ * When the Java runtime can't install a security manager, like Java 24 and
+ * later, it answers "@@maestro UNSUPPORTED <reason>" instead of READY and exits.
+ */
+public class AudiverisWorker {
+    private static final String MARKER = "@@maestro ";
+
+    private static volatile boolean trapExit = true;
+    private static volatile Integer trappedStatus;
+
+    private static class ExitTrappedException extends SecurityException {
+        ExitTrappedException(int status) {
+            super("System.exit(" + status + ") trapped");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mainClass = args.length > 0 ? args[0] : "org.audiveris.omr.Main";
+        PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true);
+
+        // Audiveris ends a batch with System.exit, keep the JVM alive instead.
+        // Java 24 and later can't install a security manager any more, the
+        // pool then falls back to one-shot launches.
+        try {
+            installExitTrap();
+        } catch (UnsupportedOperationException e) {
+            protocol.println(MARKER + "UNSUPPORTED Java " + Runtime.version().feature()
+                + " can't trap System.exit with a security manager: " + e.getMessage());
+            System.exit(2);
+        }
+
+        Method main = Class.forName(mainClass).getMethod("main", String[].class);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        protocol.println(MARKER + "READY");
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.equals("PING")) {
+                protocol.println(MARKER + "PONG " + usedHeap());
+            } else if (line.startsWith("RUN ")) {
+                int exitCode = run(main, line.substring(4).split("\t"));
+                System.gc();
+                protocol.println(MARKER + "DONE " + exitCode + " " + usedHeap());
+            } else if (line.equals("QUIT")) {
+                break;
+            }
+        }
+
+        trapExit = false;
+        System.exit(0);
+    }
+
+    @SuppressWarnings("removal")
+    private static void installExitTrap() {
+        System.setSecurityManager(new SecurityManager() {
+            @Override
+            public void checkPermission(Permission permission) {
+            }
+
+            @Override
+            public void checkPermission(Permission permission, Object context) {
+            }
+
+            @Override
+            public void checkExit(int status) {
+                if (trapExit) {
+                    trappedStatus = status;
+                    throw new ExitTrappedException(status);
+                }
+            }
+        });
+    }
+
+    private static int run(Method main, String[] args) {
+        trappedStatus = null;
+        int exitCode;
+        try {
+            main.invoke(null, (Object) args);
+            exitCode = 0;
+        } catch (InvocationTargetException e) {
+            if (!(e.getCause() instanceof ExitTrappedException)) {
+                e.getCause().printStackTrace();
+            }
+            exitCode = 1;
+        } catch (ReflectiveOperationException e) {
+            e.printStackTrace();
+            exitCode = 1;
+        }
+
+        // The exit may also have been requested from another Audiveris thread
+        Integer status = trappedStatus;
+        return status != null ? status : exitCode;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,191 @@
+package PFE008.backend;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * AdaptiveLimiter class
+ *
+ * This class sets how many conversions the {@link ConversionScheduler}
+ * lets run Audiveris at the same time, so the host stays at its
+ * throughput peak instead of swapping or getting OOM-killed, without
+ * tuning the number of slots to the hardware.
+ *
+ * The limit follows AIMD: it grows by one after a full round of
+ * conversions done within the latency tolerance while every slot was
+ * taken, and is cut by the backoff factor when the OMR time of a page
+ * goes over the tolerance times the fastest one seen, or when the free
+ * memory falls under the reserve. A conversion only starts when there is
+ * memory left for the heaps of its Audiveris JVMs, one per page worker
+ * when the pages run concurrently. The free memory does not show the heaps
+ * of the conversions that just started yet, so these are taken off it
+ * until they settle.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class AdaptiveLimiter {
+    private static final Path MEMINFO = Path.of("/proc/meminfo");
+    // Weight of a slower observation in the baseline, so it follows the host when it gets slower for good
+    private static final double BASELINE_DRIFT = 0.02;
+
+    private final boolean enabled;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double backoff;
+    private final long conversionHeapMb;
+    private final long reserveMb;
+    private final long settleNanos;
+    private final Map<String, Double> baselines = new HashMap<>();
+    private final AtomicLong decreases = new AtomicLong();
+    private LongSupplier availableMemoryMb = AdaptiveLimiter::availableMemoryMb;
+    private double limit;
+    private long lastDecreaseNanos = System.nanoTime();
+
+    public AdaptiveLimiter(@Value("${maestro.limiter.enabled:true}") boolean enabled,
+                           @Value("${maestro.limiter.initial-limit:0}") int initialLimit,
+                           @Value("${maestro.limiter.max-limit:0}") int maxLimit,
+                           @Value("${maestro.limiter.latency-tolerance:2}") double tolerance,
+                           @Value("${maestro.limiter.backoff:0.75}") double backoff,
+                           @Value("${maestro.limiter.memory-reserve-mb:512}") long reserveMb,
+                           @Value("${maestro.limiter.heap-settle-ms:60000}") long settleMs,
+                           AudiverisSettings settings) {
+        this.enabled = enabled;
+        // Each Audiveris run also takes one of the CpuPermits, one per processor by default
+        this.maxLimit = maxLimit > 0 ? maxLimit : Runtime.getRuntime().availableProcessors();
+        this.limit = initialLimit > 0 ? Math.min(this.maxLimit, initialLimit) : this.maxLimit;
+        this.tolerance = tolerance;
+        this.backoff = backoff;
+        // A conversion of a multi-page PDF file runs up to one Audiveris JVM per page worker
+        int jvms = !settings.isParallelPages() ? 1
+            : settings.getPageWorkers() > 0 ? settings.getPageWorkers() : Runtime.getRuntime().availableProcessors();
+        this.conversionHeapMb = settings.getEffectiveHeapMb() * jvms;
+        this.reserveMb = reserveMb;
+        this.settleNanos = settleMs * 1_000_000;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The number of conversions allowed to run Audiveris at the same time
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return The number of times the limit has been cut
+     */
+    public long getDecreases() {
+        return decreases.get();
+    }
+
+    /**
+     * @return The heap of the Audiveris JVMs of one conversion, in MB
+     */
+    public long getConversionHeapMb() {
+        return conversionHeapMb;
+    }
+
+    /**
+     * @param grantedAt When the conversion got its slot, from {@link System#nanoTime()}
+     * @return True if the heap of the conversion may not be in use yet, so it is not in the free memory
+     */
+    public boolean isSettling(long grantedAt) {
+        return System.nanoTime() - grantedAt < settleNanos;
+    }
+
+    /**
+     * @param running The number of conversions running Audiveris
+     * @param settling The number of them whose heap is not in the free memory yet, see {@link #isSettling(long)}
+     * @return True if there is memory for the Audiveris JVMs of one more conversion, always when none is running
+     */
+    public boolean hasMemoryFor(int running, int settling) {
+        return running == 0
+            || availableMemoryMb.getAsLong() - settling * conversionHeapMb >= conversionHeapMb + reserveMb;
+    }
+
+    /**
+     * Adapt the limit to the time a conversion took
+     *
+     * @param kind The kind of upload, which has its own baseline
+     * @param secondsPerUnit The OMR time of one unit of work of the conversion
+     * @param saturated True if every slot was taken, so a higher limit could have been used
+     * @param startNanos When the conversion got its slot, from {@link System#nanoTime()}
+     */
+    public synchronized void observe(String kind, double secondsPerUnit, boolean saturated, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+
+        double baseline = baselines.merge(kind, secondsPerUnit,
+            (previous, observed) -> observed < previous ? observed : previous + BASELINE_DRIFT * (observed - previous));
+        long freeMb = availableMemoryMb.getAsLong();
+        boolean overloaded = secondsPerUnit > tolerance * baseline || freeMb < reserveMb;
+
+        if (overloaded) {
+            // The conversions started before the last cut ran under the old limit, they don't cut it again
+            if (startNanos - lastDecreaseNanos < 0) {
+                return;
+            }
+            int previous = (int) limit;
+            limit = Math.max(1, limit * backoff);
+            lastDecreaseNanos = System.nanoTime();
+            decreases.incrementAndGet();
+            System.out.println(String.format("Audiveris limit cut from %d to %d (%.1f s per unit, fastest %.1f s, %d MB free)",
+                previous, (int) limit, secondsPerUnit, baseline, freeMb));
+        } else if (saturated && limit < maxLimit) {
+            int previous = (int) limit;
+            limit = Math.min(maxLimit, limit + 1 / limit);
+            if ((int) limit > previous) {
+                System.out.println("Audiveris limit raised to " + (int) limit);
+            }
+        }
+    }
+
+    /**
+     * Replace the reading of the free memory, for the tests
+     */
+    void setMemoryProbe(LongSupplier availableMemoryMb) {
+        this.availableMemoryMb = availableMemoryMb;
+    }
+
+    /**
+     * @return The memory of the host, in MB
+     */
+    static long totalMemoryMb() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+            .getTotalMemorySize() / (1024 * 1024);
+    }
+
+    /**
+     * @return The memory that can be used without swapping, in MB. On Linux the page
+     * cache can be reclaimed, so MemAvailable is read instead of the free memory.
+     */
+    static long availableMemoryMb() {
+        try {
+            List<String> lines = Files.readAllLines(MEMINFO);
+            for (String line : lines) {
+                if (line.startsWith("MemAvailable:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not Linux
+        }
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+            .getFreeMemorySize() / (1024 * 1024);
+    }
+}
@@ -0,0 +1,217 @@
+package PFE008.backend;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * AudiverisCds class
+ *
+ * This class keeps a dynamic AppCDS archive of the classes loaded by the
+ * Audiveris JVM, so a one-shot launch maps them from the archive instead
+ * of loading and verifying them again.
+ *
+ * The first launch without an archive dumps one when its JVM exits. The
+ * archive is named after the Audiveris jars and the Java runtime of the
+ * launcher, so a new distribution or runtime gets a new archive and the
+ * old one is deleted. The JVM checks the archive too, and runs without it
+ * when it can't be used. When dumping fails too many times, launches go
+ * on without an archive.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class AudiverisCds {
+    private static final String PREFIX = "audiveris-";
+    private static final String EXTENSION = ".jsa";
+
+    /**
+     * The JVM options of one launch, to be given back with {@link #finish(Launch, boolean)}
+     *
+     * @param javaOptions Options to add to JAVA_OPTS, empty when there is no archive
+     * @param dumpPath Where the JVM dumps the archive at exit, null if it uses the existing one
+     * @param archive The archive, once dumped
+     */
+    public record Launch(String javaOptions, Path dumpPath, Path archive) {
+    }
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int maxDumpAttempts;
+    private final AtomicBoolean dumping = new AtomicBoolean();
+    private final AtomicInteger failedDumps = new AtomicInteger();
+    private final AtomicInteger dumpSequence = new AtomicInteger();
+
+    public AudiverisCds(@Value("${maestro.cds.enabled:true}") boolean enabled,
+                        @Value("${maestro.cds.dir:Cds}") String dir,
+                        @Value("${maestro.cds.max-dump-attempts:2}") int maxDumpAttempts) {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir).toAbsolutePath();
+        this.maxDumpAttempts = maxDumpAttempts;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the JVM options of an Audiveris launch
+     *
+     * @param launcher Path to the Audiveris launcher script, next to the lib directory of the distribution
+     * @return The options, or null if no archive is used nor dumped
+     */
+    public Launch prepare(String launcher) {
+        if (!enabled) {
+            return null;
+        }
+
+        Path archive;
+        try {
+            archive = archiveFor(Path.of(launcher));
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not locate the Audiveris class archive: " + e.getMessage());
+            return null;
+        }
+
+        if (Files.isRegularFile(archive)) {
+            // -Xshare:auto runs without the archive when the JVM rejects it
+            return new Launch("-XX:SharedArchiveFile=" + archive + " -Xshare:auto", null, archive);
+        }
+
+        // Only one launch dumps the archive, the others run without it meanwhile
+        if (failedDumps.get() >= maxDumpAttempts || !dumping.compareAndSet(false, true)) {
+            return null;
+        }
+        Path dumpPath = archive.resolveSibling(archive.getFileName() + "." + dumpSequence.incrementAndGet() + ".tmp");
+        System.out.println("Dumping the Audiveris class archive to " + archive.getFileName() + " when this run exits");
+        return new Launch("-XX:ArchiveClassesAtExit=" + dumpPath, dumpPath, archive);
+    }
+
+    /**
+     * Keep the archive dumped by a launch
+     *
+     * @param launch The launch, may be null
+     * @param success True if the JVM exited normally, so the archive is complete
+     */
+    public void finish(Launch launch, boolean success) {
+        if (launch == null || launch.dumpPath() == null) {
+            return;
+        }
+
+        try {
+            if (success && Files.isRegularFile(launch.dumpPath()) && Files.size(launch.dumpPath()) > 0) {
+                Files.move(launch.dumpPath(), launch.archive(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("Audiveris class archive written: " + launch.archive().getFileName()
+                    + " (" + Files.size(launch.archive()) / (1024 * 1024) + " MB)");
+            } else {
+                int failed = failedDumps.incrementAndGet();
+                System.out.println("The Audiveris class archive was not dumped (" + failed + "/" + maxDumpAttempts + " attempts)");
+            }
+        } catch (IOException e) {
+            failedDumps.incrementAndGet();
+            System.out.println("Could not keep the Audiveris class archive: " + e.getMessage());
+        } finally {
+            deleteQuietly(launch.dumpPath());
+            dumping.set(false);
+        }
+    }
+
+    /**
+     * Name the archive after the Audiveris jars and the Java runtime the
+     * launcher runs, and delete the archives of other versions
+     */
+    Path archiveFor(Path launcher) throws IOException {
+        StringBuilder fingerprint = new StringBuilder();
+        appendFile(fingerprint, launcher);
+        Path lib = launcher.toAbsolutePath().getParent().resolveSibling("lib");
+        if (Files.isDirectory(lib)) {
+            List<Path> jars = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(lib, "*.jar")) {
+                files.forEach(jars::add);
+            }
+            jars.sort(null);
+            for (Path jar : jars) {
+                appendFile(fingerprint, jar);
+            }
+        }
+        Path java = findJava();
+        if (java != null) {
+            appendFile(fingerprint, java);
+        }
+
+        Path archive = dir.resolve(PREFIX + sha256(fingerprint.toString()).substring(0, 16) + EXTENSION);
+        Files.createDirectories(dir);
+        try (Stream<Path> archives = Files.list(dir)) {
+            archives.filter(path -> path.getFileName().toString().startsWith(PREFIX) && path.getFileName().toString().endsWith(EXTENSION))
+                .filter(path -> !path.equals(archive))
+                .forEach(stale -> {
+                    System.out.println("Deleting stale Audiveris class archive " + stale.getFileName());
+                    deleteQuietly(stale);
+                });
+        }
+        return archive;
+    }
+
+    /**
+     * @return The java executable the launcher script runs, like it finds it: from JAVA_HOME, or on the PATH
+     */
+    private static Path findJava() {
+        String executable = File.separatorChar == '\\' ? "java.exe" : "java";
+        String javaHome = System.getenv("JAVA_HOME");
+        if (javaHome != null && !javaHome.isBlank()) {
+            Path java = Path.of(javaHome, "bin", executable);
+            if (Files.isExecutable(java)) {
+                return java;
+            }
+        }
+        String path = System.getenv("PATH");
+        if (path != null) {
+            for (String entry : path.split(File.pathSeparator)) {
+                Path java = Path.of(entry, executable);
+                if (!entry.isEmpty() && Files.isExecutable(java)) {
+                    return java;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void appendFile(StringBuilder fingerprint, Path file) throws IOException {
+        Path real = file.toRealPath();
+        fingerprint.append(real).append('|').append(Files.size(real)).append('|')
+            .append(Files.getLastModifiedTime(real).toMillis()).append('\n');
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.out.println("Could not delete " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,16 +1,47 @@
 package PFE008.backend;
 
 import org.apache.commons.lang3.SystemUtils;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.util.FileSystemUtils;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 
 public class AudiverisController {
+    public static final String MIDI_ENGINE_JAVA = "java";
+    public static final String MIDI_ENGINE_PYTHON = "python";
+
+    // Share of the conversion reached at the end of each stage, reported to the progress listener
+    static final double PROGRESS_OMR_START = 0.05;
+    static final double PROGRESS_OMR_END = 0.8;
+    static final double PROGRESS_MERGED = 0.82;
+    static final double PROGRESS_REEXPORTED = 0.85;
+    static final double PROGRESS_MIDI_START = 0.9;
+    static final double PROGRESS_MIDI_END = 0.98;
+    static final String STEP_DONE = "DONE";
+    static final String STEP_EXPORTED = "EXPORTED";
+
     private String tempos;
+    private String midiEngine;
+    private AudiverisSettings settings;
+    private AudiverisWorkerPool workerPool;
+    private AudiverisCds cds;
+    private PageOmrExecutor pageExecutor;
+    private CpuPermits cpuPermits;
+    private Path outputDir;
+    private Consumer<ProgressEvent> progressListener;
     
-    private String terminalType = "cmd.exe";
-    private String terminalOption = "/c";
+    private String terminalType = SystemUtils.IS_OS_WINDOWS ? "cmd.exe" : "sh";
+    private String terminalOption = SystemUtils.IS_OS_WINDOWS ? "/c" : "-c";
 
     public AudiverisController() {
         this(null);
@@ -18,7 +49,82 @@ public class AudiverisController {
 
     // Constructor with tempos parameter
     public AudiverisController(String tempos) {
+        this(tempos, MIDI_ENGINE_JAVA);
+    }
+
+    /**
+     * @param tempos Custom tempos as a JSON string, may be null
+     * @param midiEngine "java" to convert .mxl files in-process, "python" to use MxlToMidi.py
+     */
+    public AudiverisController(String tempos, String midiEngine) {
+        this(tempos, midiEngine, new AudiverisSettings());
+    }
+
+    /**
+     * @param tempos Custom tempos as a JSON string, may be null
+     * @param midiEngine "java" to convert .mxl files in-process, "python" to use MxlToMidi.py
+     * @param settings Settings of the Audiveris stage
+     */
+    public AudiverisController(String tempos, String midiEngine, AudiverisSettings settings) {
         this.tempos = tempos;
+        this.midiEngine = midiEngine;
+        this.settings = settings;
+    }
+
+    /**
+     * Use a pool of warm Audiveris workers instead of launching Audiveris for each run
+     * 
+     * @param workerPool The worker pool, may be null
+     */
+    public void setWorkerPool(AudiverisWorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * Start the Audiveris JVM of one-shot runs from a class archive
+     * 
+     * @param cds The class archive of Audiveris, may be null
+     */
+    public void setCds(AudiverisCds cds) {
+        this.cds = cds;
+    }
+
+    /**
+     * Run Audiveris on the pages of multi-page PDF files concurrently,
+     * when maestro.audiveris.parallel-pages is enabled
+     * 
+     * @param pageExecutor The executor of the page runs, may be null
+     */
+    public void setPageExecutor(PageOmrExecutor pageExecutor) {
+        this.pageExecutor = pageExecutor;
+    }
+
+    /**
+     * Bound the number of Audiveris runs and MIDI conversions running at the same time
+     * 
+     * @param cpuPermits The permits shared by every conversion, may be null
+     */
+    public void setCpuPermits(CpuPermits cpuPermits) {
+        this.cpuPermits = cpuPermits;
+    }
+
+    /**
+     * Write the Audiveris output and the .mid file to a directory, like the
+     * workspace of the conversion, instead of {user.dir}/Out
+     * 
+     * @param outputDir The output directory, relative to user.dir or absolute
+     */
+    public void setOutputDir(Path outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Report the Audiveris steps and the MIDI stage milestones of the conversion
+     * 
+     * @param progressListener Receives the progress events, may be null
+     */
+    public void setProgressListener(Consumer<ProgressEvent> progressListener) {
+        this.progressListener = progressListener;
     }
 
     /**
@@ -32,8 +138,8 @@ public class AudiverisController {
         System.out.println("Working Directory: " + workingDir);
 
         String audiverisPath = workingDir + File.separator + "backend" + File.separator + "Audiveris" + File.separator + "dist" + File.separator + "bin" + File.separator + "Audiveris";
-        String inputFile = workingDir + File.separator + path + File.separator;
-        String outputDir = workingDir + File.separator + "Out";
+        String inputFile = Path.of(workingDir).resolve(path) + File.separator;
+        String outputDir = this.outputDir != null ? Path.of(workingDir).resolve(this.outputDir).toString() : workingDir + File.separator + "Out";
         String[] options = new String[]{"org.audiveris.omr.sheet.BookManager.useCompression=false"};
 
 
@@ -52,70 +158,70 @@ public class AudiverisController {
             terminalOption = "-c";
         }
 
-        String commandMXL = audiverisPath + " -batch -export -output " + outputDir + " -- " + inputFile;
-        System.out.println("Audiveris commandMXL: " + commandMXL);
+        List<String> argsMXL = List.of("-batch", "-export", "-output", outputDir, "--", inputFile);
+        String baseName = path.substring(path.lastIndexOf(File.separator) + 1, path.lastIndexOf('.'));
 
         // Run the command
         try {
-            System.out.println("Running Audiveris..");
-            ProcessBuilder processBuilder = new ProcessBuilder(terminalType, terminalOption, commandMXL);
-            Process process = processBuilder.start();
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
-            }
-
-            int exitCode = process.waitFor();
-            System.out.println("Audiveris process exited with code: " + exitCode);
-
-            if (exitCode != 0) {
-                return null;
-            }
-
-
-            // Export in XML formats
-            System.out.println("Exporting to XML..");
-            System.out.println("omrPath..");
-            String omrPath = workingDir + File.separator + "Out" + path.substring(path.lastIndexOf(File.separator), path.lastIndexOf('.')) + ".omr";
-            System.out.println("commandXML..");
-            String commandXML = audiverisPath + " -batch -export -option " + options[0] +" -output " + outputDir + " -- " + omrPath;
-            System.out.println("Audiveris commandXML: " + commandXML);
-
-            System.out.println("Running Audiveris..");
-            ProcessBuilder processBuilderXML = new ProcessBuilder(terminalType, terminalOption, commandXML);
-            Process processXML = processBuilderXML.start();
-
-            BufferedReader readerXML = new BufferedReader(new InputStreamReader(processXML.getInputStream()));
-            String lineXML;
-            while ((lineXML = readerXML.readLine()) != null) {
-                System.out.println(lineXML);
+            boolean merged = pageExecutor != null && settings.isParallelPages()
+                && convertPages(audiverisPath, Path.of(workingDir).resolve(path), outputDir, baseName);
+
+            if (!merged) {
+                countPages(Path.of(workingDir).resolve(path));
+                int exitCode = runAudiveris(PipelineMetrics.STAGE_AUDIVERIS, audiverisPath, argsMXL,
+                    omrProgress(PROGRESS_OMR_START, PROGRESS_OMR_END, null));
+                System.out.println("Audiveris process exited with code: " + exitCode);
+
+                if (exitCode != 0) {
+                    return null;
+                }
             }
-            int exitCodeXML = processXML.waitFor();
-
-            if (exitCodeXML != 0) {
-                return null;
+            progress(ProgressEvent.STAGE_OMR, STEP_DONE, merged ? PROGRESS_MERGED : PROGRESS_OMR_END, "Score recognized");
+
+
+            // The uncompressed .xml is only needed by MxlToMidi.py, which can also get it
+            // straight out of the .mxl, so the second run is only done in double export mode.
+            // A merged score has no .omr book, so its .xml is extracted from the .mxl instead.
+            if (settings.isDoubleExport() && merged) {
+                MxlToMidiConverter.extractScore(Path.of(outputDir, baseName + ".mxl"), Path.of(outputDir, baseName + ".xml"));
+            } else if (settings.isDoubleExport()) {
+                // Export in XML formats
+                System.out.println("Exporting to XML..");
+                String omrPath = outputDir + File.separator + baseName + ".omr";
+                List<String> argsXML = List.of("-batch", "-export", "-option", options[0], "-output", outputDir, "--", omrPath);
+
+                int exitCodeXML = runAudiveris(PipelineMetrics.STAGE_AUDIVERIS_REEXPORT, audiverisPath, argsXML, null);
+
+                if (exitCodeXML != 0) {
+                    return null;
+                }
+                progress(ProgressEvent.STAGE_OMR, "REEXPORT", PROGRESS_REEXPORTED, "Score exported to MusicXML");
             }
 
+        } catch (InterruptedException e) {
+            // Cancelled, maybe while waiting for a CPU permit: the caller sees it by the flag
+            Thread.currentThread().interrupt();
+            System.out.println("Audiveris run cancelled");
+            return null;
         } catch (Exception e) {
             System.out.println("Error running Audiveris: " + e.getMessage());
             return null;
         }
 
-        String mxlPath = workingDir + File.separator + "Out" + path.substring(path.lastIndexOf(File.separator), path.lastIndexOf('.')) + ".mxl";
+        String mxlPath = outputDir + File.separator + baseName + ".mxl";
         System.out.println("MXL Path: " + mxlPath);
 
         if (!new File(mxlPath).exists()) {
             System.out.println("MXL file not found.");
             return null;
         }
+        progress(ProgressEvent.STAGE_OMR, STEP_EXPORTED, PROGRESS_REEXPORTED, "Score ready for the MIDI stage");
 
         // Convert .mxl to .mid
         String midiPath = convertMxlToMidi(mxlPath);
         System.out.println("MIDI Path: " + midiPath);
 
-        if (!new File(midiPath).exists()) {
+        if (midiPath == null || !new File(midiPath).exists()) {
             System.out.println("MIDI file not found.");
             return null;
         }
@@ -123,7 +229,241 @@ public class AudiverisController {
         return midiPath;
     }
 
+    /**
+     * Split a multi-page PDF file, run Audiveris on the pages concurrently
+     * and merge the page scores into {outputDir}/{baseName}.mxl
+     * 
+     * @param audiverisPath Path to the Audiveris launcher
+     * @param inputPath Path to the music sheet file
+     * @param outputDir Directory of the merged .mxl file
+     * @param baseName Name of the merged .mxl file, without extension
+     * @return True if the merged .mxl has been written, false if the whole file must be run at once
+     */
+    private boolean convertPages(String audiverisPath, Path inputPath, String outputDir, String baseName) throws InterruptedException {
+        if (!inputPath.toString().toLowerCase().endsWith(".pdf")) {
+            return false;
+        }
+
+        Path pagesDir = Path.of(outputDir, baseName + "-pages");
+        try {
+            List<Path> pages = PdfPageSplitter.split(inputPath, pagesDir, baseName);
+            if (pages.isEmpty()) {
+                return false;
+            }
+
+            System.out.println("Running Audiveris on " + pages.size() + " pages, " + pageExecutor.getWorkers() + " at a time");
+            PipelineEvents.setPages(pages.size());
+            long start = System.nanoTime();
+
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < pages.size(); i++) {
+                List<String> args = List.of("-batch", "-export", "-output", pagesDir.toString(), "--", pages.get(i).toString());
+                Consumer<String> lineListener = omrProgress(PROGRESS_OMR_START, PROGRESS_OMR_END, i + 1);
+                tasks.add(PipelineEvents.propagate(() -> runAudiveris(PipelineMetrics.STAGE_AUDIVERIS_PAGE, audiverisPath, args, lineListener)));
+            }
+            List<Integer> exitCodes = pageExecutor.runAll(tasks);
+
+            List<Path> pageScores = new ArrayList<>();
+            for (int i = 0; i < pages.size(); i++) {
+                String pageName = pages.get(i).getFileName().toString();
+                Path pageScore = pagesDir.resolve(pageName.substring(0, pageName.lastIndexOf('.')) + ".mxl");
+                if (exitCodes.get(i) != 0 || !Files.exists(pageScore)) {
+                    System.out.println("Page " + (i + 1) + " failed (exit code " + exitCodes.get(i) + "), running Audiveris on the whole file");
+                    return false;
+                }
+                pageScores.add(pageScore);
+            }
+
+            long mergeStart = System.nanoTime();
+            MusicXmlMerger.merge(pageScores, Path.of(outputDir, baseName + ".mxl"));
+            PipelineMetrics.recordStage(PipelineMetrics.STAGE_PAGE_MERGE, mergeStart, true);
+            progress(ProgressEvent.STAGE_MERGE, "DONE", PROGRESS_MERGED, pages.size() + " pages merged");
+            System.out.println(pages.size() + " pages converted and merged in " + (System.nanoTime() - start) / 1000000 + " ms");
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error running Audiveris on pages, running it on the whole file: " + e.getMessage());
+            return false;
+        } finally {
+            try {
+                FileSystemUtils.deleteRecursively(pagesDir);
+            } catch (IOException e) {
+                System.out.println("Could not delete " + pagesDir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Set the page count of the conversion for the flight recorder events,
+     * only when they are recorded since the PDF file is opened again
+     * 
+     * @param inputPath Path to the music sheet file
+     */
+    private static void countPages(Path inputPath) {
+        if (PipelineEvents.getPages() > 0 || !new PipelineEvents.AudiverisEvent().isEnabled()) {
+            return;
+        }
+        if (!inputPath.toString().toLowerCase().endsWith(".pdf")) {
+            PipelineEvents.setPages(1);
+            return;
+        }
+        try (PDDocument document = Loader.loadPDF(inputPath.toFile())) {
+            PipelineEvents.setPages(document.getNumberOfPages());
+        } catch (IOException e) {
+            System.out.println("Could not count the pages of " + inputPath.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run Audiveris, on a warm worker of the pool when there is one,
+     * otherwise by launching the Audiveris distribution
+     * 
+     * @param stage The stage name in the metrics
+     * @param audiverisPath Path to the Audiveris launcher
+     * @param args The Audiveris command line arguments
+     * @param lineListener Receives the Audiveris output lines, may be null
+     * @return The Audiveris exit code
+     */
+    private int runAudiveris(String stage, String audiverisPath, List<String> args,
+                             Consumer<String> lineListener) throws IOException, InterruptedException {
+        if (cpuPermits != null) {
+            cpuPermits.acquire("Audiveris");
+        }
+
+        long start = System.nanoTime();
+        PipelineEvents.AudiverisEvent event = new PipelineEvents.AudiverisEvent();
+        event.start(stage);
+        int exitCode = -1;
+        try {
+            exitCode = runAudiverisNow(audiverisPath, args, lineListener);
+            return exitCode;
+        } finally {
+            PipelineMetrics.recordStage(stage, start, exitCode == 0);
+            event.finish(exitCode);
+            if (cpuPermits != null) {
+                cpuPermits.release();
+            }
+        }
+    }
+
+    private int runAudiverisNow(String audiverisPath, List<String> args,
+                                Consumer<String> lineListener) throws IOException, InterruptedException {
+        if (workerPool != null && workerPool.isAvailable()) {
+            System.out.println("Running Audiveris on a warm worker: " + String.join(" ", args));
+            // A job the worker took is not launched again, only one no worker could take
+            Integer exitCode = workerPool.run(args, lineListener);
+            if (exitCode != null) {
+                return exitCode;
+            }
+        }
+
+        String command = audiverisPath + " " + String.join(" ", args);
+        System.out.println("Audiveris command: " + command);
+
+        System.out.println("Running Audiveris..");
+        // The Audiveris launcher script passes JAVA_OPTS to its JVM, a later -Xmx wins over its default one
+        String javaOptions = System.getenv().getOrDefault("JAVA_OPTS", "") + " -Xmx" + settings.getEffectiveHeapMb() + "m";
+        AudiverisCds.Launch launch = cds != null ? cds.prepare(audiverisPath) : null;
+        if (launch != null) {
+            javaOptions += " " + launch.javaOptions();
+        }
+        ProcessResult result = null;
+        try {
+            result = ProcessSupervisor.run("audiveris", List.of(terminalType, terminalOption, command),
+                Map.of("JAVA_OPTS", javaOptions.trim()), Duration.ofSeconds(settings.getTimeoutSeconds()), lineListener);
+        } finally {
+            if (cds != null) {
+                cds.finish(launch, result != null && !result.cancelled() && !result.timedOut() && result.exitCode() == 0);
+            }
+        }
+
+        if (result.cancelled()) {
+            throw new InterruptedException("Audiveris run cancelled");
+        }
+        return result.timedOut() ? -1 : result.exitCode();
+    }
+
+    /**
+     * Convert an already exported .mxl file to a .mid file, without running Audiveris
+     * 
+     * @param mxlPath Path to the .mxl file. For the python engine, the .xml must be next to it.
+     * @return The .mid path if it has been created, null otherwise
+     */
+    public String renderMidi(String mxlPath) {
+        String midiPath = convertMxlToMidi(mxlPath);
+        if (midiPath == null || !new File(midiPath).exists()) {
+            System.out.println("MIDI file not found.");
+            return null;
+        }
+        return midiPath;
+    }
+
     private String convertMxlToMidi(String mxlPath) {
+        progress(ProgressEvent.STAGE_MIDI, "START", PROGRESS_MIDI_START, "Converting the score to MIDI");
+        String midiPath = convertMxlToMidiWithPermit(mxlPath);
+        if (midiPath != null) {
+            progress(ProgressEvent.STAGE_MIDI, STEP_DONE, PROGRESS_MIDI_END, "MIDI file written");
+        }
+        return midiPath;
+    }
+
+    private String convertMxlToMidiWithPermit(String mxlPath) {
+        if (cpuPermits == null) {
+            return convertMxlToMidiNow(mxlPath);
+        }
+
+        try {
+            cpuPermits.acquire("MIDI conversion");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Interrupted while waiting to convert .mxl to .mid");
+            return null;
+        }
+        try {
+            return convertMxlToMidiNow(mxlPath);
+        } finally {
+            cpuPermits.release();
+        }
+    }
+
+    /**
+     * @param start Progress of the conversion when the run starts
+     * @param end Progress of the conversion when the run has exported the book
+     * @param page The page the run is about, null for the whole file
+     * @return A listener of the Audiveris output reporting its steps, null if nobody follows the progress
+     */
+    private Consumer<String> omrProgress(double start, double end, Integer page) {
+        return progressListener == null ? null : new AudiverisProgress(progressListener, start, end, page);
+    }
+
+    private void progress(String stage, String step, double progress, String message) {
+        if (progressListener != null) {
+            progressListener.accept(ProgressEvent.of(stage, step, null, progress, message));
+        }
+    }
+
+    private String convertMxlToMidiNow(String mxlPath) {
+        if (MIDI_ENGINE_PYTHON.equalsIgnoreCase(midiEngine)) {
+            return convertMxlToMidiWithPython(mxlPath);
+        }
+
+        long start = System.nanoTime();
+        PipelineEvents.MidiEvent event = new PipelineEvents.MidiEvent();
+        event.start(PipelineMetrics.STAGE_MIDI_JAVA);
+        try {
+            String midiPath = new MxlToMidiConverter(tempos).convert(mxlPath);
+            System.out.println("MIDI written in " + (System.nanoTime() - start) / 1000000 + " ms");
+            PipelineMetrics.recordStage(PipelineMetrics.STAGE_MIDI_JAVA, start, true);
+            event.finish(0);
+            return midiPath;
+        } catch (Exception e) {
+            PipelineMetrics.recordStage(PipelineMetrics.STAGE_MIDI_JAVA, start, false);
+            event.finish(1);
+            System.out.println("Error converting .mxl to .mid in Java, falling back to MxlToMidi.py: " + e.getMessage());
+            return convertMxlToMidiWithPython(mxlPath);
+        }
+    }
+
+    private String convertMxlToMidiWithPython(String mxlPath) {
         String pythonScriptPath = System.getProperty("user.dir") + File.separator + "src" + File.separator + "main" + File.separator + "MxlToMidi.py";
 
         String os = System.getProperty("os.name").toLowerCase();
@@ -134,6 +474,17 @@ public class AudiverisController {
             pythonScriptPath = System.getProperty("user.dir") + File.separator + "backend" + File.separator + "src" + File.separator + "main" + File.separator + "MxlToMidi.py";
         }
 
+        // MxlToMidi.py reads the tempo words from the uncompressed .xml next to the .mxl
+        String xmlPath = mxlPath.substring(0, mxlPath.lastIndexOf('.')) + ".xml";
+        if (!new File(xmlPath).exists()) {
+            try {
+                MxlToMidiConverter.extractScore(Path.of(mxlPath), Path.of(xmlPath));
+            } catch (IOException e) {
+                System.out.println("Error extracting MusicXML from .mxl: " + e.getMessage());
+                return null;
+            }
+        }
+
         String command = "python " + pythonScriptPath + " " + "\"" + mxlPath + "\"";
 
         if (tempos != null && !tempos.isEmpty()) {
@@ -143,19 +494,16 @@ public class AudiverisController {
         System.out.println("Python command: " + command);
 
         try {
-            ProcessBuilder processBuilder = new ProcessBuilder(terminalType, terminalOption, command);
-            Process process = processBuilder.start();
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
-            }
-
-            int exitCode = process.waitFor();
-            System.out.println("Python script process exited with code: " + exitCode);
-
-            if (exitCode != 0) {
+            long start = System.nanoTime();
+            PipelineEvents.MidiEvent event = new PipelineEvents.MidiEvent();
+            event.start(PipelineMetrics.STAGE_MIDI_PYTHON);
+            ProcessResult result = ProcessSupervisor.run("mxl-to-midi", List.of(terminalType, terminalOption, command),
+                Duration.ofSeconds(settings.getMidiTimeoutSeconds()));
+            PipelineMetrics.recordStage(PipelineMetrics.STAGE_MIDI_PYTHON, start, result.isSuccess());
+            event.finish(result.timedOut() ? -1 : result.exitCode());
+            System.out.println("Python script process exited with code: " + result.exitCode());
+
+            if (!result.isSuccess()) {
                 return null;
             }
 
@@ -0,0 +1,89 @@
+package PFE008.backend;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * AudiverisProgress class
+ * 
+ * Turns the log lines of an Audiveris run into {@link ProgressEvent}s.
+ * Audiveris tags the lines about a sheet with "[book#n]" and names the
+ * OMR step it is running (LOAD, BINARY, ... PAGE), then logs the export
+ * of the book. Only the first line of each step of a sheet is reported,
+ * and steps never go backwards, so a chatty step gives a single event.
+ * The progress of the run is mapped to a range of the whole conversion.
+ * 
+ * @version 2026.10.17
+ */
+public class AudiverisProgress implements Consumer<String> {
+    /**
+     * The OMR steps of a sheet, in the order Audiveris runs them
+     */
+    public static final List<String> STEPS = List.of("LOAD", "BINARY", "SCALE", "GRID", "HEADERS", "STEM_SEEDS",
+        "BEAMS", "LEDGERS", "HEADS", "STEMS", "REDUCTION", "CUE_BEAMS", "TEXTS", "MEASURES", "CHORDS", "CURVES",
+        "SYMBOLS", "LINKS", "RHYTHMS", "PAGE");
+    public static final String STEP_EXPORT = "EXPORT";
+
+    private static final Pattern SHEET = Pattern.compile("\\[[^\\]\\s]*#(\\d+)]");
+    private static final Pattern STEP = Pattern.compile("\\b(" + String.join("|", STEPS) + ")\\b");
+    private static final Pattern STEP_WORD = Pattern.compile("(?i)\\bstep\\b");
+    private static final Pattern EXPORT = Pattern.compile("(?i)\\bexport(ed|ing)?\\b.*\\.mxl\\b|\\.mxl\\b.*\\bexported\\b");
+
+    private final Consumer<ProgressEvent> listener;
+    private final double start;
+    private final double end;
+    private final Integer page;
+    private final Map<Integer, Integer> lastSteps = new HashMap<>();
+    private boolean exported;
+
+    /**
+     * @param listener Receives the progress events
+     * @param start Progress of the conversion when the run starts
+     * @param end Progress of the conversion when the run has exported the book
+     * @param page The page this run is about when the pages are run separately, null otherwise
+     */
+    public AudiverisProgress(Consumer<ProgressEvent> listener, double start, double end, Integer page) {
+        this.listener = listener;
+        this.start = start;
+        this.end = end;
+        this.page = page;
+    }
+
+    @Override
+    public synchronized void accept(String line) {
+        if (!exported && EXPORT.matcher(line).find()) {
+            exported = true;
+            listener.accept(ProgressEvent.of(ProgressEvent.STAGE_OMR, STEP_EXPORT, page, end,
+                page != null ? "Page " + page + " exported" : "Score exported"));
+            return;
+        }
+
+        Matcher sheetMatcher = SHEET.matcher(line);
+        boolean tagged = sheetMatcher.find();
+        if (!tagged && !STEP_WORD.matcher(line).find()) {
+            return;
+        }
+
+        Matcher stepMatcher = STEP.matcher(line);
+        if (!stepMatcher.find()) {
+            return;
+        }
+
+        Integer sheet = page != null ? page : tagged ? Integer.valueOf(sheetMatcher.group(1)) : null;
+        int step = STEPS.indexOf(stepMatcher.group(1));
+        Integer last = lastSteps.get(sheet);
+        if (last != null && step <= last) {
+            return;
+        }
+        lastSteps.put(sheet, step);
+
+        double progress = start + (end - start) * (step + 1) / (STEPS.size() + 1);
+        String subject = page != null ? "Page " + page : sheet != null ? "Sheet " + sheet : "Score";
+        listener.accept(ProgressEvent.of(ProgressEvent.STAGE_OMR, STEPS.get(step), sheet, progress,
+            subject + ": " + STEPS.get(step).toLowerCase().replace('_', ' ') + " (step " + (step + 1) + "/" + STEPS.size() + ")"));
+    }
+}
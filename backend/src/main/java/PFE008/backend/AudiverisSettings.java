@@ -0,0 +1,250 @@
+package PFE008.backend;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * AudiverisSettings class
+ * 
+ * Settings of the Audiveris stage, read from the maestro.audiveris.*
+ * properties. A new instance holds the default values, which is what
+ * an AudiverisController created without settings uses.
+ * 
+ * @version 2026.10.17
+ */
+@Component
+@ConfigurationProperties(prefix = "maestro.audiveris")
+public class AudiverisSettings {
+    public static final String EXPORT_SINGLE = "single";
+    public static final String EXPORT_DOUBLE = "double";
+    private static final long MIN_AUTO_HEAP_MB = 1024;
+    private static final long MAX_AUTO_HEAP_MB = 2048;
+
+    /**
+     * "single" runs Audiveris once and reads the MusicXML out of the .mxl when needed,
+     * "double" re-exports the .omr book uncompressed with a second Audiveris run
+     */
+    private String exportMode = EXPORT_SINGLE;
+
+    /**
+     * Split multi-page PDF files and run Audiveris on the pages concurrently
+     */
+    private boolean parallelPages = false;
+
+    /**
+     * Number of pages processed at the same time, 0 for the number of processors
+     */
+    private int pageWorkers = 0;
+
+    /**
+     * Maximum run time of a one-shot Audiveris run, its process tree is killed after it
+     */
+    private long timeoutSeconds = 600;
+
+    /**
+     * Maximum run time of MxlToMidi.py, when the python MIDI engine is used
+     */
+    private long midiTimeoutSeconds = 120;
+
+    /**
+     * Maximum heap of each Audiveris JVM in MB, 0 for a quarter of the memory, between 1 and 2 GB
+     */
+    private long heapMb = 0;
+
+    private final Pool pool = new Pool();
+
+    public String getExportMode() {
+        return exportMode;
+    }
+
+    public void setExportMode(String exportMode) {
+        this.exportMode = exportMode;
+    }
+
+    public boolean isDoubleExport() {
+        return EXPORT_DOUBLE.equalsIgnoreCase(exportMode);
+    }
+
+    public boolean isParallelPages() {
+        return parallelPages;
+    }
+
+    public void setParallelPages(boolean parallelPages) {
+        this.parallelPages = parallelPages;
+    }
+
+    public int getPageWorkers() {
+        return pageWorkers;
+    }
+
+    public void setPageWorkers(int pageWorkers) {
+        this.pageWorkers = pageWorkers;
+    }
+
+    public long getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public void setTimeoutSeconds(long timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public long getMidiTimeoutSeconds() {
+        return midiTimeoutSeconds;
+    }
+
+    public void setMidiTimeoutSeconds(long midiTimeoutSeconds) {
+        this.midiTimeoutSeconds = midiTimeoutSeconds;
+    }
+
+    public long getHeapMb() {
+        return heapMb;
+    }
+
+    public void setHeapMb(long heapMb) {
+        this.heapMb = heapMb;
+    }
+
+    /**
+     * @return The heap cap passed to each Audiveris JVM, in MB
+     */
+    public long getEffectiveHeapMb() {
+        if (heapMb > 0) {
+            return heapMb;
+        }
+        return Math.max(MIN_AUTO_HEAP_MB, Math.min(MAX_AUTO_HEAP_MB, AdaptiveLimiter.totalMemoryMb() / 4));
+    }
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    /**
+     * Settings of the pool of long-lived Audiveris workers (maestro.audiveris.pool.*)
+     */
+    public static class Pool {
+        private boolean enabled = false;
+        private int size = 2;
+        private int maxJobsPerWorker = 50;
+        private long maxHeapMb = 1536;
+        private long startupTimeoutMs = 120000;
+        private long jobTimeoutMs = 600000;
+        private long acquireTimeoutMs = 60000;
+        private long healthCheckTimeoutMs = 5000;
+        private String java = ProcessHandle.current().info().command().orElse("java");
+        private String jvmOptions = "";
+        private String mainClass = "org.audiveris.omr.Main";
+        private String classPath;
+        private String workerScript;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public int getMaxJobsPerWorker() {
+            return maxJobsPerWorker;
+        }
+
+        public void setMaxJobsPerWorker(int maxJobsPerWorker) {
+            this.maxJobsPerWorker = maxJobsPerWorker;
+        }
+
+        public long getMaxHeapMb() {
+            return maxHeapMb;
+        }
+
+        public void setMaxHeapMb(long maxHeapMb) {
+            this.maxHeapMb = maxHeapMb;
+        }
+
+        public long getStartupTimeoutMs() {
+            return startupTimeoutMs;
+        }
+
+        public void setStartupTimeoutMs(long startupTimeoutMs) {
+            this.startupTimeoutMs = startupTimeoutMs;
+        }
+
+        public long getJobTimeoutMs() {
+            return jobTimeoutMs;
+        }
+
+        public void setJobTimeoutMs(long jobTimeoutMs) {
+            this.jobTimeoutMs = jobTimeoutMs;
+        }
+
+        public long getAcquireTimeoutMs() {
+            return acquireTimeoutMs;
+        }
+
+        public void setAcquireTimeoutMs(long acquireTimeoutMs) {
+            this.acquireTimeoutMs = acquireTimeoutMs;
+        }
+
+        public long getHealthCheckTimeoutMs() {
+            return healthCheckTimeoutMs;
+        }
+
+        public void setHealthCheckTimeoutMs(long healthCheckTimeoutMs) {
+            this.healthCheckTimeoutMs = healthCheckTimeoutMs;
+        }
+
+        public String getJava() {
+            return java;
+        }
+
+        public void setJava(String java) {
+            this.java = java;
+        }
+
+        public String getJvmOptions() {
+            return jvmOptions;
+        }
+
+        public void setJvmOptions(String jvmOptions) {
+            this.jvmOptions = jvmOptions;
+        }
+
+        public String getMainClass() {
+            return mainClass;
+        }
+
+        public void setMainClass(String mainClass) {
+            this.mainClass = mainClass;
+        }
+
+        /**
+         * @return The class path of the workers, the Audiveris lib directory when not set
+         */
+        public String getClassPath() {
+            return classPath;
+        }
+
+        public void setClassPath(String classPath) {
+            this.classPath = classPath;
+        }
+
+        /**
+         * @return Path to AudiverisWorker.java, found next to MxlToMidi.py when not set
+         */
+        public String getWorkerScript() {
+            return workerScript;
+        }
+
+        public void setWorkerScript(String workerScript) {
+            this.workerScript = workerScript;
+        }
+    }
+}
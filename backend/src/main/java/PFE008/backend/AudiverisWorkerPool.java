@@ -0,0 +1,422 @@
+package PFE008.backend;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * AudiverisWorkerPool class
+ *
+ * This class keeps a pool of long-lived Audiveris JVMs, so a conversion
+ * does not pay for class loading, JIT warm-up and OCR model loading.
+ * Each worker runs src/main/AudiverisWorker.java and receives its jobs
+ * over stdin (see that file for the protocol).
+ *
+ * Idle workers are pinged regularly and replaced when they don't answer.
+ * A worker is recycled after a number of jobs, or when its heap grows
+ * over the configured limit. When no worker can take a job, the caller
+ * falls back to the one-shot Audiveris launch. A job a worker has taken
+ * is not run again: a worker that hangs or dies on it fails the job.
+ *
+ * The worker keeps its JVM alive when Audiveris calls System.exit with a
+ * security manager, which Java 24 and later no longer allow. On these
+ * runtimes the workers report it at startup and the pool turns itself
+ * off, so every conversion uses the one-shot launch.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class AudiverisWorkerPool {
+    private static final String MARKER = "@@maestro ";
+
+    private final AudiverisSettings.Pool settings;
+    private final long heapMb;
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private volatile boolean running;
+
+    public AudiverisWorkerPool(AudiverisSettings settings) {
+        this.settings = settings.getPool();
+        this.heapMb = settings.getEffectiveHeapMb();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+
+        running = true;
+        for (int i = 0; i < settings.getSize(); i++) {
+            Worker worker = startWorker();
+            if (worker != null) {
+                idle.add(worker);
+            }
+        }
+
+        if (idle.isEmpty()) {
+            System.out.println("No Audiveris worker could be started, using one-shot launches");
+            running = false;
+        }
+    }
+
+    /**
+     * @return True if jobs can be sent to the pool
+     */
+    public boolean isAvailable() {
+        return running;
+    }
+
+    /**
+     * @return The number of idle workers
+     */
+    public int getIdleWorkers() {
+        return idle.size();
+    }
+
+    /**
+     * Run Audiveris on a warm worker
+     *
+     * @param args The Audiveris command line arguments
+     * @return The Audiveris exit code, -1 if the worker hung or died on the job,
+     * or null if no worker could take the job
+     * @throws InterruptedException If the job was cancelled, its worker is then stopped
+     */
+    public Integer run(List<String> args) throws InterruptedException {
+        return run(args, null);
+    }
+
+    /**
+     * Run Audiveris on a warm worker, following its output
+     *
+     * @param args The Audiveris command line arguments
+     * @param lineListener Receives the Audiveris output lines of the job, may be null
+     * @return The Audiveris exit code, -1 if the worker hung or died on the job,
+     * or null if no worker could take the job
+     * @throws InterruptedException If the job was cancelled, its worker is then stopped
+     */
+    public Integer run(List<String> args, Consumer<String> lineListener) throws InterruptedException {
+        if (!running) {
+            return null;
+        }
+
+        Worker worker = idle.poll(settings.getAcquireTimeoutMs(), TimeUnit.MILLISECONDS);
+        if (worker == null) {
+            System.out.println("No idle Audiveris worker, using a one-shot launch");
+            return null;
+        }
+
+        try {
+            try {
+                worker.awaitReady();
+            } catch (UnsupportedRuntimeException e) {
+                disable(e);
+                return null;
+            } catch (IOException e) {
+                // The job was not sent, the caller can still launch it
+                System.out.println("Audiveris worker " + worker.id + " did not start: " + e.getMessage());
+                worker.destroy();
+                return null;
+            }
+
+            int exitCode;
+            String outcome;
+            try {
+                exitCode = worker.run(args, lineListener);
+                outcome = exitCode == 0 ? "success" : "failure";
+            } catch (IOException e) {
+                // Running the job again would hang or crash the same way
+                System.out.println("Audiveris worker " + worker.id + " failed: " + e.getMessage());
+                worker.destroy();
+                exitCode = -1;
+                outcome = e instanceof WorkerTimeoutException ? "timeout" : "failure";
+            } catch (InterruptedException e) {
+                PipelineMetrics.recordProcessExit("audiveris-worker", -1, "cancelled");
+                throw e;
+            }
+            PipelineMetrics.recordProcessExit("audiveris-worker", exitCode, outcome);
+            return exitCode;
+        } finally {
+            release(worker);
+        }
+    }
+
+    /**
+     * Ping the idle workers and replace the ones that don't answer
+     */
+    @Scheduled(fixedDelayString = "${maestro.audiveris.pool.health-check-interval-ms:30000}")
+    public void checkHealth() {
+        if (!running) {
+            return;
+        }
+
+        for (int i = idle.size(); i > 0; i--) {
+            Worker worker = idle.poll();
+            if (worker == null) {
+                break;
+            }
+
+            try {
+                worker.ping();
+            } catch (UnsupportedRuntimeException e) {
+                disable(e);
+            } catch (IOException e) {
+                System.out.println("Audiveris worker " + worker.id + " is unhealthy: " + e.getMessage());
+                worker.destroy();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                release(worker);
+                return;
+            }
+            release(worker);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        Worker worker;
+        while ((worker = idle.poll()) != null) {
+            worker.quit();
+        }
+    }
+
+    /**
+     * Stop the pool for good, the workers can't run on this Java runtime
+     */
+    private void disable(UnsupportedRuntimeException e) {
+        System.out.println("Audiveris workers can't run on this Java runtime (" + e.getMessage() + "), using one-shot launches");
+        shutdown();
+    }
+
+    private void release(Worker worker) {
+        boolean recycle = worker.jobs >= settings.getMaxJobsPerWorker()
+            || worker.usedHeap > settings.getMaxHeapMb() * 1024 * 1024;
+
+        if (recycle && worker.isAlive()) {
+            System.out.println("Recycling Audiveris worker " + worker.id + " after " + worker.jobs + " jobs (" + worker.usedHeap / (1024 * 1024) + " MB used)");
+            worker.quit();
+        }
+
+        if (!running) {
+            worker.quit();
+            return;
+        }
+
+        if (worker.isAlive()) {
+            idle.add(worker);
+        } else {
+            Worker replacement = startWorker();
+            if (replacement != null) {
+                idle.add(replacement);
+            }
+        }
+    }
+
+    private Worker startWorker() {
+        List<String> command = new ArrayList<>();
+        command.add(settings.getJava());
+        // The JVM options can set their own heap cap
+        if (!settings.getJvmOptions().contains("-Xmx")) {
+            command.add("-Xmx" + heapMb + "m");
+        }
+        for (String option : settings.getJvmOptions().trim().split("\\s+")) {
+            if (!option.isEmpty()) {
+                command.add(option);
+            }
+        }
+        command.add("-Djava.security.manager=allow");
+        command.add("-cp");
+        command.add(settings.getClassPath() != null ? settings.getClassPath() : audiverisLibPath() + File.separator + "*");
+        command.add(settings.getWorkerScript() != null ? settings.getWorkerScript() : workerScriptPath());
+        command.add(settings.getMainClass());
+
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            Worker worker = new Worker(workerCount.incrementAndGet(), process);
+            System.out.println("Started Audiveris worker " + worker.id + " (pid " + process.pid() + ")");
+            return worker;
+        } catch (IOException e) {
+            System.out.println("Could not start Audiveris worker: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String audiverisLibPath() {
+        String workingDir = System.getProperty("user.dir");
+        String os = System.getProperty("os.name").toLowerCase();
+        if (os.contains("win")) {
+            return workingDir + File.separator + "audiveris" + File.separator + "dist" + File.separator + "lib";
+        }
+        return workingDir + File.separator + "backend" + File.separator + "Audiveris" + File.separator + "dist" + File.separator + "lib";
+    }
+
+    private static String workerScriptPath() {
+        String workingDir = System.getProperty("user.dir");
+        String os = System.getProperty("os.name").toLowerCase();
+        if (os.contains("win")) {
+            return workingDir + File.separator + "src" + File.separator + "main" + File.separator + "AudiverisWorker.java";
+        }
+        return workingDir + File.separator + "backend" + File.separator + "src" + File.separator + "main" + File.separator + "AudiverisWorker.java";
+    }
+
+    /**
+     * The worker did not answer in time
+     */
+    private static class WorkerTimeoutException extends IOException {
+        WorkerTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The worker can't trap System.exit on this Java runtime
+     */
+    private static class UnsupportedRuntimeException extends IOException {
+        UnsupportedRuntimeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A worker process and the messages it sent on the protocol
+     */
+    private class Worker {
+        final int id;
+        final Process process;
+        final Writer input;
+        final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        volatile Consumer<String> lineListener;
+        volatile boolean destroyed;
+        boolean ready;
+        int jobs;
+        long usedHeap;
+
+        Worker(int id, Process process) {
+            this.id = id;
+            this.process = process;
+            this.input = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+
+            Thread reader = new Thread(this::readOutput, "audiveris-worker-" + id);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        int run(List<String> args, Consumer<String> lineListener) throws IOException, InterruptedException {
+            this.lineListener = lineListener;
+            String[] done;
+            try {
+                send("RUN " + String.join("\t", args));
+                done = await("DONE", settings.getJobTimeoutMs());
+            } finally {
+                this.lineListener = null;
+            }
+            jobs++;
+            usedHeap = Long.parseLong(done[2]);
+            return Integer.parseInt(done[1]);
+        }
+
+        void ping() throws IOException, InterruptedException {
+            awaitReady();
+            send("PING");
+            usedHeap = Long.parseLong(await("PONG", settings.getHealthCheckTimeoutMs())[1]);
+        }
+
+        boolean isAlive() {
+            // A destroyed process may take a moment to exit
+            return !destroyed && process.isAlive();
+        }
+
+        void quit() {
+            try {
+                send("QUIT");
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    destroy();
+                }
+            } catch (IOException e) {
+                destroy();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                destroy();
+            }
+        }
+
+        void destroy() {
+            destroyed = true;
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+
+        void awaitReady() throws IOException, InterruptedException {
+            if (!ready) {
+                await("READY", settings.getStartupTimeoutMs());
+                ready = true;
+            }
+        }
+
+        private void send(String command) throws IOException {
+            input.write(command + "\n");
+            input.flush();
+        }
+
+        private String[] await(String type, long timeoutMs) throws IOException, InterruptedException {
+            String message;
+            try {
+                message = messages.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // The worker may be in the middle of the job, stop it with the job
+                destroy();
+                throw e;
+            }
+            if (message == null) {
+                destroy();
+                throw new WorkerTimeoutException("no " + type + " after " + timeoutMs + " ms");
+            }
+
+            String[] parts = message.split(" ", 2);
+            if (parts[0].equals("UNSUPPORTED")) {
+                destroy();
+                throw new UnsupportedRuntimeException(parts.length > 1 ? parts[1] : message);
+            }
+            parts = message.split(" ");
+            if (!parts[0].equals(type)) {
+                destroy();
+                throw new IOException("expected " + type + " but got " + message);
+            }
+            return parts;
+        }
+
+        private void readOutput() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(MARKER)) {
+                        messages.add(line.substring(MARKER.length()));
+                    } else {
+                        System.out.println(line);
+                        ProcessSupervisor.notify(lineListener, line);
+                    }
+                }
+            } catch (IOException e) {
+                // The worker is gone, the next await fails
+            }
+            messages.add("EXITED");
+        }
+    }
+}
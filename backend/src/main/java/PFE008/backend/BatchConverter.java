@@ -0,0 +1,301 @@
+package PFE008.backend;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * BatchConverter class
+ * 
+ * This class converts many music sheets in one request. The uploaded
+ * files, and the entries of uploaded zips, are saved to their own
+ * workspaces first, then converted concurrently. Each MIDI file is written
+ * to the zip sent back as soon as its conversion is done, so the client
+ * receives the fast ones without waiting for the slowest. A manifest with
+ * the status of every file is the last entry of the zip.
+ * 
+ * @version 2026.10.17
+ */
+@Service
+public class BatchConverter {
+    public static final String MANIFEST = "manifest.json";
+
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final ConversionService conversionService;
+    private final UploadIngestor uploadIngestor;
+    private final WorkspaceManager workspaces;
+    private final ResultStore results;
+    private final ThreadPoolExecutor executor;
+    private final int maxFiles;
+
+    public BatchConverter(ConversionService conversionService, UploadIngestor uploadIngestor,
+                          WorkspaceManager workspaces, ResultStore results, ExecutionMode executionMode,
+                          @Value("${maestro.batch.workers:2}") int workers,
+                          @Value("${maestro.batch.max-files:50}") int maxFiles) {
+        this.conversionService = conversionService;
+        this.uploadIngestor = uploadIngestor;
+        this.workspaces = workspaces;
+        this.results = results;
+        this.maxFiles = maxFiles;
+
+        // Shared by every batch, a large batch queues its files instead of taking over the CPU permits
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), executionMode.threadFactory("batch-conversion-"));
+    }
+
+    /**
+     * An uploaded music sheet of a batch, saved to its workspace or rejected
+     * 
+     * @param fileName The name of the uploaded file or zip entry
+     * @param upload The saved file, null if it was rejected
+     * @param error Why the file was rejected, null if it was saved
+     */
+    public record Upload(String fileName, SavedUpload upload, String error) {
+    }
+
+    /**
+     * Save the music sheets of a batch, expanding the zips
+     * 
+     * Invalid files don't fail the batch, they are reported in the manifest.
+     * 
+     * @param files The uploaded files, music sheets or zips of music sheets
+     * @return The saved and rejected files, in upload order
+     * @throws InvalidUploadException If there are no files or more than the maximum
+     * @throws IOException If an upload could not be read or saved
+     */
+    public List<Upload> ingest(MultipartFile[] files) throws IOException {
+        List<Upload> uploads = new ArrayList<>();
+        try {
+            for (MultipartFile file : files == null ? new MultipartFile[0] : files) {
+                try (InputStream input = new BufferedInputStream(file.getInputStream())) {
+                    if (isZip(input)) {
+                        ingestZip(input, uploads);
+                    } else {
+                        ingest(file.getOriginalFilename(), input, uploads);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            discard(uploads);
+            throw e;
+        }
+
+        if (uploads.isEmpty()) {
+            throw new InvalidUploadException("Please select a file");
+        }
+        return uploads;
+    }
+
+    private void ingestZip(InputStream input, List<Upload> uploads) throws IOException {
+        ZipInputStream zip = new ZipInputStream(input);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String fileName = StringUtils.getFilename(entry.getName().replace('\\', '/'));
+            // Skip folders and the metadata added by macOS and other archivers
+            if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/") || fileName == null || fileName.startsWith(".")) {
+                continue;
+            }
+            ingest(fileName, zip, uploads);
+        }
+    }
+
+    private void ingest(String fileName, InputStream input, List<Upload> uploads) throws IOException {
+        if (uploads.size() >= maxFiles) {
+            throw new InvalidUploadException("Too many files, at most " + maxFiles + " can be converted at once");
+        }
+
+        Workspace workspace = workspaces.create();
+        try {
+            uploads.add(new Upload(fileName, uploadIngestor.ingest(fileName, input, workspace), null));
+        } catch (InvalidUploadException e) {
+            workspaces.delete(workspace);
+            uploads.add(new Upload(fileName, null, e.getMessage()));
+        } catch (IOException | RuntimeException e) {
+            workspaces.delete(workspace);
+            throw e;
+        }
+    }
+
+    /**
+     * Convert the saved music sheets and write their MIDI files to a zip as they are done
+     * 
+     * If the client goes away, the conversions not started yet are dropped
+     * and the running ones are interrupted.
+     * 
+     * @param uploads The music sheets returned by {@link #ingest}
+     * @param tempos Custom tempos as a JSON string, applied to every file, may be null
+     * @param output Where the zip is written, not closed
+     * @throws IOException If the zip could not be written
+     */
+    public void convert(List<Upload> uploads, String tempos, OutputStream output) throws IOException {
+        BatchItem[] items = new BatchItem[uploads.size()];
+        BlockingQueue<Converted> done = new LinkedBlockingQueue<>();
+        Map<Future<?>, Upload> conversions = new LinkedHashMap<>();
+        for (int i = 0; i < uploads.size(); i++) {
+            Upload upload = uploads.get(i);
+            if (upload.upload() == null) {
+                items[i] = BatchItem.failed(upload.fileName(), null, upload.error());
+            } else {
+                int index = i;
+                conversions.put(executor.submit(() -> done.add(convert(index, upload, tempos))), upload);
+            }
+        }
+        System.out.println("Batch of " + uploads.size() + " files, " + conversions.size() + " to convert");
+
+        boolean finished = false;
+        try {
+            ZipOutputStream zip = new ZipOutputStream(output);
+            Set<String> entryNames = new HashSet<>();
+            for (int remaining = conversions.size(); remaining > 0; remaining--) {
+                Converted converted = done.take();
+                Upload upload = uploads.get(converted.index());
+                String uploadId = upload.upload().sha256();
+                if (converted.result() == null) {
+                    items[converted.index()] = BatchItem.failed(upload.fileName(), uploadId, converted.error());
+                    continue;
+                }
+
+                String entryName = entryName(upload.fileName(), entryNames);
+                zip.putNextEntry(new ZipEntry(entryName));
+                Files.copy(converted.result().path(), zip);
+                zip.closeEntry();
+                // Send the entry now rather than when the buffer is full
+                zip.flush();
+                items[converted.index()] = BatchItem.succeeded(upload.fileName(), entryName, uploadId, converted.result());
+            }
+
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            zip.write(MAPPER.writeValueAsBytes(manifest(items)));
+            zip.closeEntry();
+            zip.finish();
+            zip.flush();
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Batch conversion interrupted", e);
+        } finally {
+            if (!finished) {
+                abort(conversions);
+            }
+        }
+    }
+
+    private Converted convert(int index, Upload upload, String tempos) {
+        StoredResult result = null;
+        String error = "Could not convert file";
+        try {
+            String midiPath = conversionService.convert(upload.upload(), tempos);
+            if (midiPath != null) {
+                result = results.put(Path.of(midiPath));
+            }
+        } catch (Exception e) {
+            error = "Could not convert file: " + e.getMessage();
+        } finally {
+            // The MIDI file is in the result store, nothing in the workspace is needed anymore
+            workspaces.delete(upload.upload().workspace());
+        }
+        return new Converted(index, result, result == null ? error : null);
+    }
+
+    private void abort(Map<Future<?>, Upload> conversions) {
+        System.out.println("Batch aborted, cancelling its conversions");
+        conversions.forEach((future, upload) -> {
+            if (executor.remove((Runnable) future)) {
+                // Never started, its workspace is still there
+                workspaces.delete(upload.upload().workspace());
+            } else {
+                future.cancel(true);
+            }
+        });
+    }
+
+    /**
+     * Delete the workspaces of a batch that will not be converted
+     * 
+     * @param uploads The music sheets returned by {@link #ingest}
+     */
+    public void discard(List<Upload> uploads) {
+        for (Upload upload : uploads) {
+            if (upload.upload() != null) {
+                workspaces.delete(upload.upload().workspace());
+            }
+        }
+    }
+
+    /**
+     * @return The number of files waiting for a batch worker
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private static Map<String, Object> manifest(BatchItem[] items) {
+        long succeeded = Arrays.stream(items).filter(item -> BatchItem.SUCCEEDED.equals(item.status())).count();
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("succeeded", succeeded);
+        manifest.put("failed", items.length - succeeded);
+        manifest.put("files", items);
+        return manifest;
+    }
+
+    /**
+     * @param fileName The name of the uploaded file
+     * @param taken The names of the entries already in the zip
+     * @return A name for its MIDI file in the zip, unique in the zip
+     */
+    static String entryName(String fileName, Set<String> taken) {
+        String baseName = fileName == null ? null : StringUtils.stripFilenameExtension(StringUtils.getFilename(fileName.replace('\\', '/')));
+        if (baseName == null || baseName.isBlank()) {
+            baseName = "score";
+        }
+
+        String entryName = baseName + ".mid";
+        for (int n = 2; !taken.add(entryName); n++) {
+            entryName = baseName + "-" + n + ".mid";
+        }
+        return entryName;
+    }
+
+    private static boolean isZip(InputStream input) throws IOException {
+        input.mark(ZIP_MAGIC.length);
+        byte[] magic = input.readNBytes(ZIP_MAGIC.length);
+        input.reset();
+        return Arrays.equals(magic, ZIP_MAGIC);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record Converted(int index, StoredResult result, String error) {
+    }
+}
@@ -0,0 +1,31 @@
+package PFE008.backend;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * BatchItem record
+ * 
+ * The outcome of one music sheet of a batch conversion, as listed in the
+ * manifest at the end of the zip sent back by /convert/batch.
+ * 
+ * @param file The name of the uploaded file, or of the entry of an uploaded zip
+ * @param status "succeeded" or "failed"
+ * @param entry The name of the MIDI file in the zip, if it succeeded
+ * @param uploadId The upload id, to render the file again with other tempos
+ * @param downloadUri The URI the MIDI file can also be downloaded from
+ * @param error Why the conversion failed, if it did
+ * @version 2026.10.17
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchItem(String file, String status, String entry, String uploadId, String downloadUri, String error) {
+    public static final String SUCCEEDED = "succeeded";
+    public static final String FAILED = "failed";
+
+    public static BatchItem succeeded(String file, String entry, String uploadId, StoredResult result) {
+        return new BatchItem(file, SUCCEEDED, entry, uploadId, result.uri(), null);
+    }
+
+    public static BatchItem failed(String file, String uploadId, String error) {
+        return new BatchItem(file, FAILED, null, uploadId, null, error);
+    }
+}
@@ -0,0 +1,256 @@
+package PFE008.backend;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ConversionCache class
+ * 
+ * This class keeps the MIDI files produced for previous uploads, keyed on
+ * the SHA-256 of the uploaded bytes and the normalized tempos. When the
+ * same music sheet is converted again with the same tempos, the cached
+ * MIDI file is returned without running Audiveris or MxlToMidi.py.
+ * 
+ * The cache lives in its own directory and is bounded by a disk budget.
+ * The least recently used entries are evicted when the budget is exceeded.
+ * 
+ * @version 2026.10.17
+ */
+@Component
+public class ConversionCache {
+    private static final ObjectMapper MAPPER = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final boolean enabled;
+    private final Path cacheDir;
+    private final long maxBytes;
+    private final boolean keepMxl;
+
+    // Access ordered, so the first entry is always the least recently used one
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    // A lock rather than synchronized, so virtual threads copying files don't pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ConversionCache(@Value("${maestro.cache.enabled:true}") boolean enabled,
+                           @Value("${maestro.cache.dir:Cache}") String cacheDir,
+                           @Value("${maestro.cache.max-bytes:536870912}") long maxBytes,
+                           @Value("${maestro.cache.keep-mxl:false}") boolean keepMxl) {
+        this.enabled = enabled;
+        this.cacheDir = Paths.get(cacheDir);
+        this.maxBytes = maxBytes;
+        this.keepMxl = keepMxl;
+        loadIndex();
+    }
+
+    /**
+     * Build the cache key of a conversion
+     * 
+     * @param uploadSha256 Hex encoded SHA-256 of the uploaded file
+     * @param tempos Custom tempos as a JSON string, may be null
+     * @return The cache key
+     */
+    public static String key(String uploadSha256, String tempos) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(uploadSha256.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '|');
+            digest.update(normalizeTempos(tempos).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Normalize a tempos JSON string so that equivalent tempos give the same key.
+     * Whitespace and key order are ignored, and an empty list means no tempos.
+     * 
+     * @param tempos Custom tempos as a JSON string, may be null
+     * @return The normalized tempos
+     */
+    public static String normalizeTempos(String tempos) {
+        if (tempos == null || tempos.isBlank()) {
+            return "";
+        }
+
+        try {
+            Object value = MAPPER.readValue(tempos, Object.class);
+            if (value instanceof List<?> list && list.isEmpty()) {
+                return "";
+            }
+            return MAPPER.writeValueAsString(value);
+        } catch (IOException e) {
+            // Not valid JSON, MxlToMidi.py will reject it anyway
+            return tempos.trim();
+        }
+    }
+
+    /**
+     * Look up the MIDI file of a previous conversion
+     * 
+     * @param key The cache key
+     * @return The cached .mid path, or null on a miss
+     */
+    public Path get(String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        lock.lock();
+        try {
+            Path midiPath = cacheDir.resolve(key + ".mid");
+            if (entries.get(key) == null || !Files.exists(midiPath)) {
+                entries.remove(key);
+                misses.incrementAndGet();
+                return null;
+            }
+
+            hits.incrementAndGet();
+            return midiPath;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Store the result of a conversion. The .mxl next to the .mid is kept too
+     * when maestro.cache.keep-mxl is enabled.
+     * 
+     * @param key The cache key
+     * @param midiPath Path to the produced .mid file
+     */
+    public void put(String key, Path midiPath) {
+        if (!enabled) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (entries.containsKey(key)) {
+                return;
+            }
+
+            Files.createDirectories(cacheDir);
+
+            long size = copyIn(midiPath, cacheDir.resolve(key + ".mid"));
+            if (keepMxl) {
+                String fileName = midiPath.getFileName().toString();
+                Path mxlPath = midiPath.resolveSibling(fileName.substring(0, fileName.lastIndexOf('.')) + ".mxl");
+                if (Files.exists(mxlPath)) {
+                    size += copyIn(mxlPath, cacheDir.resolve(key + ".mxl"));
+                }
+            }
+
+            entries.put(key, size);
+            totalBytes += size;
+            evict();
+        } catch (IOException e) {
+            System.out.println("Could not store conversion in cache: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getTotalBytes() {
+        lock.lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long copyIn(Path source, Path target) throws IOException {
+        // Copy then rename, so a reader never sees a partially written file
+        Path temp = Files.createTempFile(cacheDir, "entry", ".tmp");
+        Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(target);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            evictions.incrementAndGet();
+
+            try {
+                Files.deleteIfExists(cacheDir.resolve(eldest.getKey() + ".mid"));
+                Files.deleteIfExists(cacheDir.resolve(eldest.getKey() + ".mxl"));
+            } catch (IOException e) {
+                System.out.println("Could not evict cache entry " + eldest.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index from the files left by a previous run, oldest first
+     */
+    private void loadIndex() {
+        File[] files = cacheDir.toFile().listFiles((dir, name) -> name.endsWith(".mid"));
+        if (!enabled || files == null) {
+            return;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            String key = file.getName().substring(0, file.getName().length() - ".mid".length());
+            long size = file.length();
+            File mxl = new File(file.getParentFile(), key + ".mxl");
+            if (mxl.exists()) {
+                size += mxl.length();
+            }
+            entries.put(key, size);
+            totalBytes += size;
+        }
+        evict();
+    }
+}
@@ -0,0 +1,263 @@
+package PFE008.backend;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+
+/**
+ * ConversionJob class
+ * 
+ * This class keeps track of a conversion submitted through the job API,
+ * from the moment it is queued until its MIDI file has been produced,
+ * or until it is cancelled. The progress events of the conversion are
+ * kept, so a client following the job late gets them all, and passed on
+ * to the listeners along with the status changes.
+ * 
+ * @version 2026.10.17
+ */
+public class ConversionJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    /**
+     * Follows the progress and the status of a job
+     */
+    public interface Listener {
+        /**
+         * @param index Index of the event in the events of the job
+         * @param event The progress event
+         */
+        void onProgress(int index, ProgressEvent event);
+
+        /**
+         * @param job The job, whose status has changed
+         */
+        void onStatus(ConversionJob job);
+    }
+
+    /**
+     * Number of progress events kept per job, the later ones are only passed to the listeners
+     */
+    static final int MAX_EVENTS = 500;
+
+    private final String id;
+    private final String fileName;
+    private final SavedUpload upload;
+    private final String tempos;
+    private final Instant createdAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile StoredResult result;
+    private volatile String error;
+    private volatile Instant finishedAt;
+    private volatile Future<?> future;
+    private volatile double progress;
+    private volatile ProgressEvent lastEvent;
+    private final List<ProgressEvent> events = new ArrayList<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public ConversionJob(String fileName, SavedUpload upload, String tempos) {
+        this(UUID.randomUUID().toString(), fileName, upload, tempos, Instant.now());
+    }
+
+    /**
+     * A job submitted before a restart, recovered from the {@link JobJournal}
+     */
+    ConversionJob(String id, String fileName, SavedUpload upload, String tempos, Instant createdAt) {
+        this.id = id;
+        this.fileName = fileName;
+        this.upload = upload;
+        this.tempos = tempos;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public SavedUpload getUpload() {
+        return upload;
+    }
+
+    public Path getInputPath() {
+        return upload.path();
+    }
+
+    public String getTempos() {
+        return tempos;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The MIDI file of a succeeded job, null otherwise
+     */
+    public StoredResult getResult() {
+        return result;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * @return Estimated progress of the conversion, from 0 to 1, never going back
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return The last progress event, null if there has been none yet
+     */
+    public ProgressEvent getLastEvent() {
+        return lastEvent;
+    }
+
+    public boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * Record a progress event of the conversion and pass it to the listeners
+     * 
+     * @param event The progress event
+     */
+    void publish(ProgressEvent event) {
+        int index;
+        synchronized (this) {
+            if (isFinished()) {
+                return;
+            }
+            progress = Math.max(progress, event.progress());
+            lastEvent = event;
+            index = events.size();
+            if (index < MAX_EVENTS) {
+                events.add(event);
+            }
+        }
+        for (Listener listener : listeners) {
+            listener.onProgress(index, event);
+        }
+    }
+
+    /**
+     * Follow the job
+     * 
+     * @param listener Gets the events published from now on, and the status changes
+     * @return The events published before, to be replayed by the listener
+     */
+    synchronized List<ProgressEvent> subscribe(Listener listener) {
+        listeners.add(listener);
+        return new ArrayList<>(events);
+    }
+
+    void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyStatus() {
+        for (Listener listener : listeners) {
+            listener.onStatus(this);
+        }
+    }
+
+    /**
+     * @return False if the job has been cancelled before it could start
+     */
+    boolean markRunning() {
+        synchronized (this) {
+            if (status == Status.CANCELLED) {
+                return false;
+            }
+            status = Status.RUNNING;
+        }
+        notifyStatus();
+        return true;
+    }
+
+    void markSucceeded(StoredResult result) {
+        synchronized (this) {
+            if (status == Status.CANCELLED) {
+                return;
+            }
+            this.result = result;
+            progress = 1;
+            finishedAt = Instant.now();
+            status = Status.SUCCEEDED;
+        }
+        notifyStatus();
+    }
+
+    void markFailed(String error) {
+        synchronized (this) {
+            if (status == Status.CANCELLED) {
+                return;
+            }
+            this.error = error;
+            finishedAt = Instant.now();
+            status = Status.FAILED;
+        }
+        notifyStatus();
+    }
+
+    /**
+     * Restore the outcome of a job finished before a restart
+     * 
+     * @param status The status the job finished with
+     * @param result The MIDI file of a succeeded job, null otherwise
+     * @param error Why the job did not succeed, null if it did
+     * @param finishedAt When the job finished
+     */
+    synchronized void restore(Status status, StoredResult result, String error, Instant finishedAt) {
+        this.status = status;
+        this.result = result;
+        this.error = error;
+        this.finishedAt = finishedAt;
+        progress = status == Status.SUCCEEDED ? 1 : 0;
+    }
+
+    /**
+     * Cancel the job. A running job is interrupted, which kills its Audiveris process.
+     * 
+     * @return False if the job had already finished
+     */
+    boolean cancel() {
+        synchronized (this) {
+            if (isFinished()) {
+                return false;
+            }
+            error = "Job cancelled";
+            finishedAt = Instant.now();
+            status = Status.CANCELLED;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+        notifyStatus();
+        return true;
+    }
+}
@@ -10,10 +10,70 @@ package PFE008.backend;
  * @version 2024.06.06
  */
 public class ConversionResponse {
+    private String jobId;
+    private String uploadId;
+    private String status;
+    private String message;
     private String fileName;
     private String downloadUri;
     private long size;
- 
+    private double progress;
+    private String step;
+
+    /**
+     * @param job A conversion job
+     * @return The current state of the job
+     */
+    public static ConversionResponse of(ConversionJob job) {
+        ConversionResponse response = new ConversionResponse();
+        response.setJobId(job.getId());
+        response.setUploadId(job.getUpload().sha256());
+        response.setStatus(job.getStatus().name());
+        response.setFileName(job.getFileName());
+        response.setMessage(job.getError());
+        response.setProgress(job.getProgress());
+        if (job.getLastEvent() != null) {
+            response.setStep(job.getLastEvent().message());
+        }
+        if (job.getStatus() == ConversionJob.Status.SUCCEEDED) {
+            response.setDownloadUri(job.getResult().uri());
+            response.setSize(job.getResult().size());
+        }
+        return response;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
     public String getFileName() {
         return fileName;
     }
@@ -37,4 +97,20 @@ public class ConversionResponse {
     public void setSize(long size) {
         this.size = size;
     }
-}
\ No newline at end of file
+
+    public double getProgress() {
+        return progress;
+    }
+
+    public void setProgress(double progress) {
+        this.progress = progress;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    public void setStep(String step) {
+        this.step = step;
+    }
+}
@@ -0,0 +1,354 @@
+package PFE008.backend;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * ConversionScheduler class
+ *
+ * This class decides which conversions run Audiveris, so a one-page
+ * exercise does not wait behind a thirty-page orchestral score. Before
+ * the OMR stage, the cost of a conversion is estimated from the upload:
+ * the number and size of the pages of a PDF file, the pixel count of an
+ * image. Conversions then get one of the slots in order of estimated
+ * cost, shortest first.
+ *
+ * A waiting conversion is aged: each second it waits takes "aging"
+ * seconds off its estimated cost, so a large score is never overtaken
+ * forever. When there is more than one slot, one of them is kept for
+ * small conversions, which get a low latency even while large ones run.
+ * The cost of a page is learned from the time the conversions take.
+ *
+ * The number of slots is set by the {@link AdaptiveLimiter}, from the
+ * time the conversions take and the free memory, or fixed when it is
+ * disabled.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class ConversionScheduler {
+    public static final String KIND_PDF = "pdf";
+    public static final String KIND_IMAGE = "image";
+    public static final String KIND_OTHER = "other";
+
+    // An A4 page in PDF points, and a 2 MP photo, weigh one unit
+    private static final double A4_AREA = 595.0 * 842.0;
+    private static final double IMAGE_UNIT_PIXELS = 2_000_000;
+    private static final double MIN_PAGE_UNITS = 0.25;
+    // Weight of a new observation in the learned cost of a unit
+    private static final double LEARNING_RATE = 0.2;
+    // Waiting conversions check the free memory again at this interval
+    private static final long MEMORY_POLL_MS = 1000;
+
+    private final int slots;
+    private final AdaptiveLimiter limiter;
+    private final double aging;
+    private final double smallJobSeconds;
+    private final double defaultSecondsPerUnit;
+    private final Map<String, Double> secondsPerUnit = new ConcurrentHashMap<>();
+    private final TreeSet<Ticket> waiting = new TreeSet<>(Comparator.comparingDouble(Ticket::priority).thenComparingLong(Ticket::sequence));
+    private final List<Ticket> runningTickets = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private int running;
+    private int runningLarge;
+
+    public ConversionScheduler(@Value("${maestro.scheduler.slots:0}") int slots,
+                               @Value("${maestro.scheduler.aging:1}") double aging,
+                               @Value("${maestro.scheduler.small-job-seconds:60}") double smallJobSeconds,
+                               @Value("${maestro.scheduler.seconds-per-page:20}") double defaultSecondsPerUnit,
+                               AdaptiveLimiter limiter) {
+        this.slots = slots > 0 ? slots : Runtime.getRuntime().availableProcessors();
+        this.limiter = limiter != null && limiter.isEnabled() ? limiter : null;
+        this.aging = aging;
+        this.smallJobSeconds = smallJobSeconds;
+        this.defaultSecondsPerUnit = defaultSecondsPerUnit;
+    }
+
+    /**
+     * Estimated cost of a conversion
+     *
+     * @param kind The kind of upload, one of the KIND_ constants, which learn their costs separately
+     * @param units The amount of work: A4 pages for a PDF file, 2 MP for an image
+     * @param seconds The estimated OMR time, from the learned cost of a unit
+     */
+    public record Estimate(String kind, double units, double seconds) {
+    }
+
+    /**
+     * A conversion waiting for or holding a slot, to be given back with {@link #release(Ticket, boolean)}
+     */
+    public static final class Ticket {
+        private final Estimate estimate;
+        private final long sequence;
+        private final double priority;
+        private final boolean large;
+        private boolean granted;
+        private long grantedAt;
+
+        private Ticket(Estimate estimate, long sequence, double priority, boolean large) {
+            this.estimate = estimate;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.large = large;
+        }
+
+        public Estimate getEstimate() {
+            return estimate;
+        }
+
+        private long sequence() {
+            return sequence;
+        }
+
+        private double priority() {
+            return priority;
+        }
+    }
+
+    /**
+     * @return The number of slots, which changes over time when the limiter is enabled
+     */
+    public int getSlots() {
+        return limiter != null ? limiter.getLimit() : slots;
+    }
+
+    /**
+     * @return The number of conversions waiting for a slot
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * @return The number of conversions holding a slot
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * @param kind The kind of upload, one of the KIND_ constants
+     * @return The learned OMR time of one unit of work, in seconds
+     */
+    public double getSecondsPerUnit(String kind) {
+        return secondsPerUnit.getOrDefault(kind, defaultSecondsPerUnit);
+    }
+
+    /**
+     * Estimate the cost of converting an uploaded file, without decoding it
+     *
+     * @param file The uploaded music sheet
+     * @return The estimate, of one unit if the file could not be measured
+     */
+    public Estimate estimate(Path file) {
+        String fileName = file.getFileName().toString().toLowerCase();
+        String kind = KIND_OTHER;
+        double units = 1;
+        try {
+            if (fileName.endsWith(".pdf")) {
+                kind = KIND_PDF;
+                units = pdfUnits(file);
+            } else if (fileName.endsWith(".jpg") || fileName.endsWith(".jpeg") || fileName.endsWith(".png")) {
+                kind = KIND_IMAGE;
+                units = imageUnits(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not estimate the cost of " + file.getFileName() + ": " + e.getMessage());
+        }
+        return new Estimate(kind, units, units * getSecondsPerUnit(kind));
+    }
+
+    private static double pdfUnits(Path file) throws IOException {
+        try (PDDocument document = Loader.loadPDF(file.toFile())) {
+            double units = 0;
+            for (PDPage page : document.getPages()) {
+                PDRectangle box = page.getCropBox();
+                units += Math.max(MIN_PAGE_UNITS, box.getWidth() * box.getHeight() / A4_AREA);
+            }
+            return Math.max(units, MIN_PAGE_UNITS);
+        }
+    }
+
+    private static double imageUnits(Path file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("unknown image format");
+            }
+
+            // Only the header is read
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                double pixels = (double) reader.getWidth(0) * reader.getHeight(0);
+                return Math.max(MIN_PAGE_UNITS, pixels / IMAGE_UNIT_PIXELS);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Wait for a slot to convert a file. Must be followed by {@link #release(Ticket, boolean)}.
+     *
+     * @param file The uploaded music sheet
+     * @param progressListener Told when the conversion has to wait, may be null
+     * @return The granted ticket
+     * @throws InterruptedException If interrupted while waiting, the ticket is then given up
+     */
+    public Ticket admit(Path file, Consumer<ProgressEvent> progressListener) throws InterruptedException {
+        return admit(estimate(file), file.getFileName().toString(), progressListener);
+    }
+
+    /**
+     * Wait for a slot for a conversion of the given estimated cost
+     *
+     * @param estimate The estimated cost
+     * @param label Name of the conversion, for the logs
+     * @param progressListener Told when the conversion has to wait, may be null
+     * @return The granted ticket
+     * @throws InterruptedException If interrupted while waiting, the ticket is then given up
+     */
+    public synchronized Ticket admit(Estimate estimate, String label, Consumer<ProgressEvent> progressListener)
+            throws InterruptedException {
+        // Aging lowers the priority of every waiting ticket at the same rate, so
+        // it is enough to lower it once by the time the ticket was created
+        double waitedSinceStart = (System.nanoTime() - startNanos) / 1e9;
+        Ticket ticket = new Ticket(estimate, sequence.incrementAndGet(),
+            estimate.seconds() + aging * waitedSinceStart, estimate.seconds() > smallJobSeconds);
+        waiting.add(ticket);
+        dispatch();
+        if (ticket.granted) {
+            return ticket;
+        }
+
+        System.out.println(String.format("Conversion of %s (estimated %.0f s) waiting for a slot, %d running, %d waiting",
+            label, estimate.seconds(), running, waiting.size()));
+        if (progressListener != null) {
+            progressListener.accept(ProgressEvent.of(ProgressEvent.STAGE_SCHEDULE, "WAITING", null, 0,
+                "Waiting for " + running + " conversions to finish"));
+        }
+
+        long start = System.nanoTime();
+        try {
+            while (!ticket.granted) {
+                wait(MEMORY_POLL_MS);
+                dispatch();
+            }
+        } catch (InterruptedException e) {
+            if (ticket.granted) {
+                release(ticket, false);
+            } else {
+                waiting.remove(ticket);
+            }
+            throw e;
+        }
+        PipelineMetrics.recordStage(PipelineMetrics.STAGE_SCHEDULE_WAIT, start, true);
+        return ticket;
+    }
+
+    /**
+     * Give back the slot of a conversion, and learn from the time it took
+     *
+     * @param ticket The granted ticket, may be null
+     * @param completed True if the OMR stage ran to the end, so its time can be learned
+     */
+    public synchronized void release(Ticket ticket, boolean completed) {
+        if (ticket == null || !ticket.granted) {
+            return;
+        }
+        ticket.granted = false;
+        runningTickets.remove(ticket);
+        running--;
+        if (ticket.large) {
+            runningLarge--;
+        }
+
+        if (completed) {
+            double seconds = (System.nanoTime() - ticket.grantedAt) / 1e9;
+            observe(ticket.estimate, seconds);
+            if (limiter != null) {
+                limiter.observe(ticket.estimate.kind(), seconds / ticket.estimate.units(), !waiting.isEmpty(), ticket.grantedAt);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Learn the cost of a unit from the time a conversion took
+     *
+     * @param estimate The estimate of the conversion
+     * @param seconds The time it took
+     */
+    void observe(Estimate estimate, double seconds) {
+        double observed = seconds / estimate.units();
+        double learned = secondsPerUnit.compute(estimate.kind(), (kind, previous) -> {
+            double current = previous != null ? previous : defaultSecondsPerUnit;
+            return current + LEARNING_RATE * (observed - current);
+        });
+        System.out.println(String.format("Conversion took %.1f s for %.2f %s units, now %.1f s per unit",
+            seconds, estimate.units(), estimate.kind(), learned));
+    }
+
+    /**
+     * Grant the free slots to the waiting tickets in order of priority. A
+     * large conversion can't take the last free slot, kept for small ones.
+     * With the limiter, a slot is only granted if there is memory for it,
+     * besides the heaps of the conversions granted before that may not be
+     * in use yet, like the ones granted by this same call.
+     */
+    private void dispatch() {
+        int slots = getSlots();
+        int settling = 0;
+        if (limiter != null) {
+            for (Ticket ticket : runningTickets) {
+                if (limiter.isSettling(ticket.grantedAt)) {
+                    settling++;
+                }
+            }
+        }
+
+        boolean notify = false;
+        Iterator<Ticket> tickets = waiting.iterator();
+        while (running < slots && tickets.hasNext() && (limiter == null || limiter.hasMemoryFor(running, settling))) {
+            Ticket ticket = tickets.next();
+            if (ticket.large && slots > 1 && runningLarge >= slots - 1) {
+                continue;
+            }
+
+            tickets.remove();
+            ticket.granted = true;
+            ticket.grantedAt = System.nanoTime();
+            runningTickets.add(ticket);
+            running++;
+            settling++;
+            if (ticket.large) {
+                runningLarge++;
+            }
+            notify = true;
+        }
+        if (notify) {
+            notifyAll();
+        }
+    }
+}
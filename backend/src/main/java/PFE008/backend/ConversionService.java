@@ -0,0 +1,445 @@
+package PFE008.backend;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * ConversionService class
+ * 
+ * This class holds the conversion pipeline shared by the synchronous
+ * /convert route and the asynchronous job API: running Audiveris on a
+ * file saved by the {@link UploadIngestor}, in the workspace of the
+ * conversion.
+ * Photos are first reduced by the {@link ImagePreprocessor}, when enabled.
+ * Audiveris runs when the {@link ConversionScheduler} gives the conversion
+ * a slot, in order of estimated cost. On an API node, the conversion is
+ * handed to the worker nodes through the {@link FileJobQueue} instead.
+ * Conversions already done for the same file and tempos are served from
+ * the {@link ConversionCache}, and the OMR output of each upload is kept in
+ * the {@link OmrArtifactStore} so new tempos only re-run the MIDI stage.
+ * A conversion of the same file and tempos as one still running waits for
+ * it instead, and copies its MIDI file from the workspace of the first
+ * one, which the {@link WorkspaceManager} keeps until then.
+ * 
+ * @version 2026.10.17
+ */
+@Service
+public class ConversionService {
+    static final String STEP_REUSED = "REUSED";
+
+    private final ConversionCache cache;
+    private final OmrArtifactStore omrStore;
+    private final AudiverisSettings audiverisSettings;
+    private final AudiverisWorkerPool workerPool;
+    private final AudiverisCds cds;
+    private final PageOmrExecutor pageExecutor;
+    private final CpuPermits cpuPermits;
+    private final ConversionScheduler scheduler;
+    private final ImagePreprocessor imagePreprocessor;
+    private final FileJobQueue queue;
+    private final ResultStore results;
+    private final WorkspaceManager workspaces;
+    private final String midiEngine;
+    private final boolean coalesce;
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public ConversionService(ConversionCache cache, OmrArtifactStore omrStore,
+                             AudiverisSettings audiverisSettings, AudiverisWorkerPool workerPool,
+                             AudiverisCds cds, PageOmrExecutor pageExecutor, CpuPermits cpuPermits, ConversionScheduler scheduler,
+                             ImagePreprocessor imagePreprocessor, FileJobQueue queue, ResultStore results,
+                             WorkspaceManager workspaces,
+                             @Value("${maestro.midi.engine:java}") String midiEngine,
+                             @Value("${maestro.coalesce.enabled:true}") boolean coalesce) {
+        this.cache = cache;
+        this.omrStore = omrStore;
+        this.audiverisSettings = audiverisSettings;
+        this.workerPool = workerPool;
+        this.cds = cds;
+        this.pageExecutor = pageExecutor;
+        this.cpuPermits = cpuPermits;
+        this.scheduler = scheduler;
+        this.imagePreprocessor = imagePreprocessor;
+        this.queue = queue;
+        this.results = results;
+        this.workspaces = workspaces;
+        this.midiEngine = midiEngine;
+        this.coalesce = coalesce;
+    }
+
+    /**
+     * Convert a saved music sheet to a .mid file
+     * 
+     * @param upload The saved music sheet
+     * @param tempos Custom tempos as a JSON string, may be null
+     * @return The .mid path if it has been created, null otherwise
+     */
+    public String convert(SavedUpload upload, String tempos) {
+        return convert(upload, tempos, null);
+    }
+
+    /**
+     * Convert a saved music sheet to a .mid file, reporting its progress
+     * 
+     * @param upload The saved music sheet
+     * @param tempos Custom tempos as a JSON string, may be null
+     * @param progressListener Receives the Audiveris steps and MIDI stage milestones, may be null
+     * @return The .mid path if it has been created, null otherwise
+     */
+    public String convert(SavedUpload upload, String tempos, Consumer<ProgressEvent> progressListener) {
+        long start = System.nanoTime();
+        String midiPath;
+        try (PipelineEvents.Scope scope = PipelineEvents.enterConversion(upload)) {
+            midiPath = convertNow(upload, tempos, progressListener);
+        }
+        PipelineMetrics.recordStage(PipelineMetrics.STAGE_CONVERSION, start, midiPath != null);
+        if (midiPath != null) {
+            PipelineMetrics.recordFileSize("out", new File(midiPath).length());
+        }
+        return midiPath;
+    }
+
+    /**
+     * @return The number of conversions that waited for the same conversion running for another request
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    private String convertNow(SavedUpload upload, String tempos, Consumer<ProgressEvent> progressListener) {
+        try {
+            return convertCoalesced(upload, tempos, progressListener);
+        } catch (InterruptedException e) {
+            // Cancelled, the caller sees it by the flag
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private String convertCoalesced(SavedUpload upload, String tempos,
+                                    Consumer<ProgressEvent> progressListener) throws InterruptedException {
+        String key = ConversionCache.key(upload.sha256(), tempos);
+        while (true) {
+            Path cached = cache.get(key);
+            if (cached != null) {
+                System.out.println("Cache hit for " + upload.path().getFileName() + " (" + cache.getHits() + " hits, " + cache.getMisses() + " misses)");
+                if (progressListener != null) {
+                    progressListener.accept(ProgressEvent.of(ProgressEvent.STAGE_CACHE, "HIT", null,
+                        AudiverisController.PROGRESS_MIDI_END, "Converted before, served from the cache"));
+                }
+                return cached.toString();
+            }
+
+            if (!coalesce || workspaces == null) {
+                return convertOnce(upload, tempos, key, progressListener);
+            }
+
+            Flight flight = new Flight(upload.workspace(), progressListener);
+            Flight first = inFlight.putIfAbsent(key, flight);
+            if (first == null) {
+                String midiPath = null;
+                boolean cancelled = false;
+                try {
+                    midiPath = convertOnce(upload, tempos, key, flight::publish);
+                    return midiPath;
+                } catch (InterruptedException e) {
+                    cancelled = true;
+                    throw e;
+                } finally {
+                    inFlight.remove(key, flight);
+                    flight.land(midiPath, cancelled);
+                }
+            }
+
+            if (!first.join(progressListener)) {
+                if (first.isLanded()) {
+                    // Done in the meantime, served from the cache or converted again
+                    continue;
+                }
+                return convertOnce(upload, tempos, key, progressListener);
+            }
+            try {
+                coalesced.incrementAndGet();
+                System.out.println("Same music sheet as a running conversion, waiting for it: " + upload.path().getFileName());
+                if (progressListener != null) {
+                    progressListener.accept(ProgressEvent.of(ProgressEvent.STAGE_SCHEDULE, "JOINED", null, 0,
+                        "Same music sheet being converted for another request, waiting for it"));
+                }
+                first.await();
+                if (first.cancelled) {
+                    // The first conversion was cancelled, this one runs again
+                    continue;
+                }
+                if (first.midiPath == null) {
+                    return null;
+                }
+                Path midiPath = sibling(upload.path(), ".mid");
+                Files.copy(Path.of(first.midiPath), midiPath, StandardCopyOption.REPLACE_EXISTING);
+                return midiPath.toString();
+            } catch (IOException e) {
+                System.out.println("Could not copy the MIDI file of the running conversion: " + e.getMessage());
+                return null;
+            } finally {
+                first.leave(progressListener);
+                workspaces.delete(first.workspace);
+            }
+        }
+    }
+
+    /**
+     * Convert the upload for this request
+     * 
+     * @return The .mid path if it has been created, null otherwise
+     * @throws InterruptedException If the conversion was cancelled
+     */
+    private String convertOnce(SavedUpload upload, String tempos, String key,
+                               Consumer<ProgressEvent> progressListener) throws InterruptedException {
+        if (queue != null && queue.isApi()) {
+            String midiPath = convertOnWorker(upload, tempos, progressListener);
+            if (midiPath != null) {
+                cache.put(key, Path.of(midiPath));
+            }
+            return midiPath;
+        }
+
+        // Same music sheet as a previous upload, only the MIDI stage has to run
+        String midiPath = renderFromOmr(upload.sha256(), tempos, upload.workspace(), progressListener);
+        checkCancelled(midiPath);
+        if (midiPath == null) {
+            midiPath = recognize(upload, tempos, progressListener);
+            if (midiPath != null) {
+                omrStore.put(upload.sha256(), sibling(Path.of(midiPath), ".mxl"));
+            }
+        }
+
+        if (midiPath != null) {
+            cache.put(key, Path.of(midiPath));
+        }
+        return midiPath;
+    }
+
+    /**
+     * Run Audiveris then the MIDI stage, once the scheduler gives the conversion a slot
+     */
+    private String recognize(SavedUpload upload, String tempos,
+                             Consumer<ProgressEvent> progressListener) throws InterruptedException {
+        ConversionScheduler.Ticket ticket = null;
+        if (scheduler != null) {
+            ticket = scheduler.admit(upload.path(), progressListener);
+        }
+
+        String midiPath = null;
+        try {
+            AudiverisController audiveris = new AudiverisController(tempos, midiEngine, audiverisSettings);
+            audiveris.setOutputDir(upload.workspace().dir());
+            audiveris.setProgressListener(progressListener);
+            audiveris.setWorkerPool(workerPool);
+            audiveris.setCds(cds);
+            audiveris.setPageExecutor(pageExecutor);
+            audiveris.setCpuPermits(cpuPermits);
+            midiPath = audiveris.convert(preprocess(upload.path(), progressListener).toString());
+            checkCancelled(midiPath);
+            return midiPath;
+        } finally {
+            if (scheduler != null) {
+                scheduler.release(ticket, midiPath != null);
+            }
+        }
+    }
+
+    /**
+     * Queue the conversion for a worker node and wait for it, then copy its
+     * MIDI file from the shared result store to the workspace
+     */
+    private String convertOnWorker(SavedUpload upload, String tempos,
+                                   Consumer<ProgressEvent> progressListener) throws InterruptedException {
+        double estimatedSeconds = scheduler != null ? scheduler.estimate(upload.path()).seconds() : 0;
+        try {
+            FileJobQueue.Entry entry = queue.enqueue(upload, tempos, estimatedSeconds);
+            FileJobQueue.Outcome outcome = queue.await(entry.id(), progressListener);
+            if (outcome.status() != ConversionJob.Status.SUCCEEDED) {
+                System.out.println("Job " + entry.id() + " " + outcome.status() + " on " + outcome.worker() + ": " + outcome.message());
+                return null;
+            }
+
+            StoredResult result = results.get(outcome.resultId());
+            if (result == null) {
+                System.out.println("Result " + outcome.resultId() + " of job " + entry.id() + " is not in the shared result store");
+                return null;
+            }
+            Path midiPath = sibling(upload.path(), ".mid");
+            Files.copy(result.path(), midiPath, StandardCopyOption.REPLACE_EXISTING);
+            return midiPath.toString();
+        } catch (IOException e) {
+            System.out.println("Could not queue " + upload.path().getFileName() + " for a worker: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Keep a .mxl exported before a restart as the OMR output of its upload,
+     * so converting the upload again only runs the MIDI stage
+     * 
+     * @param upload The saved music sheet
+     * @param mxlPath The .mxl exported by Audiveris for this upload
+     */
+    public void adoptOmrOutput(SavedUpload upload, Path mxlPath) {
+        omrStore.put(upload.sha256(), mxlPath);
+    }
+
+    /**
+     * Render the MIDI file of a previous upload again, with other tempos
+     * 
+     * @param uploadId The upload id returned by a previous conversion
+     * @param tempos Custom tempos as a JSON string, may be null
+     * @param workspace The workspace of the conversion
+     * @return The .mid path if it has been created, null otherwise
+     * @throws UploadNotFoundException If the OMR output of the upload is unknown or has expired
+     */
+    public String render(String uploadId, String tempos, Workspace workspace) {
+        if (omrStore.get(uploadId) == null) {
+            throw new UploadNotFoundException(uploadId);
+        }
+
+        String key = ConversionCache.key(uploadId, tempos);
+        Path cached = cache.get(key);
+        if (cached != null) {
+            return cached.toString();
+        }
+
+        String midiPath = renderFromOmr(uploadId, tempos, workspace, null);
+        if (midiPath != null) {
+            cache.put(key, Path.of(midiPath));
+        }
+        return midiPath;
+    }
+
+    private String renderFromOmr(String uploadId, String tempos, Workspace workspace, Consumer<ProgressEvent> progressListener) {
+        Path mxlPath;
+        try {
+            mxlPath = omrStore.copyTo(uploadId, workspace.dir(), RandomStringUtils.randomAlphanumeric(8));
+        } catch (IOException e) {
+            System.out.println("Could not reuse OMR output of " + uploadId + ": " + e.getMessage());
+            return null;
+        }
+
+        if (mxlPath == null) {
+            return null;
+        }
+
+        System.out.println("Reusing OMR output of " + uploadId);
+        if (progressListener != null) {
+            progressListener.accept(ProgressEvent.of(ProgressEvent.STAGE_OMR, STEP_REUSED, null,
+                AudiverisController.PROGRESS_OMR_END, "Score recognized before, only the MIDI stage runs"));
+        }
+        AudiverisController audiveris = new AudiverisController(tempos, midiEngine, audiverisSettings);
+        audiveris.setCpuPermits(cpuPermits);
+        audiveris.setProgressListener(progressListener);
+        return audiveris.renderMidi(mxlPath.toAbsolutePath().toString());
+    }
+
+    /**
+     * @return The image to hand to Audiveris, reduced by the {@link ImagePreprocessor} when it is enabled
+     */
+    private Path preprocess(Path input, Consumer<ProgressEvent> progressListener) {
+        if (imagePreprocessor == null) {
+            return input;
+        }
+
+        Path prepared = imagePreprocessor.prepare(input);
+        if (progressListener != null && !prepared.equals(input)) {
+            progressListener.accept(ProgressEvent.of(ProgressEvent.STAGE_PREPROCESS, "DONE", null,
+                AudiverisController.PROGRESS_OMR_START, "Image reduced for recognition"));
+        }
+        return prepared;
+    }
+
+    /**
+     * A conversion running for the first request of a file and tempos, and
+     * the progress listeners of the requests waiting for it
+     */
+    private final class Flight {
+        final Workspace workspace;
+        private final Consumer<ProgressEvent> progressListener;
+        private final List<Consumer<ProgressEvent>> followers = new CopyOnWriteArrayList<>();
+        private final CountDownLatch landed = new CountDownLatch(1);
+        volatile String midiPath;
+        volatile boolean cancelled;
+
+        Flight(Workspace workspace, Consumer<ProgressEvent> progressListener) {
+            this.workspace = workspace;
+            this.progressListener = progressListener;
+        }
+
+        /**
+         * Wait for this conversion, keeping its workspace until {@link #leave(Consumer)}
+         * 
+         * @return False if the conversion is done, or its workspace is not retained
+         */
+        synchronized boolean join(Consumer<ProgressEvent> follower) {
+            if (isLanded() || !workspaces.retain(workspace)) {
+                return false;
+            }
+            if (follower != null) {
+                followers.add(follower);
+            }
+            return true;
+        }
+
+        void leave(Consumer<ProgressEvent> follower) {
+            followers.remove(follower);
+        }
+
+        void publish(ProgressEvent event) {
+            if (progressListener != null) {
+                progressListener.accept(event);
+            }
+            for (Consumer<ProgressEvent> follower : followers) {
+                follower.accept(event);
+            }
+        }
+
+        synchronized void land(String midiPath, boolean cancelled) {
+            this.midiPath = midiPath;
+            this.cancelled = cancelled;
+            landed.countDown();
+        }
+
+        boolean isLanded() {
+            return landed.getCount() == 0;
+        }
+
+        void await() throws InterruptedException {
+            landed.await();
+        }
+    }
+
+    /**
+     * The {@link AudiverisController} gives up on a cancelled conversion with
+     * a null path and the interrupt flag set, report it as a cancellation
+     */
+    private static void checkCancelled(String midiPath) throws InterruptedException {
+        if (midiPath == null && Thread.interrupted()) {
+            throw new InterruptedException("Conversion cancelled");
+        }
+    }
+
+    private static Path sibling(Path path, String extension) {
+        String fileName = path.getFileName().toString();
+        return path.resolveSibling(fileName.substring(0, fileName.lastIndexOf('.')) + extension);
+    }
+}
@@ -1,20 +1,26 @@
 package PFE008.backend;
 
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.util.StringUtils;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
-import java.util.concurrent.TimeUnit;
+import java.time.Instant;
+import java.util.List;
 
 /**
  * ConvertController class
@@ -30,59 +36,111 @@ import java.util.concurrent.TimeUnit;
  */
 @RestController
 public class ConvertController {
+    public static final String UPLOAD_ID_HEADER = "X-Upload-Id";
+
+    private final ConversionService conversionService;
+    private final UploadIngestor uploadIngestor;
+    private final WorkspaceManager workspaces;
+    private final ResultStore results;
+    private final BatchConverter batchConverter;
+    private final TaskScheduler taskScheduler;
+
+    public ConvertController(ConversionService conversionService, UploadIngestor uploadIngestor,
+                             WorkspaceManager workspaces, ResultStore results, BatchConverter batchConverter,
+                             TaskScheduler taskScheduler) {
+        this.conversionService = conversionService;
+        this.uploadIngestor = uploadIngestor;
+        this.workspaces = workspaces;
+        this.results = results;
+        this.batchConverter = batchConverter;
+        this.taskScheduler = taskScheduler;
+    }
 
 	@PostMapping("/convert")
-    @CrossOrigin(origins = "*")
+    @CrossOrigin(origins = "*", exposedHeaders = {UPLOAD_ID_HEADER, HttpHeaders.CONTENT_LOCATION, HttpHeaders.ETAG})
 	public ResponseEntity<?> convert(@RequestParam("file") MultipartFile multipartFile,
                                      @RequestParam(value = "tempos", required = false) String tempos) throws IOException {
-		FileUtil downloadUtil = new FileUtil();
         
-        // Validate input file
-        if (multipartFile.isEmpty()) {
-            return new ResponseEntity<>("Please select a file", HttpStatus.BAD_REQUEST);
-        }
-
-        // check if under 10MB
-        if (multipartFile.getSize() > 10485760) {
-            return new ResponseEntity<>("File is too large", HttpStatus.BAD_REQUEST);
-        }
-
-        // check the file signature
-        if (!FileUtil.isValidFile(multipartFile)) {
-            return new ResponseEntity<>("File is invalid. Must be a pdf, jpg, jpeg or png", HttpStatus.BAD_REQUEST);
+        // Validate and save input file
+        Workspace workspace = workspaces.create();
+        SavedUpload upload;
+        try {
+            upload = uploadIngestor.ingest(multipartFile, workspace);
+        } catch (InvalidUploadException e) {
+            workspaces.delete(workspace);
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            workspaces.delete(workspace);
+            throw e;
         }
-
-
-		// Save input file
-		String fileExtension = "." + StringUtils.getFilenameExtension(multipartFile.getOriginalFilename());
-        Path filePath = FileUtil.saveFile(fileExtension, multipartFile, "In");
         System.out.println("Received tempos: " + tempos);
 		
 		// Convert music sheet to .mxl
-        AudiverisController audiveris = new AudiverisController(tempos);
-        String midiPath = audiveris.convert(filePath.toString());
-
-        // Start a new thread for cleaning up the directories after a delay
-        new Thread(() -> {
-            try {
-                TimeUnit.SECONDS.sleep(3);
-                String workingDir = System.getProperty("user.dir");
-                System.out.println("Cleaning up directories - Deleting files starting with: " + filePath.toString().substring(filePath.toString().lastIndexOf('\\') + 1, filePath.toString().lastIndexOf('.')));
-                FileUtil.cleanupDirectories(workingDir + "\\In", workingDir + "\\Out", filePath.toString().substring(filePath.toString().lastIndexOf('\\') + 1, filePath.toString().lastIndexOf('.')));
-            } catch (InterruptedException e) {
-                System.out.println("Interrupted while waiting to clean up directories: " + e.getMessage());
-            }
-        }).start();
+        String midiPath = conversionService.convert(upload, tempos);
+
+        // Delete the workspace after a delay
+        deleteLater(workspace);
 
 		if (midiPath == null) {
 			return new ResponseEntity<>("Could not convert file", HttpStatus.INTERNAL_SERVER_ERROR);
 		}
-         
-        // Build response
+
+        return midiResponse(midiPath, upload.sha256());
+    }
+
+    @PostMapping("/convert/batch")
+    @CrossOrigin(origins = "*")
+    public ResponseEntity<?> convertBatch(@RequestParam(value = "files", required = false) MultipartFile[] files,
+                                          @RequestParam(value = "tempos", required = false) String tempos) throws IOException {
+        // The files are saved before the response starts, so a bad request still gets a 400
+        List<BatchConverter.Upload> uploads;
+        try {
+            uploads = batchConverter.ingest(files);
+        } catch (InvalidUploadException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+
+        StreamingResponseBody body = output -> batchConverter.convert(uploads, tempos, output);
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/zip"))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"maestro-batch.zip\"")
+            .body(body);
+    }
+
+    @PostMapping("/convert/{uploadId}/render")
+    @CrossOrigin(origins = "*", exposedHeaders = {UPLOAD_ID_HEADER, HttpHeaders.CONTENT_LOCATION, HttpHeaders.ETAG})
+    public ResponseEntity<?> render(@PathVariable String uploadId,
+                                    @RequestParam(value = "tempos", required = false) String tempos) throws IOException {
+        System.out.println("Rendering upload " + uploadId + " with tempos: " + tempos);
+
+        Workspace workspace = workspaces.create();
+        String midiPath;
+        try {
+            midiPath = conversionService.render(uploadId, tempos, workspace);
+        } catch (UploadNotFoundException e) {
+            workspaces.delete(workspace);
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+
+        deleteLater(workspace);
+
+        if (midiPath == null) {
+            return new ResponseEntity<>("Could not convert file", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        return midiResponse(midiPath, uploadId);
+    }
+
+    private ResponseEntity<?> midiResponse(String midiPath, String uploadId) {
+        // The MIDI file is sent from the result store, the workspace may be deleted while it is streaming.
+        // It can be downloaded again from /results/{id} until it expires.
+        StoredResult result;
         Resource resource = null;
         try {
-            resource = downloadUtil.getFileAsResource(midiPath);
+            result = results.put(Path.of(midiPath));
+            resource = new MidiResource(result);
         } catch (IOException e) {
+            System.out.println("Could not store converted file: " + e.getMessage());
             return ResponseEntity.internalServerError().build();
         }
          
@@ -91,11 +149,70 @@ public class ConvertController {
         }
          
         String contentType = "application/octet-stream";
-        String headerValue = "attachment; filename=\"" + resource.getFilename() + "\"";
+        String headerValue = "attachment; filename=\"" + Path.of(midiPath).getFileName() + "\"";
          
         return ResponseEntity.ok()
             .contentType(MediaType.parseMediaType(contentType))
             .header(HttpHeaders.CONTENT_DISPOSITION, headerValue)
+            .header(HttpHeaders.CONTENT_LOCATION, result.uri())
+            .eTag(result.etag())
+            .header(UPLOAD_ID_HEADER, uploadId)
             .body(resource); 
     }
+
+    /**
+     * The stored MIDI file of a conversion, recording a flight recorder event while it is sent
+     */
+    private static final class MidiResource extends UrlResource {
+        private final StoredResult result;
+
+        MidiResource(StoredResult result) throws IOException {
+            super(result.path().toUri());
+            this.result = result;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            PipelineEvents.ResponseEvent event = new PipelineEvents.ResponseEvent();
+            event.start(PipelineEvents.STAGE_RESPONSE);
+            event.resultId = result.id();
+            event.fileSize = result.size();
+            return new FilterInputStream(super.getInputStream()) {
+                private boolean closed;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        event.bytes++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        event.bytes += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    if (!closed) {
+                        closed = true;
+                        event.finish(event.bytes == result.size() ? 0 : 1);
+                    }
+                }
+            };
+        }
+    }
+
+    private void deleteLater(Workspace workspace) {
+        // Delete the workspace once the response has been sent, without holding a thread while waiting
+        workspaces.markIdle(workspace);
+        taskScheduler.schedule(() -> workspaces.delete(workspace), Instant.now().plusSeconds(3));
+    }
 }
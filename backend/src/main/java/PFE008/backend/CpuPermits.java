@@ -0,0 +1,57 @@
+package PFE008.backend;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * CpuPermits class
+ * 
+ * This class bounds the number of heavy stages (Audiveris runs, MIDI
+ * conversions) running at the same time, whatever the number of request
+ * or job threads waiting for them. By default there is one permit per
+ * processor.
+ * 
+ * @version 2026.10.17
+ */
+@Component
+public class CpuPermits {
+    private final Semaphore semaphore;
+    private final int permits;
+
+    public CpuPermits(@Value("${maestro.execution.cpu-permits:0}") int permits) {
+        this.permits = permits > 0 ? permits : Runtime.getRuntime().availableProcessors();
+        this.semaphore = new Semaphore(this.permits, true);
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+
+    /**
+     * @return The number of heavy stages running
+     */
+    public int getInUse() {
+        return permits - semaphore.availablePermits();
+    }
+
+    /**
+     * Wait for a permit before running a heavy stage. Must be followed by {@link #release()}.
+     * 
+     * @param stage Name of the stage, for the logs
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void acquire(String stage) throws InterruptedException {
+        if (!semaphore.tryAcquire()) {
+            System.out.println("Waiting for a CPU permit to run " + stage + " (" + permits + " in use)");
+            long start = System.nanoTime();
+            semaphore.acquire();
+            PipelineMetrics.recordStage(PipelineMetrics.STAGE_CPU_PERMIT_WAIT, start, true);
+        }
+    }
+
+    public void release() {
+        semaphore.release();
+    }
+}
@@ -0,0 +1,56 @@
+package PFE008.backend;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ExecutionMode class
+ * 
+ * This class tells whether the blocking parts of the pipeline run on
+ * virtual threads or on platform threads. It follows Spring Boot's
+ * spring.threads.virtual.enabled property, which also moves request
+ * handling and scheduled tasks to virtual threads.
+ * 
+ * Virtual threads make waiting cheap (uploads, Audiveris and Python
+ * processes, cleanup delays) but don't limit CPU work: the heavy stages
+ * are bounded separately by {@link CpuPermits}.
+ * 
+ * @version 2026.10.17
+ */
+@Component
+public class ExecutionMode {
+    private final boolean virtualThreads;
+
+    public ExecutionMode(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        ProcessSupervisor.setThreadFactory(threadFactory("process-output-"));
+        System.out.println("Execution mode: " + (virtualThreads ? "virtual threads" : "platform threads"));
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Get a factory of threads for blocking work
+     * 
+     * @param prefix Prefix of the thread names
+     * @return A factory of virtual threads in virtual mode, of daemon platform threads otherwise
+     */
+    public ThreadFactory threadFactory(String prefix) {
+        if (virtualThreads) {
+            return new VirtualThreadTaskExecutor(prefix).getVirtualThreadFactory();
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,531 @@
+package PFE008.backend;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * FileJobQueue class
+ *
+ * This class is a durable queue of conversions in a directory, shared by
+ * the nodes of a multi-instance setup: API nodes ("api" role) enqueue the
+ * uploads, and worker nodes ("worker" role) run Audiveris on them. The
+ * default "all" role converts in-process and does not use the queue.
+ *
+ * A job is a JSON file that moves from pending/ to running/ and whose
+ * outcome is written to done/. Every move is an atomic rename, so only one
+ * worker claims a job. The file in running/ is the lease of the worker:
+ * its name carries a token of the claim, so a worker only renews, completes
+ * or gives back its own lease, and its modification time is its heartbeat.
+ * When a worker dies, its leases expire and the jobs are delivered again,
+ * up to the maximum number of attempts. The uploads are copied to uploads/, and the MIDI files are
+ * written to the {@link ResultStore}, whose directory must be shared too.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class FileJobQueue {
+    public static final String ROLE_ALL = "all";
+    public static final String ROLE_API = "api";
+    public static final String ROLE_WORKER = "worker";
+
+    private static final String PENDING = "pending";
+    private static final String RUNNING = "running";
+    private static final String REAPING = "reaping";
+    private static final String DONE = "done";
+    private static final String CANCEL = "cancel";
+    private static final String UPLOADS = "uploads";
+    private static final String JSON = ".json";
+    private static final String PROGRESS = ".progress";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private final String role;
+    private final Path queueDir;
+    private final Duration lease;
+    private final long pollMs;
+    private final Duration pendingTimeout;
+    private final int maxAttempts;
+    private final Duration retention;
+    private final String nodeName;
+
+    public FileJobQueue(@Value("${maestro.node.role:all}") String role,
+                        @Value("${maestro.queue.dir:Queue}") String queueDir,
+                        @Value("${maestro.queue.lease-ms:60000}") long leaseMs,
+                        @Value("${maestro.queue.poll-ms:500}") long pollMs,
+                        @Value("${maestro.queue.pending-timeout-ms:600000}") long pendingTimeoutMs,
+                        @Value("${maestro.queue.max-attempts:3}") int maxAttempts,
+                        @Value("${maestro.queue.retention-minutes:60}") long retentionMinutes) throws IOException {
+        if (!List.of(ROLE_ALL, ROLE_API, ROLE_WORKER).contains(role)) {
+            throw new IllegalArgumentException("Unknown maestro.node.role " + role + ", expected all, api or worker");
+        }
+
+        this.role = role;
+        this.queueDir = Paths.get(queueDir);
+        this.lease = Duration.ofMillis(leaseMs);
+        this.pollMs = pollMs;
+        this.pendingTimeout = Duration.ofMillis(pendingTimeoutMs);
+        this.maxAttempts = maxAttempts;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.nodeName = ManagementFactory.getRuntimeMXBean().getName();
+
+        if (!role.equals(ROLE_ALL)) {
+            for (String dir : List.of(PENDING, RUNNING, REAPING, DONE, CANCEL, UPLOADS)) {
+                Files.createDirectories(this.queueDir.resolve(dir));
+            }
+            System.out.println("Node role: " + role + ", job queue in " + this.queueDir.toAbsolutePath());
+        }
+    }
+
+    /**
+     * A queued conversion
+     *
+     * @param id The queue id of the job
+     * @param fileName Name of the upload in the uploads directory of the job
+     * @param sha256 Hex encoded SHA-256 of the upload
+     * @param size Size of the upload in bytes
+     * @param tempos Custom tempos as a JSON string, may be null
+     * @param estimatedSeconds Estimated OMR time, shorter jobs are claimed first
+     * @param attempts Number of times the job was claimed by a worker that died
+     * @param enqueuedAt When it was queued
+     * @param lease Token of the claim of this worker, null until the job is claimed
+     */
+    public record Entry(String id, String fileName, String sha256, long size, String tempos,
+                       double estimatedSeconds, int attempts, Instant enqueuedAt, String lease) {
+    }
+
+    /**
+     * The outcome of a queued conversion
+     *
+     * @param status SUCCEEDED, FAILED or CANCELLED
+     * @param message Why it failed, may be null
+     * @param resultId The id of the MIDI file in the {@link ResultStore}, null unless it succeeded
+     * @param worker The node that ran it, null if it never ran
+     */
+    public record Outcome(ConversionJob.Status status, String message, String resultId, String worker) {
+    }
+
+    /**
+     * The last progress event of a running job, written by its worker
+     *
+     * @param worker The node running the job
+     * @param event The last progress event, may be null
+     */
+    public record Progress(String worker, ProgressEvent event) {
+    }
+
+    public boolean isApi() {
+        return role.equals(ROLE_API);
+    }
+
+    public boolean isWorker() {
+        return role.equals(ROLE_WORKER);
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public Duration getLease() {
+        return lease;
+    }
+
+    /**
+     * @return The name of this node, in the outcomes and the logs
+     */
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    /**
+     * @return The number of jobs waiting for a worker
+     */
+    public int getPendingCount() {
+        return count(PENDING);
+    }
+
+    /**
+     * @return The number of jobs claimed by a worker
+     */
+    public int getRunningCount() {
+        return count(RUNNING);
+    }
+
+    /**
+     * Queue the conversion of a saved upload
+     *
+     * @param upload The saved music sheet, copied to the queue
+     * @param tempos Custom tempos as a JSON string, may be null
+     * @param estimatedSeconds Estimated OMR time
+     * @return The queued entry
+     * @throws IOException If the queue could not be written
+     */
+    public Entry enqueue(SavedUpload upload, String tempos, double estimatedSeconds) throws IOException {
+        String id = RandomStringUtils.randomAlphanumeric(20);
+        String fileName = upload.path().getFileName().toString();
+        Path uploadDir = queueDir.resolve(UPLOADS).resolve(id);
+        Files.createDirectories(uploadDir);
+        Files.copy(upload.path(), uploadDir.resolve(fileName));
+
+        Entry entry = new Entry(id, fileName, upload.sha256(), upload.size(), tempos, estimatedSeconds, 0, Instant.now(), null);
+        write(queueDir.resolve(PENDING).resolve(id + JSON), entry);
+        System.out.println("Job " + id + " queued for a worker (" + getPendingCount() + " pending)");
+        return entry;
+    }
+
+    /**
+     * Wait for the outcome of a queued job, reporting the progress of its worker.
+     * The outcome is consumed: it can only be awaited once. A job left pending
+     * for the pending timeout is taken off the queue and fails, only the
+     * leases of running jobs expire otherwise.
+     *
+     * @param id The queue id of the job
+     * @param progressListener Receives the progress events of the worker, may be null
+     * @return The outcome
+     * @throws InterruptedException If interrupted while waiting, the job is then cancelled
+     */
+    public Outcome await(String id, Consumer<ProgressEvent> progressListener) throws InterruptedException {
+        Path done = queueDir.resolve(DONE).resolve(id + JSON);
+        Path progress = queueDir.resolve(RUNNING).resolve(id + PROGRESS);
+        Instant deadline = Instant.now().plus(pendingTimeout);
+        ProgressEvent lastEvent = null;
+        try {
+            while (true) {
+                Outcome outcome = read(done, Outcome.class);
+                if (outcome != null) {
+                    Files.deleteIfExists(done);
+                    return outcome;
+                }
+
+                Path pending = queueDir.resolve(PENDING).resolve(id + JSON);
+                if (!Files.exists(pending)) {
+                    // Claimed, a job given back to the queue waits for the whole timeout again
+                    deadline = Instant.now().plus(pendingTimeout);
+                } else if (Instant.now().isAfter(deadline) && Files.deleteIfExists(pending)) {
+                    System.out.println("Job " + id + " failed, no worker took it within " + pendingTimeout.toSeconds() + " s");
+                    finish(id, new Outcome(ConversionJob.Status.FAILED,
+                        "No worker took the job within " + pendingTimeout.toSeconds() + " s", null, null));
+                    continue;
+                }
+
+                Progress current = read(progress, Progress.class);
+                if (progressListener != null && current != null && current.event() != null
+                        && !current.event().equals(lastEvent)) {
+                    lastEvent = current.event();
+                    progressListener.accept(lastEvent);
+                }
+                Thread.sleep(pollMs);
+            }
+        } catch (InterruptedException e) {
+            cancel(id);
+            throw e;
+        } catch (IOException e) {
+            return new Outcome(ConversionJob.Status.FAILED, "Could not read the job queue: " + e.getMessage(), null, null);
+        }
+    }
+
+    /**
+     * Cancel a queued job. A pending job is cancelled right away, a running
+     * one when its worker sees the request at its next heartbeat.
+     *
+     * @param id The queue id of the job
+     */
+    public void cancel(String id) {
+        try {
+            if (Files.deleteIfExists(queueDir.resolve(PENDING).resolve(id + JSON))) {
+                finish(id, new Outcome(ConversionJob.Status.CANCELLED, "Cancelled", null, null));
+                return;
+            }
+            Files.write(queueDir.resolve(CANCEL).resolve(id), new byte[0]);
+        } catch (IOException e) {
+            System.out.println("Could not cancel queued job " + id + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Claim the pending job with the lowest estimated cost, less the time it
+     * has waited, so long jobs are not overtaken forever
+     *
+     * @return The claimed entry, or null if no job is pending
+     */
+    public Entry claim() {
+        List<Entry> entries = new ArrayList<>();
+        File[] files = queueDir.resolve(PENDING).toFile().listFiles((dir, name) -> name.endsWith(JSON) && !name.startsWith("."));
+        if (files == null) {
+            return null;
+        }
+        for (File file : files) {
+            Entry entry = read(file.toPath(), Entry.class);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+
+        Instant now = Instant.now();
+        entries.sort(Comparator.comparingDouble(entry ->
+            entry.estimatedSeconds() - Duration.between(entry.enqueuedAt(), now).toSeconds()));
+        for (Entry entry : entries) {
+            Entry claimed = new Entry(entry.id(), entry.fileName(), entry.sha256(), entry.size(), entry.tempos(),
+                entry.estimatedSeconds(), entry.attempts(), entry.enqueuedAt(), RandomStringUtils.randomAlphanumeric(12));
+            try {
+                Files.move(queueDir.resolve(PENDING).resolve(entry.id() + JSON), leaseOf(claimed), StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException | FileAlreadyExistsException e) {
+                // Claimed by another worker, or cancelled
+                continue;
+            } catch (IOException e) {
+                System.out.println("Could not claim queued job " + entry.id() + ": " + e.getMessage());
+                continue;
+            }
+
+            if (heartbeat(claimed, null)) {
+                System.out.println("Job " + entry.id() + " claimed by " + nodeName + " (attempt " + (entry.attempts() + 1) + ")");
+                return claimed;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param entry A claimed entry
+     * @return Path to the upload of the job
+     */
+    public Path getUploadPath(Entry entry) {
+        return queueDir.resolve(UPLOADS).resolve(entry.id()).resolve(entry.fileName());
+    }
+
+    /**
+     * Renew the lease of a claimed job, and publish its progress
+     *
+     * @param entry The claimed entry
+     * @param event The last progress event, may be null
+     * @return False if the lease was lost: it expired and the job went to another worker
+     */
+    public boolean heartbeat(Entry entry, ProgressEvent event) {
+        try {
+            Files.setLastModifiedTime(leaseOf(entry), FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            return false;
+        }
+
+        if (event != null) {
+            try {
+                write(queueDir.resolve(RUNNING).resolve(entry.id() + PROGRESS), new Progress(nodeName, event));
+            } catch (IOException e) {
+                // The progress is only informative, the lease was renewed
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param id The queue id of a claimed job
+     * @return True if the job was cancelled while it was running
+     */
+    public boolean isCancelRequested(String id) {
+        return Files.exists(queueDir.resolve(CANCEL).resolve(id));
+    }
+
+    /**
+     * Record the outcome of a claimed job
+     *
+     * @param entry The claimed entry
+     * @param outcome The outcome
+     * @return False if the lease was lost, the outcome is then dropped
+     */
+    public boolean complete(Entry entry, Outcome outcome) {
+        try {
+            if (!Files.deleteIfExists(leaseOf(entry))) {
+                System.out.println("Job " + entry.id() + " was taken over by another worker, its outcome is dropped");
+                return false;
+            }
+            finish(entry.id(), outcome);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Could not complete queued job " + entry.id() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Give a claimed job back to the queue without counting an attempt, when
+     * the worker shuts down
+     *
+     * @param entry The claimed entry
+     */
+    public void release(Entry entry) {
+        try {
+            Files.move(leaseOf(entry), queueDir.resolve(PENDING).resolve(entry.id() + JSON), StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(queueDir.resolve(RUNNING).resolve(entry.id() + PROGRESS));
+            System.out.println("Job " + entry.id() + " given back to the queue");
+        } catch (IOException e) {
+            // The lease expires and the job is delivered again
+            System.out.println("Could not give job " + entry.id() + " back to the queue: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deliver again the jobs of workers whose lease expired, and forget the
+     * outcomes nobody awaited
+     */
+    @Scheduled(fixedDelayString = "${maestro.queue.reap-interval-ms:10000}")
+    public void reap() {
+        if (role.equals(ROLE_ALL)) {
+            return;
+        }
+
+        Instant expiry = Instant.now().minus(lease);
+        for (File file : list(RUNNING, JSON)) {
+            if (Instant.ofEpochMilli(file.lastModified()).isAfter(expiry)) {
+                continue;
+            }
+
+            String id = file.getName().substring(0, file.getName().indexOf('.'));
+            Path reaping = queueDir.resolve(REAPING).resolve(file.getName());
+            try {
+                // Only one node wins the rename, and the worker loses its lease
+                Files.move(file.toPath(), reaping, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                continue;
+            }
+            touch(reaping);
+            redeliver(id, reaping);
+        }
+
+        // Jobs left half-reaped by a node that died
+        for (File file : list(REAPING, JSON)) {
+            if (Instant.ofEpochMilli(file.lastModified()).isBefore(expiry)) {
+                redeliver(file.getName().substring(0, file.getName().indexOf('.')), file.toPath());
+            }
+        }
+
+        Instant outcomeExpiry = Instant.now().minus(retention);
+        for (File file : list(DONE, JSON)) {
+            if (Instant.ofEpochMilli(file.lastModified()).isBefore(outcomeExpiry)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Deliver a reaped job again, or fail it after too many attempts
+     *
+     * @param id The job id
+     * @param reaping The entry of the job in reaping/
+     */
+    private void redeliver(String id, Path reaping) {
+        // The rename to a name of this node is the claim: another node that
+        // listed the same half-reaped entry loses it and leaves the job alone
+        Path claimed = queueDir.resolve(REAPING).resolve(id + "." + RandomStringUtils.randomAlphanumeric(8) + JSON);
+        try {
+            Files.move(reaping, claimed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            System.out.println("Could not deliver job " + id + " again: " + e.getMessage());
+            return;
+        }
+        // A rename keeps the expired time, which would make the entry look half-reaped again
+        touch(claimed);
+
+        try {
+            Files.deleteIfExists(queueDir.resolve(RUNNING).resolve(id + PROGRESS));
+            Entry entry = read(claimed, Entry.class);
+            if (entry == null) {
+                Files.deleteIfExists(claimed);
+                return;
+            }
+
+            int attempts = entry.attempts() + 1;
+            if (attempts >= maxAttempts || isCancelRequested(id)) {
+                finish(id, new Outcome(isCancelRequested(id) ? ConversionJob.Status.CANCELLED : ConversionJob.Status.FAILED,
+                    "The worker running the conversion stopped responding " + attempts + " times", null, null));
+                System.out.println("Job " + id + " failed after " + attempts + " lost workers");
+            } else {
+                // Counted in the claimed entry, then handed to the workers in one rename
+                write(claimed, new Entry(entry.id(), entry.fileName(), entry.sha256(),
+                    entry.size(), entry.tempos(), entry.estimatedSeconds(), attempts, entry.enqueuedAt(), null));
+                Files.move(claimed, queueDir.resolve(PENDING).resolve(id + JSON), StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("Job " + id + " delivered again, its worker stopped responding");
+            }
+            Files.deleteIfExists(claimed);
+        } catch (IOException e) {
+            System.out.println("Could not deliver job " + id + " again: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The file of the lease of a claimed entry in running/
+     */
+    private Path leaseOf(Entry entry) {
+        return queueDir.resolve(RUNNING).resolve(entry.id() + "." + entry.lease() + JSON);
+    }
+
+    private void finish(String id, Outcome outcome) throws IOException {
+        write(queueDir.resolve(DONE).resolve(id + JSON), outcome);
+        Files.deleteIfExists(queueDir.resolve(RUNNING).resolve(id + PROGRESS));
+        Files.deleteIfExists(queueDir.resolve(CANCEL).resolve(id));
+        FileSystemUtils.deleteRecursively(queueDir.resolve(UPLOADS).resolve(id));
+    }
+
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            // The entry is gone
+        }
+    }
+
+    /**
+     * Write a file atomically: readers on other nodes see the old file or the new one
+     */
+    private static void write(Path path, Object value) throws IOException {
+        Path temp = path.resolveSibling("." + path.getFileName() + "." + RandomStringUtils.randomAlphanumeric(6) + ".tmp");
+        try {
+            MAPPER.writeValue(temp.toFile(), value);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return The value in the file, or null if it does not exist or could not be read
+     */
+    private static <T> T read(Path path, Class<T> type) {
+        try {
+            return MAPPER.readValue(path.toFile(), type);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private List<File> list(String dir, String suffix) {
+        File[] files = queueDir.resolve(dir).toFile().listFiles((parent, name) -> name.endsWith(suffix) && !name.startsWith("."));
+        return files == null ? List.of() : List.of(files);
+    }
+
+    private int count(String dir) {
+        return role.equals(ROLE_ALL) ? 0 : list(dir, JSON).size();
+    }
+}
@@ -13,6 +13,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
 /**
  * FileUtil class
@@ -23,6 +24,14 @@ import java.nio.file.StandardCopyOption;
  * @version 2024.06.13
  */
 public class FileUtil {
+    /**
+     * Number of bytes read from the start of a file to detect its type
+     */
+    public static final int DETECTION_PREFIX_BYTES = 8192;
+
+    // Detection is thread-safe, so one instance is shared by every request
+    private static final Tika TIKA = new Tika();
+
     private Path foundFile;
     
     /**
@@ -73,29 +82,28 @@ public class FileUtil {
     }
 
     public static boolean isValidFile(MultipartFile multipartFile) throws IOException {
-        Tika tika = new Tika();
         try (InputStream input = multipartFile.getInputStream()) {
-            String mimeType = tika.detect(input);
-            return mimeType.equals("application/pdf") || mimeType.equals("image/jpeg") || mimeType.equals("image/jpg") || mimeType.equals("image/png");
+            byte[] prefix = input.readNBytes(DETECTION_PREFIX_BYTES);
+            return isValidType(detectType(prefix, prefix.length));
         }
     }
 
-    public static void cleanupDirectories(String inputDir, String outputDir, String fileNamePrefix) {
-        deleteFilesInDirectory(inputDir, fileNamePrefix);
-        deleteFilesInDirectory(outputDir, fileNamePrefix);
+    /**
+     * Detect the type of a file from the magic bytes at its start
+     * 
+     * @param prefix The first bytes of the file
+     * @param length The number of bytes of the prefix to look at
+     * @return The detected MIME type
+     */
+    public static String detectType(byte[] prefix, int length) {
+        return TIKA.detect(length == prefix.length ? prefix : Arrays.copyOf(prefix, length));
     }
 
-    private static void deleteFilesInDirectory(String directoryPath, String fileNamePrefix) {
-        File directory = new File(directoryPath);
-        if (directory.exists() && directory.isDirectory()) {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && file.getName().startsWith(fileNamePrefix)) {
-                        file.delete();
-                    }
-                }
-            }
-        }
+    /**
+     * @param mimeType A detected MIME type
+     * @return True if music sheets of this type can be converted
+     */
+    public static boolean isValidType(String mimeType) {
+        return mimeType.equals("application/pdf") || mimeType.equals("image/jpeg") || mimeType.equals("image/jpg") || mimeType.equals("image/png");
     }
 }
@@ -0,0 +1,462 @@
+package PFE008.backend;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * ImagePreprocessor class
+ *
+ * This class shrinks photos of music sheets before they are handed to
+ * Audiveris, whose run time and memory grow with the pixel count. The
+ * image is converted to grayscale, its staff interline (the distance
+ * from a staff line to the next) is measured, and it is resampled so the
+ * interline matches the one Audiveris works best with. A slightly rotated
+ * photo is deskewed in the same pass, and the image can be binarized.
+ *
+ * Images that are already small enough and straight are left untouched,
+ * as are PDF files. The reduced image is written as a PNG file under
+ * "preprocessed" next to the upload, with the same base name, so the
+ * Audiveris output keeps the name of the upload.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class ImagePreprocessor {
+    public static final String OUTPUT_DIR = "preprocessed";
+
+    // Resample only when it saves a meaningful share of the pixels
+    private static final double MIN_REDUCTION = 0.9;
+    private static final double MIN_SKEW_DEGREES = 0.1;
+    // Width of the thumbnail the skew is measured on
+    private static final int SKEW_SAMPLE_WIDTH = 1000;
+    // Number of columns sampled to measure the interline
+    private static final int INTERLINE_SAMPLE_COLUMNS = 200;
+
+    private final boolean enabled;
+    private final int targetInterline;
+    private final long maxPixels;
+    private final boolean deskew;
+    private final double maxSkewDegrees;
+    private final boolean binarize;
+    private final CpuPermits cpuPermits;
+
+    public ImagePreprocessor(@Value("${maestro.preprocess.enabled:false}") boolean enabled,
+                             @Value("${maestro.preprocess.target-interline:20}") int targetInterline,
+                             @Value("${maestro.preprocess.max-pixels:8000000}") long maxPixels,
+                             @Value("${maestro.preprocess.deskew:true}") boolean deskew,
+                             @Value("${maestro.preprocess.max-skew-degrees:5}") double maxSkewDegrees,
+                             @Value("${maestro.preprocess.binarize:false}") boolean binarize,
+                             CpuPermits cpuPermits) {
+        this.enabled = enabled;
+        this.targetInterline = targetInterline;
+        this.maxPixels = maxPixels;
+        this.deskew = deskew;
+        this.maxSkewDegrees = maxSkewDegrees;
+        this.binarize = binarize;
+        this.cpuPermits = cpuPermits;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * What the pre-processing found out about an image, and what it did
+     *
+     * @param width Width of the original image
+     * @param height Height of the original image
+     * @param interline Measured interline in pixels, 0 if no staff was found
+     * @param skewDegrees Measured skew of the staff lines, positive when they go down to the right, 0 if no staff was found
+     * @param scale Scale applied to the image, 1 if it was not resampled
+     * @param image The processed image, null if the original can be used as is
+     */
+    public record Analysis(int width, int height, int interline, double skewDegrees, double scale, BufferedImage image) {
+    }
+
+    /**
+     * Shrink an uploaded image for Audiveris, when pre-processing is enabled
+     *
+     * @param input Path to the uploaded music sheet
+     * @return Path to the reduced image, or the input if it is not an image or does not need it
+     */
+    public Path prepare(Path input) {
+        String fileName = input.getFileName().toString();
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase();
+        if (!enabled || !(extension.equals("jpg") || extension.equals("jpeg") || extension.equals("png"))) {
+            return input;
+        }
+
+        long start = System.nanoTime();
+        boolean permit = false;
+        try {
+            if (cpuPermits != null) {
+                cpuPermits.acquire("image pre-processing");
+                permit = true;
+            }
+
+            BufferedImage image = ImageIO.read(input.toFile());
+            if (image == null) {
+                System.out.println("Could not decode " + fileName + ", handing it to Audiveris as is");
+                PipelineMetrics.recordStage(PipelineMetrics.STAGE_PREPROCESS, start, false);
+                return input;
+            }
+
+            Analysis analysis = process(image);
+            // Let the decoded image be collected while the PNG is written
+            image = null;
+            if (analysis.image() == null) {
+                System.out.println("Image " + analysis.width() + "x" + analysis.height() + " (interline " + analysis.interline()
+                    + " px) does not need pre-processing");
+                PipelineMetrics.recordStage(PipelineMetrics.STAGE_PREPROCESS, start, true);
+                return input;
+            }
+
+            Path output = input.resolveSibling(OUTPUT_DIR).resolve(fileName.substring(0, fileName.lastIndexOf('.')) + ".png");
+            Files.createDirectories(output.getParent());
+            ImageIO.write(analysis.image(), "png", output.toFile());
+
+            System.out.println(String.format("Image %dx%d (interline %d px, skew %.2f degrees) pre-processed to %dx%d in %d ms",
+                analysis.width(), analysis.height(), analysis.interline(), analysis.skewDegrees(),
+                analysis.image().getWidth(), analysis.image().getHeight(), (System.nanoTime() - start) / 1000000));
+            PipelineMetrics.recordStage(PipelineMetrics.STAGE_PREPROCESS, start, true);
+            return output;
+        } catch (InterruptedException e) {
+            // The conversion is being cancelled, the Audiveris stage will stop too
+            Thread.currentThread().interrupt();
+            return input;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not pre-process " + fileName + ", handing it to Audiveris as is: " + e.getMessage());
+            PipelineMetrics.recordStage(PipelineMetrics.STAGE_PREPROCESS, start, false);
+            return input;
+        } finally {
+            if (permit) {
+                cpuPermits.release();
+            }
+        }
+    }
+
+    /**
+     * Measure an image and reduce it if needed
+     *
+     * @param image The decoded image
+     * @return The analysis, holding the processed image if the original should not be used as is
+     */
+    public Analysis process(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage gray = toGray(image);
+        byte[] pixels = pixels(gray);
+        int threshold = otsuThreshold(pixels);
+
+        int interline = estimateInterline(pixels, width, height, threshold);
+        // Without staves, the projection would align on whatever the photo shows
+        double skew = deskew && interline > 0 ? estimateSkew(gray, threshold) : 0;
+
+        double scale = 1;
+        if (interline > targetInterline) {
+            scale = (double) targetInterline / interline;
+        }
+        if ((double) width * height * scale * scale > maxPixels) {
+            scale = Math.sqrt((double) maxPixels / ((double) width * height));
+        }
+        if (scale > MIN_REDUCTION) {
+            scale = 1;
+        }
+
+        boolean rotate = Math.abs(skew) >= MIN_SKEW_DEGREES;
+        if (scale == 1 && !rotate && !binarize) {
+            return new Analysis(width, height, interline, skew, 1, null);
+        }
+
+        BufferedImage result = transform(gray, scale, rotate ? skew : 0);
+        if (binarize) {
+            byte[] resultPixels = pixels(result);
+            binarize(resultPixels, otsuThreshold(resultPixels));
+        }
+        return new Analysis(width, height, interline, skew, scale, result);
+    }
+
+    /**
+     * @param image An image of any type
+     * @return The image as 8-bit grayscale
+     */
+    static BufferedImage toGray(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        BufferedImage gray = new BufferedImage(width, image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = pixels(gray);
+        int[] row = new int[width];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                // ITU-R BT.601 luma, alpha is ignored
+                int luma = (((rgb >> 16) & 0xff) * 77 + ((rgb >> 8) & 0xff) * 150 + (rgb & 0xff) * 29) >> 8;
+                pixels[offset + x] = (byte) luma;
+            }
+        }
+        return gray;
+    }
+
+    /**
+     * Otsu's threshold, which best separates the ink from the paper
+     *
+     * @param pixels 8-bit grayscale pixels
+     * @return The threshold, pixels darker than it are ink
+     */
+    static int otsuThreshold(byte[] pixels) {
+        long[] histogram = new long[256];
+        for (byte pixel : pixels) {
+            histogram[pixel & 0xff]++;
+        }
+
+        long total = pixels.length;
+        double sum = 0;
+        for (int i = 0; i < 256; i++) {
+            sum += (double) i * histogram[i];
+        }
+
+        double sumBackground = 0;
+        long weightBackground = 0;
+        double bestVariance = -1;
+        int threshold = 128;
+        for (int i = 0; i < 256; i++) {
+            weightBackground += histogram[i];
+            if (weightBackground == 0) {
+                continue;
+            }
+            long weightForeground = total - weightBackground;
+            if (weightForeground == 0) {
+                break;
+            }
+            sumBackground += (double) i * histogram[i];
+            double meanBackground = sumBackground / weightBackground;
+            double meanForeground = (sum - sumBackground) / weightForeground;
+            double variance = (double) weightBackground * weightForeground * (meanBackground - meanForeground) * (meanBackground - meanForeground);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                threshold = i + 1;
+            }
+        }
+        return threshold;
+    }
+
+    /**
+     * Measure the interline the way Audiveris does: in sampled columns, the
+     * most frequent length of a black run plus the white run after it is the
+     * distance from a staff line to the next
+     *
+     * @return The interline in pixels, 0 if no staff lines were found
+     */
+    static int estimateInterline(byte[] pixels, int width, int height, int threshold) {
+        int maxLength = Math.max(height / 4, 8);
+        int[] histogram = new int[maxLength + 1];
+        int step = Math.max(1, width / INTERLINE_SAMPLE_COLUMNS);
+        int samples = 0;
+
+        for (int x = step / 2; x < width; x += step) {
+            int black = 0;
+            int white = 0;
+            for (int y = 0; y < height; y++) {
+                boolean ink = (pixels[y * width + x] & 0xff) < threshold;
+                if (ink) {
+                    if (white > 0) {
+                        // A black run and the white run after it have ended
+                        if (black > 0 && black + white <= maxLength) {
+                            histogram[black + white]++;
+                            samples++;
+                        }
+                        black = 0;
+                        white = 0;
+                    }
+                    black++;
+                } else if (black > 0) {
+                    white++;
+                }
+            }
+        }
+
+        // Runs of a few pixels are noise and note heads, not staff spacing
+        int interline = 0;
+        for (int length = 4; length <= maxLength; length++) {
+            if (histogram[length] > histogram[interline]) {
+                interline = length;
+            }
+        }
+        // A staff gives four spacings per column, a page without staves gives no clear peak
+        if (interline == 0 || histogram[interline] < Math.max(8, samples / 4)) {
+            return 0;
+        }
+        return interline;
+    }
+
+    /**
+     * Measure the skew of the staff lines on a thumbnail: the angle at which
+     * the horizontal projection of the ink is the sharpest
+     *
+     * @return The skew in degrees, positive when the lines go down to the right
+     */
+    double estimateSkew(BufferedImage gray, int threshold) {
+        BufferedImage sample = gray;
+        if (gray.getWidth() > SKEW_SAMPLE_WIDTH) {
+            sample = resize(gray, (double) SKEW_SAMPLE_WIDTH / gray.getWidth());
+        }
+
+        int width = sample.getWidth();
+        int height = sample.getHeight();
+        byte[] pixels = pixels(sample);
+        int inkCount = 0;
+        for (byte pixel : pixels) {
+            if ((pixel & 0xff) < threshold) {
+                inkCount++;
+            }
+        }
+        if (inkCount == 0) {
+            return 0;
+        }
+
+        int[] xs = new int[inkCount];
+        int[] ys = new int[inkCount];
+        int n = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((pixels[y * width + x] & 0xff) < threshold) {
+                    xs[n] = x;
+                    ys[n] = y;
+                    n++;
+                }
+            }
+        }
+
+        double best = 0;
+        double bestScore = projectionScore(xs, ys, height, 0);
+        // Coarse search, then a finer one around the best angle
+        for (double step : new double[] {0.25, 0.05}) {
+            double center = best;
+            double range = step == 0.25 ? maxSkewDegrees : 0.25;
+            for (double angle = center - range; angle <= center + range + 1e-9; angle += step) {
+                double score = projectionScore(xs, ys, height, angle);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = angle;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static double projectionScore(int[] xs, int[] ys, int height, double degrees) {
+        double slope = Math.tan(Math.toRadians(degrees));
+        int margin = (int) Math.ceil(Math.abs(slope) * SKEW_SAMPLE_WIDTH) + 1;
+        int[] bins = new int[height + 2 * margin];
+        for (int i = 0; i < xs.length; i++) {
+            int bin = (int) Math.round(ys[i] - xs[i] * slope) + margin;
+            if (bin >= 0 && bin < bins.length) {
+                bins[bin]++;
+            }
+        }
+
+        double score = 0;
+        for (int count : bins) {
+            score += (double) count * count;
+        }
+        return score;
+    }
+
+    /**
+     * Rotate and scale a grayscale image in one pass, on a white background
+     *
+     * @param gray The grayscale image
+     * @param scale The scale, at most 1
+     * @param skewDegrees The skew to remove
+     * @return The transformed image
+     */
+    static BufferedImage transform(BufferedImage gray, double scale, double skewDegrees) {
+        BufferedImage source = gray;
+        double remaining = scale;
+        if (scale < 0.5) {
+            // Shrink first, the rotation is then done at less than twice the final size
+            source = resize(gray, scale * 2);
+            remaining = scale / ((double) source.getWidth() / gray.getWidth());
+        }
+
+        double radians = Math.toRadians(-skewDegrees);
+        double sin = Math.abs(Math.sin(radians));
+        double cos = Math.abs(Math.cos(radians));
+        int width = (int) Math.round((source.getWidth() * cos + source.getHeight() * sin) * remaining);
+        int height = (int) Math.round((source.getWidth() * sin + source.getHeight() * cos) * remaining);
+
+        AffineTransform transform = new AffineTransform();
+        transform.translate(width / 2.0, height / 2.0);
+        transform.scale(remaining, remaining);
+        transform.rotate(radians);
+        transform.translate(-source.getWidth() / 2.0, -source.getHeight() / 2.0);
+
+        BufferedImage result = new BufferedImage(Math.max(width, 1), Math.max(height, 1), BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, result.getWidth(), result.getHeight());
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(source, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * Shrink a grayscale image
+     *
+     * @param gray The grayscale image
+     * @param scale The scale, at most 1
+     * @return The shrunk image
+     */
+    static BufferedImage resize(BufferedImage gray, double scale) {
+        // Halve first, a single bilinear pass would skip pixels and break the thin staff lines
+        while (scale < 0.5) {
+            gray = resizeOnce(gray, 0.5);
+            scale *= 2;
+        }
+        return resizeOnce(gray, scale);
+    }
+
+    private static BufferedImage resizeOnce(BufferedImage gray, double scale) {
+        int width = Math.max(1, (int) Math.round(gray.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(gray.getHeight() * scale));
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(gray, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    private static void binarize(byte[] pixels, int threshold) {
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (pixels[i] & 0xff) < threshold ? 0 : (byte) 255;
+        }
+    }
+
+    private static byte[] pixels(BufferedImage gray) {
+        return ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,17 @@
+package PFE008.backend;
+
+/**
+ * InvalidUploadException class
+ * 
+ * Thrown when an uploaded music sheet is rejected, because it is
+ * empty, too large or not a supported file type. The message is
+ * meant to be returned to the client.
+ * 
+ * @version 2026.10.17
+ */
+public class InvalidUploadException extends RuntimeException {
+
+    public InvalidUploadException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,152 @@
+package PFE008.backend;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * JobController class
+ * 
+ * This class exposes the asynchronous conversion API. A client posts a
+ * music sheet to /jobs and immediately gets a job id back, then polls
+ * /jobs/{id} until the job is done and downloads its downloadUri,
+ * /results/{id} (/jobs/{id}/result redirects there).
+ * Instead of polling, a client can follow the progress of the job on
+ * /jobs/{id}/events, as Server-Sent Events.
+ * A client that gives up can cancel its job with DELETE /jobs/{id}.
+ * 
+ * @version 2026.10.17
+ */
+@RestController
+public class JobController {
+    private final UploadIngestor uploadIngestor;
+    private final WorkspaceManager workspaces;
+    private final JobService jobService;
+    private final JobEvents jobEvents;
+
+    public JobController(UploadIngestor uploadIngestor, WorkspaceManager workspaces, JobService jobService,
+                         JobEvents jobEvents) {
+        this.uploadIngestor = uploadIngestor;
+        this.workspaces = workspaces;
+        this.jobService = jobService;
+        this.jobEvents = jobEvents;
+    }
+
+    @PostMapping("/jobs")
+    @CrossOrigin(origins = "*", exposedHeaders = {HttpHeaders.LOCATION, HttpHeaders.RETRY_AFTER})
+    public ResponseEntity<?> submit(@RequestParam("file") MultipartFile multipartFile,
+                                    @RequestParam(value = "tempos", required = false) String tempos) throws IOException {
+        Workspace workspace = workspaces.create();
+        SavedUpload upload;
+        try {
+            upload = uploadIngestor.ingest(multipartFile, workspace);
+        } catch (InvalidUploadException e) {
+            workspaces.delete(workspace);
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (IOException e) {
+            workspaces.delete(workspace);
+            throw e;
+        }
+
+        ConversionJob job;
+        try {
+            job = jobService.submit(multipartFile.getOriginalFilename(), upload, tempos);
+        } catch (RejectedExecutionException e) {
+            workspaces.delete(workspace);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(jobService.getRetryAfterSeconds()))
+                .body("Too many conversions in progress, please retry later");
+        }
+
+        ConversionResponse response = ConversionResponse.of(job);
+        response.setSize(upload.size());
+
+        return ResponseEntity.accepted()
+            .header(HttpHeaders.LOCATION, "/jobs/" + job.getId())
+            .body(response);
+    }
+
+    @GetMapping("/jobs/{id}")
+    @CrossOrigin(origins = "*")
+    public ResponseEntity<?> status(@PathVariable String id) {
+        ConversionJob job = jobService.getJob(id);
+        if (job == null) {
+            return new ResponseEntity<>("Job not found", HttpStatus.NOT_FOUND);
+        }
+
+        return ResponseEntity.ok(ConversionResponse.of(job));
+    }
+
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @CrossOrigin(origins = "*")
+    public ResponseEntity<SseEmitter> events(@PathVariable String id,
+                                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                             @RequestParam(value = "cancelOnDisconnect", defaultValue = "false") boolean cancelOnDisconnect) {
+        ConversionJob job = jobService.getJob(id);
+        if (job == null) {
+            // No body, an event stream can't carry the usual error message
+            return ResponseEntity.notFound().build();
+        }
+
+        Integer lastEvent = null;
+        if (lastEventId != null && lastEventId.matches("\\d{1,9}")) {
+            lastEvent = Integer.valueOf(lastEventId);
+        }
+        SseEmitter emitter = jobEvents.open(job, lastEvent, cancelOnDisconnect);
+        return ResponseEntity.ok().header(HttpHeaders.CACHE_CONTROL, "no-cache").body(emitter);
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    @CrossOrigin(origins = "*")
+    public ResponseEntity<?> cancel(@PathVariable String id) {
+        ConversionJob job = jobService.cancel(id);
+        if (job == null) {
+            return new ResponseEntity<>("Job not found", HttpStatus.NOT_FOUND);
+        }
+
+        if (job.getStatus() != ConversionJob.Status.CANCELLED) {
+            return new ResponseEntity<>(ConversionResponse.of(job), HttpStatus.CONFLICT);
+        }
+        return ResponseEntity.ok(ConversionResponse.of(job));
+    }
+
+    @GetMapping("/jobs/{id}/result")
+    @CrossOrigin(origins = "*")
+    public ResponseEntity<?> result(@PathVariable String id) {
+        ConversionJob job = jobService.getJob(id);
+        if (job == null) {
+            return new ResponseEntity<>("Job not found", HttpStatus.NOT_FOUND);
+        }
+
+        switch (job.getStatus()) {
+            case FAILED:
+                return new ResponseEntity<>(job.getError(), HttpStatus.INTERNAL_SERVER_ERROR);
+            case CANCELLED:
+                return new ResponseEntity<>(job.getError(), HttpStatus.GONE);
+            case SUCCEEDED:
+                break;
+            default:
+                return new ResponseEntity<>(ConversionResponse.of(job), HttpStatus.CONFLICT);
+        }
+
+        // The MIDI file is served with its ETag and byte ranges from /results/{id}
+        return ResponseEntity.status(HttpStatus.SEE_OTHER)
+            .location(URI.create(job.getResult().uri()))
+            .build();
+    }
+}
@@ -0,0 +1,205 @@
+package PFE008.backend;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * JobEvents class
+ * 
+ * This class streams the progress of a job as Server-Sent Events:
+ * a "progress" event (with the index of the event as its id) for each
+ * Audiveris step and MIDI stage milestone, and a "status" event, with the
+ * same body as GET /jobs/{id}, each time the status changes. The stream
+ * ends after the final status.
+ * 
+ * A reconnecting client sends the Last-Event-ID header and only gets the
+ * events it missed. Comments are sent as heartbeats, so a client that went
+ * away is noticed while the job runs; the job can then be cancelled to free
+ * its worker.
+ * 
+ * @version 2026.10.17
+ */
+@Component
+public class JobEvents {
+    public static final String EVENT_PROGRESS = "progress";
+    public static final String EVENT_STATUS = "status";
+
+    private final JobService jobService;
+    private final TaskScheduler taskScheduler;
+    private final long timeoutMs;
+    private final Duration heartbeat;
+
+    public JobEvents(JobService jobService, TaskScheduler taskScheduler,
+                     @Value("${maestro.jobs.events.timeout-ms:600000}") long timeoutMs,
+                     @Value("${maestro.jobs.events.heartbeat-ms:15000}") long heartbeatMs) {
+        this.jobService = jobService;
+        this.taskScheduler = taskScheduler;
+        this.timeoutMs = timeoutMs;
+        this.heartbeat = Duration.ofMillis(heartbeatMs);
+    }
+
+    /**
+     * Open the event stream of a job
+     * 
+     * @param job The job to follow
+     * @param lastEventId The id of the last progress event the client got, null for all of them
+     * @param cancelOnDisconnect True to cancel the job if the client goes away before it is finished
+     * @return The event stream
+     */
+    public SseEmitter open(ConversionJob job, Integer lastEventId, boolean cancelOnDisconnect) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Stream stream = new Stream(job, emitter, cancelOnDisconnect);
+
+        // Subscribe before replaying, so no event falls between the two
+        List<ProgressEvent> events = job.subscribe(stream);
+        stream.replay(events, lastEventId == null ? 0 : lastEventId + 1);
+        stream.onStatus(job);
+
+        if (!job.isFinished()) {
+            stream.heartbeats = taskScheduler.scheduleAtFixedRate(stream::heartbeat, heartbeat);
+            if (stream.closed.get()) {
+                stream.stop();
+            }
+        }
+        emitter.onTimeout(stream::close);
+        // Also called after a timeout or the final status, where the stream is already closed
+        emitter.onCompletion(stream::disconnected);
+        emitter.onError(e -> stream.disconnected());
+        return emitter;
+    }
+
+    /**
+     * The event stream of one client
+     */
+    private class Stream implements ConversionJob.Listener {
+        private final ConversionJob job;
+        private final SseEmitter emitter;
+        private final boolean cancelOnDisconnect;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private ConversionJob.Status lastStatus;
+        private volatile ScheduledFuture<?> heartbeats;
+        // The live events published while the earlier ones are replayed, sent after them
+        private List<Map.Entry<Integer, ProgressEvent>> held = new ArrayList<>();
+        private int replayed;
+
+        Stream(ConversionJob job, SseEmitter emitter, boolean cancelOnDisconnect) {
+            this.job = job;
+            this.emitter = emitter;
+            this.cancelOnDisconnect = cancelOnDisconnect;
+        }
+
+        /**
+         * Send the events published before the subscription, then the live
+         * events published in the meantime, in the order of their index
+         * 
+         * @param events The events published before the subscription
+         * @param from The index of the first event to send
+         */
+        synchronized void replay(List<ProgressEvent> events, int from) {
+            for (int i = from; i < events.size(); i++) {
+                sendProgress(i, events.get(i));
+            }
+            replayed = events.size();
+            List<Map.Entry<Integer, ProgressEvent>> live = held;
+            held = null;
+            live.sort(Map.Entry.comparingByKey());
+            for (Map.Entry<Integer, ProgressEvent> event : live) {
+                onProgress(event.getKey(), event.getValue());
+            }
+        }
+
+        @Override
+        public synchronized void onProgress(int index, ProgressEvent event) {
+            if (held != null) {
+                held.add(Map.entry(index, event));
+            } else if (index >= replayed) {
+                // An event both in the replay and passed to the listener is only sent once
+                sendProgress(index, event);
+            }
+        }
+
+        private void sendProgress(int index, ProgressEvent event) {
+            send(SseEmitter.event().id(String.valueOf(index)).name(EVENT_PROGRESS).data(event, MediaType.APPLICATION_JSON));
+        }
+
+        @Override
+        public void onStatus(ConversionJob job) {
+            ConversionResponse response;
+            synchronized (this) {
+                if (held != null) {
+                    // Sent once the replay is done, after the progress events
+                    return;
+                }
+                // The status is sent once per change, it may be seen both when subscribing and by the listener
+                ConversionJob.Status status = job.getStatus();
+                if (status == lastStatus) {
+                    return;
+                }
+                lastStatus = status;
+                response = ConversionResponse.of(job);
+            }
+
+            send(SseEmitter.event().name(EVENT_STATUS).data(response, MediaType.APPLICATION_JSON));
+            if (job.isFinished() && closed.compareAndSet(false, true)) {
+                stop();
+                emitter.complete();
+            }
+        }
+
+        void heartbeat() {
+            send(SseEmitter.event().comment("heartbeat"));
+        }
+
+        private void send(SseEmitter.SseEventBuilder event) {
+            if (closed.get()) {
+                return;
+            }
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                disconnected();
+            }
+        }
+
+        /**
+         * The client went away, or its connection failed
+         */
+        void disconnected() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            stop();
+            if (cancelOnDisconnect && jobService.cancel(job.getId()) != null && job.getStatus() == ConversionJob.Status.CANCELLED) {
+                System.out.println("Client of job " + job.getId() + " went away, job cancelled");
+            }
+        }
+
+        /**
+         * The stream ended normally or timed out, a client that still wants events reconnects
+         */
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                stop();
+            }
+        }
+
+        private void stop() {
+            job.unsubscribe(this);
+            ScheduledFuture<?> scheduled = heartbeats;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
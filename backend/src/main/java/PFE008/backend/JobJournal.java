@@ -0,0 +1,447 @@
+package PFE008.backend;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JobJournal class
+ *
+ * This class records the lifecycle of each job of the {@link JobService}
+ * in an append-only file, so the jobs interrupted by a restart can be
+ * resumed from their last completed stage instead of being lost.
+ *
+ * A single thread writes the records: the records appended while it
+ * forces a batch to disk are written together with the next fsync, and
+ * each append returns once its record is on disk. On startup, the records
+ * are folded into the last state of each job. The file is compacted
+ * periodically to one record per job, the finished jobs being dropped
+ * once they are older than the job retention.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class JobJournal {
+    public static final String RECEIVED = "RECEIVED";
+    public static final String STARTED = "STARTED";
+    public static final String OMR_DONE = "OMR_DONE";
+    public static final String MXL_EXPORTED = "MXL_EXPORTED";
+    public static final String MIDI_DONE = "MIDI_DONE";
+    public static final String DELIVERED = "DELIVERED";
+    public static final String FAILED = "FAILED";
+    public static final String CANCELLED = "CANCELLED";
+
+    /**
+     * Stages of a job, in the order they are completed
+     */
+    private static final List<String> STAGES = List.of(RECEIVED, STARTED, OMR_DONE, MXL_EXPORTED, MIDI_DONE, DELIVERED);
+    private static final String LOG_NAME = "journal.log";
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+    private static final Pending STOP = new Pending(new byte[0], null);
+
+    /**
+     * An entry of the journal. Only the fields known at that stage are set,
+     * the state of a job is made of all its entries merged.
+     *
+     * @param jobId The job id
+     * @param stage The stage the job has completed
+     * @param time When the stage was completed
+     * @param receivedAt When the job was submitted
+     * @param fileName The original name of the uploaded file
+     * @param workspaceId The id of the workspace of the job
+     * @param upload Path to the saved upload
+     * @param sha256 SHA-256 of the upload
+     * @param size Size of the upload, in bytes
+     * @param tempos Custom tempos as a JSON string
+     * @param resultId The id of the MIDI file in the result store, once delivered
+     * @param message Why the job failed
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Entry(String jobId, String stage, Instant time, Instant receivedAt, String fileName,
+                         String workspaceId, String upload, String sha256, Long size, String tempos,
+                         String resultId, String message) {
+
+        /**
+         * @return True if the job will not go any further
+         */
+        @JsonIgnore
+        public boolean isFinished() {
+            return DELIVERED.equals(stage) || FAILED.equals(stage) || CANCELLED.equals(stage);
+        }
+
+        private Entry merge(Entry next) {
+            // A resumed job starts again, but keeps the stages it had completed
+            boolean behind = !next.isFinished() && STAGES.indexOf(next.stage) < STAGES.indexOf(stage);
+            return new Entry(jobId, behind ? stage : next.stage, next.time,
+                receivedAt != null ? receivedAt : next.receivedAt,
+                next.fileName != null ? next.fileName : fileName,
+                next.workspaceId != null ? next.workspaceId : workspaceId,
+                next.upload != null ? next.upload : upload,
+                next.sha256 != null ? next.sha256 : sha256,
+                next.size != null ? next.size : size,
+                next.tempos != null ? next.tempos : tempos,
+                next.resultId != null ? next.resultId : resultId,
+                next.message != null ? next.message : message);
+        }
+    }
+
+    private record Pending(byte[] line, CompletableFuture<Void> written) {}
+
+    private final boolean enabled;
+    private final Path log;
+    private final Duration retention;
+    private final BlockingQueue<Pending> pending = new LinkedBlockingQueue<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private FileChannel channel;
+    private Thread writer;
+    private volatile boolean closed;
+
+    public JobJournal(@Value("${maestro.journal.enabled:true}") boolean enabled,
+                      @Value("${maestro.journal.dir:Journal}") String dir,
+                      @Value("${maestro.jobs.retention-minutes:30}") long retentionMinutes) throws IOException {
+        this.enabled = enabled;
+        this.log = Paths.get(dir).resolve(LOG_NAME);
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        if (!enabled) {
+            return;
+        }
+
+        Files.createDirectories(log.getParent());
+        boolean cut = false;
+        if (Files.exists(log) && Files.size(log) > 0) {
+            try (FileChannel in = FileChannel.open(log, StandardOpenOption.READ)) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                in.read(last, in.size() - 1);
+                cut = last.get(0) != '\n';
+            }
+        }
+        this.channel = open();
+        if (cut) {
+            // A record cut by a crash must not swallow the next one
+            writeFully(channel, ByteBuffer.wrap(new byte[] {'\n'}));
+        }
+        this.writer = new Thread(this::write, "job-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record a job submitted with a saved upload
+     *
+     * @param job The job
+     */
+    public void received(ConversionJob job) {
+        SavedUpload upload = job.getUpload();
+        append(new Entry(job.getId(), RECEIVED, Instant.now(), job.getCreatedAt(), job.getFileName(),
+            upload.workspace().id(), upload.path().toString(), upload.sha256(), upload.size(), job.getTempos(),
+            null, null));
+    }
+
+    /**
+     * Record a stage completed by a job
+     *
+     * @param jobId The job id
+     * @param stage The stage
+     */
+    public void completed(String jobId, String stage) {
+        append(new Entry(jobId, stage, Instant.now(), null, null, null, null, null, null, null, null, null));
+    }
+
+    /**
+     * Record a job whose MIDI file is in the result store
+     *
+     * @param jobId The job id
+     * @param resultId The id of the MIDI file in the result store
+     */
+    public void delivered(String jobId, String resultId) {
+        append(new Entry(jobId, DELIVERED, Instant.now(), null, null, null, null, null, null, null, resultId, null));
+    }
+
+    /**
+     * Record a job that failed or was cancelled
+     *
+     * @param jobId The job id
+     * @param stage {@link #FAILED} or {@link #CANCELLED}
+     * @param message Why the job did not succeed
+     */
+    public void finished(String jobId, String stage, String message) {
+        append(new Entry(jobId, stage, Instant.now(), null, null, null, null, null, null, null, null, message));
+    }
+
+    /**
+     * @param stage The last stage completed by an unfinished job
+     * @param other Another stage
+     * @return True if the other stage has been completed too
+     */
+    public static boolean reached(String stage, String other) {
+        return STAGES.indexOf(stage) >= STAGES.indexOf(other);
+    }
+
+    /**
+     * Get the stage completed by a job when it publishes a progress event
+     *
+     * @param event The progress event
+     * @return The stage, or null if the event does not complete one
+     */
+    public static String stageOf(ProgressEvent event) {
+        if (event.step() == null) {
+            return null;
+        }
+        if (ProgressEvent.STAGE_OMR.equals(event.stage())) {
+            return switch (event.step()) {
+                case AudiverisController.STEP_DONE -> OMR_DONE;
+                case AudiverisController.STEP_EXPORTED, ConversionService.STEP_REUSED -> MXL_EXPORTED;
+                default -> null;
+            };
+        }
+        if (ProgressEvent.STAGE_MIDI.equals(event.stage()) && AudiverisController.STEP_DONE.equals(event.step())
+                || ProgressEvent.STAGE_CACHE.equals(event.stage())) {
+            return MIDI_DONE;
+        }
+        return null;
+    }
+
+    /**
+     * Read the journal
+     *
+     * @return The last state of each job, in the order the jobs were received
+     */
+    public synchronized List<Entry> replay() {
+        if (!enabled) {
+            return List.of();
+        }
+        return new ArrayList<>(read().values());
+    }
+
+    /**
+     * Rewrite the journal with one record per job, without the finished
+     * jobs older than the retention
+     */
+    @Scheduled(fixedDelayString = "${maestro.journal.compact-interval-ms:300000}")
+    public synchronized void compact() {
+        if (!enabled || closed) {
+            return;
+        }
+
+        Instant expiry = Instant.now().minus(retention);
+        Path temp = log.resolveSibling(LOG_NAME + ".tmp");
+        try {
+            long before = Files.size(log);
+            int kept = 0;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Entry entry : read().values()) {
+                    if (!entry.isFinished() || entry.time().isAfter(expiry)) {
+                        writeFully(out, ByteBuffer.wrap(line(entry)));
+                        kept++;
+                    }
+                }
+                out.force(false);
+            }
+
+            // The records appended from now on wait for the new file
+            channel.close();
+            try {
+                Files.move(temp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                channel = open();
+            }
+            System.out.println("Job journal compacted from " + before + " to " + Files.size(log) + " bytes, " + kept + " jobs kept");
+        } catch (IOException e) {
+            System.out.println("Could not compact the job journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The number of records written
+     */
+    public long getRecordCount() {
+        return records.get();
+    }
+
+    /**
+     * @return The number of fsyncs, each one covering a batch of records
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled) {
+            return;
+        }
+
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.add(STOP);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("Could not close the job journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Append a record and wait until it is on disk. A journal that cannot be
+     * written does not fail the job, which is only lost if the node restarts.
+     */
+    private void append(Entry entry) {
+        if (!enabled) {
+            return;
+        }
+
+        Pending waiting;
+        try {
+            waiting = new Pending(line(entry), new CompletableFuture<>());
+        } catch (JsonProcessingException e) {
+            System.out.println("Could not journal job " + entry.jobId() + ": " + e.getMessage());
+            return;
+        }
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            pending.add(waiting);
+        }
+
+        // Interrupting a cancelled job must not lose its record
+        boolean interrupted = false;
+        while (true) {
+            try {
+                waiting.written().get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                System.out.println("Could not journal job " + entry.jobId() + ": " + e.getCause().getMessage());
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        List<Pending> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch);
+            stopping = batch.remove(STOP);
+
+            IOException error = null;
+            synchronized (this) {
+                try {
+                    ByteBuffer buffer = ByteBuffer.allocate(batch.stream().mapToInt(entry -> entry.line().length).sum());
+                    for (Pending entry : batch) {
+                        buffer.put(entry.line());
+                    }
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                    channel.force(false);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+
+            batches.incrementAndGet();
+            records.addAndGet(batch.size());
+            for (Pending entry : batch) {
+                if (error == null) {
+                    entry.written().complete(null);
+                } else {
+                    entry.written().completeExceptionally(error);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private Map<String, Entry> read() {
+        Map<String, Entry> jobs = new LinkedHashMap<>();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.out.println("Could not read the job journal: " + e.getMessage());
+            return jobs;
+        }
+
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                Entry entry = MAPPER.readValue(line, Entry.class);
+                jobs.merge(entry.jobId(), entry, Entry::merge);
+            } catch (JsonProcessingException e) {
+                // The last record may have been cut by a crash before it was forced to disk
+                System.out.println("Skipping unreadable job journal record: " + e.getOriginalMessage());
+            }
+        }
+        return jobs;
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static byte[] line(Entry entry) throws JsonProcessingException {
+        return (MAPPER.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package PFE008.backend;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JobService class
+ * 
+ * This class runs conversions in the background so request threads are
+ * released as soon as the upload has been saved. Jobs run on a bounded
+ * executor: when every worker is busy and the queue is full, new jobs are
+ * rejected instead of piling up.
+ * 
+ * The lifecycle of each job is recorded in the {@link JobJournal}. On
+ * startup, the jobs interrupted by the previous run are resumed from the
+ * files their last completed stage left in their workspace, and the jobs
+ * finished recently are restored so their clients can still get them.
+ * 
+ * @version 2026.10.17
+ */
+@Service
+public class JobService {
+    private final ConversionService conversionService;
+    private final WorkspaceManager workspaces;
+    private final ResultStore results;
+    private final JobJournal journal;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ConversionJob> jobs = new ConcurrentHashMap<>();
+    private final Duration retention;
+    private final long retryAfterSeconds;
+    private volatile boolean stopping;
+
+    public JobService(ConversionService conversionService, WorkspaceManager workspaces, ResultStore results,
+                      JobJournal journal, ExecutionMode executionMode,
+                      @Value("${maestro.jobs.workers:8}") int workers,
+                      @Value("${maestro.jobs.queue-capacity:16}") int queueCapacity,
+                      @Value("${maestro.jobs.retention-minutes:30}") long retentionMinutes,
+                      @Value("${maestro.jobs.retry-after-seconds:30}") long retryAfterSeconds) {
+        this.conversionService = conversionService;
+        this.workspaces = workspaces;
+        this.results = results;
+        this.journal = journal;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        // The job threads mostly wait for a scheduler slot and for Audiveris, the CPU work is bounded by the CpuPermits
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                executionMode.threadFactory("conversion-job-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queue the conversion of a saved music sheet
+     * 
+     * @param fileName The original name of the uploaded file
+     * @param upload The saved music sheet
+     * @param tempos Custom tempos as a JSON string, may be null
+     * @return The queued job
+     * @throws RejectedExecutionException If the queue is full
+     */
+    public ConversionJob submit(String fileName, SavedUpload upload, String tempos) {
+        ConversionJob job = new ConversionJob(fileName, upload, tempos);
+        jobs.put(job.getId(), job);
+        // Journaled before it can start, so its stages are never recorded first
+        if (journal != null) {
+            journal.received(job);
+        }
+
+        try {
+            job.setFuture(executor.submit(() -> run(job, null)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            if (journal != null) {
+                journal.finished(job.getId(), JobJournal.FAILED, "Rejected, the queue is full");
+            }
+            throw e;
+        }
+
+        System.out.println("Job " + job.getId() + " queued (" + executor.getQueue().size() + " waiting)");
+        return job;
+    }
+
+    /**
+     * Get a job by its id
+     * 
+     * @param id The job id
+     * @return The job, or null if it does not exist or has expired
+     */
+    public ConversionJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Cancel a job, killing its Audiveris process if it is running
+     * 
+     * @param id The job id
+     * @return The job, or null if it does not exist or has expired
+     */
+    public ConversionJob cancel(String id) {
+        ConversionJob job = jobs.get(id);
+        if (job != null && job.cancel()) {
+            // A job cancelled while queued would keep its place in the queue until a worker takes it
+            executor.purge();
+            if (journal != null) {
+                journal.finished(job.getId(), JobJournal.CANCELLED, job.getError());
+            }
+            System.out.println("Job " + job.getId() + " cancelled");
+        }
+        return job;
+    }
+
+    /**
+     * @return The number of jobs waiting for a worker
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return The number of jobs being converted
+     */
+    public int getInFlight() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return The number of seconds a rejected client should wait before retrying
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * @param resumedStage The last stage completed before a restart, null for a new job
+     */
+    private void run(ConversionJob job, String resumedStage) {
+        // The flight recorder events of the conversion carry the job id
+        try (PipelineEvents.Scope scope = PipelineEvents.enterJob(job.getId())) {
+            runNow(job, resumedStage);
+        }
+    }
+
+    private void runNow(ConversionJob job, String resumedStage) {
+        if (!job.markRunning()) {
+            return;
+        }
+        if (journal != null) {
+            journal.completed(job.getId(), JobJournal.STARTED);
+        }
+        System.out.println("Job " + job.getId() + " running");
+
+        StoredResult result = null;
+        String error = "Could not convert file";
+        try {
+            String midiPath = resumedStage != null ? resume(job, resumedStage) : null;
+            if (midiPath == null) {
+                midiPath = conversionService.convert(job.getUpload(), job.getTempos(), event -> publish(job, event));
+            }
+            if (midiPath != null) {
+                result = results.put(Path.of(midiPath));
+            }
+        } catch (Exception e) {
+            error = "Could not convert file: " + e.getMessage();
+        }
+
+        if (result == null && stopping && !job.isFinished() && journal != null && journal.isEnabled()) {
+            // Interrupted by the shutdown, the next start resumes it from its workspace
+            System.out.println("Job " + job.getId() + " interrupted by the shutdown");
+            return;
+        }
+        // The MIDI file is in the result store, nothing in the workspace is needed anymore
+        workspaces.delete(job.getUpload().workspace());
+
+        // Journaled before the job is seen as finished, so a restart right
+        // after a client saw it can't run it again. A cancelled job has been
+        // journaled when it was cancelled.
+        if (journal != null && job.getStatus() != ConversionJob.Status.CANCELLED) {
+            if (result != null) {
+                journal.delivered(job.getId(), result.id());
+            } else {
+                journal.finished(job.getId(), JobJournal.FAILED, error);
+            }
+        }
+
+        if (result != null) {
+            job.markSucceeded(result);
+        } else {
+            job.markFailed(error);
+        }
+
+        System.out.println("Job " + job.getId() + " finished with status " + job.getStatus());
+    }
+
+    private void publish(ConversionJob job, ProgressEvent event) {
+        job.publish(event);
+        String stage = journal != null ? JobJournal.stageOf(event) : null;
+        if (stage != null) {
+            journal.completed(job.getId(), stage);
+        }
+    }
+
+    /**
+     * Pick up the files a job interrupted by a restart left in its workspace
+     * 
+     * @param job The resumed job
+     * @param stage The last stage it completed
+     * @return The MIDI file if it had been written, null if the job has to be converted
+     */
+    private String resume(ConversionJob job, String stage) {
+        String fileName = job.getInputPath().getFileName().toString();
+        String baseName = fileName.substring(0, fileName.lastIndexOf('.'));
+        Path midiPath = job.getInputPath().resolveSibling(baseName + ".mid");
+        Path mxlPath = job.getInputPath().resolveSibling(baseName + ".mxl");
+
+        if (stage.equals(JobJournal.MIDI_DONE) && Files.exists(midiPath)) {
+            System.out.println("Job " + job.getId() + " resumed after its MIDI stage");
+            return midiPath.toString();
+        }
+        if (JobJournal.reached(stage, JobJournal.OMR_DONE) && Files.exists(mxlPath)) {
+            // Converting the upload again reuses the OMR output, only the MIDI stage runs
+            System.out.println("Job " + job.getId() + " resumed after its OMR stage");
+            conversionService.adoptOmrOutput(job.getUpload(), mxlPath);
+        }
+        return null;
+    }
+
+    /**
+     * Resume the jobs the previous run did not finish, and restore the ones
+     * it finished during the retention period
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        if (journal == null || !journal.isEnabled()) {
+            return;
+        }
+
+        Instant expiry = Instant.now().minus(retention);
+        int resumed = 0;
+        int restored = 0;
+        for (JobJournal.Entry entry : journal.replay()) {
+            if (entry.upload() == null || jobs.containsKey(entry.jobId())) {
+                continue;
+            }
+            if (!entry.isFinished()) {
+                resumed += resume(entry) ? 1 : 0;
+            } else if (entry.time().isAfter(expiry)) {
+                restored += restore(entry) ? 1 : 0;
+            }
+        }
+
+        if (resumed > 0 || restored > 0) {
+            System.out.println(resumed + " jobs resumed and " + restored + " finished jobs restored from the journal");
+        }
+    }
+
+    private boolean resume(JobJournal.Entry entry) {
+        Workspace workspace = workspaces.adopt(entry.workspaceId());
+        ConversionJob job = recreate(entry, workspace);
+        jobs.put(job.getId(), job);
+
+        String error = null;
+        if (workspace == null || !Files.exists(job.getInputPath())) {
+            error = "The upload was lost in a restart";
+        } else {
+            try {
+                job.setFuture(executor.submit(() -> run(job, entry.stage())));
+                System.out.println("Job " + job.getId() + " resumed from stage " + entry.stage());
+                return true;
+            } catch (RejectedExecutionException e) {
+                error = "Too many jobs to resume after a restart";
+            }
+        }
+
+        job.restore(ConversionJob.Status.FAILED, null, error, Instant.now());
+        journal.finished(job.getId(), JobJournal.FAILED, error);
+        workspaces.delete(workspace);
+        return false;
+    }
+
+    private boolean restore(JobJournal.Entry entry) {
+        StoredResult result = null;
+        if (JobJournal.DELIVERED.equals(entry.stage())) {
+            result = results.get(entry.resultId());
+            if (result == null) {
+                // Its MIDI file has expired
+                return false;
+            }
+        }
+
+        ConversionJob job = recreate(entry, null);
+        ConversionJob.Status status = switch (entry.stage()) {
+            case JobJournal.DELIVERED -> ConversionJob.Status.SUCCEEDED;
+            case JobJournal.CANCELLED -> ConversionJob.Status.CANCELLED;
+            default -> ConversionJob.Status.FAILED;
+        };
+        job.restore(status, result, entry.message(), entry.time());
+        jobs.put(job.getId(), job);
+        return true;
+    }
+
+    /**
+     * @param workspace The workspace of the job, null if it is gone
+     */
+    private static ConversionJob recreate(JobJournal.Entry entry, Workspace workspace) {
+        Path path = Path.of(entry.upload());
+        if (workspace == null) {
+            workspace = new Workspace(entry.workspaceId(), path.getParent());
+        }
+        SavedUpload upload = new SavedUpload(workspace, path, entry.sha256(), entry.size() != null ? entry.size() : 0);
+        return new ConversionJob(entry.jobId(), entry.fileName(), upload, entry.tempos(),
+            entry.receivedAt() != null ? entry.receivedAt() : entry.time());
+    }
+
+    /**
+     * Forget finished jobs older than the retention period, and delete the
+     * workspaces of the ones cancelled before they could start
+     */
+    @Scheduled(fixedDelayString = "${maestro.jobs.purge-interval-ms:60000}")
+    public void purgeExpiredJobs() {
+        Instant expiry = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if (job.isFinished() && job.getFinishedAt().isBefore(expiry)) {
+                workspaces.delete(job.getUpload().workspace());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package PFE008.backend;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * MusicXmlMerger class
+ *
+ * Merges the .mxl files exported for each page of a music sheet back into
+ * one score. The parts of every page are appended to the parts of the
+ * first page, and the measures of the following pages are renumbered so
+ * the numbers keep going up across pages.
+ *
+ * @version 2026.10.17
+ */
+public class MusicXmlMerger {
+
+    private MusicXmlMerger() {
+    }
+
+    /**
+     * Merge page scores into one .mxl file
+     *
+     * @param mxlPaths The .mxl files of the pages, in page order
+     * @param outputPath Path of the merged .mxl file
+     * @throws IOException If a page could not be read, or the pages don't have the same parts
+     */
+    public static void merge(List<Path> mxlPaths, Path outputPath) throws IOException {
+        if (mxlPaths.isEmpty()) {
+            throw new IOException("No page to merge");
+        }
+
+        Document score = read(mxlPaths.get(0));
+        List<Element> parts = childElements(score.getDocumentElement(), "part");
+        int[] lastNumbers = new int[parts.size()];
+        for (int i = 0; i < parts.size(); i++) {
+            lastNumbers[i] = lastMeasureNumber(parts.get(i));
+        }
+
+        for (int page = 1; page < mxlPaths.size(); page++) {
+            List<Element> pageParts = childElements(read(mxlPaths.get(page)).getDocumentElement(), "part");
+            if (pageParts.size() != parts.size()) {
+                throw new IOException("Page " + (page + 1) + " has " + pageParts.size() + " parts, expected " + parts.size());
+            }
+
+            for (int i = 0; i < parts.size(); i++) {
+                for (Element measure : childElements(pageParts.get(i), "measure")) {
+                    lastNumbers[i]++;
+                    measure.setAttribute("number", String.valueOf(lastNumbers[i]));
+                    parts.get(i).appendChild(score.importNode(measure, true));
+                }
+            }
+        }
+
+        write(score, outputPath);
+    }
+
+    private static Document read(Path mxlPath) throws IOException {
+        try (ZipFile zip = new ZipFile(mxlPath.toFile())) {
+            ZipEntry entry = MxlToMidiConverter.findRootFile(zip);
+            if (entry == null) {
+                throw new IOException("No MusicXML score found in " + mxlPath);
+            }
+
+            try (InputStream input = zip.getInputStream(entry)) {
+                Document document = newDocumentBuilder().parse(input);
+                if (!"score-partwise".equals(document.getDocumentElement().getTagName())) {
+                    throw new IOException("Unsupported score in " + mxlPath + ": " + document.getDocumentElement().getTagName());
+                }
+                return document;
+            }
+        } catch (SAXException e) {
+            throw new IOException("Could not parse " + mxlPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void write(Document score, Path outputPath) throws IOException {
+        String fileName = outputPath.getFileName().toString();
+        String scoreName = fileName.substring(0, fileName.lastIndexOf('.')) + ".xml";
+
+        try (OutputStream output = Files.newOutputStream(outputPath);
+             ZipOutputStream zip = new ZipOutputStream(output)) {
+            zip.putNextEntry(new ZipEntry("META-INF/container.xml"));
+            zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<container>\n"
+                + "  <rootfiles>\n"
+                + "    <rootfile full-path=\"" + scoreName + "\" media-type=\"application/vnd.recordare.musicxml+xml\"/>\n"
+                + "  </rootfiles>\n"
+                + "</container>\n").getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry(scoreName));
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            DocumentType doctype = score.getDoctype();
+            if (doctype != null && doctype.getPublicId() != null && doctype.getSystemId() != null) {
+                transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, doctype.getPublicId());
+                transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, doctype.getSystemId());
+            }
+            transformer.transform(new DOMSource(score), new StreamResult(zip));
+            zip.closeEntry();
+        } catch (TransformerException e) {
+            throw new IOException("Could not write " + outputPath + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static DocumentBuilder newDocumentBuilder() throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            // MusicXML files declare an external DTD, never fetch it
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setExpandEntityReferences(false);
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Could not create XML parser: " + e.getMessage(), e);
+        }
+    }
+
+    private static int lastMeasureNumber(Element part) {
+        List<Element> measures = childElements(part, "measure");
+        for (int i = measures.size() - 1; i >= 0; i--) {
+            try {
+                return Integer.parseInt(measures.get(i).getAttribute("number").trim());
+            } catch (NumberFormatException e) {
+                // Not a plain number, like "X1", look at the previous measure
+            }
+        }
+        return measures.size();
+    }
+
+    private static List<Element> childElements(Element parent, String tagName) {
+        List<Element> children = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element element && element.getTagName().equals(tagName)) {
+                children.add(element);
+            }
+        }
+        return children;
+    }
+}
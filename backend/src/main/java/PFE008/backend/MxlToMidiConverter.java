@@ -0,0 +1,795 @@
+package PFE008.backend;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * MxlToMidiConverter class
+ *
+ * In-process replacement for MxlToMidi.py. The MusicXML score is read
+ * straight out of the .mxl archive with a streaming StAX parser, then
+ * written as a Standard MIDI File with javax.sound.midi.
+ *
+ * It follows the same rules as the Python script:
+ * - tempo words ("Allegro", "Lento (...)") and "J = 90" texts set the tempo
+ *   at the start of their measure, and replace the tempos of measures 0 and 1,
+ * - custom tempos from the tempos JSON are only inserted in measures
+ *   that have no tempo yet,
+ * - dynamics set the velocity of the notes that follow them, 64 otherwise.
+ *
+ * @version 2026.10.17
+ */
+public class MxlToMidiConverter {
+    public static final int RESOLUTION = 480;
+
+    private static final int DEFAULT_VELOCITY = 64;
+    private static final double DEFAULT_BPM = 120;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Map<String, Integer> TEMPO_TERMS = new LinkedHashMap<>();
+    private static final Map<String, Double> DYNAMICS = new HashMap<>();
+
+    static {
+        // Same table as convert_tempo_term_to_bpm in MxlToMidi.py, the first match wins
+        addTempoTerms(24, "larghissimo", "very, very slow", "very very slow", "extrêmement lent", "sehr breit");
+        addTempoTerms(35, "grave", "very slow", "grave", "schwer", "solenne");
+        addTempoTerms(53, "largo", "broadly", "large", "largement", "breit");
+        addTempoTerms(54, "lentissimo", "slow", "très lent", "sehr langsam", "adagissimo");
+        addTempoTerms(59, "adagissimo", "rather slowly", "lentement modéré", "sehr ruhig");
+        addTempoTerms(60, "lento", "slowly", "lent", "langsam");
+        addTempoTerms(63, "larghetto", "rather broadly", "assez large", "etwas breit", "zart");
+        addTempoTerms(71, "adagio", "slow and stately", "à l'aise", "gemächlich");
+        addTempoTerms(74, "adagetto", "slower than andante", "assez vite", "ziemlich ruhig");
+        addTempoTerms(80, "tranquillo", "tranquil", "tranquille", "ruhig", "adagio");
+        addTempoTerms(94, "andante", "at a walking pace", "allant", "gehend");
+        addTempoTerms(98, "andantino", "slightly faster than andante", "un peu allant", "etwas gehend");
+        addTempoTerms(84, "marcia moderato", "moderately", "in the manner of a march", "modérément", "mäßig");
+        addTempoTerms(102, "andante moderato", "between andante and moderato", "très modéré", "mäßig", "andante très expressif");
+        addTempoTerms(114, "moderato", "moderately", "modéré", "mäßig");
+        // The dict of MxlToMidi.py has the key 120 twice, Python only keeps the second list,
+        // so "allegretto", "moderately fast" and "ein wenig schnell" have no tempo there either
+        addTempoTerms(120, "allegro moderato", "close to but not quite allegro", "allègrement", "vite", "fröhlich", "lustig");
+        addTempoTerms(140, "allegro", "fast, quickly, and bright", "vif", "schnell", "allegro moderato");
+        addTempoTerms(172, "vivace", "lively and fast", "vif", "lebhaft");
+        addTempoTerms(176, "vivacissimo", "very fast and lively", "extrêmement vif", "sehr rasch");
+        addTempoTerms(168, "allegrissimo", "very fast", "très vite", "geschwind");
+        addTempoTerms(188, "presto", "very, very fast", "very very fast", "très rapide", "sehr schnell");
+        addTempoTerms(200, "prestissimo", "even faster than presto", "extrêmement rapide", "äußerst schnell");
+
+        // Volume scalars of the music21 dynamics, velocity = scalar * 127
+        DYNAMICS.put("n", 0.0);
+        DYNAMICS.put("pppppp", 0.01);
+        DYNAMICS.put("ppppp", 0.03);
+        DYNAMICS.put("pppp", 0.1);
+        DYNAMICS.put("ppp", 0.15);
+        DYNAMICS.put("pp", 0.25);
+        DYNAMICS.put("p", 0.35);
+        DYNAMICS.put("mp", 0.45);
+        DYNAMICS.put("mf", 0.55);
+        DYNAMICS.put("f", 0.7);
+        DYNAMICS.put("ff", 0.8);
+        DYNAMICS.put("fff", 0.9);
+        DYNAMICS.put("ffff", 0.95);
+        DYNAMICS.put("fffff", 0.98);
+        DYNAMICS.put("ffffff", 0.99);
+        DYNAMICS.put("fp", 0.55);
+        DYNAMICS.put("sf", 0.7);
+        DYNAMICS.put("sfz", 0.7);
+        DYNAMICS.put("sffz", 0.8);
+        DYNAMICS.put("sfp", 0.55);
+        DYNAMICS.put("sfpp", 0.55);
+        DYNAMICS.put("fz", 0.7);
+        DYNAMICS.put("rf", 0.7);
+        DYNAMICS.put("rfz", 0.7);
+    }
+
+    private final String tempos;
+
+    public MxlToMidiConverter() {
+        this(null);
+    }
+
+    public MxlToMidiConverter(String tempos) {
+        this.tempos = tempos;
+    }
+
+    /**
+     * Convert a .mxl file to a .mid file written next to it
+     *
+     * @param mxlPath Path to the .mxl file
+     * @return The .mid path
+     * @throws IOException If the score could not be read or the MIDI file written
+     */
+    public String convert(String mxlPath) throws IOException {
+        String midiPath = mxlPath.substring(0, mxlPath.lastIndexOf('.')) + ".mid";
+        convert(Path.of(mxlPath), Path.of(midiPath));
+        return midiPath;
+    }
+
+    /**
+     * Convert a MusicXML score to a .mid file
+     *
+     * @param scorePath Path to the score, either a .mxl archive or an uncompressed MusicXML file
+     * @param midiPath Path of the .mid file to write
+     * @throws IOException If the score could not be read or the MIDI file written
+     */
+    public void convert(Path scorePath, Path midiPath) throws IOException {
+        Score score = readScore(scorePath);
+
+        try {
+            Sequence sequence = toSequence(score);
+            MidiSystem.write(sequence, 1, midiPath.toFile());
+        } catch (InvalidMidiDataException e) {
+            throw new IOException("Could not build MIDI sequence: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write the uncompressed MusicXML score contained in a .mxl archive
+     *
+     * @param mxlPath Path to the .mxl file
+     * @param xmlPath Path of the MusicXML file to write
+     * @throws IOException If the score could not be found or written
+     */
+    public static void extractScore(Path mxlPath, Path xmlPath) throws IOException {
+        try (ZipFile zip = new ZipFile(mxlPath.toFile())) {
+            ZipEntry entry = findRootFile(zip);
+            if (entry == null) {
+                throw new IOException("No MusicXML score found in " + mxlPath);
+            }
+            try (InputStream input = zip.getInputStream(entry)) {
+                Files.copy(input, xmlPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Get the tempo of a tempo word, like MxlToMidi.py does
+     *
+     * @param wordsText The text of a words direction
+     * @return The tempo in BPM, or null if the text is not a tempo
+     */
+    public static Integer tempoFromWords(String wordsText) {
+        if (wordsText.contains("J =") || wordsText.contains("J=") || wordsText.contains("J. =") || wordsText.contains("J.=")) {
+            String[] parts = wordsText.split("=");
+            try {
+                return parts.length > 1 ? Integer.parseInt(parts[1].strip()) : null;
+            } catch (NumberFormatException e) {
+                System.out.println("Error parsing J value in '" + wordsText + "': " + e.getMessage());
+                return null;
+            }
+        }
+
+        String tempoWord = wordsText.contains("(") ? wordsText.split("\\(")[0].strip() : wordsText.strip();
+        return TEMPO_TERMS.get(tempoWord.toLowerCase(Locale.ROOT));
+    }
+
+    private static void addTempoTerms(int bpm, String... terms) {
+        for (String term : terms) {
+            TEMPO_TERMS.putIfAbsent(term, bpm);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // MusicXML files declare an external DTD, never fetch it
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    private Score readScore(Path scorePath) throws IOException {
+        if (!isZip(scorePath)) {
+            try (InputStream input = new BufferedInputStream(Files.newInputStream(scorePath))) {
+                return parse(input);
+            }
+        }
+
+        try (ZipFile zip = new ZipFile(scorePath.toFile())) {
+            ZipEntry entry = findRootFile(zip);
+            if (entry == null) {
+                throw new IOException("No MusicXML score found in " + scorePath);
+            }
+            try (InputStream input = new BufferedInputStream(zip.getInputStream(entry))) {
+                return parse(input);
+            }
+        }
+    }
+
+    private static boolean isZip(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            byte[] header = input.readNBytes(4);
+            return header.length == 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4;
+        }
+    }
+
+    /**
+     * Find the score in a .mxl archive, using META-INF/container.xml when present
+     */
+    static ZipEntry findRootFile(ZipFile zip) throws IOException {
+        ZipEntry container = zip.getEntry("META-INF/container.xml");
+        if (container != null) {
+            try (InputStream input = zip.getInputStream(container)) {
+                XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(input);
+                try {
+                    while (reader.hasNext()) {
+                        if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("rootfile")) {
+                            ZipEntry entry = zip.getEntry(reader.getAttributeValue(null, "full-path"));
+                            if (entry != null) {
+                                return entry;
+                            }
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException("Invalid container.xml: " + e.getMessage(), e);
+            }
+        }
+
+        return zip.stream()
+            .filter(entry -> !entry.isDirectory() && !entry.getName().startsWith("META-INF/") && entry.getName().endsWith(".xml"))
+            .findFirst()
+            .orElse(null);
+    }
+
+    private Score parse(InputStream input) throws IOException {
+        Score score = new Score();
+
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(input, StandardCharsets.UTF_8.name());
+            try {
+                new ScoreReader(reader, score).read();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Invalid MusicXML: " + e.getMessage(), e);
+        }
+
+        return score;
+    }
+
+    private Sequence toSequence(Score score) throws InvalidMidiDataException, IOException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track conductor = sequence.createTrack();
+
+        for (Map.Entry<Long, Double> tempo : buildTempoMap(score).entrySet()) {
+            // Kept within the 3 bytes of the meta message, a tempo under about 3.6 BPM would wrap around
+            int microsecondsPerQuarter = (int) Math.max(1, Math.min(0xFFFFFF, Math.round(60000000 / tempo.getValue())));
+            byte[] data = {(byte) (microsecondsPerQuarter >> 16), (byte) (microsecondsPerQuarter >> 8), (byte) microsecondsPerQuarter};
+            conductor.add(new MidiEvent(new MetaMessage(0x51, data, 3), tempo.getKey()));
+        }
+        for (Map.Entry<Long, int[]> time : score.timeSignatures.entrySet()) {
+            int beats = time.getValue()[0];
+            int beatType = Integer.numberOfTrailingZeros(time.getValue()[1]);
+            conductor.add(new MidiEvent(new MetaMessage(0x58, new byte[]{(byte) beats, (byte) beatType, 24, 8}, 4), time.getKey()));
+        }
+        for (Map.Entry<Long, int[]> key : score.keySignatures.entrySet()) {
+            byte[] data = {(byte) key.getValue()[0], (byte) key.getValue()[1]};
+            conductor.add(new MidiEvent(new MetaMessage(0x59, data, 2), key.getKey()));
+        }
+
+        int index = 0;
+        for (PartData part : score.parts.values()) {
+            if (!part.present) {
+                continue;
+            }
+
+            Track track = sequence.createTrack();
+            int channel = part.channel >= 0 ? part.channel : (index < 9 ? index : index + 1) % 16;
+            index++;
+
+            if (part.name != null) {
+                byte[] name = part.name.getBytes(StandardCharsets.UTF_8);
+                track.add(new MidiEvent(new MetaMessage(0x03, name, name.length), 0));
+            }
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, channel, part.program, 0), 0));
+
+            // Note offs first at equal ticks, so repeated notes are not cut short
+            List<long[]> events = new ArrayList<>();
+            for (NoteData note : part.notes) {
+                int velocity = velocityAt(part, note.startTick);
+                events.add(new long[]{note.startTick, 1, note.pitch, velocity});
+                events.add(new long[]{note.endTick, 0, note.pitch, 0});
+            }
+            events.sort(Comparator.<long[]>comparingLong(event -> event[0]).thenComparingLong(event -> event[1]));
+
+            for (long[] event : events) {
+                int command = event[1] == 1 ? ShortMessage.NOTE_ON : ShortMessage.NOTE_OFF;
+                track.add(new MidiEvent(new ShortMessage(command, channel, (int) event[2], (int) event[3]), event[0]));
+            }
+        }
+
+        return sequence;
+    }
+
+    private TreeMap<Long, Double> buildTempoMap(Score score) throws IOException {
+        TreeMap<Long, Double> tempoMap = new TreeMap<>();
+        Set<Integer> measuresWithTempo = new HashSet<>();
+
+        // Tempos already in the score, except the initial ones that MxlToMidi.py clears
+        for (TempoMark mark : score.scoreTempos) {
+            if (mark.measure != null && (mark.measure == 0 || mark.measure == 1)) {
+                continue;
+            }
+            tempoMap.put(mark.tick, mark.bpm);
+            if (mark.measure != null) {
+                measuresWithTempo.add(mark.measure);
+            }
+        }
+
+        // Tempos found in the words directions
+        for (Map.Entry<Integer, Integer> wordTempo : score.wordTempos.entrySet()) {
+            Long tick = score.measureStarts.get(wordTempo.getKey());
+            if (tick != null) {
+                System.out.println("Measure Number: " + wordTempo.getKey() + ", Tempo: " + wordTempo.getValue());
+                tempoMap.put(tick, wordTempo.getValue().doubleValue());
+                measuresWithTempo.add(wordTempo.getKey());
+            }
+        }
+
+        // Custom tempos provided by the user, where no tempo exists yet
+        if (tempos != null && !tempos.isBlank()) {
+            JsonNode marks;
+            try {
+                marks = MAPPER.readTree(tempos);
+            } catch (IOException e) {
+                throw new IOException("Error parsing custom tempos JSON: " + e.getMessage(), e);
+            }
+
+            for (JsonNode mark : marks) {
+                JsonNode measure = mark.get("measure");
+                JsonNode tempo = mark.get("tempo");
+                if (measure == null || measure.isNull() || tempo == null || tempo.isNull()) {
+                    continue;
+                }
+
+                int measureNumber = measure.asInt();
+                Long tick = score.measureStarts.get(measureNumber);
+                if (tick != null && measuresWithTempo.add(measureNumber)) {
+                    tempoMap.put(tick, tempo.asDouble());
+                    System.out.println("Inserted custom tempo " + tempo.asText() + " at measure " + measureNumber);
+                }
+            }
+        }
+
+        tempoMap.putIfAbsent(0L, DEFAULT_BPM);
+        tempoMap.values().removeIf(bpm -> bpm <= 0);
+        return tempoMap;
+    }
+
+    private static int velocityAt(PartData part, long tick) {
+        Map.Entry<Long, Double> dynamic = part.dynamics.floorEntry(tick);
+        if (dynamic == null) {
+            return DEFAULT_VELOCITY;
+        }
+        return Math.min(127, (int) (dynamic.getValue() * 127));
+    }
+
+    private static long toTicks(double quarters) {
+        return Math.round(quarters * RESOLUTION);
+    }
+
+    /**
+     * Everything the MIDI file needs, collected in a single pass over the score
+     */
+    private static class Score {
+        final Map<String, PartData> parts = new LinkedHashMap<>();
+        final Map<Integer, Long> measureStarts = new HashMap<>();
+        final Map<Integer, Integer> wordTempos = new LinkedHashMap<>();
+        final List<TempoMark> scoreTempos = new ArrayList<>();
+        final TreeMap<Long, int[]> timeSignatures = new TreeMap<>();
+        final TreeMap<Long, int[]> keySignatures = new TreeMap<>();
+
+        PartData part(String id) {
+            return parts.computeIfAbsent(id, PartData::new);
+        }
+    }
+
+    private static class PartData {
+        final String id;
+        String name;
+        int channel = -1;
+        int program;
+        boolean present;
+        final List<NoteData> notes = new ArrayList<>();
+        final TreeMap<Long, Double> dynamics = new TreeMap<>();
+        final Map<Integer, NoteData> tiedNotes = new HashMap<>();
+
+        PartData(String id) {
+            this.id = id;
+        }
+    }
+
+    private static class NoteData {
+        final int pitch;
+        final long startTick;
+        long endTick;
+
+        NoteData(int pitch, long startTick, long endTick) {
+            this.pitch = pitch;
+            this.startTick = startTick;
+            this.endTick = endTick;
+        }
+    }
+
+    private record TempoMark(Integer measure, long tick, double bpm) {
+    }
+
+    /**
+     * Walks the StAX events of a score-partwise document.
+     * Positions are kept in quarter notes and converted to ticks when stored.
+     */
+    private static class ScoreReader {
+        private final XMLStreamReader reader;
+        private final Score score;
+
+        private PartData listedPart;
+        private PartData part;
+        private boolean firstPart = true;
+        private Integer measureNumber;
+        private double divisions = 1;
+        private double position;
+        private double measureEnd;
+        private double lastNoteStart;
+
+        private String container;
+        private double duration;
+
+        // Current note
+        private boolean chord, rest, grace, cue, tieStart, tieStop;
+        private String step;
+        private double alter;
+        private int octave;
+
+        // Current direction
+        private boolean inDirection, inDynamics, wordsFound;
+        private String words, dynamic, beatUnit;
+        private int beatUnitDots;
+        private Double perMinute, soundTempo;
+        private double offset;
+
+        // Current time and key signatures
+        private Integer beats, beatType, fifths;
+        private String mode;
+
+        ScoreReader(XMLStreamReader reader, Score score) {
+            this.reader = reader;
+            this.score = score;
+        }
+
+        void read() throws XMLStreamException {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    startElement(reader.getLocalName());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    endElement(reader.getLocalName());
+                }
+            }
+        }
+
+        private String text() throws XMLStreamException {
+            return reader.getElementText().strip();
+        }
+
+        private void startElement(String name) throws XMLStreamException {
+            if (inDynamics) {
+                dynamic = name.equals("other-dynamics") ? text() : name;
+                return;
+            }
+
+            switch (name) {
+                case "score-part" -> listedPart = score.part(reader.getAttributeValue(null, "id"));
+                case "part-name" -> {
+                    if (listedPart != null) {
+                        listedPart.name = text();
+                    }
+                }
+                case "midi-channel" -> {
+                    if (listedPart != null && listedPart.channel < 0) {
+                        listedPart.channel = (Integer.parseInt(text()) - 1) & 0x0F;
+                    }
+                }
+                case "midi-program" -> {
+                    if (listedPart != null) {
+                        listedPart.program = (Integer.parseInt(text()) - 1) & 0x7F;
+                    }
+                }
+                case "part" -> {
+                    part = score.part(reader.getAttributeValue(null, "id"));
+                    part.present = true;
+                    divisions = 1;
+                    position = 0;
+                    measureEnd = 0;
+                    lastNoteStart = 0;
+                }
+                case "measure" -> {
+                    measureNumber = parseMeasureNumber(reader.getAttributeValue(null, "number"));
+                    measureEnd = position;
+                    if (measureNumber != null) {
+                        score.measureStarts.putIfAbsent(measureNumber, toTicks(position));
+                    }
+                }
+                case "divisions" -> divisions = Double.parseDouble(text());
+                case "note" -> {
+                    container = name;
+                    duration = 0;
+                    chord = rest = grace = cue = tieStart = tieStop = false;
+                    step = null;
+                    alter = 0;
+                    octave = 4;
+                }
+                case "backup", "forward" -> {
+                    container = name;
+                    duration = 0;
+                }
+                case "duration" -> {
+                    if (container != null) {
+                        duration = Double.parseDouble(text());
+                    }
+                }
+                case "chord" -> chord = true;
+                case "rest" -> rest = true;
+                case "grace" -> grace = true;
+                case "cue" -> cue = true;
+                case "step", "display-step" -> {
+                    if (container != null) {
+                        step = text();
+                    }
+                }
+                case "alter" -> alter = Double.parseDouble(text());
+                case "octave", "display-octave" -> {
+                    if (container != null) {
+                        octave = Integer.parseInt(text());
+                    }
+                }
+                case "tie" -> {
+                    String type = reader.getAttributeValue(null, "type");
+                    tieStart |= "start".equals(type);
+                    tieStop |= "stop".equals(type);
+                }
+                case "direction" -> {
+                    inDirection = true;
+                    wordsFound = false;
+                    words = dynamic = beatUnit = null;
+                    perMinute = soundTempo = null;
+                    beatUnitDots = 0;
+                    offset = 0;
+                }
+                case "words" -> {
+                    // Like MxlToMidi.py, only the first words of a direction are looked at
+                    if (inDirection && !wordsFound) {
+                        wordsFound = true;
+                        words = reader.getElementText();
+                    }
+                }
+                case "dynamics" -> inDynamics = inDirection;
+                case "offset" -> {
+                    if (inDirection) {
+                        offset = Double.parseDouble(text());
+                    }
+                }
+                case "beat-unit" -> beatUnit = text();
+                case "beat-unit-dot" -> beatUnitDots++;
+                case "per-minute" -> perMinute = parseNumber(text());
+                case "sound" -> {
+                    Double tempo = parseNumber(reader.getAttributeValue(null, "tempo"));
+                    if (inDirection) {
+                        soundTempo = tempo != null ? tempo : soundTempo;
+                    } else if (tempo != null && part != null) {
+                        score.scoreTempos.add(new TempoMark(measureNumber, toTicks(position), tempo));
+                    }
+                }
+                case "time" -> beats = beatType = null;
+                case "beats" -> beats = parseInteger(text());
+                case "beat-type" -> beatType = parseInteger(text());
+                case "key" -> {
+                    fifths = null;
+                    mode = null;
+                }
+                case "fifths" -> fifths = parseInteger(text());
+                case "mode" -> mode = text();
+                default -> {
+                }
+            }
+        }
+
+        private void endElement(String name) {
+            switch (name) {
+                case "score-part" -> listedPart = null;
+                case "part" -> {
+                    part = null;
+                    firstPart = false;
+                }
+                case "measure" -> position = Math.max(position, measureEnd);
+                case "note" -> {
+                    endNote();
+                    container = null;
+                }
+                case "backup" -> {
+                    position -= duration / divisions;
+                    container = null;
+                }
+                case "forward" -> {
+                    position += duration / divisions;
+                    measureEnd = Math.max(measureEnd, position);
+                    container = null;
+                }
+                case "dynamics" -> inDynamics = false;
+                case "direction" -> {
+                    endDirection();
+                    inDirection = false;
+                }
+                case "time" -> {
+                    if (firstPart && beats != null && beatType != null && Integer.bitCount(beatType) == 1) {
+                        score.timeSignatures.put(toTicks(position), new int[]{beats, beatType});
+                    }
+                }
+                case "key" -> {
+                    if (firstPart && fifths != null) {
+                        score.keySignatures.put(toTicks(position), new int[]{fifths, "minor".equals(mode) ? 1 : 0});
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        private void endNote() {
+            if (part == null || grace || cue) {
+                return;
+            }
+
+            double start = chord ? lastNoteStart : position;
+            double length = duration / divisions;
+            if (!chord) {
+                lastNoteStart = position;
+                position += length;
+                measureEnd = Math.max(measureEnd, position);
+            }
+
+            if (rest || step == null) {
+                return;
+            }
+
+            int pitch = (octave + 1) * 12 + stepSemitone(step) + (int) Math.round(alter);
+            if (pitch < 0 || pitch > 127) {
+                return;
+            }
+
+            long startTick = toTicks(start);
+            long endTick = toTicks(start + length);
+
+            NoteData tied = tieStop ? part.tiedNotes.get(pitch) : null;
+            if (tied != null) {
+                tied.endTick = Math.max(tied.endTick, endTick);
+                if (!tieStart) {
+                    part.tiedNotes.remove(pitch);
+                }
+                return;
+            }
+
+            NoteData note = new NoteData(pitch, startTick, endTick);
+            part.notes.add(note);
+            if (tieStart) {
+                part.tiedNotes.put(pitch, note);
+            }
+        }
+
+        private void endDirection() {
+            if (part == null) {
+                return;
+            }
+
+            long tick = toTicks(position + offset / divisions);
+
+            if (dynamic != null && DYNAMICS.containsKey(dynamic)) {
+                part.dynamics.put(tick, DYNAMICS.get(dynamic));
+            }
+
+            if (soundTempo != null) {
+                score.scoreTempos.add(new TempoMark(measureNumber, tick, soundTempo));
+            } else if (perMinute != null) {
+                score.scoreTempos.add(new TempoMark(measureNumber, tick, perMinute * beatUnitQuarters(beatUnit, beatUnitDots)));
+            }
+
+            if (words != null && !words.isEmpty() && measureNumber != null) {
+                Integer tempo = tempoFromWords(words);
+                if (tempo != null) {
+                    score.wordTempos.put(measureNumber, tempo);
+                }
+            }
+        }
+
+        private static int stepSemitone(String step) {
+            return switch (step.toUpperCase(Locale.ROOT)) {
+                case "C" -> 0;
+                case "D" -> 2;
+                case "E" -> 4;
+                case "F" -> 5;
+                case "G" -> 7;
+                case "A" -> 9;
+                case "B" -> 11;
+                default -> throw new NumberFormatException("Unknown step " + step);
+            };
+        }
+
+        private static double beatUnitQuarters(String beatUnit, int dots) {
+            double quarters = switch (beatUnit == null ? "quarter" : beatUnit) {
+                case "breve" -> 8;
+                case "whole" -> 4;
+                case "half" -> 2;
+                case "eighth" -> 0.5;
+                case "16th" -> 0.25;
+                case "32nd" -> 0.125;
+                default -> 1;
+            };
+            double dotValue = quarters;
+            for (int i = 0; i < dots; i++) {
+                dotValue /= 2;
+                quarters += dotValue;
+            }
+            return quarters;
+        }
+
+        private static Integer parseMeasureNumber(String number) {
+            return number == null ? null : parseInteger(number);
+        }
+
+        private static Integer parseInteger(String text) {
+            try {
+                return Integer.parseInt(text.strip());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static Double parseNumber(String text) {
+            if (text == null) {
+                return null;
+            }
+            try {
+                return Double.parseDouble(text.strip());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
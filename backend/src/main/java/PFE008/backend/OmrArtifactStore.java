@@ -0,0 +1,155 @@
+package PFE008.backend;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * OmrArtifactStore class
+ * 
+ * This class keeps the .mxl (and .xml) exported by Audiveris for each
+ * uploaded music sheet, so the MIDI file can be rendered again with other
+ * tempos without running the OMR a second time.
+ * 
+ * Artifacts are stored by upload id, which is the SHA-256 of the uploaded
+ * file, and expire when they have not been used for the configured TTL.
+ * 
+ * @version 2026.10.17
+ */
+@Component
+public class OmrArtifactStore {
+    private final Path storeDir;
+    private final Duration ttl;
+    private final Map<String, Instant> lastUsed = new ConcurrentHashMap<>();
+
+    public OmrArtifactStore(@Value("${maestro.omr.dir:Omr}") String storeDir,
+                            @Value("${maestro.omr.ttl-minutes:60}") long ttlMinutes) {
+        this.storeDir = Paths.get(storeDir);
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+
+        // Artifacts left by a previous run are kept until they expire
+        File[] dirs = this.storeDir.toFile().listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                lastUsed.put(dir.getName(), Instant.ofEpochMilli(dir.lastModified()));
+            }
+        }
+    }
+
+    /**
+     * Keep the OMR output of an upload
+     * 
+     * @param uploadId The upload id
+     * @param mxlPath Path to the .mxl exported by Audiveris. The .xml next to it is kept too if it exists.
+     */
+    public void put(String uploadId, Path mxlPath) {
+        try {
+            Path dir = storeDir.resolve(uploadId);
+            Files.createDirectories(dir);
+
+            Files.copy(mxlPath, dir.resolve(uploadId + ".mxl"), StandardCopyOption.REPLACE_EXISTING);
+            Path xmlPath = sibling(mxlPath, ".xml");
+            if (Files.exists(xmlPath)) {
+                Files.copy(xmlPath, dir.resolve(uploadId + ".xml"), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            lastUsed.put(uploadId, Instant.now());
+        } catch (IOException e) {
+            System.out.println("Could not keep OMR output of " + uploadId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the .mxl kept for an upload, refreshing its TTL
+     * 
+     * @param uploadId The upload id
+     * @return The .mxl path, or null if there is none or it has expired
+     */
+    public Path get(String uploadId) {
+        if (!isValidId(uploadId) || !lastUsed.containsKey(uploadId)) {
+            return null;
+        }
+
+        Path mxlPath = storeDir.resolve(uploadId).resolve(uploadId + ".mxl");
+        if (!Files.exists(mxlPath)) {
+            lastUsed.remove(uploadId);
+            return null;
+        }
+
+        lastUsed.put(uploadId, Instant.now());
+        return mxlPath;
+    }
+
+    /**
+     * Copy the OMR output of an upload to a directory, under a new name,
+     * so it can be converted without touching the kept files
+     * 
+     * @param uploadId The upload id
+     * @param dir The directory to copy the files to
+     * @param fileCode The base name of the copies
+     * @return The path to the copied .mxl, or null if there is no OMR output for this upload
+     * @throws IOException If the files could not be copied
+     */
+    public Path copyTo(String uploadId, Path dir, String fileCode) throws IOException {
+        Path mxlPath = get(uploadId);
+        if (mxlPath == null) {
+            return null;
+        }
+
+        Files.createDirectories(dir);
+        Path target = dir.resolve(fileCode + ".mxl");
+        Files.copy(mxlPath, target, StandardCopyOption.REPLACE_EXISTING);
+
+        Path xmlPath = sibling(mxlPath, ".xml");
+        if (Files.exists(xmlPath)) {
+            Files.copy(xmlPath, dir.resolve(fileCode + ".xml"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return target;
+    }
+
+    /**
+     * Delete the artifacts that have not been used for the TTL
+     */
+    @Scheduled(fixedDelayString = "${maestro.omr.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        Instant expiry = Instant.now().minus(ttl);
+        lastUsed.entrySet().removeIf(entry -> {
+            if (entry.getValue().isBefore(expiry)) {
+                delete(storeDir.resolve(entry.getKey()).toFile());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static boolean isValidId(String uploadId) {
+        // Upload ids are hex encoded hashes, anything else could escape the store directory
+        return uploadId != null && uploadId.matches("[0-9a-f]{64}");
+    }
+
+    private static Path sibling(Path path, String extension) {
+        String fileName = path.getFileName().toString();
+        return path.resolveSibling(fileName.substring(0, fileName.lastIndexOf('.')) + extension);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,75 @@
+package PFE008.backend;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * PageOmrExecutor class
+ *
+ * This class runs the Audiveris runs of the pages of a music sheet
+ * concurrently. It is shared by every conversion, so the number of
+ * pages processed at the same time stays at the number of processors
+ * (or maestro.audiveris.page-workers) whatever the number of jobs.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class PageOmrExecutor {
+    private final ExecutorService executor;
+    private final int workers;
+
+    public PageOmrExecutor(AudiverisSettings settings, ExecutionMode executionMode) {
+        this.workers = settings.getPageWorkers() > 0 ? settings.getPageWorkers() : Runtime.getRuntime().availableProcessors();
+        this.executor = Executors.newFixedThreadPool(workers, executionMode.threadFactory("omr-page-"));
+    }
+
+    /**
+     * @return The number of pages processed at the same time
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Run tasks concurrently and wait for all of them
+     *
+     * @param tasks The tasks, each returning an exit code
+     * @return The exit codes, in the order of the tasks
+     * @throws IOException If a task failed
+     * @throws InterruptedException If interrupted while waiting, the remaining tasks are cancelled
+     */
+    public List<Integer> runAll(List<Callable<Integer>> tasks) throws IOException, InterruptedException {
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (Callable<Integer> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+
+        List<Integer> results = new ArrayList<>();
+        try {
+            for (Future<Integer> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IOException("Page task failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,56 @@
+package PFE008.backend;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.multipdf.Splitter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PdfPageSplitter class
+ *
+ * Splits a PDF music sheet into one PDF file per page, so Audiveris can
+ * process the pages concurrently.
+ *
+ * @version 2026.10.17
+ */
+public class PdfPageSplitter {
+
+    private PdfPageSplitter() {
+    }
+
+    /**
+     * Split a PDF file into single-page files named {baseName}-p001.pdf, {baseName}-p002.pdf...
+     *
+     * @param pdfPath Path to the PDF file
+     * @param outputDir Directory of the page files, created if needed
+     * @param baseName Prefix of the page file names
+     * @return The page files, empty if the PDF has less than two pages
+     * @throws IOException If the PDF could not be read or a page could not be written
+     */
+    public static List<Path> split(Path pdfPath, Path outputDir, String baseName) throws IOException {
+        List<Path> pagePaths = new ArrayList<>();
+
+        try (PDDocument document = Loader.loadPDF(pdfPath.toFile())) {
+            if (document.getNumberOfPages() < 2) {
+                return pagePaths;
+            }
+
+            Files.createDirectories(outputDir);
+            List<PDDocument> pages = new Splitter().split(document);
+            for (int i = 0; i < pages.size(); i++) {
+                Path pagePath = outputDir.resolve(String.format("%s-p%03d.pdf", baseName, i + 1));
+                try (PDDocument page = pages.get(i)) {
+                    page.save(pagePath.toFile());
+                }
+                pagePaths.add(pagePath);
+            }
+        }
+
+        return pagePaths;
+    }
+}
@@ -0,0 +1,250 @@
+package PFE008.backend;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.concurrent.Callable;
+
+/**
+ * PipelineEvents class
+ *
+ * Defines the Java Flight Recorder events of the conversion pipeline, so
+ * a recording shows the stages of each conversion next to the GC, I/O
+ * and thread events of the JVM during them. The events are written when
+ * the JVM records, like with -XX:StartFlightRecording, and cost almost
+ * nothing otherwise.
+ *
+ * The job id, workspace, file size and page count of the conversion are
+ * kept for the thread running it, so the stages deep in the pipeline,
+ * like the Audiveris runs, can fill them in without having them passed.
+ *
+ * @version 2026.10.17
+ */
+public final class PipelineEvents {
+    static final String CATEGORY = "Maestro";
+    // Stages with an event but no timer
+    public static final String STAGE_TYPE_DETECTION = "type_detection";
+    public static final String STAGE_RESPONSE = "response";
+
+    private static final ThreadLocal<Conversion> CURRENT = new ThreadLocal<>();
+
+    private PipelineEvents() {
+    }
+
+    /**
+     * The fields shared by the events of every stage
+     */
+    @Category({CATEGORY, "Pipeline"})
+    @StackTrace(false)
+    public abstract static class StageEvent extends Event {
+        @Label("Stage")
+        @Description("Stage name, as in the maestro.stage.duration metric")
+        public String stage;
+
+        @Label("Job Id")
+        @Description("Id of the asynchronous job, null for a synchronous conversion")
+        public String jobId;
+
+        @Label("Workspace Id")
+        public String workspaceId;
+
+        @Label("File Size")
+        @DataAmount
+        public long fileSize;
+
+        @Label("Pages")
+        @Description("Pages of the music sheet, 0 if unknown")
+        public int pages;
+
+        @Label("Exit Code")
+        @Description("Exit code of the process, 0 for a stage run in the backend JVM that succeeded")
+        public int exitCode;
+
+        @Label("Success")
+        public boolean success;
+
+        /**
+         * Start the event, with the fields of the conversion of this thread
+         *
+         * @param stage The stage name
+         */
+        void start(String stage) {
+            this.stage = stage;
+            Conversion conversion = CURRENT.get();
+            if (conversion != null) {
+                jobId = conversion.jobId;
+                workspaceId = conversion.workspaceId;
+                fileSize = conversion.fileSize;
+                pages = conversion.pages;
+            }
+            begin();
+        }
+
+        /**
+         * End the event and write it if it is recorded
+         *
+         * @param exitCode The exit code
+         */
+        void finish(int exitCode) {
+            this.exitCode = exitCode;
+            this.success = exitCode == 0;
+            end();
+            if (shouldCommit()) {
+                commit();
+            }
+        }
+    }
+
+    @Name("maestro.Ingest")
+    @Label("Upload Ingest")
+    @Description("An uploaded music sheet validated and saved to its workspace")
+    public static final class IngestEvent extends StageEvent {
+    }
+
+    @Name("maestro.TypeDetection")
+    @Label("Type Detection")
+    @Description("Detection of the content type of an upload from its first bytes")
+    public static final class TypeDetectionEvent extends StageEvent {
+        @Label("Content Type")
+        public String contentType;
+    }
+
+    @Name("maestro.Audiveris")
+    @Label("Audiveris Run")
+    @Description("An Audiveris run, on a warm worker or in a new JVM")
+    public static final class AudiverisEvent extends StageEvent {
+    }
+
+    @Name("maestro.Midi")
+    @Label("MXL to MIDI")
+    @Description("Conversion of the exported .mxl file to a .mid file")
+    public static final class MidiEvent extends StageEvent {
+    }
+
+    @Name("maestro.Response")
+    @Label("Response Streaming")
+    @Description("A MIDI file sent to a client")
+    public static final class ResponseEvent extends StageEvent {
+        @Label("Result Id")
+        public String resultId;
+
+        @Label("Bytes Sent")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("maestro.Cleanup")
+    @Label("Workspace Cleanup")
+    @Description("Deletion of the workspace of a conversion")
+    public static final class CleanupEvent extends StageEvent {
+    }
+
+    /**
+     * The conversion running on a thread
+     */
+    static final class Conversion {
+        final String jobId;
+        final String workspaceId;
+        final long fileSize;
+        volatile int pages;
+
+        Conversion(String jobId, String workspaceId, long fileSize, int pages) {
+            this.jobId = jobId;
+            this.workspaceId = workspaceId;
+            this.fileSize = fileSize;
+            this.pages = pages;
+        }
+    }
+
+    /**
+     * Gives the thread back its previous conversion when closed
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Conversion previous;
+
+        private Scope(Conversion previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Attach the events of this thread to a job, until the scope is closed
+     *
+     * @param jobId The job id
+     * @return The scope to close
+     */
+    public static Scope enterJob(String jobId) {
+        Conversion previous = CURRENT.get();
+        CURRENT.set(new Conversion(jobId, null, 0, 0));
+        return new Scope(previous);
+    }
+
+    /**
+     * Attach the events of this thread to the conversion of an upload,
+     * keeping the job id of the enclosing scope, until the scope is closed
+     *
+     * @param upload The saved music sheet
+     * @return The scope to close
+     */
+    public static Scope enterConversion(SavedUpload upload) {
+        Conversion previous = CURRENT.get();
+        CURRENT.set(new Conversion(previous != null ? previous.jobId : null, upload.workspace().id(), upload.size(), 0));
+        return new Scope(previous);
+    }
+
+    /**
+     * Set the page count of the conversion of this thread, once known
+     *
+     * @param pages The number of pages
+     */
+    static void setPages(int pages) {
+        Conversion conversion = CURRENT.get();
+        if (conversion != null) {
+            conversion.pages = pages;
+        }
+    }
+
+    /**
+     * @return The page count of the conversion of this thread, 0 if unknown
+     */
+    static int getPages() {
+        Conversion conversion = CURRENT.get();
+        return conversion != null ? conversion.pages : 0;
+    }
+
+    /**
+     * Run a task of the conversion of this thread on another thread, like a page run
+     *
+     * @param task The task
+     * @return The task, attached to the conversion
+     */
+    static <T> Callable<T> propagate(Callable<T> task) {
+        Conversion conversion = CURRENT.get();
+        if (conversion == null) {
+            return task;
+        }
+        return () -> {
+            Conversion previous = CURRENT.get();
+            CURRENT.set(conversion);
+            try {
+                return task.call();
+            } finally {
+                new Scope(previous).close();
+            }
+        };
+    }
+}
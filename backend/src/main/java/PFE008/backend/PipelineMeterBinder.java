@@ -0,0 +1,112 @@
+package PFE008.backend;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * PipelineMeterBinder class
+ * 
+ * Registers the gauges of the conversion pipeline: job queue depth and
+ * in-flight jobs, conversions waiting for and holding a scheduler slot,
+ * the learned cost of a page, jobs in the shared queue, CPU permits in use, idle Audiveris workers, the
+ * state of the conversion cache, the coalesced conversions and the workspaces. The stage timers are recorded by
+ * {@link PipelineMetrics}.
+ * 
+ * @version 2026.10.17
+ */
+@Component
+public class PipelineMeterBinder implements MeterBinder {
+    private final JobService jobService;
+    private final ConversionScheduler scheduler;
+    private final FileJobQueue queue;
+    private final CpuPermits cpuPermits;
+    private final AudiverisWorkerPool workerPool;
+    private final ConversionCache cache;
+    private final WorkspaceManager workspaces;
+    private final ConversionService conversionService;
+
+    public PipelineMeterBinder(JobService jobService, ConversionScheduler scheduler, FileJobQueue queue, CpuPermits cpuPermits, AudiverisWorkerPool workerPool,
+                               ConversionCache cache, WorkspaceManager workspaces, ConversionService conversionService) {
+        this.jobService = jobService;
+        this.scheduler = scheduler;
+        this.queue = queue;
+        this.cpuPermits = cpuPermits;
+        this.workerPool = workerPool;
+        this.cache = cache;
+        this.workspaces = workspaces;
+        this.conversionService = conversionService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("maestro.jobs.queued", jobService, JobService::getQueueDepth)
+            .description("Jobs waiting for a worker")
+            .register(registry);
+        Gauge.builder("maestro.jobs.in.flight", jobService, JobService::getInFlight)
+            .description("Jobs being converted")
+            .register(registry);
+        Gauge.builder("maestro.scheduler.waiting", scheduler, ConversionScheduler::getWaiting)
+            .description("Conversions waiting for a slot to run Audiveris")
+            .register(registry);
+        Gauge.builder("maestro.scheduler.running", scheduler, ConversionScheduler::getRunning)
+            .description("Conversions holding a slot")
+            .register(registry);
+        Gauge.builder("maestro.scheduler.slots", scheduler, ConversionScheduler::getSlots)
+            .description("Slots to run Audiveris, set by the adaptive limiter when it is enabled")
+            .register(registry);
+        for (String kind : new String[] {ConversionScheduler.KIND_PDF, ConversionScheduler.KIND_IMAGE}) {
+            Gauge.builder("maestro.scheduler.page.cost", scheduler, s -> s.getSecondsPerUnit(kind))
+                .description("Learned OMR time of an A4 page or a 2 MP image")
+                .tag("kind", kind)
+                .baseUnit("seconds")
+                .register(registry);
+        }
+        Gauge.builder("maestro.queue.pending", queue, FileJobQueue::getPendingCount)
+            .description("Jobs in the shared queue waiting for a worker node")
+            .register(registry);
+        Gauge.builder("maestro.queue.running", queue, FileJobQueue::getRunningCount)
+            .description("Jobs in the shared queue leased by a worker node")
+            .register(registry);
+        Gauge.builder("maestro.cpu.permits.in.use", cpuPermits, CpuPermits::getInUse)
+            .description("Audiveris runs and MIDI conversions holding a CPU permit")
+            .register(registry);
+        Gauge.builder("maestro.audiveris.workers.idle", workerPool, AudiverisWorkerPool::getIdleWorkers)
+            .description("Idle warm Audiveris workers")
+            .register(registry);
+
+        Gauge.builder("maestro.cache.size", cache, ConversionCache::getTotalBytes)
+            .description("Disk space used by the conversion cache")
+            .baseUnit("bytes")
+            .register(registry);
+        FunctionCounter.builder("maestro.cache.requests", cache, ConversionCache::getHits)
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("maestro.cache.requests", cache, ConversionCache::getMisses)
+            .tag("result", "miss")
+            .register(registry);
+        FunctionCounter.builder("maestro.cache.evictions", cache, ConversionCache::getEvictions)
+            .register(registry);
+        FunctionCounter.builder("maestro.conversions.coalesced", conversionService, ConversionService::getCoalesced)
+            .description("Conversions that waited for the same conversion running for another request")
+            .register(registry);
+
+        Gauge.builder("maestro.workspaces", workspaces, WorkspaceManager::getWorkspaceCount)
+            .description("Conversion workspaces on disk")
+            .register(registry);
+        Gauge.builder("maestro.workspaces.size", workspaces, WorkspaceManager::getTotalBytes)
+            .description("Disk space used by the workspaces at the last janitor sweep")
+            .baseUnit("bytes")
+            .register(registry);
+        FunctionCounter.builder("maestro.workspaces.reclaimed", workspaces, WorkspaceManager::getReclaimedByTtl)
+            .description("Workspaces deleted by the janitor")
+            .tag("reason", WorkspaceManager.REASON_TTL)
+            .register(registry);
+        FunctionCounter.builder("maestro.workspaces.reclaimed", workspaces, WorkspaceManager::getReclaimedByDisk)
+            .description("Workspaces deleted by the janitor")
+            .tag("reason", WorkspaceManager.REASON_DISK)
+            .register(registry);
+    }
+}
@@ -0,0 +1,102 @@
+package PFE008.backend;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PipelineMetrics class
+ * 
+ * Records the metrics of the conversion pipeline in the Micrometer global
+ * registry, which Spring Boot binds to the registry exposed on
+ * /actuator/prometheus. The static methods can be called from classes that
+ * are not Spring beans, like the AudiverisController or the
+ * ProcessSupervisor; outside of the application they record nothing.
+ * 
+ * @version 2026.10.17
+ */
+public class PipelineMetrics {
+    public static final String STAGE_DURATION = "maestro.stage.duration";
+    public static final String PROCESS_EXITS = "maestro.process.exits";
+    public static final String FILE_SIZE = "maestro.file.size";
+
+    public static final String STAGE_INGEST = "ingest";
+    public static final String STAGE_PREPROCESS = "preprocess";
+    public static final String STAGE_CONVERSION = "conversion";
+    public static final String STAGE_AUDIVERIS = "audiveris";
+    public static final String STAGE_AUDIVERIS_REEXPORT = "audiveris_reexport";
+    public static final String STAGE_AUDIVERIS_PAGE = "audiveris_page";
+    public static final String STAGE_PAGE_MERGE = "page_merge";
+    public static final String STAGE_MIDI_JAVA = "midi_java";
+    public static final String STAGE_MIDI_PYTHON = "midi_python";
+    public static final String STAGE_CPU_PERMIT_WAIT = "cpu_permit_wait";
+    public static final String STAGE_SCHEDULE_WAIT = "schedule_wait";
+    public static final String STAGE_CLEANUP = "cleanup";
+    public static final String STAGE_JANITOR = "janitor";
+
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Record the duration of a pipeline stage
+     * 
+     * @param stage The stage name, one of the STAGE_ constants
+     * @param startNanos The System.nanoTime() at the start of the stage
+     * @param success True if the stage succeeded
+     */
+    public static void recordStage(String stage, long startNanos, boolean success) {
+        Timer.builder(STAGE_DURATION)
+            .description("Duration of the conversion pipeline stages")
+            .tag("stage", stage)
+            .tag("outcome", success ? "success" : "failure")
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry)
+            .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Count the exit of an external process
+     * 
+     * @param result The result of the process
+     */
+    public static void recordProcessExit(ProcessResult result) {
+        String outcome = result.timedOut() ? "timeout" : result.cancelled() ? "cancelled" : result.exitCode() == 0 ? "success" : "failure";
+        recordProcessExit(result.stage(), result.exitCode(), outcome);
+    }
+
+    /**
+     * Count the exit of an external process or of a run on a warm Audiveris worker
+     * 
+     * @param stage The process stage, like "audiveris" or "mxl-to-midi"
+     * @param exitCode The exit code
+     * @param outcome "success", "failure", "timeout" or "cancelled"
+     */
+    public static void recordProcessExit(String stage, int exitCode, String outcome) {
+        Counter.builder(PROCESS_EXITS)
+            .description("Exits of the Audiveris and Python processes")
+            .tag("stage", stage)
+            .tag("exit_code", String.valueOf(exitCode))
+            .tag("outcome", outcome)
+            .register(Metrics.globalRegistry)
+            .increment();
+    }
+
+    /**
+     * Record the size of an uploaded music sheet or of a produced MIDI file
+     * 
+     * @param direction "in" for uploads, "out" for MIDI files
+     * @param bytes The file size in bytes
+     */
+    public static void recordFileSize(String direction, long bytes) {
+        DistributionSummary.builder(FILE_SIZE)
+            .description("Size of the uploaded and produced files")
+            .baseUnit("bytes")
+            .tag("direction", direction)
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry)
+            .record(bytes);
+    }
+}
@@ -0,0 +1,34 @@
+package PFE008.backend;
+
+import java.util.List;
+
+/**
+ * ProcessResult record
+ * 
+ * Result of a process run by the {@link ProcessSupervisor}.
+ * 
+ * @param stage Name of the pipeline stage
+ * @param exitCode Exit code of the process, the one of the killed process if it timed out or was cancelled
+ * @param timedOut True if the process was killed because it ran over its timeout
+ * @param cancelled True if the process was killed because the caller was interrupted
+ * @param durationMs Run time in milliseconds
+ * @param stdout Last lines written to stdout
+ * @param stderr Last lines written to stderr
+ * @version 2026.10.17
+ */
+public record ProcessResult(String stage, int exitCode, boolean timedOut, boolean cancelled,
+                            long durationMs, List<String> stdout, List<String> stderr) {
+
+    /**
+     * @return True if the process ran to completion with exit code 0
+     */
+    public boolean isSuccess() {
+        return !timedOut && !cancelled && exitCode == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + stage + "] exit code " + exitCode + (timedOut ? ", timed out" : "") + (cancelled ? ", cancelled" : "")
+            + " after " + durationMs + " ms";
+    }
+}
@@ -0,0 +1,231 @@
+package PFE008.backend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ProcessSupervisor class
+ *
+ * Runs the external processes of the conversion pipeline (Audiveris,
+ * MxlToMidi.py). Both stdout and stderr are drained on their own threads,
+ * so a chatty process can't block on a full pipe, and the last lines of
+ * each are kept in bounded buffers for the result. A process that runs
+ * over its timeout, or whose caller is interrupted (job cancelled), is
+ * killed along with all its descendants.
+ *
+ * @version 2026.10.17
+ */
+public class ProcessSupervisor {
+    /**
+     * Number of output lines kept per stream
+     */
+    public static final int TAIL_LINES = 200;
+
+    private static final long DRAIN_TIMEOUT_MS = 5000;
+
+    private static volatile ThreadFactory threadFactory = runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    };
+
+    private ProcessSupervisor() {
+    }
+
+    /**
+     * Set the factory of the threads draining the process output, set by the {@link ExecutionMode}
+     *
+     * @param factory The thread factory
+     */
+    public static void setThreadFactory(ThreadFactory factory) {
+        threadFactory = factory;
+    }
+
+    /**
+     * Run a process and wait for it
+     *
+     * @param stage Name of the pipeline stage, used in logs
+     * @param command The command and its arguments
+     * @param timeout Maximum run time, the process tree is killed after it
+     * @return The result of the run, also when the process timed out or was cancelled
+     * @throws IOException If the process could not be started
+     */
+    public static ProcessResult run(String stage, List<String> command, Duration timeout) throws IOException {
+        return run(stage, command, timeout, null);
+    }
+
+    /**
+     * Run a process and wait for it, following its output
+     *
+     * @param stage Name of the pipeline stage, used in logs
+     * @param command The command and its arguments
+     * @param timeout Maximum run time, the process tree is killed after it
+     * @param lineListener Receives every stdout and stderr line as it is written, may be null
+     * @return The result of the run, also when the process timed out or was cancelled
+     * @throws IOException If the process could not be started
+     */
+    public static ProcessResult run(String stage, List<String> command, Duration timeout,
+                                    Consumer<String> lineListener) throws IOException {
+        return run(stage, command, Map.of(), timeout, lineListener);
+    }
+
+    /**
+     * Run a process with extra environment variables and wait for it, following its output
+     *
+     * @param stage Name of the pipeline stage, used in logs
+     * @param command The command and its arguments
+     * @param environment Variables added to the environment of the process
+     * @param timeout Maximum run time, the process tree is killed after it
+     * @param lineListener Receives every stdout and stderr line as it is written, may be null
+     * @return The result of the run, also when the process timed out or was cancelled
+     * @throws IOException If the process could not be started
+     */
+    public static ProcessResult run(String stage, List<String> command, Map<String, String> environment,
+                                    Duration timeout, Consumer<String> lineListener) throws IOException {
+        long start = System.nanoTime();
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().putAll(environment);
+        Process process = builder.start();
+        process.getOutputStream().close();
+
+        RingBuffer stdout = new RingBuffer(TAIL_LINES);
+        RingBuffer stderr = new RingBuffer(TAIL_LINES);
+        Thread stdoutDrain = drain(process.getInputStream(), stdout, lineListener);
+        Thread stderrDrain = drain(process.getErrorStream(), stderr, lineListener);
+
+        boolean timedOut = false;
+        boolean cancelled = false;
+        try {
+            if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                System.out.println("[" + stage + "] timed out after " + timeout.toSeconds() + " s, killing process " + process.pid());
+                timedOut = true;
+                killTree(process);
+            }
+        } catch (InterruptedException e) {
+            System.out.println("[" + stage + "] cancelled, killing process " + process.pid());
+            cancelled = true;
+            killTree(process);
+        }
+
+        int exitCode = awaitExit(process);
+        join(stdoutDrain);
+        join(stderrDrain);
+        if (cancelled) {
+            Thread.currentThread().interrupt();
+        }
+
+        ProcessResult result = new ProcessResult(stage, exitCode, timedOut, cancelled,
+            (System.nanoTime() - start) / 1000000, stdout.lines(), stderr.lines());
+        System.out.println(result);
+        PipelineMetrics.recordProcessExit(result);
+        if (!result.isSuccess() && !result.stderr().isEmpty()) {
+            System.out.println("[" + stage + "] last stderr lines:\n" + String.join("\n", result.stderr()));
+        }
+        return result;
+    }
+
+    /**
+     * Kill a process and all its descendants, like the JVM started by the Audiveris launcher script
+     *
+     * @param process The process to kill
+     */
+    public static void killTree(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static int awaitExit(Process process) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return process.waitFor();
+                } catch (InterruptedException e) {
+                    // The process tree is already being killed, only wait for it
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Thread drain(InputStream stream, RingBuffer buffer, Consumer<String> lineListener) {
+        Thread thread = threadFactory.newThread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    System.out.println(line);
+                    buffer.add(line);
+                    notify(lineListener, line);
+                }
+            } catch (IOException e) {
+                // The stream is closed when the process is killed
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Pass a line to a listener, which must not stop the drain if it fails
+     *
+     * @param lineListener The listener, may be null
+     * @param line The output line
+     */
+    static void notify(Consumer<String> lineListener, String line) {
+        if (lineListener == null) {
+            return;
+        }
+        try {
+            lineListener.accept(line);
+        } catch (RuntimeException e) {
+            System.out.println("Could not handle output line: " + e.getMessage());
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join(DRAIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The last lines written to a stream
+     */
+    private static class RingBuffer {
+        private final Deque<String> lines = new ArrayDeque<>();
+        private final int capacity;
+
+        RingBuffer(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void add(String line) {
+            if (lines.size() == capacity) {
+                lines.removeFirst();
+            }
+            lines.addLast(line);
+        }
+
+        synchronized List<String> lines() {
+            return new ArrayList<>(lines);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package PFE008.backend;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+/**
+ * ProgressEvent record
+ * 
+ * A milestone of a conversion, parsed from the Audiveris output or
+ * reported by the MIDI stage, and sent to the clients following a job
+ * on /jobs/{id}/events.
+ * 
+ * @param stage The pipeline stage: "schedule", "preprocess", "omr", "merge", "midi" or "cache"
+ * @param step The step in the stage, like the Audiveris step "BEAMS" or "EXPORT"
+ * @param sheet The sheet (or page) the step is about, null for the whole book
+ * @param progress Estimated progress of the conversion, from 0 to 1
+ * @param message A human readable description
+ * @param time When it happened
+ * @version 2026.10.17
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ProgressEvent(String stage, String step, Integer sheet, double progress, String message, Instant time) {
+    public static final String STAGE_SCHEDULE = "schedule";
+    public static final String STAGE_PREPROCESS = "preprocess";
+    public static final String STAGE_OMR = "omr";
+    public static final String STAGE_MERGE = "merge";
+    public static final String STAGE_MIDI = "midi";
+    public static final String STAGE_CACHE = "cache";
+
+    public static ProgressEvent of(String stage, String step, Integer sheet, double progress, String message) {
+        return new ProgressEvent(stage, step, sheet, progress, message, Instant.now());
+    }
+}
@@ -0,0 +1,174 @@
+package PFE008.backend;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * QueueWorker class
+ *
+ * On worker nodes, this class takes conversions from the
+ * {@link FileJobQueue} and runs them with the {@link ConversionService},
+ * in a workspace of its own. While a job runs, its lease is renewed and
+ * its progress published at every heartbeat. A job cancelled from an API
+ * node, or whose lease was lost, is interrupted like a cancelled job of
+ * the {@link JobService}. When the node shuts down, the running jobs are
+ * given back to the queue.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class QueueWorker {
+    private final FileJobQueue queue;
+    private final ConversionService conversionService;
+    private final WorkspaceManager workspaces;
+    private final ResultStore results;
+    private final ExecutionMode executionMode;
+    private final int threads;
+    private final long heartbeatMs;
+    private final long pollMs;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ScheduledExecutorService heartbeats;
+    private volatile boolean stopping;
+
+    public QueueWorker(FileJobQueue queue, ConversionService conversionService, WorkspaceManager workspaces,
+                       ResultStore results, ExecutionMode executionMode,
+                       @Value("${maestro.queue.worker-threads:2}") int threads,
+                       @Value("${maestro.queue.heartbeat-ms:10000}") long heartbeatMs,
+                       @Value("${maestro.queue.poll-ms:500}") long pollMs) {
+        this.queue = queue;
+        this.conversionService = conversionService;
+        this.workspaces = workspaces;
+        this.results = results;
+        this.executionMode = executionMode;
+        this.threads = threads;
+        this.heartbeatMs = heartbeatMs;
+        this.pollMs = pollMs;
+        // Its thread is only started with the first job
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(executionMode.threadFactory("queue-heartbeat-"));
+    }
+
+    /**
+     * Start taking jobs from the queue, on worker nodes only
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!queue.isWorker() || !workers.isEmpty()) {
+            return;
+        }
+
+        ThreadFactory threadFactory = executionMode.threadFactory("queue-worker-");
+        for (int i = 0; i < threads; i++) {
+            Thread worker = threadFactory.newThread(this::work);
+            workers.add(worker);
+            worker.start();
+        }
+        System.out.println("Worker " + queue.getNodeName() + " taking jobs with " + threads + " threads");
+    }
+
+    private void work() {
+        while (!stopping) {
+            FileJobQueue.Entry entry = queue.claim();
+            if (entry == null) {
+                try {
+                    Thread.sleep(pollMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            process(entry);
+            // A job interrupted by a cancellation must not stop the worker
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Run a claimed job and record its outcome in the queue
+     *
+     * @param entry The claimed entry
+     */
+    void process(FileJobQueue.Entry entry) {
+        Thread thread = Thread.currentThread();
+        AtomicReference<ProgressEvent> lastEvent = new AtomicReference<>();
+        AtomicBoolean leaseLost = new AtomicBoolean();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleWithFixedDelay(() -> {
+            if (!queue.heartbeat(entry, lastEvent.get())) {
+                // The lease expired, another worker has the job now
+                leaseLost.set(true);
+                thread.interrupt();
+            } else if (queue.isCancelRequested(entry.id())) {
+                cancelled.set(true);
+                thread.interrupt();
+            }
+        }, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+
+        Workspace workspace = null;
+        String midiPath = null;
+        String error = "Could not convert file";
+        try (PipelineEvents.Scope scope = PipelineEvents.enterJob(entry.id())) {
+            workspace = workspaces.create();
+            Path input = workspace.dir().resolve(entry.fileName());
+            Files.copy(queue.getUploadPath(entry), input);
+            SavedUpload upload = new SavedUpload(workspace, input, entry.sha256(), entry.size());
+            midiPath = conversionService.convert(upload, entry.tempos(), lastEvent::set);
+        } catch (IOException | RuntimeException e) {
+            error = "Could not convert file: " + e.getMessage();
+        } finally {
+            heartbeat.cancel(false);
+        }
+
+        try {
+            if (stopping) {
+                queue.release(entry);
+            } else if (leaseLost.get()) {
+                System.out.println("Job " + entry.id() + " lost its lease, dropped");
+            } else if (cancelled.get()) {
+                queue.complete(entry, new FileJobQueue.Outcome(ConversionJob.Status.CANCELLED, "Cancelled", null, queue.getNodeName()));
+            } else if (midiPath != null) {
+                StoredResult result = results.put(Path.of(midiPath));
+                queue.complete(entry, new FileJobQueue.Outcome(ConversionJob.Status.SUCCEEDED, null, result.id(), queue.getNodeName()));
+            } else {
+                queue.complete(entry, new FileJobQueue.Outcome(ConversionJob.Status.FAILED, error, null, queue.getNodeName()));
+            }
+        } catch (IOException e) {
+            queue.complete(entry, new FileJobQueue.Outcome(ConversionJob.Status.FAILED,
+                "Could not store the MIDI file: " + e.getMessage(), null, queue.getNodeName()));
+        } finally {
+            workspaces.delete(workspace);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        stopping = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        heartbeats.shutdownNow();
+    }
+}
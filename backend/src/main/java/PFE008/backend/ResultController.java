@@ -0,0 +1,176 @@
+package PFE008.backend;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ResultController class
+ *
+ * This class serves the MIDI files kept by the {@link ResultStore} on
+ * /results/{id}. Since a result never changes, clients can revalidate it
+ * with If-None-Match and get a 304 back, and resume or split a download
+ * with a byte range.
+ *
+ * When Tomcat can send files itself (a NIO connector without TLS), the
+ * file is handed to its sendfile support, which has the kernel copy it to
+ * the socket without going through the JVM. Otherwise it is copied to the
+ * response in chunks, without reading it into memory.
+ *
+ * @version 2026.10.17
+ */
+@RestController
+public class ResultController {
+    public static final String MIDI_CONTENT_TYPE = "audio/midi";
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d{0,18})-(\\d{0,18})");
+    // Request attributes of the Tomcat sendfile support, see org.apache.catalina.Globals
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final ResultStore results;
+
+    public ResultController(ResultStore results) {
+        this.results = results;
+    }
+
+    @GetMapping("/results/{id}")
+    @CrossOrigin(origins = "*", exposedHeaders = {HttpHeaders.ETAG, HttpHeaders.CONTENT_RANGE, HttpHeaders.ACCEPT_RANGES})
+    public void download(@PathVariable String id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        StoredResult result = results.get(id);
+        if (result == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Result not found");
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ETAG, result.etag());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=" + results.getTtl().toSeconds());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), result.etag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(MIDI_CONTENT_TYPE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + result.id() + ".mid\"");
+
+        long size = result.size();
+        long start = 0;
+        long end = size - 1;
+
+        // A range is only served if the client's copy is still the same file
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(result.etag()))) {
+            Matcher matcher = RANGE.matcher(range.trim());
+            // Multiple ranges and other units are not supported, the whole file is sent instead
+            if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+                if (matcher.group(1).isEmpty()) {
+                    // Suffix range, the last n bytes
+                    start = Math.max(size - Long.parseLong(matcher.group(2)), 0);
+                } else {
+                    start = Long.parseLong(matcher.group(1));
+                    if (!matcher.group(2).isEmpty()) {
+                        end = Math.min(Long.parseLong(matcher.group(2)), size - 1);
+                    }
+                }
+
+                if (start >= size || start > end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        transfer(result, start, length, request, response);
+    }
+
+    private static void transfer(StoredResult result, long start, long length,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+        PipelineEvents.ResponseEvent event = new PipelineEvents.ResponseEvent();
+        event.start(PipelineEvents.STAGE_RESPONSE);
+        event.resultId = result.id();
+        event.fileSize = result.size();
+        boolean sent = false;
+        try {
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+                // Tomcat sends the file once the request returns, the end is exclusive
+                request.setAttribute(SENDFILE_FILENAME, result.path().toRealPath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, start + length);
+                event.bytes = length;
+            } else {
+                copy(result, start, length, response, event);
+            }
+            sent = true;
+        } finally {
+            event.finish(sent ? 0 : 1);
+        }
+    }
+
+    /**
+     * Copy a range of the file to the response, when Tomcat can't send it itself
+     */
+    private static void copy(StoredResult result, long start, long length, HttpServletResponse response,
+                             PipelineEvents.ResponseEvent event) throws IOException {
+        try (FileChannel file = FileChannel.open(result.path(), StandardOpenOption.READ)) {
+            WritableByteChannel output = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long written = file.transferTo(position, remaining, output);
+                if (written <= 0) {
+                    throw new IOException("Result " + result.id() + " was truncated");
+                }
+                position += written;
+                remaining -= written;
+                event.bytes += written;
+            }
+            response.flushBuffer();
+        }
+    }
+
+    /**
+     * @param ifNoneMatch The If-None-Match header, may be null
+     * @param etag The entity tag of the result
+     * @return True if the client already has this result
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            // If-None-Match uses the weak comparison
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
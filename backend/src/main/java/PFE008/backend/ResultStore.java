@@ -0,0 +1,173 @@
+package PFE008.backend;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ResultStore class
+ * 
+ * This class keeps the MIDI files produced by the conversions, outside of
+ * their workspaces, so they can be downloaded again from /results/{id}
+ * until they expire, without converting the music sheet again.
+ * 
+ * Results are stored by the SHA-256 of their content: the same MIDI file
+ * is only stored once, and its id doubles as a strong ETag. They expire
+ * when they have not been downloaded for the configured TTL.
+ *
+ * The directory can be shared by several nodes: results written by
+ * another node are found on disk, and the time a result was last used is
+ * kept in the modification time of its file, so a node does not delete a
+ * result another node still serves.
+ * 
+ * @version 2026.10.17
+ */
+@Component
+public class ResultStore {
+    private final Path storeDir;
+    private final Duration ttl;
+    private final Map<String, Instant> lastUsed = new ConcurrentHashMap<>();
+
+    public ResultStore(@Value("${maestro.results.dir:Results}") String storeDir,
+                       @Value("${maestro.results.ttl-minutes:60}") long ttlMinutes) {
+        this.storeDir = Paths.get(storeDir);
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+
+        // Results left by a previous run are kept until they expire
+        File[] files = this.storeDir.toFile().listFiles((dir, name) -> name.endsWith(".mid"));
+        if (files != null) {
+            for (File file : files) {
+                String id = file.getName().substring(0, file.getName().length() - 4);
+                if (isValidId(id)) {
+                    lastUsed.put(id, Instant.ofEpochMilli(file.lastModified()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return How long a result is kept after its last use
+     */
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Keep a MIDI file, hashing it while it is copied
+     * 
+     * @param midiPath Path to the produced .mid file
+     * @return The stored result
+     * @throws IOException If the file could not be read or stored
+     */
+    public StoredResult put(Path midiPath) throws IOException {
+        Files.createDirectories(storeDir);
+        Path tempPath = Files.createTempFile(storeDir, "result", ".tmp");
+        MessageDigest digest = sha256();
+        long size = 0;
+
+        try {
+            try (InputStream input = Files.newInputStream(midiPath);
+                 OutputStream output = Files.newOutputStream(tempPath)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = input.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                    output.write(buffer, 0, read);
+                    size += read;
+                }
+            }
+
+            String id = HexFormat.of().formatHex(digest.digest());
+            Path path = storeDir.resolve(id + ".mid");
+            // Same content, same file: the rename is atomic, so a download never sees a partial file
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastUsed.put(id, Instant.now());
+            return new StoredResult(id, path, size);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Get a stored result, refreshing its TTL
+     * 
+     * @param id The result id
+     * @return The result, or null if it is unknown or has expired
+     */
+    public StoredResult get(String id) {
+        if (!isValidId(id)) {
+            return null;
+        }
+
+        Path path = storeDir.resolve(id + ".mid");
+        try {
+            long size = Files.size(path);
+            Instant now = Instant.now();
+            lastUsed.put(id, now);
+            Files.setLastModifiedTime(path, FileTime.from(now));
+            return new StoredResult(id, path, size);
+        } catch (IOException e) {
+            lastUsed.remove(id);
+            return null;
+        }
+    }
+
+    /**
+     * Delete the results that have not been used for the TTL
+     */
+    @Scheduled(fixedDelayString = "${maestro.results.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        Instant expiry = Instant.now().minus(ttl);
+        lastUsed.entrySet().removeIf(entry -> {
+            if (entry.getValue().isBefore(expiry)) {
+                Path path = storeDir.resolve(entry.getKey() + ".mid");
+                try {
+                    // Used by another node sharing the directory
+                    Instant modified = Files.getLastModifiedTime(path).toInstant();
+                    if (modified.isAfter(expiry)) {
+                        lastUsed.put(entry.getKey(), modified);
+                        return false;
+                    }
+                    Files.deleteIfExists(path);
+                } catch (NoSuchFileException e) {
+                    // Deleted by another node
+                } catch (IOException e) {
+                    System.out.println("Could not delete result " + entry.getKey() + ": " + e.getMessage());
+                }
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static boolean isValidId(String id) {
+        // Result ids are hex encoded hashes, anything else could escape the store directory
+        return id != null && id.matches("[0-9a-f]{64}");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
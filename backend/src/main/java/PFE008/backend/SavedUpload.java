@@ -0,0 +1,18 @@
+package PFE008.backend;
+
+import java.nio.file.Path;
+
+/**
+ * SavedUpload record
+ * 
+ * An uploaded music sheet once it has been written to its workspace, along
+ * with the SHA-256 of its content computed while it was being saved.
+ * 
+ * @param workspace The workspace of the conversion
+ * @param path Path to the saved file
+ * @param sha256 Hex encoded SHA-256 of the file content
+ * @param size Size of the file in bytes
+ * @version 2026.10.17
+ */
+public record SavedUpload(Workspace workspace, Path path, String sha256, long size) {
+}
@@ -0,0 +1,90 @@
+package PFE008.backend;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StageOutlierMonitor class
+ *
+ * This class streams the {@link PipelineEvents} of this JVM from the
+ * flight recorder and logs the stages that took longer than the
+ * threshold, with the job, file size, page count and exit code, so a
+ * slow conversion can be found without opening a recording. Only the
+ * events over the threshold are recorded by its stream, so it costs
+ * nothing for the stages within it.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class StageOutlierMonitor {
+    static final List<String> EVENTS = List.of("maestro.Ingest", "maestro.TypeDetection", "maestro.Audiveris",
+        "maestro.Midi", "maestro.Response", "maestro.Cleanup");
+
+    private final boolean enabled;
+    private final Duration threshold;
+    private final AtomicLong outliers = new AtomicLong();
+    private RecordingStream stream;
+
+    public StageOutlierMonitor(@Value("${maestro.jfr.outliers.enabled:false}") boolean enabled,
+                               @Value("${maestro.jfr.outliers.threshold-ms:30000}") long thresholdMs) {
+        this.enabled = enabled;
+        this.threshold = Duration.ofMillis(thresholdMs);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (!enabled || stream != null) {
+            return;
+        }
+
+        stream = new RecordingStream();
+        for (String event : EVENTS) {
+            stream.enable(event).withThreshold(threshold);
+            stream.onEvent(event, this::log);
+        }
+        stream.startAsync();
+        System.out.println("Logging the pipeline stages over " + threshold.toMillis() + " ms");
+    }
+
+    /**
+     * @return The number of stages logged as over the threshold
+     */
+    public long getOutliers() {
+        return outliers.get();
+    }
+
+    private void log(RecordedEvent event) {
+        outliers.incrementAndGet();
+        StringBuilder line = new StringBuilder("Slow ").append(event.getString("stage"))
+            .append(": ").append(event.getDuration().toMillis()).append(" ms");
+        if (event.getString("jobId") != null) {
+            line.append(", job ").append(event.getString("jobId"));
+        }
+        if (event.getString("workspaceId") != null) {
+            line.append(", workspace ").append(event.getString("workspaceId"));
+        }
+        line.append(", ").append(event.getLong("fileSize")).append(" bytes");
+        if (event.getInt("pages") > 0) {
+            line.append(", ").append(event.getInt("pages")).append(" pages");
+        }
+        line.append(", exit code ").append(event.getInt("exitCode"))
+            .append(" on ").append(event.getThread() != null ? event.getThread().getJavaName() : "unknown thread");
+        System.out.println(line);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+}
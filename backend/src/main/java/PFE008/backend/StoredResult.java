@@ -0,0 +1,31 @@
+package PFE008.backend;
+
+import java.nio.file.Path;
+
+/**
+ * StoredResult record
+ * 
+ * A MIDI file kept by the {@link ResultStore}. Its id is the SHA-256 of
+ * its content, so it is also a strong ETag for the file.
+ * 
+ * @param id Hex encoded SHA-256 of the file content
+ * @param path Path to the stored file
+ * @param size Size of the file in bytes
+ * @version 2026.10.17
+ */
+public record StoredResult(String id, Path path, long size) {
+
+    /**
+     * @return The strong entity tag of the file, quoted
+     */
+    public String etag() {
+        return "\"" + id + "\"";
+    }
+
+    /**
+     * @return The URI the file can be downloaded from
+     */
+    public String uri() {
+        return "/results/" + id;
+    }
+}
@@ -0,0 +1,152 @@
+package PFE008.backend;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * UploadIngestor class
+ * 
+ * This class saves uploaded music sheets in a single pass over the
+ * upload stream: the type is detected from the first bytes, then the
+ * same bytes and the rest of the stream are hashed and written to the
+ * workspace of the conversion. Empty, too large and unsupported files are rejected
+ * before anything is written, or as soon as the limit is crossed.
+ * 
+ * @version 2026.10.17
+ */
+@Component
+public class UploadIngestor {
+    private final long maxBytes;
+
+    public UploadIngestor(@Value("${maestro.upload.max-bytes:10485760}") long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return The maximum size of an upload in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Validate and save an uploaded music sheet
+     * 
+     * @param multipartFile The uploaded file
+     * @param workspace The workspace of the conversion
+     * @return The saved file, with its SHA-256 and size
+     * @throws InvalidUploadException If the file is empty, too large or not a pdf, jpg or png
+     * @throws IOException If the file could not be read or saved
+     */
+    public SavedUpload ingest(MultipartFile multipartFile, Workspace workspace) throws IOException {
+        try (InputStream input = multipartFile.getInputStream()) {
+            return ingest(multipartFile.getOriginalFilename(), input, multipartFile.getSize(), workspace);
+        }
+    }
+
+    /**
+     * Validate and save a music sheet read from a stream, such as an entry of an uploaded zip
+     * 
+     * @param fileName The original name of the file
+     * @param input The content of the file, not closed
+     * @param workspace The workspace of the conversion
+     * @return The saved file, with its SHA-256 and size
+     * @throws InvalidUploadException If the file is empty, too large or not a pdf, jpg or png
+     * @throws IOException If the file could not be read or saved
+     */
+    public SavedUpload ingest(String fileName, InputStream input, Workspace workspace) throws IOException {
+        return ingest(fileName, input, -1, workspace);
+    }
+
+    private SavedUpload ingest(String fileName, InputStream input, long declaredSize, Workspace workspace) throws IOException {
+        long start = System.nanoTime();
+        PipelineEvents.IngestEvent event = new PipelineEvents.IngestEvent();
+        event.start(PipelineMetrics.STAGE_INGEST);
+        event.workspaceId = workspace.id();
+        SavedUpload upload = null;
+        try {
+            upload = save(fileName, input, declaredSize, workspace);
+            PipelineMetrics.recordFileSize("in", upload.size());
+            event.fileSize = upload.size();
+            return upload;
+        } finally {
+            PipelineMetrics.recordStage(PipelineMetrics.STAGE_INGEST, start, upload != null);
+            event.finish(upload != null ? 0 : 1);
+        }
+    }
+
+    private SavedUpload save(String fileName, InputStream input, long declaredSize, Workspace workspace) throws IOException {
+        if (declaredSize == 0) {
+            throw new InvalidUploadException("Please select a file");
+        }
+
+        if (declaredSize > maxBytes) {
+            throw new InvalidUploadException("File is too large");
+        }
+
+        String fileExtension = "." + StringUtils.getFilenameExtension(fileName);
+        String fileCode = RandomStringUtils.randomAlphanumeric(8);
+        Path filePath = workspace.dir().resolve(fileCode + fileExtension);
+        MessageDigest digest = sha256();
+        long size = 0;
+
+        try {
+            // The detection prefix is the first chunk written, so the stream is only read once
+            byte[] buffer = new byte[FileUtil.DETECTION_PREFIX_BYTES];
+            int read = input.readNBytes(buffer, 0, buffer.length);
+            if (read == 0) {
+                throw new InvalidUploadException("Please select a file");
+            }
+            PipelineEvents.TypeDetectionEvent event = new PipelineEvents.TypeDetectionEvent();
+            event.start(PipelineEvents.STAGE_TYPE_DETECTION);
+            event.workspaceId = workspace.id();
+            event.contentType = FileUtil.detectType(buffer, read);
+            boolean valid = FileUtil.isValidType(event.contentType);
+            event.finish(valid ? 0 : 1);
+            if (!valid) {
+                throw new InvalidUploadException("File is invalid. Must be a pdf, jpg, jpeg or png");
+            }
+
+            try (OutputStream output = Files.newOutputStream(filePath)) {
+                while (read > 0) {
+                    size += read;
+                    if (size > maxBytes) {
+                        throw new InvalidUploadException("File is too large");
+                    }
+                    digest.update(buffer, 0, read);
+                    output.write(buffer, 0, read);
+                    read = input.read(buffer);
+                }
+            }
+        } catch (InvalidUploadException e) {
+            Files.deleteIfExists(filePath);
+            throw e;
+        } catch (IOException e) {
+            Files.deleteIfExists(filePath);
+            throw new IOException("Could not save file: " + fileCode + fileExtension, e);
+        }
+
+        System.out.println("File saved: " + filePath);
+        return new SavedUpload(workspace, filePath, HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package PFE008.backend;
+
+/**
+ * UploadNotFoundException class
+ * 
+ * Thrown when a render is requested for an upload whose OMR output
+ * is unknown or has expired.
+ * 
+ * @version 2026.10.17
+ */
+public class UploadNotFoundException extends RuntimeException {
+
+    public UploadNotFoundException(String uploadId) {
+        super("No OMR output found for upload " + uploadId);
+    }
+}
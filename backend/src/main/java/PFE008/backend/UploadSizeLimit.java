@@ -0,0 +1,57 @@
+package PFE008.backend;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.IOException;
+
+/**
+ * UploadSizeLimit class
+ *
+ * The multipart limits of the container are sized for /convert/batch,
+ * so this class rejects the requests of the single file endpoints
+ * (POST /convert and POST /jobs) whose Content-Length is over
+ * maestro.upload.max-bytes, before their body is read. The multipart
+ * requests are resolved lazily for this, otherwise the whole body would
+ * be spooled to disk before any handler is picked. A request without a
+ * Content-Length is still stopped by the {@link UploadIngestor} once the
+ * limit is crossed.
+ *
+ * @version 2026.10.17
+ */
+@Component
+public class UploadSizeLimit implements HandlerInterceptor, WebMvcConfigurer {
+    // Room for the multipart boundaries, the part headers and the tempos
+    static final long MULTIPART_OVERHEAD_BYTES = 1024 * 1024;
+
+    private final long maxRequestBytes;
+
+    public UploadSizeLimit(UploadIngestor uploadIngestor) {
+        this.maxRequestBytes = uploadIngestor.getMaxBytes() + MULTIPART_OVERHEAD_BYTES;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).addPathPatterns("/convert", "/jobs");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (!HttpMethod.POST.matches(request.getMethod()) || request.getContentLengthLong() <= maxRequestBytes) {
+            return true;
+        }
+
+        System.out.println("Rejected a " + request.getContentLengthLong() / (1024 * 1024) + " MB upload on " + request.getRequestURI());
+        response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write("File is too large");
+        return false;
+    }
+}
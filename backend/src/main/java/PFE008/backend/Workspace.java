@@ -0,0 +1,18 @@
+package PFE008.backend;
+
+import java.nio.file.Path;
+
+/**
+ * Workspace record
+ * 
+ * The directory of one conversion, created by the {@link WorkspaceManager}.
+ * The uploaded music sheet and everything produced from it (Audiveris
+ * output, page files, MIDI file) are written there, so the whole
+ * conversion is deleted with its directory.
+ * 
+ * @param id The workspace id, also the name of its directory
+ * @param dir Path to the directory
+ * @version 2026.10.17
+ */
+public record Workspace(String id, Path dir) {
+}
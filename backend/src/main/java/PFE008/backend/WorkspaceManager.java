@@ -0,0 +1,304 @@
+package PFE008.backend;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * WorkspaceManager class
+ * 
+ * This class gives each conversion its own {@link Workspace} directory,
+ * deleted in a single operation once the result has been sent, instead of
+ * scanning shared directories for the files of the conversion.
+ * 
+ * Workspaces are busy from their creation until the conversion is done,
+ * then idle until they are deleted. A scheduled janitor reclaims the idle
+ * workspaces nobody deleted (expired jobs, previous runs) once they have
+ * not been used for the TTL, and the oldest idle ones when the workspaces
+ * use more disk space than the ceiling. A busy workspace is never
+ * reclaimed, its conversion may still be waiting for its turn.
+ * 
+ * A conversion can read the files of another one's workspace by retaining
+ * it. The workspace is then deleted by the last of them to delete it, and
+ * the janitor leaves it alone while more than one of them holds it.
+ * 
+ * @version 2026.10.17
+ */
+@Component
+public class WorkspaceManager {
+    public static final String REASON_TTL = "ttl";
+    public static final String REASON_DISK = "disk";
+
+    private final Path root;
+    private final Duration ttl;
+    private final long maxBytes;
+    private final Map<String, Entry> workspaces = new ConcurrentHashMap<>();
+    private final AtomicLong reclaimedByTtl = new AtomicLong();
+    private final AtomicLong reclaimedByDisk = new AtomicLong();
+    private volatile long totalBytes;
+
+    public WorkspaceManager(@Value("${maestro.workspace.dir:Work}") String root,
+                            @Value("${maestro.workspace.ttl-minutes:60}") long ttlMinutes,
+                            @Value("${maestro.workspace.max-bytes:2147483648}") long maxBytes) {
+        this.root = Paths.get(root);
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.maxBytes = maxBytes;
+
+        // Workspaces left by a previous run are idle, the janitor reclaims them after the TTL
+        File[] dirs = this.root.toFile().listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                Entry entry = new Entry(new Workspace(dir.getName(), dir.toPath()));
+                entry.busy = false;
+                entry.lastUsed = Instant.ofEpochMilli(dir.lastModified());
+                workspaces.put(dir.getName(), entry);
+            }
+        }
+    }
+
+    /**
+     * Create the workspace of a new conversion
+     * 
+     * @return The workspace, busy until {@link #markIdle(Workspace)} is called
+     * @throws IOException If the directory could not be created
+     */
+    public Workspace create() throws IOException {
+        String id = RandomStringUtils.randomAlphanumeric(16);
+        Workspace workspace = new Workspace(id, root.resolve(id));
+        Files.createDirectories(workspace.dir());
+        workspaces.put(id, new Entry(workspace));
+        return workspace;
+    }
+
+    /**
+     * Take back the workspace of a conversion interrupted by a restart, so
+     * it is not reclaimed while the conversion is resumed
+     * 
+     * @param id The workspace id
+     * @return The workspace, busy until {@link #markIdle(Workspace)} is called, or null if it is gone
+     */
+    public Workspace adopt(String id) {
+        Entry entry = id != null ? workspaces.get(id) : null;
+        if (entry == null) {
+            return null;
+        }
+        entry.busy = true;
+        entry.lastUsed = Instant.now();
+        return entry.workspace;
+    }
+
+    /**
+     * Keep a workspace of another conversion until {@link #delete(Workspace)}
+     * is called for this conversion too
+     * 
+     * @param workspace The workspace
+     * @return True if the workspace is retained, false if it has been deleted
+     */
+    public boolean retain(Workspace workspace) {
+        Entry entry = workspaces.get(workspace.id());
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entry.holders == 0) {
+                return false;
+            }
+            entry.holders++;
+            entry.lastUsed = Instant.now();
+            return true;
+        }
+    }
+
+    /**
+     * Mark a workspace as no longer used by a running conversion. It can then
+     * be reclaimed when the workspaces use too much disk space.
+     * 
+     * @param workspace The workspace
+     */
+    public void markIdle(Workspace workspace) {
+        Entry entry = workspaces.get(workspace.id());
+        if (entry != null) {
+            entry.busy = false;
+            entry.lastUsed = Instant.now();
+        }
+    }
+
+    /**
+     * Delete a workspace and everything in it, once no other conversion retains it
+     * 
+     * @param workspace The workspace, may be null
+     */
+    public void delete(Workspace workspace) {
+        if (workspace == null) {
+            return;
+        }
+
+        Entry entry = workspaces.get(workspace.id());
+        if (entry != null) {
+            synchronized (entry) {
+                if (--entry.holders > 0) {
+                    entry.lastUsed = Instant.now();
+                    return;
+                }
+            }
+        }
+        workspaces.remove(workspace.id());
+        long start = System.nanoTime();
+        PipelineEvents.CleanupEvent event = new PipelineEvents.CleanupEvent();
+        event.start(PipelineMetrics.STAGE_CLEANUP);
+        event.workspaceId = workspace.id();
+        boolean deleted = deleteDir(workspace.dir());
+        PipelineMetrics.recordStage(PipelineMetrics.STAGE_CLEANUP, start, deleted);
+        event.finish(deleted ? 0 : 1);
+    }
+
+    /**
+     * Reclaim the idle workspaces not used for the TTL, then the oldest idle
+     * workspaces while the disk space used is over the ceiling
+     */
+    @Scheduled(fixedDelayString = "${maestro.workspace.janitor-interval-ms:60000}")
+    public void sweep() {
+        long start = System.nanoTime();
+        Instant expiry = Instant.now().minus(ttl);
+
+        List<Entry> remaining = new ArrayList<>();
+        for (Entry entry : workspaces.values()) {
+            if (entry.busy || !entry.lastUsed.isBefore(expiry) || !reclaim(entry, REASON_TTL)) {
+                remaining.add(entry);
+            }
+        }
+
+        long bytes = 0;
+        for (Entry entry : remaining) {
+            entry.bytes = sizeOf(entry.workspace.dir());
+            bytes += entry.bytes;
+        }
+
+        if (bytes > maxBytes) {
+            remaining.sort(Comparator.comparing(entry -> entry.lastUsed));
+            for (Entry entry : remaining) {
+                if (bytes <= maxBytes) {
+                    break;
+                }
+                if (!entry.busy && reclaim(entry, REASON_DISK)) {
+                    bytes -= entry.bytes;
+                }
+            }
+            if (bytes > maxBytes) {
+                System.out.println("Workspaces use " + bytes / (1024 * 1024) + " MB, over the " + maxBytes / (1024 * 1024) + " MB ceiling, with no idle workspace left to reclaim");
+            }
+        }
+
+        totalBytes = bytes;
+        PipelineMetrics.recordStage(PipelineMetrics.STAGE_JANITOR, start, true);
+    }
+
+    /**
+     * @return The number of workspaces on disk
+     */
+    public int getWorkspaceCount() {
+        return workspaces.size();
+    }
+
+    /**
+     * @return The disk space used by the workspaces at the last sweep, in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return The number of workspaces reclaimed because they were not used for the TTL
+     */
+    public long getReclaimedByTtl() {
+        return reclaimedByTtl.get();
+    }
+
+    /**
+     * @return The number of workspaces reclaimed to stay under the disk space ceiling
+     */
+    public long getReclaimedByDisk() {
+        return reclaimedByDisk.get();
+    }
+
+    /**
+     * @return True if the workspace has been reclaimed
+     */
+    private boolean reclaim(Entry entry, String reason) {
+        synchronized (entry) {
+            if (entry.holders > 1) {
+                // Other conversions are reading it
+                return false;
+            }
+            entry.holders = 0;
+        }
+        if (!workspaces.remove(entry.workspace.id(), entry)) {
+            // Deleted in the meantime
+            return false;
+        }
+
+        System.out.println("Reclaiming workspace " + entry.workspace.id() + " (" + reason + ")");
+        deleteDir(entry.workspace.dir());
+        (REASON_TTL.equals(reason) ? reclaimedByTtl : reclaimedByDisk).incrementAndGet();
+        return true;
+    }
+
+    private static boolean deleteDir(Path dir) {
+        try {
+            FileSystemUtils.deleteRecursively(dir);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Could not delete workspace " + dir + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static long sizeOf(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    // Deleted while walking
+                    return 0;
+                }
+            }).sum();
+        } catch (IOException | UncheckedIOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * A workspace and its state
+     */
+    private static class Entry {
+        final Workspace workspace;
+        volatile boolean busy = true;
+        volatile Instant lastUsed = Instant.now();
+        // The conversion of the workspace and the ones retaining it
+        int holders = 1;
+        long bytes;
+
+        Entry(Workspace workspace) {
+            this.workspace = workspace;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package PFE008.backend;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the adaptive number of Audiveris slots
+ *
+ * @version 2026.10.17
+ */
+class AdaptiveLimiter_tests {
+    private AudiverisSettings settings;
+    private AtomicLong freeMb;
+
+    @BeforeEach
+    void setup() {
+        settings = new AudiverisSettings();
+        settings.setHeapMb(1000);
+        freeMb = new AtomicLong(64000);
+    }
+
+    private AdaptiveLimiter limiter(int initialLimit, int maxLimit) {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(true, initialLimit, maxLimit, 2, 0.5, 500, 60000, settings);
+        limiter.setMemoryProbe(freeMb::get);
+        return limiter;
+    }
+
+    @Test
+    void testLimitGrowsWhileSaturatedAndFast() {
+        AdaptiveLimiter limiter = limiter(2, 4);
+        // About one more slot after a full round of conversions
+        limiter.observe(ConversionScheduler.KIND_PDF, 10, true, System.nanoTime());
+        limiter.observe(ConversionScheduler.KIND_PDF, 10, true, System.nanoTime());
+        assertEquals(2, limiter.getLimit());
+        limiter.observe(ConversionScheduler.KIND_PDF, 10, true, System.nanoTime());
+        assertEquals(3, limiter.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            limiter.observe(ConversionScheduler.KIND_PDF, 12, true, System.nanoTime());
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void testLimitDoesNotGrowWhenSlotsAreFree() {
+        AdaptiveLimiter limiter = limiter(2, 4);
+        for (int i = 0; i < 10; i++) {
+            limiter.observe(ConversionScheduler.KIND_PDF, 10, false, System.nanoTime());
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void testSlowConversionCutsTheLimit() {
+        AdaptiveLimiter limiter = limiter(8, 8);
+        limiter.observe(ConversionScheduler.KIND_PDF, 10, true, System.nanoTime());
+        limiter.observe(ConversionScheduler.KIND_PDF, 25, true, System.nanoTime());
+
+        assertEquals(4, limiter.getLimit());
+        assertEquals(1, limiter.getDecreases());
+        // Images have their own baseline
+        limiter.observe(ConversionScheduler.KIND_IMAGE, 25, true, System.nanoTime());
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void testConversionsStartedBeforeTheCutDoNotCutAgain() {
+        AdaptiveLimiter limiter = limiter(8, 8);
+        long before = System.nanoTime();
+        limiter.observe(ConversionScheduler.KIND_PDF, 10, true, before);
+        limiter.observe(ConversionScheduler.KIND_PDF, 30, true, System.nanoTime());
+        limiter.observe(ConversionScheduler.KIND_PDF, 30, true, before);
+        assertEquals(4, limiter.getLimit());
+
+        limiter.observe(ConversionScheduler.KIND_PDF, 30, true, System.nanoTime());
+        assertEquals(2, limiter.getLimit());
+        for (int i = 0; i < 5; i++) {
+            limiter.observe(ConversionScheduler.KIND_PDF, 100, true, System.nanoTime());
+        }
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    void testLowMemoryCutsTheLimit() {
+        AdaptiveLimiter limiter = limiter(4, 4);
+        freeMb.set(400);
+        limiter.observe(ConversionScheduler.KIND_PDF, 10, true, System.nanoTime());
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void testSlotNeedsMemoryForOneMoreHeap() {
+        AdaptiveLimiter limiter = limiter(4, 4);
+        freeMb.set(1200);
+
+        assertTrue(limiter.hasMemoryFor(0, 0));
+        assertFalse(limiter.hasMemoryFor(1, 0));
+        freeMb.set(1500);
+        assertTrue(limiter.hasMemoryFor(1, 0));
+        // The heap of a conversion that just started is not in the free memory yet
+        assertFalse(limiter.hasMemoryFor(1, 1));
+        freeMb.set(2500);
+        assertTrue(limiter.hasMemoryFor(1, 1));
+    }
+
+    @Test
+    void testConcurrentPagesNeedOneHeapPerPageWorker() {
+        settings.setParallelPages(true);
+        settings.setPageWorkers(3);
+        AdaptiveLimiter limiter = limiter(4, 4);
+        assertEquals(3000, limiter.getConversionHeapMb());
+
+        freeMb.set(3000);
+        assertFalse(limiter.hasMemoryFor(1, 0));
+        freeMb.set(3500);
+        assertTrue(limiter.hasMemoryFor(1, 0));
+    }
+
+    @Test
+    void testBurstIsGrantedOnlyTheMemoryItHas() throws Exception {
+        AdaptiveLimiter limiter = limiter(4, 4);
+        ConversionScheduler scheduler = new ConversionScheduler(4, 1, 60, 20, limiter);
+        ConversionScheduler.Estimate estimate = new ConversionScheduler.Estimate(ConversionScheduler.KIND_PDF, 1, 20);
+        ConversionScheduler.Ticket first = scheduler.admit(estimate, "first", null);
+        freeMb.set(100);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for (int i = 0; i < 3; i++) {
+                executor.submit(() -> scheduler.admit(estimate, "burst", null));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (scheduler.getWaiting() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(3, scheduler.getWaiting());
+
+            // Room for two heaps and the reserve: the release grants the first two tickets
+            // in one go, the third one waits for the heap of the second to settle
+            freeMb.set(2600);
+            scheduler.release(first, false);
+            assertEquals(2, scheduler.getRunning());
+            assertEquals(1, scheduler.getWaiting());
+            Thread.sleep(1500);
+            assertEquals(1, scheduler.getWaiting());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testMemoryFreedLetsTheWaitingConversionStart() throws Exception {
+        AdaptiveLimiter limiter = limiter(2, 2);
+        ConversionScheduler scheduler = new ConversionScheduler(2, 1, 60, 20, limiter);
+        ConversionScheduler.Estimate estimate = new ConversionScheduler.Estimate(ConversionScheduler.KIND_PDF, 1, 20);
+        ConversionScheduler.Ticket first = scheduler.admit(estimate, "first", null);
+        freeMb.set(100);
+
+        Thread second = new Thread(() -> {
+            try {
+                scheduler.release(scheduler.admit(estimate, "second", null), false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.start();
+        second.join(300);
+        assertTrue(second.isAlive());
+        assertEquals(1, scheduler.getWaiting());
+
+        freeMb.set(64000);
+        second.join(5000);
+        assertFalse(second.isAlive());
+        scheduler.release(first, false);
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    void testHeapCapIsBetweenOneAndTwoGigabytes() {
+        AudiverisSettings automatic = new AudiverisSettings();
+        assertTrue(automatic.getEffectiveHeapMb() >= 1024);
+        assertTrue(automatic.getEffectiveHeapMb() <= 2048);
+        assertEquals(1000, settings.getEffectiveHeapMb());
+    }
+}
@@ -0,0 +1,144 @@
+package PFE008.backend;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the class archive of the Audiveris JVM
+ *
+ * @version 2026.10.17
+ */
+class AudiverisCds_tests {
+
+    @TempDir
+    Path tempDir;
+
+    private Path launcher;
+    private Path jar;
+    private AudiverisCds cds;
+
+    @BeforeEach
+    void setup() throws Exception {
+        Path dist = tempDir.resolve("dist");
+        Files.createDirectories(dist.resolve("bin"));
+        Files.createDirectories(dist.resolve("lib"));
+        launcher = Files.writeString(dist.resolve("bin").resolve("Audiveris"), "#!/bin/sh\n");
+        jar = Files.write(dist.resolve("lib").resolve("audiveris.jar"), new byte[] {'P', 'K'});
+        cds = new AudiverisCds(true, tempDir.resolve("cds").toString(), 2);
+    }
+
+    /**
+     * Write the archive the JVM would dump at exit
+     */
+    private static void dump(AudiverisCds.Launch launch) throws Exception {
+        Files.write(launch.dumpPath(), new byte[] {1, 2, 3});
+    }
+
+    @Test
+    void testFirstLaunchDumpsTheArchiveForTheNextOnes() throws Exception {
+        AudiverisCds.Launch first = cds.prepare(launcher.toString());
+        assertNotNull(first);
+        assertTrue(first.javaOptions().startsWith("-XX:ArchiveClassesAtExit="));
+        // The other launches don't wait for the archive
+        assertNull(cds.prepare(launcher.toString()));
+
+        dump(first);
+        cds.finish(first, true);
+        assertTrue(Files.isRegularFile(first.archive()));
+        assertFalse(Files.exists(first.dumpPath()));
+
+        AudiverisCds.Launch next = cds.prepare(launcher.toString());
+        assertEquals("-XX:SharedArchiveFile=" + first.archive() + " -Xshare:auto", next.javaOptions());
+        assertNull(next.dumpPath());
+    }
+
+    @Test
+    void testNewDistributionReplacesTheArchive() throws Exception {
+        AudiverisCds.Launch first = cds.prepare(launcher.toString());
+        dump(first);
+        cds.finish(first, true);
+
+        Files.write(jar, new byte[] {'P', 'K', 3, 4});
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(System.currentTimeMillis() + 60000));
+        AudiverisCds.Launch second = cds.prepare(launcher.toString());
+
+        assertNotNull(second.dumpPath());
+        assertNotEquals(first.archive(), second.archive());
+        assertFalse(Files.exists(first.archive()));
+    }
+
+    @Test
+    void testFailedDumpsAreGivenUp() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            AudiverisCds.Launch launch = cds.prepare(launcher.toString());
+            assertNotNull(launch);
+            // A failed run leaves an incomplete archive
+            dump(launch);
+            cds.finish(launch, false);
+            assertFalse(Files.exists(launch.archive()));
+            assertFalse(Files.exists(launch.dumpPath()));
+        }
+
+        assertNull(cds.prepare(launcher.toString()));
+    }
+
+    @Test
+    void testMissingLauncherRunsWithoutArchive() {
+        assertNull(cds.prepare(tempDir.resolve("missing").resolve("Audiveris").toString()));
+    }
+
+    @Test
+    void testDisabledArchiveAddsNoOption() {
+        AudiverisCds disabled = new AudiverisCds(false, tempDir.resolve("disabled").toString(), 2);
+        assertNull(disabled.prepare(launcher.toString()));
+        assertFalse(Files.exists(tempDir.resolve("disabled")));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void testJvmLoadsClassesFromTheDumpedArchive() throws Exception {
+        Path main = Files.writeString(tempDir.resolve("Hello.java"),
+            "public class Hello { public static void main(String[] args) { System.out.println(\"hello\"); } }");
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Path classLog = tempDir.resolve("classes.log");
+        Files.writeString(launcher, "#!/bin/sh\nexec \"" + java + "\" $JAVA_OPTS -Xlog:class+load:file=" + classLog + " \"" + main + "\"\n");
+
+        AudiverisCds.Launch dumping = cds.prepare(launcher.toString());
+        ProcessResult result = launch(dumping);
+        cds.finish(dumping, result.isSuccess());
+        assertTrue(result.stdout().contains("hello"));
+        assertTrue(Files.isRegularFile(dumping.archive()));
+
+        AudiverisCds.Launch shared = cds.prepare(launcher.toString());
+        result = launch(shared);
+        assertTrue(result.isSuccess());
+        assertTrue(Files.readString(classLog).contains("shared objects file (top)"));
+
+        // A broken archive is left out by the JVM
+        Files.delete(shared.archive());
+        Files.write(shared.archive(), new byte[] {1, 2, 3});
+        result = launch(cds.prepare(launcher.toString()));
+        assertTrue(result.stdout().contains("hello"));
+    }
+
+    private ProcessResult launch(AudiverisCds.Launch launch) throws Exception {
+        return ProcessSupervisor.run("audiveris", List.of("sh", launcher.toString()),
+            Map.of("JAVA_OPTS", launch.javaOptions()), Duration.ofSeconds(120), null);
+    }
+}
@@ -0,0 +1,78 @@
+package PFE008.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the parsing of the Audiveris output into progress events
+ * 
+ * @version 2026.10.17
+ */
+class AudiverisProgress_tests {
+
+    @Test
+    void testStepsOfSheetsAreReported() {
+        List<ProgressEvent> events = new ArrayList<>();
+        AudiverisProgress progress = new AudiverisProgress(events::add, 0, 1, null);
+
+        progress.accept("INFO  []                 Versions 30 | Software: Audiveris 5.3.1");
+        progress.accept("INFO  [score#1]          SheetStub 512 | LOAD step starting");
+        progress.accept("INFO  [score#1]          Picture 330 | Image loaded");
+        progress.accept("INFO  [score#1]          SheetStub 512 | BINARY step starting");
+        progress.accept("INFO  [score#1]          BinaryStep 85 | BINARY done in 120 ms");
+        progress.accept("INFO  [score#2]          SheetStub 512 | LOAD step starting");
+        progress.accept("INFO  [score#1]          SheetStub 512 | SCALE step starting");
+
+        assertEquals(List.of("LOAD", "BINARY", "LOAD", "SCALE"), events.stream().map(ProgressEvent::step).toList());
+        assertEquals(List.of(1, 1, 2, 1), events.stream().map(ProgressEvent::sheet).toList());
+        assertEquals(ProgressEvent.STAGE_OMR, events.get(0).stage());
+        assertEquals("Sheet 1: binary (step 2/20)", events.get(1).message());
+        assertTrue(events.get(3).progress() > events.get(1).progress());
+    }
+
+    @Test
+    void testStepsDontGoBack() {
+        List<ProgressEvent> events = new ArrayList<>();
+        AudiverisProgress progress = new AudiverisProgress(events::add, 0, 1, null);
+
+        progress.accept("INFO  [score#1]  SheetStub | BEAMS step starting");
+        progress.accept("INFO  [score#1]  Grid | back to the GRID found earlier");
+        progress.accept("INFO  [score#1]  SheetStub | BEAMS step starting");
+
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void testUntaggedLinesNeedTheStepWord() {
+        List<ProgressEvent> events = new ArrayList<>();
+        AudiverisProgress progress = new AudiverisProgress(events::add, 0, 1, null);
+
+        progress.accept("Loading PAGE settings");
+        progress.accept("Running step HEADERS");
+
+        assertEquals(1, events.size());
+        assertEquals("HEADERS", events.get(0).step());
+        assertNull(events.get(0).sheet());
+    }
+
+    @Test
+    void testProgressIsMappedToTheRange() {
+        List<ProgressEvent> events = new ArrayList<>();
+        AudiverisProgress progress = new AudiverisProgress(events::add, 0.2, 0.6, 3);
+
+        progress.accept("INFO  [score-page-3#1]  SheetStub | PAGE step starting");
+        progress.accept("INFO  [score-page-3]  Book | Book exported as /work/score-page-3.mxl");
+
+        assertEquals(2, events.size());
+        assertEquals(3, events.get(0).sheet());
+        assertTrue(events.get(0).progress() > 0.2 && events.get(0).progress() < 0.6);
+        assertEquals(AudiverisProgress.STEP_EXPORT, events.get(1).step());
+        assertEquals(0.6, events.get(1).progress());
+        assertEquals("Page 3 exported", events.get(1).message());
+    }
+}
@@ -0,0 +1,150 @@
+package PFE008.backend;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the pool of warm Audiveris workers, using a fake Audiveris main class
+ * 
+ * @version 2026.10.17
+ */
+class AudiverisWorkerPool_tests {
+
+    private static final String WORKER_SCRIPT = System.getProperty("user.dir") + File.separator
+    + "src" + File.separator + "main" + File.separator + "AudiverisWorker.java";
+
+    @TempDir
+    Path tempDir;
+
+    private AudiverisWorkerPool pool;
+
+    @AfterEach
+    void cleanup() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testRunOnWarmWorker() throws InterruptedException {
+        pool = new AudiverisWorkerPool(settings(1, 10, WORKER_SCRIPT));
+        pool.start();
+        assertTrue(pool.isAvailable());
+
+        assertEquals(0, pool.run(List.of("-batch", "--", "score.pdf")));
+        assertEquals(3, pool.run(List.of("-batch", "--", "fail")));
+        assertEquals(1, pool.getIdleWorkers());
+
+        pool.checkHealth();
+        assertEquals(1, pool.getIdleWorkers());
+    }
+
+    @Test
+    void testWorkerIsRecycled() throws InterruptedException {
+        pool = new AudiverisWorkerPool(settings(1, 1, WORKER_SCRIPT));
+        pool.start();
+
+        assertEquals(0, pool.run(List.of("-batch", "--", "first.pdf")));
+        assertEquals(0, pool.run(List.of("-batch", "--", "second.pdf")));
+        assertEquals(1, pool.getIdleWorkers());
+    }
+
+    @Test
+    void testHungJobFailsWithoutFallback() throws InterruptedException {
+        AudiverisSettings settings = settings(1, 10, WORKER_SCRIPT);
+        settings.getPool().setJobTimeoutMs(3000);
+        pool = new AudiverisWorkerPool(settings);
+        pool.start();
+        assertEquals(0, pool.run(List.of("-batch", "--", "warmup.pdf")));
+
+        // The hung worker is replaced, the job is not handed back for a one-shot launch
+        assertEquals(-1, pool.run(List.of("-batch", "--", "hang")));
+        assertEquals(1, pool.getIdleWorkers());
+        assertEquals(0, pool.run(List.of("-batch", "--", "score.pdf")));
+    }
+
+    @Test
+    void testCancelledJobIsInterrupted() throws Exception {
+        pool = new AudiverisWorkerPool(settings(1, 10, WORKER_SCRIPT));
+        pool.start();
+        assertEquals(0, pool.run(List.of("-batch", "--", "warmup.pdf")));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> job = executor.submit(() -> pool.run(List.of("-batch", "--", "hang")));
+            Thread.sleep(500);
+            executor.shutdownNow();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> job.get(30, TimeUnit.SECONDS));
+            assertInstanceOf(InterruptedException.class, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, pool.run(List.of("-batch", "--", "score.pdf")));
+    }
+
+    @Test
+    void testBrokenWorkerFallsBack() throws InterruptedException {
+        pool = new AudiverisWorkerPool(settings(1, 10, "missing" + File.separator + "AudiverisWorker.java"));
+        pool.start();
+
+        assertNull(pool.run(List.of("-batch", "--", "score.pdf")));
+    }
+
+    @Test
+    void testUnsupportedRuntimeTurnsThePoolOff() throws Exception {
+        // Answers like the worker on a runtime without security manager
+        Path script = Files.writeString(tempDir.resolve("UnsupportedWorker.java"),
+            "public class UnsupportedWorker { public static void main(String[] args) {"
+            + " System.out.println(\"@@maestro UNSUPPORTED Java 24\"); System.exit(2); } }");
+        pool = new AudiverisWorkerPool(settings(1, 10, script.toString()));
+        pool.start();
+        assertTrue(pool.isAvailable());
+
+        assertNull(pool.run(List.of("-batch", "--", "score.pdf")));
+        assertFalse(pool.isAvailable());
+        assertEquals(0, pool.getIdleWorkers());
+    }
+
+    @Test
+    void testDisabledPool() throws InterruptedException {
+        AudiverisSettings settings = settings(1, 10, WORKER_SCRIPT);
+        settings.getPool().setEnabled(false);
+        pool = new AudiverisWorkerPool(settings);
+        pool.start();
+
+        assertFalse(pool.isAvailable());
+        assertNull(pool.run(List.of("-batch", "--", "score.pdf")));
+    }
+
+    private static AudiverisSettings settings(int size, int maxJobs, String workerScript) {
+        AudiverisSettings settings = new AudiverisSettings();
+        AudiverisSettings.Pool pool = settings.getPool();
+        pool.setEnabled(true);
+        pool.setSize(size);
+        pool.setMaxJobsPerWorker(maxJobs);
+        pool.setStartupTimeoutMs(60000);
+        pool.setJobTimeoutMs(30000);
+        pool.setAcquireTimeoutMs(60000);
+        pool.setClassPath(System.getProperty("java.class.path"));
+        pool.setWorkerScript(workerScript);
+        pool.setMainClass(FakeAudiverisMain.class.getName());
+        return settings;
+    }
+}
@@ -0,0 +1,228 @@
+package PFE008.backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Tests for the batch conversions streamed as a zip
+ * 
+ * @version 2026.10.17
+ */
+class BatchConverter_tests {
+    private ConversionService conversionService;
+    private WorkspaceManager workspaces;
+    private BatchConverter batchConverter;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws Exception {
+        conversionService = mock(ConversionService.class);
+        // The MIDI file of a music sheet holds its content, so the entries can be told apart
+        when(conversionService.convert(any(), any())).thenAnswer(invocation -> midi(invocation.getArgument(0)));
+        workspaces = new WorkspaceManager(tempDir.resolve("work").toString(), 60, Long.MAX_VALUE);
+        batchConverter = batchConverter(2, 10);
+    }
+
+    @AfterEach
+    void teardown() {
+        batchConverter.shutdown();
+    }
+
+    @Test
+    void testFilesAreConverted() throws Exception {
+        List<BatchConverter.Upload> uploads = batchConverter.ingest(new MultipartFile[] {pdf("first.pdf"), pdf("second.pdf")});
+        Map<String, String> entries = unzip(convert(uploads));
+
+        assertEquals(List.of("first.mid", "manifest.json", "second.mid"), entries.keySet().stream().sorted().toList());
+        assertEquals("%PDF-1.4 first.pdf", entries.get("first.mid"));
+
+        JsonNode manifest = new ObjectMapper().readTree(entries.get(BatchConverter.MANIFEST));
+        assertEquals(2, manifest.get("succeeded").asInt());
+        assertEquals(0, manifest.get("failed").asInt());
+        assertEquals("first.pdf", manifest.get("files").get(0).get("file").asText());
+        assertEquals("first.mid", manifest.get("files").get(0).get("entry").asText());
+        assertTrue(manifest.get("files").get(0).get("downloadUri").asText().startsWith("/results/"));
+        assertEquals(0, workspaces.getWorkspaceCount());
+    }
+
+    @Test
+    void testEntriesAreSentAsSoonAsTheyAreDone() throws Exception {
+        CountDownLatch entrySent = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            SavedUpload upload = invocation.getArgument(0);
+            if (Files.readString(upload.path()).contains("slow")) {
+                // The slow file only finishes once the fast one has reached the client
+                assertTrue(entrySent.await(10, TimeUnit.SECONDS));
+            }
+            return midi(upload);
+        }).when(conversionService).convert(any(), any());
+
+        List<BatchConverter.Upload> uploads = batchConverter.ingest(new MultipartFile[] {pdf("slow.pdf"), pdf("fast.pdf")});
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        batchConverter.convert(uploads, null, new FilterOutputStream(zip) {
+            @Override
+            public void flush() throws IOException {
+                super.flush();
+                entrySent.countDown();
+            }
+        });
+
+        assertEquals(List.of("fast.mid", "slow.mid", "manifest.json"), List.copyOf(unzip(zip.toByteArray()).keySet()));
+    }
+
+    @Test
+    void testZipIsExpanded() throws Exception {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("choir/", new byte[0]);
+        files.put("choir/first.pdf", "%PDF-1.4 first".getBytes());
+        files.put("__MACOSX/choir/._first.pdf", "metadata".getBytes());
+        files.put("choir/notes.txt", "not a music sheet".getBytes());
+        files.put("choir/more/first.pdf", "%PDF-1.4 other first".getBytes());
+        MockMultipartFile zip = new MockMultipartFile("files", "choir.zip", "application/zip", zip(files));
+
+        List<BatchConverter.Upload> uploads = batchConverter.ingest(new MultipartFile[] {zip, pdf("second.pdf")});
+        assertEquals(List.of("first.pdf", "notes.txt", "first.pdf", "second.pdf"), uploads.stream().map(BatchConverter.Upload::fileName).toList());
+
+        Map<String, String> entries = unzip(convert(uploads));
+        assertEquals(List.of("first-2.mid", "first.mid", "manifest.json", "second.mid"), entries.keySet().stream().sorted().toList());
+
+        JsonNode manifest = new ObjectMapper().readTree(entries.get(BatchConverter.MANIFEST));
+        assertEquals(3, manifest.get("succeeded").asInt());
+        assertEquals(1, manifest.get("failed").asInt());
+        assertEquals(BatchItem.FAILED, manifest.get("files").get(1).get("status").asText());
+        assertTrue(manifest.get("files").get(1).get("error").asText().contains("invalid"));
+    }
+
+    @Test
+    void testFailedConversionIsInManifest() throws Exception {
+        doReturn(null).when(conversionService).convert(any(), any());
+
+        Map<String, String> entries = unzip(convert(batchConverter.ingest(new MultipartFile[] {pdf("wrong.pdf")})));
+
+        assertEquals(List.of(BatchConverter.MANIFEST), List.copyOf(entries.keySet()));
+        JsonNode item = new ObjectMapper().readTree(entries.get(BatchConverter.MANIFEST)).get("files").get(0);
+        assertEquals(BatchItem.FAILED, item.get("status").asText());
+        assertTrue(item.has("uploadId"));
+        assertEquals(0, workspaces.getWorkspaceCount());
+    }
+
+    @Test
+    void testTooManyFilesAreRejected() {
+        batchConverter.shutdown();
+        batchConverter = batchConverter(2, 1);
+
+        assertThrows(InvalidUploadException.class, () -> batchConverter.ingest(new MultipartFile[] {pdf("first.pdf"), pdf("second.pdf")}));
+        assertThrows(InvalidUploadException.class, () -> batchConverter.ingest(new MultipartFile[0]));
+        assertEquals(0, workspaces.getWorkspaceCount());
+    }
+
+    @Test
+    void testWorkspacesAreDeletedWhenClientGoesAway() throws Exception {
+        batchConverter.shutdown();
+        batchConverter = batchConverter(1, 10);
+        List<BatchConverter.Upload> uploads = batchConverter.ingest(new MultipartFile[] {pdf("first.pdf"), pdf("second.pdf"), pdf("third.pdf")});
+
+        OutputStream closed = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        assertThrows(IOException.class, () -> batchConverter.convert(uploads, null, closed));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (workspaces.getWorkspaceCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, workspaces.getWorkspaceCount());
+    }
+
+    @Test
+    void testEntryNames() {
+        Set<String> taken = new HashSet<>();
+        assertEquals("score.mid", BatchConverter.entryName("score.pdf", taken));
+        assertEquals("score-2.mid", BatchConverter.entryName("other/score.png", taken));
+        assertEquals("evil.mid", BatchConverter.entryName("..\\..\\evil.pdf", taken));
+        assertEquals("score-3.mid", BatchConverter.entryName(null, taken));
+    }
+
+    private BatchConverter batchConverter(int workers, int maxFiles) {
+        return new BatchConverter(conversionService, new UploadIngestor(10485760), workspaces,
+            new ResultStore(tempDir.resolve("results").toString(), 60), new ExecutionMode(false), workers, maxFiles);
+    }
+
+    private static MockMultipartFile pdf(String fileName) {
+        return new MockMultipartFile("files", fileName, "application/pdf", ("%PDF-1.4 " + fileName).getBytes());
+    }
+
+    private static String midi(SavedUpload upload) throws IOException {
+        Path midiPath = upload.workspace().dir().resolve("score.mid");
+        Files.copy(upload.path(), midiPath);
+        return midiPath.toString();
+    }
+
+    private byte[] convert(List<BatchConverter.Upload> uploads) throws IOException {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        batchConverter.convert(uploads, null, zip);
+        return zip.toByteArray();
+    }
+
+    private static byte[] zip(Map<String, byte[]> files) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                zip.putNextEntry(new ZipEntry(file.getKey()));
+                zip.write(file.getValue());
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, String> unzip(byte[] bytes) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
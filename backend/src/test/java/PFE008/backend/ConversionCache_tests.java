@@ -0,0 +1,109 @@
+package PFE008.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the conversion result cache
+ * 
+ * @version 2026.10.17
+ */
+class ConversionCache_tests {
+
+    private static final String TESTPATH = System.getProperty("user.dir") + File.separator
+    + "src" + File.separator + "test" + File.separator + "java" + File.separator + "PFE008" + File.separator
+    + "backend" + File.separator + "resources" + File.separator + "tests_java" + File.separator + "cacheDir";
+
+    private Path midiFile;
+
+    @BeforeEach
+    void setup() throws IOException {
+        Files.createDirectories(Paths.get(TESTPATH));
+        midiFile = Paths.get(TESTPATH, "abcd1234.mid");
+        Files.write(midiFile, new byte[100]);
+    }
+
+    @AfterEach
+    void cleanup() {
+        deleteRecursively(new File(TESTPATH));
+    }
+
+    @Test
+    void testMissThenHit() {
+        ConversionCache cache = new ConversionCache(true, TESTPATH + File.separator + "cache", 1000, false);
+        String key = ConversionCache.key("0123456789abcdef", null);
+
+        assertNull(cache.get(key));
+        cache.put(key, midiFile);
+
+        Path cached = cache.get(key);
+        assertNotNull(cached);
+        assertTrue(Files.exists(cached));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        ConversionCache cache = new ConversionCache(true, TESTPATH + File.separator + "cache", 250, false);
+
+        cache.put("first", midiFile);
+        cache.put("second", midiFile);
+        cache.get("first");
+        cache.put("third", midiFile);
+
+        assertNotNull(cache.get("first"));
+        assertNull(cache.get("second"));
+        assertNotNull(cache.get("third"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(200, cache.getTotalBytes());
+    }
+
+    @Test
+    void testIndexIsReloaded() {
+        String cacheDir = TESTPATH + File.separator + "cache";
+        new ConversionCache(true, cacheDir, 1000, false).put("entry", midiFile);
+
+        ConversionCache reloaded = new ConversionCache(true, cacheDir, 1000, false);
+        assertEquals(1, reloaded.size());
+        assertNotNull(reloaded.get("entry"));
+    }
+
+    @Test
+    void testDisabledCache() {
+        ConversionCache cache = new ConversionCache(false, TESTPATH + File.separator + "cache", 1000, false);
+        cache.put("entry", midiFile);
+        assertNull(cache.get("entry"));
+    }
+
+    @Test
+    void testTemposAreNormalized() {
+        String key = ConversionCache.key("0123456789abcdef", "[{\"measure\": 1, \"tempo\": 90}]");
+
+        assertEquals(key, ConversionCache.key("0123456789abcdef", " [ {\"tempo\":90,\"measure\":1} ] "));
+        assertNotEquals(key, ConversionCache.key("0123456789abcdef", "[{\"measure\": 1, \"tempo\": 100}]"));
+        assertEquals(ConversionCache.key("0123456789abcdef", null), ConversionCache.key("0123456789abcdef", "[]"));
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
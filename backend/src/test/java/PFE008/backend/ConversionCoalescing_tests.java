@@ -0,0 +1,179 @@
+package PFE008.backend;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the conversions of the same file waiting for the one already running
+ *
+ * @version 2026.10.17
+ */
+class ConversionCoalescing_tests {
+
+    private static final String MXLFILE = System.getProperty("user.dir") + File.separator
+    + "src" + File.separator + "test" + File.separator + "java" + File.separator + "PFE008" + File.separator
+    + "backend" + File.separator + "resources" + File.separator + "manual_tests" + File.separator + "mxl"
+    + File.separator + "Pachelbel-test.mxl";
+
+    private static final String UPLOAD_ID = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private static final String NEW_UPLOAD_ID = "fedcba9876543210fedcba9876543210fedcba9876543210fedcba9876543210";
+
+    @TempDir
+    Path tempDir;
+
+    private OmrArtifactStore store;
+    private WorkspaceManager workspaces;
+    private ConversionService conversionService;
+    private ExecutorService executor;
+    private CountDownLatch omrStarted;
+    private CountDownLatch omrDone;
+
+    @BeforeEach
+    void setup() throws Exception {
+        store = spy(new OmrArtifactStore(tempDir.resolve("omr").toString(), 60));
+        store.put(UPLOAD_ID, Path.of(MXLFILE));
+        // The OMR stage of the first conversion runs until the test lets it finish
+        omrStarted = new CountDownLatch(1);
+        omrDone = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            omrStarted.countDown();
+            omrDone.await();
+            return invocation.callRealMethod();
+        }).when(store).copyTo(any(), any(), any());
+
+        workspaces = new WorkspaceManager(tempDir.resolve("work").toString(), 60, Long.MAX_VALUE);
+        ConversionCache cache = new ConversionCache(false, tempDir.resolve("cache").toString(), 0, false);
+        conversionService = new ConversionService(cache, store, new AudiverisSettings(), null, null, null, null, null, null,
+            null, null, workspaces, AudiverisController.MIDI_ENGINE_JAVA, true);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void teardown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Convert an upload of the music sheet in its own workspace, then read the
+     * MIDI file and delete the workspace, like the /convert route
+     */
+    private Future<byte[]> submit(String tempos) {
+        return submit(conversionService, UPLOAD_ID, tempos);
+    }
+
+    private Future<byte[]> submit(ConversionService conversionService, String uploadId, String tempos) {
+        return executor.submit(() -> {
+            Workspace workspace = workspaces.create();
+            try {
+                Path upload = Files.write(workspace.dir().resolve("abcd1234.pdf"), new byte[] {'%', 'P', 'D', 'F'});
+                String midiPath = conversionService.convert(new SavedUpload(workspace, upload, uploadId, 4), tempos);
+                assertNotNull(midiPath);
+                assertTrue(Path.of(midiPath).startsWith(workspace.dir()));
+                return Files.readAllBytes(Path.of(midiPath));
+            } finally {
+                workspaces.delete(workspace);
+            }
+        });
+    }
+
+    private void waitUntilCoalesced(long count) throws InterruptedException {
+        waitUntilCoalesced(conversionService, count);
+    }
+
+    private static void waitUntilCoalesced(ConversionService conversionService, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (conversionService.getCoalesced() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, conversionService.getCoalesced());
+    }
+
+    @Test
+    void testSameUploadIsConvertedOnce() throws Exception {
+        List<Future<byte[]>> conversions = new ArrayList<>();
+        conversions.add(submit(null));
+        assertTrue(omrStarted.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            conversions.add(submit(null));
+        }
+        waitUntilCoalesced(3);
+
+        omrDone.countDown();
+        byte[] midi = conversions.get(0).get(30, TimeUnit.SECONDS);
+        assertTrue(midi.length > 0);
+        for (Future<byte[]> conversion : conversions) {
+            assertArrayEquals(midi, conversion.get(30, TimeUnit.SECONDS));
+        }
+
+        verify(store, times(1)).copyTo(any(), any(), any());
+        // The workspace of the first conversion is deleted once the others have copied its MIDI file
+        assertEquals(0, workspaces.getWorkspaceCount());
+        try (var dirs = Files.list(tempDir.resolve("work"))) {
+            assertEquals(0, dirs.count());
+        }
+    }
+
+    @Test
+    void testConversionCancelledWaitingForPermitIsRunAgain() throws Exception {
+        omrDone.countDown();
+        // The only CPU permit is taken, the Audiveris run of the first conversion waits for it
+        CpuPermits permits = spy(new CpuPermits(1));
+        permits.acquire("test");
+        CountDownLatch permitWaiting = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            permitWaiting.countDown();
+            return invocation.callRealMethod();
+        }).when(permits).acquire(any());
+        ConversionService service = new ConversionService(new ConversionCache(false, tempDir.resolve("cache").toString(), 0, false),
+            store, new AudiverisSettings(), null, null, null, permits, null, null,
+            null, null, workspaces, AudiverisController.MIDI_ENGINE_JAVA, true);
+
+        Future<byte[]> first = submit(service, NEW_UPLOAD_ID, null);
+        assertTrue(permitWaiting.await(10, TimeUnit.SECONDS));
+        Future<byte[]> second = submit(service, NEW_UPLOAD_ID, null);
+        waitUntilCoalesced(service, 1);
+
+        // Recognized meanwhile, the second conversion only runs the MIDI stage once it runs again
+        store.put(NEW_UPLOAD_ID, Path.of(MXLFILE));
+        first.cancel(true);
+        permits.release();
+
+        assertTrue(second.get(30, TimeUnit.SECONDS).length > 0);
+    }
+
+    @Test
+    void testOtherTemposAreNotCoalesced() throws Exception {
+        Future<byte[]> first = submit(null);
+        assertTrue(omrStarted.await(10, TimeUnit.SECONDS));
+        Future<byte[]> second = submit("[{\"measure\": 2, \"tempo\": 60}]");
+
+        omrDone.countDown();
+        first.get(30, TimeUnit.SECONDS);
+        second.get(30, TimeUnit.SECONDS);
+
+        assertEquals(0, conversionService.getCoalesced());
+        verify(store, times(2)).copyTo(any(), any(), any());
+    }
+}
@@ -0,0 +1,185 @@
+package PFE008.backend;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the shortest-first ordering of the conversions
+ *
+ * @version 2026.10.17
+ */
+class ConversionScheduler_tests {
+    private static final Path RESOURCES = Path.of("src", "test", "java", "PFE008", "backend", "resources");
+
+    @TempDir
+    Path tempDir;
+
+    private static ConversionScheduler.Estimate estimate(double seconds) {
+        return new ConversionScheduler.Estimate(ConversionScheduler.KIND_PDF, seconds / 20, seconds);
+    }
+
+    /**
+     * Start a conversion waiting for a slot, which records its label once it gets one
+     */
+    private static Thread waitFor(ConversionScheduler scheduler, double seconds, String label, List<String> granted) throws InterruptedException {
+        int waiting = scheduler.getWaiting();
+        Thread thread = new Thread(() -> {
+            try {
+                ConversionScheduler.Ticket ticket = scheduler.admit(estimate(seconds), label, null);
+                granted.add(label);
+                scheduler.release(ticket, false);
+            } catch (InterruptedException e) {
+                granted.add(label + " interrupted");
+            }
+        });
+        thread.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.getWaiting() == waiting && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return thread;
+    }
+
+    @Test
+    void testPdfCostGrowsWithPages() {
+        ConversionScheduler scheduler = new ConversionScheduler(1, 1, 60, 20, null);
+        ConversionScheduler.Estimate single = scheduler.estimate(RESOURCES.resolve("tests_java").resolve("AudiverisController_java_tests.pdf"));
+        ConversionScheduler.Estimate chopin = scheduler.estimate(RESOURCES.resolve("manual_tests").resolve("PDF")
+            .resolve("[Free-scores.com]_chopin-frederic-nocturnes-opus-9-no-2-1508.pdf"));
+
+        assertEquals(ConversionScheduler.KIND_PDF, single.kind());
+        assertTrue(single.units() >= 0.25);
+        assertEquals(single.units() * 20, single.seconds(), 1e-9);
+        assertTrue(chopin.units() > single.units(), chopin + " " + single);
+    }
+
+    @Test
+    void testImageCostIsThePixelCount() {
+        ConversionScheduler.Estimate image = new ConversionScheduler(1, 1, 60, 20, null)
+            .estimate(RESOURCES.resolve("tests_java").resolve("imageTest.jpg"));
+
+        assertEquals(ConversionScheduler.KIND_IMAGE, image.kind());
+        // 474x299 is below the smallest cost
+        assertEquals(0.25, image.units(), 1e-9);
+    }
+
+    @Test
+    void testUnreadableFileCostsOneUnit() throws Exception {
+        Path broken = Files.write(tempDir.resolve("broken.pdf"), new byte[] {1, 2, 3});
+        ConversionScheduler.Estimate estimate = new ConversionScheduler(1, 1, 60, 20, null).estimate(broken);
+        assertEquals(1, estimate.units());
+        assertEquals(20, estimate.seconds());
+    }
+
+    @Test
+    void testShortestConversionGoesFirst() throws Exception {
+        ConversionScheduler scheduler = new ConversionScheduler(1, 0, 60, 20, null);
+        ConversionScheduler.Ticket running = scheduler.admit(estimate(10), "running", null);
+        List<String> granted = new CopyOnWriteArrayList<>();
+
+        Thread large = waitFor(scheduler, 600, "large", granted);
+        Thread medium = waitFor(scheduler, 100, "medium", granted);
+        Thread small = waitFor(scheduler, 20, "small", granted);
+        assertEquals(3, scheduler.getWaiting());
+
+        scheduler.release(running, false);
+        large.join(5000);
+        medium.join(5000);
+        small.join(5000);
+        assertEquals(List.of("small", "medium", "large"), granted);
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    void testWaitingConversionsAge() throws Exception {
+        // Each second of waiting is worth a thousand seconds of estimated cost
+        ConversionScheduler scheduler = new ConversionScheduler(1, 1000, 60, 20, null);
+        ConversionScheduler.Ticket running = scheduler.admit(estimate(10), "running", null);
+        List<String> granted = new CopyOnWriteArrayList<>();
+
+        Thread large = waitFor(scheduler, 100, "large", granted);
+        Thread.sleep(300);
+        Thread small = waitFor(scheduler, 1, "small", granted);
+
+        scheduler.release(running, false);
+        large.join(5000);
+        small.join(5000);
+        assertEquals(List.of("large", "small"), granted);
+    }
+
+    @Test
+    void testLastSlotIsKeptForSmallConversions() throws Exception {
+        ConversionScheduler scheduler = new ConversionScheduler(2, 1, 60, 20, null);
+        ConversionScheduler.Ticket first = scheduler.admit(estimate(600), "first large", null);
+        List<String> granted = new CopyOnWriteArrayList<>();
+
+        Thread large = waitFor(scheduler, 600, "second large", granted);
+        assertEquals(1, scheduler.getRunning());
+        assertEquals(1, scheduler.getWaiting());
+
+        // The small conversion overtakes the large one waiting, without waiting itself
+        ConversionScheduler.Ticket small = scheduler.admit(estimate(20), "small", null);
+        assertEquals(2, scheduler.getRunning());
+        scheduler.release(small, false);
+
+        scheduler.release(first, false);
+        large.join(5000);
+        assertEquals(List.of("second large"), granted);
+    }
+
+    @Test
+    void testInterruptedConversionGivesUpItsTurn() throws Exception {
+        ConversionScheduler scheduler = new ConversionScheduler(1, 1, 60, 20, null);
+        ConversionScheduler.Ticket running = scheduler.admit(estimate(10), "running", null);
+        List<String> granted = new CopyOnWriteArrayList<>();
+        List<ProgressEvent> events = new CopyOnWriteArrayList<>();
+
+        Thread cancelled = new Thread(() -> {
+            try {
+                scheduler.admit(estimate(10), "cancelled", events::add);
+                granted.add("cancelled");
+            } catch (InterruptedException e) {
+                granted.add("cancelled interrupted");
+            }
+        });
+        cancelled.start();
+        while (scheduler.getWaiting() == 0) {
+            Thread.sleep(5);
+        }
+        cancelled.interrupt();
+        cancelled.join(5000);
+
+        assertEquals(List.of("cancelled interrupted"), granted);
+        assertEquals(0, scheduler.getWaiting());
+        assertEquals(ProgressEvent.STAGE_SCHEDULE, events.get(0).stage());
+
+        scheduler.release(running, false);
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    void testPageCostIsLearned() throws Exception {
+        ConversionScheduler scheduler = new ConversionScheduler(1, 1, 60, 20, null);
+        for (int i = 0; i < 30; i++) {
+            scheduler.observe(new ConversionScheduler.Estimate(ConversionScheduler.KIND_PDF, 4, 80), 20);
+        }
+        assertEquals(5, scheduler.getSecondsPerUnit(ConversionScheduler.KIND_PDF), 0.1);
+        // Images learn their own cost
+        assertEquals(20, scheduler.getSecondsPerUnit(ConversionScheduler.KIND_IMAGE));
+
+        // Only completed conversions are learned from
+        ConversionScheduler.Ticket ticket = scheduler.admit(new ConversionScheduler.Estimate(ConversionScheduler.KIND_IMAGE, 1, 20), "failed", null);
+        scheduler.release(ticket, false);
+        assertEquals(20, scheduler.getSecondsPerUnit(ConversionScheduler.KIND_IMAGE));
+        assertFalse(scheduler.getRunning() > 0);
+    }
+}
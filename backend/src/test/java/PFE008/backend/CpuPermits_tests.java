@@ -0,0 +1,47 @@
+package PFE008.backend;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the limit on heavy stages running at the same time
+ * 
+ * @version 2026.10.17
+ */
+class CpuPermits_tests {
+
+    @Test
+    void testDefaultIsOnePermitPerProcessor() {
+        assertEquals(Runtime.getRuntime().availableProcessors(), new CpuPermits(0).getPermits());
+    }
+
+    @Test
+    void testStagesWaitForAPermit() throws Exception {
+        CpuPermits permits = new CpuPermits(1);
+        permits.acquire("first");
+        assertEquals(1, permits.getInUse());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread second = new Thread(() -> {
+            try {
+                permits.acquire("second");
+                acquired.countDown();
+                permits.release();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        permits.release();
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        second.join(10000);
+        assertEquals(0, permits.getInUse());
+    }
+}
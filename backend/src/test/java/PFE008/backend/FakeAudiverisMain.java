@@ -0,0 +1,19 @@
+package PFE008.backend;
+
+/**
+ * Stands in for org.audiveris.omr.Main in the worker pool tests.
+ * Exits with code 3 when asked to fail, like Audiveris does on a bad input,
+ * and never ends when asked to hang.
+ */
+public class FakeAudiverisMain {
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("Processing " + String.join(" ", args));
+        if (args.length > 0 && args[args.length - 1].equals("hang")) {
+            Thread.sleep(Long.MAX_VALUE);
+        }
+        if (args.length > 0 && args[args.length - 1].equals("fail")) {
+            System.exit(3);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package PFE008.backend;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the job queue shared by the API and worker nodes, with two
+ * queues on the same directory standing for two nodes
+ *
+ * @version 2026.10.17
+ */
+class FileJobQueue_tests {
+
+    @TempDir
+    Path tempDir;
+
+    private FileJobQueue api;
+    private FileJobQueue worker;
+    private SavedUpload upload;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        api = queue(FileJobQueue.ROLE_API);
+        worker = queue(FileJobQueue.ROLE_WORKER);
+        Path file = Files.write(tempDir.resolve("sheet.pdf"), new byte[] {'%', 'P', 'D', 'F'});
+        upload = new SavedUpload(new Workspace("w", tempDir), file, "abc", 4);
+    }
+
+    private FileJobQueue queue(String role) throws IOException {
+        return new FileJobQueue(role, tempDir.resolve("queue").toString(), 1000, 10, 60000, 2, 60);
+    }
+
+    /**
+     * @return The lease of a claimed job in running/
+     */
+    private Path lease(FileJobQueue.Entry claimed) {
+        return tempDir.resolve("queue").resolve("running").resolve(claimed.id() + "." + claimed.lease() + ".json");
+    }
+
+    /**
+     * Make the lease of a claimed job look expired
+     */
+    private void expire(FileJobQueue.Entry claimed) throws IOException {
+        Files.setLastModifiedTime(lease(claimed), FileTime.from(Instant.now().minusSeconds(60)));
+    }
+
+    @Test
+    void testUnknownRoleIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> queue("both"));
+    }
+
+    @Test
+    void testJobGoesFromApiToWorkerAndBack() throws Exception {
+        FileJobQueue.Entry entry = api.enqueue(upload, "{\"1\":90}", 10);
+        assertEquals(1, api.getPendingCount());
+
+        FileJobQueue.Entry claimed = worker.claim();
+        assertEquals(entry.id(), claimed.id());
+        assertEquals("{\"1\":90}", claimed.tempos());
+        assertTrue(Files.exists(worker.getUploadPath(claimed)));
+        assertEquals(0, api.getPendingCount());
+        assertEquals(1, api.getRunningCount());
+        assertNull(worker.claim());
+
+        ProgressEvent event = ProgressEvent.of(ProgressEvent.STAGE_OMR, "BEAMS", 1, 0.4, "Beams");
+        assertTrue(worker.heartbeat(claimed, event));
+        assertTrue(worker.complete(claimed, new FileJobQueue.Outcome(ConversionJob.Status.SUCCEEDED, null, "r", "node")));
+
+        List<ProgressEvent> events = new CopyOnWriteArrayList<>();
+        FileJobQueue.Outcome outcome = api.await(entry.id(), events::add);
+        assertEquals(ConversionJob.Status.SUCCEEDED, outcome.status());
+        assertEquals("r", outcome.resultId());
+        assertEquals(0, api.getRunningCount());
+        // The upload is deleted with the job
+        assertFalse(Files.exists(worker.getUploadPath(claimed)));
+    }
+
+    @Test
+    void testProgressOfTheWorkerIsForwarded() throws Exception {
+        FileJobQueue.Entry entry = api.enqueue(upload, null, 10);
+        FileJobQueue.Entry claimed = worker.claim();
+        worker.heartbeat(claimed, ProgressEvent.of(ProgressEvent.STAGE_OMR, "BEAMS", 1, 0.4, "Beams"));
+
+        List<ProgressEvent> events = new CopyOnWriteArrayList<>();
+        Thread waiting = new Thread(() -> {
+            try {
+                api.await(entry.id(), events::add);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (events.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        worker.complete(claimed, new FileJobQueue.Outcome(ConversionJob.Status.FAILED, "no", null, "node"));
+        waiting.join(5000);
+
+        assertEquals("BEAMS", events.get(0).step());
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void testShortestJobIsClaimedFirst() throws Exception {
+        api.enqueue(upload, null, 600);
+        FileJobQueue.Entry small = api.enqueue(upload, null, 20);
+        assertEquals(small.id(), worker.claim().id());
+    }
+
+    @Test
+    void testOnlyOneWorkerClaimsAJob() throws Exception {
+        FileJobQueue other = queue(FileJobQueue.ROLE_WORKER);
+        api.enqueue(upload, null, 10);
+
+        AtomicReference<FileJobQueue.Entry> first = new AtomicReference<>();
+        Thread thread = new Thread(() -> first.set(worker.claim()));
+        thread.start();
+        FileJobQueue.Entry second = other.claim();
+        thread.join();
+
+        assertTrue(first.get() == null ^ second == null);
+    }
+
+    @Test
+    void testExpiredLeaseIsDeliveredAgain() throws Exception {
+        FileJobQueue.Entry entry = api.enqueue(upload, null, 10);
+        FileJobQueue.Entry claimed = worker.claim();
+        expire(claimed);
+
+        api.reap();
+
+        // The dead worker lost its lease, another one gets the job
+        assertFalse(worker.heartbeat(claimed, null));
+        assertFalse(worker.complete(claimed, new FileJobQueue.Outcome(ConversionJob.Status.SUCCEEDED, null, "r", "node")));
+        FileJobQueue.Entry again = worker.claim();
+        assertEquals(entry.id(), again.id());
+        assertEquals(1, again.attempts());
+    }
+
+    @Test
+    void testStaleWorkerCannotTouchTheNewLease() throws Exception {
+        FileJobQueue.Entry entry = api.enqueue(upload, null, 10);
+        FileJobQueue.Entry stale = worker.claim();
+        expire(stale);
+        api.reap();
+        FileJobQueue other = queue(FileJobQueue.ROLE_WORKER);
+        FileJobQueue.Entry claimed = other.claim();
+        assertEquals(entry.id(), claimed.id());
+
+        // The worker that lost the lease neither renews nor completes the job of the new one
+        assertFalse(worker.heartbeat(stale, null));
+        assertFalse(worker.complete(stale, new FileJobQueue.Outcome(ConversionJob.Status.FAILED, "stale", null, "stale")));
+        worker.release(stale);
+        assertEquals(1, api.getRunningCount());
+        assertEquals(0, api.getPendingCount());
+
+        assertTrue(other.heartbeat(claimed, null));
+        assertTrue(other.complete(claimed, new FileJobQueue.Outcome(ConversionJob.Status.SUCCEEDED, null, "r", "node")));
+        FileJobQueue.Outcome outcome = api.await(entry.id(), null);
+        assertEquals(ConversionJob.Status.SUCCEEDED, outcome.status());
+        assertEquals("r", outcome.resultId());
+    }
+
+    /**
+     * Leave a claimed job as a node that died right after taking its expired lease
+     */
+    private void halfReap(FileJobQueue.Entry claimed) throws IOException {
+        Path reaping = Files.move(lease(claimed), tempDir.resolve("queue").resolve("reaping").resolve(lease(claimed).getFileName()));
+        Files.setLastModifiedTime(reaping, FileTime.from(Instant.now().minusSeconds(60)));
+    }
+
+    @Test
+    void testHalfReapedJobIsDeliveredOnce() throws Exception {
+        FileJobQueue.Entry entry = api.enqueue(upload, null, 10);
+        halfReap(worker.claim());
+
+        api.reap();
+        FileJobQueue.Entry again = worker.claim();
+        assertEquals(entry.id(), again.id());
+        assertEquals(1, again.attempts());
+
+        // Another node sweeping afterwards doesn't deliver it a second time
+        queue(FileJobQueue.ROLE_WORKER).reap();
+        assertNull(worker.claim());
+        assertEquals(1, api.getRunningCount());
+        try (var reaping = Files.list(tempDir.resolve("queue").resolve("reaping"))) {
+            assertEquals(0, reaping.count());
+        }
+    }
+
+    @Test
+    void testNodesReapingTogetherDeliverTheJobOnce() throws Exception {
+        FileJobQueue other = queue(FileJobQueue.ROLE_WORKER);
+        for (int i = 0; i < 10; i++) {
+            FileJobQueue.Entry entry = api.enqueue(upload, null, 10);
+            halfReap(worker.claim());
+
+            Thread thread = new Thread(api::reap);
+            thread.start();
+            other.reap();
+            thread.join();
+
+            FileJobQueue.Entry again = worker.claim();
+            assertEquals(entry.id(), again.id());
+            assertEquals(1, again.attempts());
+            assertNull(worker.claim());
+            assertTrue(worker.complete(again, new FileJobQueue.Outcome(ConversionJob.Status.SUCCEEDED, null, "r", "node")));
+        }
+    }
+
+    @Test
+    void testJobFailsAfterTooManyLostWorkers() throws Exception {
+        FileJobQueue.Entry entry = api.enqueue(upload, null, 10);
+        for (int i = 0; i < 2; i++) {
+            expire(worker.claim());
+            worker.reap();
+        }
+
+        assertNull(worker.claim());
+        FileJobQueue.Outcome outcome = api.await(entry.id(), null);
+        assertEquals(ConversionJob.Status.FAILED, outcome.status());
+    }
+
+    @Test
+    void testPendingJobIsCancelledRightAway() throws Exception {
+        FileJobQueue.Entry entry = api.enqueue(upload, null, 10);
+        api.cancel(entry.id());
+
+        assertNull(worker.claim());
+        assertEquals(ConversionJob.Status.CANCELLED, api.await(entry.id(), null).status());
+    }
+
+    @Test
+    void testRunningJobSeesTheCancellation() throws Exception {
+        FileJobQueue.Entry entry = api.enqueue(upload, null, 10);
+        FileJobQueue.Entry claimed = worker.claim();
+        assertFalse(worker.isCancelRequested(claimed.id()));
+
+        // Waiting on the API node is interrupted, which cancels the job
+        Thread waiting = new Thread(() -> {
+            try {
+                api.await(entry.id(), null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+        waiting.interrupt();
+        waiting.join(5000);
+
+        assertTrue(worker.isCancelRequested(claimed.id()));
+    }
+
+    @Test
+    void testJobNoWorkerTakesFails() throws Exception {
+        FileJobQueue api = new FileJobQueue(FileJobQueue.ROLE_API, tempDir.resolve("queue").toString(), 1000, 10, 50, 2, 60);
+        FileJobQueue.Entry entry = api.enqueue(upload, null, 10);
+
+        FileJobQueue.Outcome outcome = api.await(entry.id(), null);
+
+        assertEquals(ConversionJob.Status.FAILED, outcome.status());
+        assertEquals(0, api.getPendingCount());
+        assertNull(worker.claim());
+        assertFalse(Files.exists(tempDir.resolve("queue").resolve("uploads").resolve(entry.id())));
+    }
+
+    @Test
+    void testClaimedJobOutlivesThePendingTimeout() throws Exception {
+        FileJobQueue api = new FileJobQueue(FileJobQueue.ROLE_API, tempDir.resolve("queue").toString(), 1000, 10, 50, 2, 60);
+        FileJobQueue.Entry entry = api.enqueue(upload, null, 10);
+        FileJobQueue.Entry claimed = worker.claim();
+
+        AtomicReference<FileJobQueue.Outcome> outcome = new AtomicReference<>();
+        Thread waiting = new Thread(() -> {
+            try {
+                outcome.set(api.await(entry.id(), null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+        Thread.sleep(200);
+        assertTrue(worker.complete(claimed, new FileJobQueue.Outcome(ConversionJob.Status.SUCCEEDED, null, "r", "node")));
+        waiting.join(5000);
+
+        assertEquals(ConversionJob.Status.SUCCEEDED, outcome.get().status());
+    }
+
+    @Test
+    void testReleasedJobIsNotCountedAsAnAttempt() throws Exception {
+        api.enqueue(upload, null, 10);
+        FileJobQueue.Entry claimed = worker.claim();
+        worker.release(claimed);
+
+        FileJobQueue.Entry again = worker.claim();
+        assertNotNull(again);
+        assertEquals(0, again.attempts());
+    }
+}
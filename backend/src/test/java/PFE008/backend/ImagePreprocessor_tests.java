@@ -0,0 +1,145 @@
+package PFE008.backend;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the reduction of photos before Audiveris, on drawn staves
+ *
+ * @version 2026.10.17
+ */
+class ImagePreprocessor_tests {
+    private static final Path IMAGE_FIXTURE = Path.of("src", "test", "java", "PFE008", "backend", "resources", "tests_java", "imageTest.jpg");
+
+    @TempDir
+    Path tempDir;
+
+    private static ImagePreprocessor preprocessor(boolean enabled) {
+        return new ImagePreprocessor(enabled, 20, 8000000, true, 5, false, new CpuPermits(1));
+    }
+
+    /**
+     * Draw staves of five lines, tilted by the given angle
+     */
+    private static BufferedImage staves(int width, int height, int interline, double skewDegrees) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.BLACK);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setStroke(new BasicStroke(Math.max(1, interline / 10f)));
+        graphics.rotate(Math.toRadians(skewDegrees), width / 2.0, height / 2.0);
+        for (int top = height / 10; top + 4 * interline < height * 9 / 10; top += 8 * interline) {
+            for (int line = 0; line < 5; line++) {
+                int y = top + line * interline;
+                graphics.drawLine(width / 20, y, width * 19 / 20, y);
+            }
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    void testInterlineIsMeasured() {
+        BufferedImage gray = ImagePreprocessor.toGray(staves(1200, 1600, 30, 0));
+        byte[] pixels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        int interline = ImagePreprocessor.estimateInterline(pixels, 1200, 1600, ImagePreprocessor.otsuThreshold(pixels));
+        assertTrue(Math.abs(interline - 30) <= 1, "interline " + interline);
+    }
+
+    @Test
+    void testBlankPageHasNoInterline() {
+        BufferedImage gray = ImagePreprocessor.toGray(staves(400, 400, 400, 0));
+        byte[] pixels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        assertEquals(0, ImagePreprocessor.estimateInterline(pixels, 400, 400, ImagePreprocessor.otsuThreshold(pixels)));
+    }
+
+    @Test
+    void testLargeImageIsReducedToTheTargetInterline() {
+        ImagePreprocessor.Analysis analysis = preprocessor(true).process(staves(2400, 3200, 60, 0));
+
+        assertNotNull(analysis.image());
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, analysis.image().getType());
+        assertTrue(Math.abs(analysis.scale() - 1 / 3.0) < 0.02, "scale " + analysis.scale());
+        assertTrue(Math.abs(analysis.image().getWidth() - 800) < 20, "width " + analysis.image().getWidth());
+
+        // The staff lines survive the reduction
+        BufferedImage gray = analysis.image();
+        byte[] pixels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        int interline = ImagePreprocessor.estimateInterline(pixels, gray.getWidth(), gray.getHeight(), ImagePreprocessor.otsuThreshold(pixels));
+        assertTrue(Math.abs(interline - 20) <= 1, "interline " + interline);
+    }
+
+    @Test
+    void testSkewIsMeasuredAndRemoved() {
+        ImagePreprocessor preprocessor = preprocessor(true);
+        ImagePreprocessor.Analysis analysis = preprocessor.process(staves(1600, 1200, 40, 2));
+
+        assertTrue(Math.abs(analysis.skewDegrees() - 2) <= 0.1, "skew " + analysis.skewDegrees());
+        assertNotNull(analysis.image());
+
+        BufferedImage gray = analysis.image();
+        byte[] pixels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+        double remaining = preprocessor.estimateSkew(gray, ImagePreprocessor.otsuThreshold(pixels));
+        assertTrue(Math.abs(remaining) <= 0.1, "remaining skew " + remaining);
+    }
+
+    @Test
+    void testSmallStraightImageIsLeftAsIs() {
+        ImagePreprocessor.Analysis analysis = preprocessor(true).process(staves(800, 1000, 16, 0));
+        assertNull(analysis.image());
+        assertEquals(1, analysis.scale());
+    }
+
+    @Test
+    void testPreparedImageIsWrittenNextToTheUpload() throws IOException {
+        Path input = tempDir.resolve("sheet.jpg");
+        ImageIO.write(staves(2400, 3200, 60, 0), "jpg", input.toFile());
+
+        Path prepared = preprocessor(true).prepare(input);
+
+        assertEquals(tempDir.resolve(ImagePreprocessor.OUTPUT_DIR).resolve("sheet.png"), prepared);
+        BufferedImage image = ImageIO.read(prepared.toFile());
+        assertTrue(image.getWidth() < 1000, "width " + image.getWidth());
+    }
+
+    @Test
+    void testDisabledOrPdfInputIsReturned() throws IOException {
+        Path image = tempDir.resolve("sheet.png");
+        ImageIO.write(staves(2400, 3200, 60, 0), "png", image.toFile());
+        Path pdf = Files.write(tempDir.resolve("sheet.pdf"), new byte[] {'%', 'P', 'D', 'F'});
+
+        assertEquals(image, preprocessor(false).prepare(image));
+        assertEquals(pdf, preprocessor(true).prepare(pdf));
+    }
+
+    @Test
+    void testFixtureIsHandled() throws IOException {
+        Path input = Files.copy(IMAGE_FIXTURE, tempDir.resolve("imageTest.jpg"));
+        Path prepared = preprocessor(true).prepare(input);
+        assertTrue(Files.exists(prepared));
+        assertNotNull(ImageIO.read(prepared.toFile()));
+    }
+
+    @Test
+    void testUnreadableImageIsReturned() throws IOException {
+        Path input = Files.write(tempDir.resolve("broken.jpg"), new byte[] {1, 2, 3});
+        assertEquals(input, preprocessor(true).prepare(input));
+    }
+}
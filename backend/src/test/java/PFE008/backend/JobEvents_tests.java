@@ -0,0 +1,211 @@
+package PFE008.backend;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tests for the progress events of jobs, streamed as Server-Sent Events
+ * 
+ * @version 2026.10.17
+ */
+class JobEvents_tests {
+    private ConversionService conversionService;
+    private JobService jobService;
+    private ThreadPoolTaskScheduler taskScheduler;
+    private MockMvc mockMvc;
+    private CountDownLatch release;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setup() throws Exception {
+        conversionService = mock(ConversionService.class);
+        release = new CountDownLatch(1);
+        WorkspaceManager workspaces = new WorkspaceManager(tempDir.resolve("work").toString(), 60, Long.MAX_VALUE);
+        jobService = new JobService(conversionService, workspaces, new ResultStore(tempDir.resolve("results").toString(), 60),
+            null, new ExecutionMode(false), 1, 1, 30, 30);
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.initialize();
+        JobEvents jobEvents = new JobEvents(jobService, taskScheduler, 10000, 50);
+        mockMvc = MockMvcBuilders.standaloneSetup(new JobController(new UploadIngestor(10485760), workspaces, jobService, jobEvents)).build();
+
+        // The conversion reports a step, waits to be released, then reports the MIDI stage
+        when(conversionService.convert(any(), any(), any())).thenAnswer(invocation -> {
+            Consumer<ProgressEvent> progress = invocation.getArgument(2);
+            progress.accept(ProgressEvent.of(ProgressEvent.STAGE_OMR, "BEAMS", 1, 0.4, "Sheet 1: beams"));
+            release.await(10, TimeUnit.SECONDS);
+            progress.accept(ProgressEvent.of(ProgressEvent.STAGE_MIDI, "DONE", null, 0.98, "MIDI file written"));
+            Path midiPath = tempDir.resolve("abcd1234.mid");
+            Files.write(midiPath, "MThd".getBytes());
+            return midiPath.toString();
+        });
+    }
+
+    @AfterEach
+    void teardown() {
+        release.countDown();
+        jobService.shutdown();
+        taskScheduler.shutdown();
+    }
+
+    @Test
+    void testEventsAreStreamedUntilTheJobIsFinished() throws Exception {
+        ConversionJob job = submit();
+
+        MvcResult result = mockMvc.perform(get("/jobs/" + job.getId() + "/events"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        release.countDown();
+        result.getAsyncResult(10000);
+
+        String events = result.getResponse().getContentAsString();
+        assertTrue(events.contains("id:0\nevent:progress\ndata:{\"stage\":\"omr\",\"step\":\"BEAMS\""), events);
+        assertTrue(events.contains("id:1\nevent:progress\ndata:{\"stage\":\"midi\""), events);
+        assertTrue(events.contains("event:status\ndata:{\"jobId\":\"" + job.getId() + "\""), events);
+        assertTrue(events.indexOf("\"status\":\"RUNNING\"") < events.indexOf("\"status\":\"SUCCEEDED\""), events);
+        assertTrue(events.contains("\"downloadUri\":\"/results/"), events);
+    }
+
+    @Test
+    void testReconnectingClientOnlyGetsMissedEvents() throws Exception {
+        ConversionJob job = submit();
+        release.countDown();
+        waitUntilFinished(job);
+
+        MvcResult result = mockMvc.perform(get("/jobs/" + job.getId() + "/events").header("Last-Event-ID", "0"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        result.getAsyncResult(10000);
+
+        String events = result.getResponse().getContentAsString();
+        assertFalse(events.contains("id:0\n"), events);
+        assertTrue(events.contains("id:1\n"), events);
+        assertTrue(events.contains("\"status\":\"SUCCEEDED\""), events);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEventPublishedWhileOpeningFollowsTheReplay() throws Exception {
+        ConversionJob job = spy(new ConversionJob("test.pdf",
+            new SavedUpload(new Workspace("w", tempDir), tempDir.resolve("abcd1234.pdf"), "0123456789abcdef", 9), null));
+        job.markRunning();
+        job.publish(ProgressEvent.of(ProgressEvent.STAGE_OMR, "LOAD", 1, 0.1, "Sheet 1: load"));
+        job.publish(ProgressEvent.of(ProgressEvent.STAGE_OMR, "BINARY", 1, 0.2, "Sheet 1: binary"));
+        // The job thread publishes once the stream has subscribed, while it replays the earlier events
+        Thread publisher = new Thread(() -> job.publish(ProgressEvent.of(ProgressEvent.STAGE_OMR, "BEAMS", 1, 0.4, "Sheet 1: beams")));
+        doAnswer(invocation -> {
+            List<ProgressEvent> events = (List<ProgressEvent>) invocation.callRealMethod();
+            return new AbstractList<ProgressEvent>() {
+                @Override
+                public ProgressEvent get(int index) {
+                    return events.get(index);
+                }
+
+                @Override
+                public int size() {
+                    if (publisher.getState() == Thread.State.NEW) {
+                        publisher.start();
+                        // Until it sent its event, or waits for the stream
+                        while (publisher.getState() != Thread.State.TERMINATED && publisher.getState() != Thread.State.BLOCKED) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                    return events.size();
+                }
+            };
+        }).when(job).subscribe(any());
+
+        JobService jobs = mock(JobService.class);
+        when(jobs.getJob(job.getId())).thenReturn(job);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new JobController(new UploadIngestor(10485760),
+            new WorkspaceManager(tempDir.resolve("work").toString(), 60, Long.MAX_VALUE), jobs,
+            new JobEvents(jobs, taskScheduler, 10000, 50))).build();
+        MvcResult result = mockMvc.perform(get("/jobs/" + job.getId() + "/events"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        publisher.join(5000);
+        job.markFailed("Stopped");
+        result.getAsyncResult(10000);
+
+        String events = result.getResponse().getContentAsString();
+        assertTrue(events.indexOf("id:0\n") < events.indexOf("id:1\n"), events);
+        assertTrue(events.indexOf("id:1\n") < events.indexOf("id:2\n"), events);
+        assertEquals(events.indexOf("id:2\n"), events.lastIndexOf("id:2\n"), events);
+        assertTrue(events.indexOf("\"status\":\"RUNNING\"") < events.indexOf("\"status\":\"FAILED\""), events);
+    }
+
+    @Test
+    void testJobIsCancelledWhenClientGoesAway() throws Exception {
+        ConversionJob job = submit();
+
+        MvcResult result = mockMvc.perform(get("/jobs/" + job.getId() + "/events").param("cancelOnDisconnect", "true"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        // The container reports the broken connection to the async listeners
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onError(new AsyncEvent(asyncContext, new IOException("Broken pipe")));
+        }
+
+        assertEquals(ConversionJob.Status.CANCELLED, job.getStatus());
+    }
+
+    @Test
+    void testUnknownJob() throws Exception {
+        mockMvc.perform(get("/jobs/unknown/events"))
+            .andExpect(status().isNotFound());
+    }
+
+    private ConversionJob submit() throws Exception {
+        Workspace workspace = new WorkspaceManager(tempDir.resolve("work").toString(), 60, Long.MAX_VALUE).create();
+        ConversionJob job = jobService.submit("test.pdf",
+            new SavedUpload(workspace, workspace.dir().resolve("abcd1234.pdf"), "0123456789abcdef", 9), null);
+
+        // Wait for the first step, so the stream has something to replay
+        long deadline = System.currentTimeMillis() + 10000;
+        while (job.getLastEvent() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return job;
+    }
+
+    private void waitUntilFinished(ConversionJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished());
+    }
+}
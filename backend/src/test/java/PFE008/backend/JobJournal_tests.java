@@ -0,0 +1,184 @@
+package PFE008.backend;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the journal of the job stages
+ *
+ * @version 2026.10.17
+ */
+class JobJournal_tests {
+
+    @TempDir
+    Path tempDir;
+
+    private JobJournal journal;
+
+    @BeforeEach
+    void setup() throws IOException {
+        journal = open(30);
+    }
+
+    @AfterEach
+    void teardown() {
+        journal.close();
+    }
+
+    private JobJournal open(long retentionMinutes) throws IOException {
+        return new JobJournal(true, tempDir.resolve("journal").toString(), retentionMinutes);
+    }
+
+    /**
+     * Close the journal and read it again, as after a restart
+     */
+    private List<JobJournal.Entry> restart() throws IOException {
+        journal.close();
+        journal = open(30);
+        return journal.replay();
+    }
+
+    private ConversionJob job(String fileName) {
+        Workspace workspace = new Workspace("ws-" + fileName, tempDir.resolve(fileName));
+        return new ConversionJob(fileName, new SavedUpload(workspace, workspace.dir().resolve(fileName), "abc", 42), "{\"1\":90}");
+    }
+
+    private Path log() {
+        return tempDir.resolve("journal").resolve("journal.log");
+    }
+
+    @Test
+    void testStagesAreMergedPerJob() throws Exception {
+        ConversionJob first = job("first.pdf");
+        ConversionJob second = job("second.pdf");
+        journal.received(first);
+        journal.received(second);
+        journal.completed(first.getId(), JobJournal.STARTED);
+        journal.completed(first.getId(), JobJournal.OMR_DONE);
+        journal.delivered(second.getId(), "result");
+
+        List<JobJournal.Entry> entries = restart();
+        assertEquals(2, entries.size());
+
+        JobJournal.Entry entry = entries.get(0);
+        assertEquals(first.getId(), entry.jobId());
+        assertEquals(JobJournal.OMR_DONE, entry.stage());
+        assertEquals("first.pdf", entry.fileName());
+        assertEquals("ws-first.pdf", entry.workspaceId());
+        assertEquals(first.getInputPath().toString(), entry.upload());
+        assertEquals(42, entry.size());
+        assertEquals("{\"1\":90}", entry.tempos());
+        assertEquals(first.getCreatedAt(), entry.receivedAt());
+        assertFalse(entry.isFinished());
+
+        assertEquals(JobJournal.DELIVERED, entries.get(1).stage());
+        assertEquals("result", entries.get(1).resultId());
+        assertTrue(entries.get(1).isFinished());
+    }
+
+    @Test
+    void testResumedJobKeepsItsStage() throws Exception {
+        ConversionJob job = job("sheet.pdf");
+        journal.received(job);
+        journal.completed(job.getId(), JobJournal.MXL_EXPORTED);
+        journal.completed(job.getId(), JobJournal.STARTED);
+
+        assertEquals(JobJournal.MXL_EXPORTED, restart().get(0).stage());
+    }
+
+    @Test
+    void testCutRecordIsSkipped() throws Exception {
+        ConversionJob job = job("sheet.pdf");
+        journal.received(job);
+        journal.close();
+        Files.write(log(), "{\"jobId\":\"cut\",\"sta".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        journal = open(30);
+        journal.completed(job.getId(), JobJournal.OMR_DONE);
+
+        List<JobJournal.Entry> entries = restart();
+        assertEquals(1, entries.size());
+        assertEquals(JobJournal.OMR_DONE, entries.get(0).stage());
+    }
+
+    @Test
+    void testConcurrentRecordsAreAllWritten() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        List<ConversionJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ConversionJob job = job("sheet" + i + ".pdf");
+            jobs.add(job);
+            threads.add(new Thread(() -> {
+                journal.received(job);
+                for (int j = 0; j < 20; j++) {
+                    journal.completed(job.getId(), JobJournal.STARTED);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8 * 21, journal.getRecordCount());
+        assertTrue(journal.getBatchCount() <= journal.getRecordCount());
+        assertEquals(8 * 21, Files.readAllLines(log()).size());
+        assertEquals(8, restart().size());
+    }
+
+    @Test
+    void testCompactionDropsExpiredJobs() throws Exception {
+        journal.close();
+        journal = open(0);
+        ConversionJob running = job("running.pdf");
+        ConversionJob failed = job("failed.pdf");
+        journal.received(running);
+        journal.received(failed);
+        journal.completed(running.getId(), JobJournal.OMR_DONE);
+        journal.finished(failed.getId(), JobJournal.FAILED, "No score");
+
+        journal.compact();
+        assertEquals(1, Files.readAllLines(log()).size());
+
+        // Records go to the compacted file
+        journal.completed(running.getId(), JobJournal.MIDI_DONE);
+        List<JobJournal.Entry> entries = restart();
+        assertEquals(1, entries.size());
+        assertEquals(JobJournal.MIDI_DONE, entries.get(0).stage());
+        assertEquals("running.pdf", entries.get(0).fileName());
+    }
+
+    @Test
+    void testStagesOfProgressEvents() {
+        assertEquals(JobJournal.OMR_DONE, JobJournal.stageOf(ProgressEvent.of(ProgressEvent.STAGE_OMR, "DONE", null, 0.8, "")));
+        assertEquals(JobJournal.MXL_EXPORTED, JobJournal.stageOf(ProgressEvent.of(ProgressEvent.STAGE_OMR, "EXPORTED", null, 0.85, "")));
+        assertEquals(JobJournal.MXL_EXPORTED, JobJournal.stageOf(ProgressEvent.of(ProgressEvent.STAGE_OMR, "REUSED", null, 0.8, "")));
+        assertEquals(JobJournal.MIDI_DONE, JobJournal.stageOf(ProgressEvent.of(ProgressEvent.STAGE_MIDI, "DONE", null, 0.98, "")));
+        assertEquals(JobJournal.MIDI_DONE, JobJournal.stageOf(ProgressEvent.of(ProgressEvent.STAGE_CACHE, "HIT", null, 0.98, "")));
+        assertNull(JobJournal.stageOf(ProgressEvent.of(ProgressEvent.STAGE_OMR, "BEAMS", 1, 0.4, "")));
+        assertNull(JobJournal.stageOf(ProgressEvent.of(ProgressEvent.STAGE_MIDI, "START", null, 0.9, "")));
+    }
+
+    @Test
+    void testDisabledJournalWritesNothing() throws Exception {
+        JobJournal disabled = new JobJournal(false, tempDir.resolve("disabled").toString(), 30);
+        disabled.received(job("sheet.pdf"));
+
+        assertTrue(disabled.replay().isEmpty());
+        assertFalse(Files.exists(tempDir.resolve("disabled")));
+    }
+}
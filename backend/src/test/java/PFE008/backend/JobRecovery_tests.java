@@ -0,0 +1,184 @@
+package PFE008.backend;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the jobs resumed from the journal after a restart
+ *
+ * @version 2026.10.17
+ */
+class JobRecovery_tests {
+    private static final byte[] MIDI = {'M', 'T', 'h', 'd', 0, 0, 0, 6};
+
+    @TempDir
+    Path tempDir;
+
+    private ConversionService conversionService;
+    private ResultStore results;
+    private JobJournal journal;
+    private WorkspaceManager workspaces;
+    private JobService jobService;
+
+    @BeforeEach
+    void setup() throws IOException {
+        conversionService = mock(ConversionService.class);
+        results = new ResultStore(tempDir.resolve("results").toString(), 60);
+        journal = new JobJournal(true, tempDir.resolve("journal").toString(), 30);
+        workspaces = new WorkspaceManager(tempDir.resolve("work").toString(), 60, Long.MAX_VALUE);
+    }
+
+    @AfterEach
+    void teardown() {
+        if (jobService != null) {
+            jobService.shutdown();
+        }
+        journal.close();
+    }
+
+    /**
+     * Journal a job of the previous run, whose workspace holds its upload
+     */
+    private ConversionJob interrupted(String stage) throws IOException {
+        Workspace workspace = workspaces.create();
+        Path upload = Files.write(workspace.dir().resolve("sheet.pdf"), new byte[] {'%', 'P', 'D', 'F'});
+        ConversionJob job = new ConversionJob("score.pdf", new SavedUpload(workspace, upload, "abc", 4), null);
+        journal.received(job);
+        journal.completed(job.getId(), stage);
+        return job;
+    }
+
+    /**
+     * Start again on the same directories
+     */
+    private void restart() {
+        workspaces = new WorkspaceManager(tempDir.resolve("work").toString(), 60, Long.MAX_VALUE);
+        jobService = new JobService(conversionService, workspaces, results, journal, new ExecutionMode(false), 1, 4, 30, 30);
+        jobService.recover();
+    }
+
+    private ConversionJob waitUntilFinished(String id) throws InterruptedException {
+        ConversionJob job = jobService.getJob(id);
+        assertNotNull(job);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished());
+        return job;
+    }
+
+    private JobJournal.Entry entryOf(String id) {
+        return journal.replay().stream().filter(entry -> entry.jobId().equals(id)).findFirst().orElseThrow();
+    }
+
+    @Test
+    void testJobAfterOmrOnlyRunsTheMidiStage() throws Exception {
+        ConversionJob before = interrupted(JobJournal.MXL_EXPORTED);
+        Path mxl = Files.write(before.getInputPath().resolveSibling("sheet.mxl"), new byte[] {'P', 'K'});
+        when(conversionService.convert(any(), any(), any())).thenAnswer(invocation ->
+            Files.write(before.getInputPath().resolveSibling("sheet.mid"), MIDI).toString());
+
+        restart();
+
+        ConversionJob job = waitUntilFinished(before.getId());
+        assertEquals(ConversionJob.Status.SUCCEEDED, job.getStatus());
+        assertEquals(before.getCreatedAt(), job.getCreatedAt());
+        verify(conversionService).adoptOmrOutput(any(), eq(mxl));
+        assertEquals(JobJournal.DELIVERED, entryOf(job.getId()).stage());
+        assertEquals(job.getResult().id(), entryOf(job.getId()).resultId());
+    }
+
+    @Test
+    void testJobAfterMidiIsDelivered() throws Exception {
+        ConversionJob before = interrupted(JobJournal.MIDI_DONE);
+        Files.write(before.getInputPath().resolveSibling("sheet.mid"), MIDI);
+
+        restart();
+
+        ConversionJob job = waitUntilFinished(before.getId());
+        assertEquals(ConversionJob.Status.SUCCEEDED, job.getStatus());
+        assertArrayEquals(MIDI, Files.readAllBytes(job.getResult().path()));
+        verify(conversionService, never()).convert(any(), any(), any());
+        assertTrue(Files.notExists(before.getUpload().workspace().dir()));
+    }
+
+    @Test
+    void testJobWithoutArtifactsIsConvertedAgain() throws Exception {
+        ConversionJob before = interrupted(JobJournal.STARTED);
+        when(conversionService.convert(any(), any(), any())).thenAnswer(invocation ->
+            Files.write(before.getInputPath().resolveSibling("sheet.mid"), MIDI).toString());
+
+        restart();
+
+        assertEquals(ConversionJob.Status.SUCCEEDED, waitUntilFinished(before.getId()).getStatus());
+        verify(conversionService, never()).adoptOmrOutput(any(), any());
+    }
+
+    @Test
+    void testLostUploadFailsTheJob() throws Exception {
+        ConversionJob before = interrupted(JobJournal.RECEIVED);
+        Files.delete(before.getInputPath());
+
+        restart();
+
+        ConversionJob job = jobService.getJob(before.getId());
+        assertEquals(ConversionJob.Status.FAILED, job.getStatus());
+        assertEquals(JobJournal.FAILED, entryOf(job.getId()).stage());
+    }
+
+    @Test
+    void testDeliveredJobIsRestored() throws Exception {
+        ConversionJob before = interrupted(JobJournal.MIDI_DONE);
+        StoredResult result = results.put(Files.write(tempDir.resolve("sheet.mid"), MIDI));
+        journal.delivered(before.getId(), result.id());
+
+        restart();
+
+        ConversionJob job = jobService.getJob(before.getId());
+        assertEquals(ConversionJob.Status.SUCCEEDED, job.getStatus());
+        assertEquals(result.id(), job.getResult().id());
+        verify(conversionService, never()).convert(any(), any(), any());
+    }
+
+    @Test
+    void testShutdownLeavesTheRunningJobToTheNextStart() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        when(conversionService.convert(any(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            Thread.sleep(10000);
+            return null;
+        });
+        jobService = new JobService(conversionService, workspaces, results, journal, new ExecutionMode(false), 1, 4, 30, 30);
+        Workspace workspace = workspaces.create();
+        Path upload = Files.write(workspace.dir().resolve("sheet.pdf"), new byte[] {'%', 'P', 'D', 'F'});
+        ConversionJob job = jobService.submit("score.pdf", new SavedUpload(workspace, upload, "abc", 4), null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        jobService.shutdown();
+        jobService = null;
+
+        assertEquals(JobJournal.STARTED, entryOf(job.getId()).stage());
+        assertTrue(Files.exists(upload));
+        assertNull(job.getError());
+    }
+}
@@ -0,0 +1,210 @@
+package PFE008.backend;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the asynchronous job service
+ * 
+ * @version 2026.10.17
+ */
+class JobService_tests {
+    private ConversionService conversionService;
+    private WorkspaceManager workspaces;
+    private ResultStore results;
+    private JobService jobService;
+    private CountDownLatch release;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setup() {
+        conversionService = mock(ConversionService.class);
+        workspaces = new WorkspaceManager(tempDir.resolve("work").toString(), 60, Long.MAX_VALUE);
+        results = new ResultStore(tempDir.resolve("results").toString(), 60);
+        release = new CountDownLatch(1);
+        jobService = new JobService(conversionService, workspaces, results, null, new ExecutionMode(false), 1, 1, 30, 12);
+    }
+
+    @AfterEach
+    void teardown() {
+        release.countDown();
+        jobService.shutdown();
+    }
+
+    @Test
+    void testJobSucceeds() throws Exception {
+        when(conversionService.convert(any(), any(), any())).thenReturn(midi());
+
+        ConversionJob job = jobService.submit("test.pdf", upload(), null);
+        assertNotNull(jobService.getJob(job.getId()));
+
+        waitUntilFinished(job);
+        assertEquals(ConversionJob.Status.SUCCEEDED, job.getStatus());
+        assertNotNull(job.getResult());
+        assertEquals(job.getResult(), results.get(job.getResult().id()));
+        assertTrue(Files.notExists(job.getUpload().workspace().dir()));
+    }
+
+    @Test
+    void testProgressIsPublished() throws Exception {
+        when(conversionService.convert(any(), any(), any())).thenAnswer(invocation -> {
+            Consumer<ProgressEvent> progress = invocation.getArgument(2);
+            progress.accept(ProgressEvent.of(ProgressEvent.STAGE_OMR, "BEAMS", 1, 0.4, "Sheet 1: beams"));
+            progress.accept(ProgressEvent.of(ProgressEvent.STAGE_OMR, "LOAD", 2, 0.1, "Sheet 2: load"));
+            return midi();
+        });
+
+        ConversionJob job = jobService.submit("test.pdf", upload(), null);
+
+        waitUntilFinished(job);
+        assertEquals("Sheet 2: load", job.getLastEvent().message());
+        assertEquals(1, job.getProgress());
+        assertEquals(2, job.subscribe(new ConversionJob.Listener() {
+            @Override
+            public void onProgress(int index, ProgressEvent event) {
+            }
+
+            @Override
+            public void onStatus(ConversionJob job) {
+            }
+        }).size());
+    }
+
+    @Test
+    void testJobFails() throws Exception {
+        when(conversionService.convert(any(), any(), any())).thenReturn(null);
+
+        ConversionJob job = jobService.submit("wrong.pdf", upload(), null);
+
+        waitUntilFinished(job);
+        assertEquals(ConversionJob.Status.FAILED, job.getStatus());
+        assertNotNull(job.getError());
+    }
+
+    @Test
+    void testQueueFullIsRejected() throws Exception {
+        when(conversionService.convert(any(), any(), any())).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return midi();
+        });
+        SavedUpload input = upload();
+
+        ConversionJob running = jobService.submit("first.pdf", input, null);
+        ConversionJob queued = jobService.submit("second.pdf", input, null);
+
+        assertThrows(RejectedExecutionException.class, () -> jobService.submit("third.pdf", input, null));
+        assertEquals(12, jobService.getRetryAfterSeconds());
+
+        release.countDown();
+        waitUntilFinished(running);
+        waitUntilFinished(queued);
+        assertEquals(ConversionJob.Status.SUCCEEDED, queued.getStatus());
+    }
+
+    @Test
+    void testRunningJobIsCancelled() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(conversionService.convert(any(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return midi();
+        });
+
+        ConversionJob job = jobService.submit("test.pdf", upload(), null);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        assertEquals(job, jobService.cancel(job.getId()));
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertEquals(ConversionJob.Status.CANCELLED, job.getStatus());
+        assertNull(job.getResult());
+    }
+
+    @Test
+    void testCancelledQueuedJobFreesItsPlace() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        when(conversionService.convert(any(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return midi();
+        });
+        SavedUpload input = upload();
+
+        ConversionJob running = jobService.submit("first.pdf", input, null);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        ConversionJob queued = jobService.submit("second.pdf", input, null);
+        assertEquals(1, jobService.getQueueDepth());
+
+        jobService.cancel(queued.getId());
+        assertEquals(0, jobService.getQueueDepth());
+        ConversionJob next = jobService.submit("third.pdf", input, null);
+
+        release.countDown();
+        waitUntilFinished(running);
+        waitUntilFinished(next);
+        assertEquals(ConversionJob.Status.CANCELLED, queued.getStatus());
+        assertEquals(ConversionJob.Status.SUCCEEDED, next.getStatus());
+    }
+
+    @Test
+    void testExpiredJobIsForgotten() throws Exception {
+        when(conversionService.convert(any(), any(), any())).thenReturn(midi());
+        jobService.shutdown();
+        jobService = new JobService(conversionService, workspaces, results, null, new ExecutionMode(false), 1, 1, 0, 12);
+
+        ConversionJob job = jobService.submit("test.pdf", upload(), null);
+        waitUntilFinished(job);
+        assertEquals(0, workspaces.getWorkspaceCount());
+
+        jobService.purgeExpiredJobs();
+        assertNull(jobService.getJob(job.getId()));
+        assertNotNull(results.get(job.getResult().id()));
+    }
+
+    @Test
+    void testUnknownJob() {
+        assertNull(jobService.getJob("unknown"));
+    }
+
+    private String midi() throws Exception {
+        Path midiPath = tempDir.resolve("abcd1234.mid");
+        Files.write(midiPath, "MThd".getBytes());
+        return midiPath.toString();
+    }
+
+    private SavedUpload upload() throws Exception {
+        Workspace workspace = workspaces.create();
+        return new SavedUpload(workspace, workspace.dir().resolve("abcd1234.pdf"), "0123456789abcdef", 9);
+    }
+
+    private void waitUntilFinished(ConversionJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished());
+    }
+}
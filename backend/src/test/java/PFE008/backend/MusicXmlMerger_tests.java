@@ -0,0 +1,122 @@
+package PFE008.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.sound.midi.MidiSystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the merge of the page scores of a music sheet
+ * 
+ * @version 2026.10.17
+ */
+class MusicXmlMerger_tests {
+
+    private static final String MXLPATH = System.getProperty("user.dir") + File.separator
+    + "src" + File.separator + "test" + File.separator + "java" + File.separator + "PFE008" + File.separator
+    + "backend" + File.separator + "resources" + File.separator + "manual_tests" + File.separator + "mxl";
+
+    private static final String MEASURE = """
+        <measure number="%d">
+          <attributes><divisions>1</divisions></attributes>
+          <note><pitch><step>C</step><octave>4</octave></pitch><duration>4</duration></note>
+        </measure>
+        """;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testMeasuresAreRenumbered() throws Exception {
+        Path page1 = writeMxl("page1.mxl", 1, 0, 1, 2);
+        Path page2 = writeMxl("page2.mxl", 1, 1, 2);
+        Path page3 = writeMxl("page3.mxl", 1, 1);
+        Path merged = tempDir.resolve("merged.mxl");
+
+        MusicXmlMerger.merge(List.of(page1, page2, page3), merged);
+
+        Path xml = tempDir.resolve("merged.xml");
+        MxlToMidiConverter.extractScore(merged, xml);
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), measureNumbers(Files.readString(xml)));
+    }
+
+    @Test
+    void testMergedFixtureConvertsToMidi() throws Exception {
+        Path fixture = Path.of(MXLPATH, "Pachelbel-test.mxl");
+        Path merged = tempDir.resolve("merged.mxl");
+
+        MusicXmlMerger.merge(List.of(fixture, fixture), merged);
+
+        Path single = tempDir.resolve("single.xml");
+        Path xml = tempDir.resolve("merged.xml");
+        MxlToMidiConverter.extractScore(fixture, single);
+        MxlToMidiConverter.extractScore(merged, xml);
+        List<Integer> singleNumbers = measureNumbers(Files.readString(single));
+        assertEquals(2 * singleNumbers.size(), measureNumbers(Files.readString(xml)).size());
+
+        Path midi = tempDir.resolve("merged.mid");
+        new MxlToMidiConverter().convert(merged, midi);
+        assertTrue(MidiSystem.getSequence(midi.toFile()).getTickLength() > 0);
+    }
+
+    @Test
+    void testDifferentPartsAreRejected() throws Exception {
+        Path page1 = writeMxl("page1.mxl", 1, 1, 2);
+        Path page2 = writeMxl("page2.mxl", 2, 1, 2);
+
+        assertThrows(IOException.class, () -> MusicXmlMerger.merge(List.of(page1, page2), tempDir.resolve("merged.mxl")));
+    }
+
+    private Path writeMxl(String name, int partCount, int... measureNumbers) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<score-partwise version=\"4.0\">\n<part-list>\n");
+        for (int part = 1; part <= partCount; part++) {
+            xml.append("<score-part id=\"P").append(part).append("\"><part-name>Piano</part-name></score-part>\n");
+        }
+        xml.append("</part-list>\n");
+        for (int part = 1; part <= partCount; part++) {
+            xml.append("<part id=\"P").append(part).append("\">\n");
+            for (int number : measureNumbers) {
+                xml.append(String.format(MEASURE, number));
+            }
+            xml.append("</part>\n");
+        }
+        xml.append("</score-partwise>\n");
+
+        Path path = tempDir.resolve(name);
+        try (OutputStream output = Files.newOutputStream(path); ZipOutputStream zip = new ZipOutputStream(output)) {
+            zip.putNextEntry(new ZipEntry("META-INF/container.xml"));
+            zip.write("<container><rootfiles><rootfile full-path=\"score.xml\"/></rootfiles></container>".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("score.xml"));
+            zip.write(xml.toString().getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return path;
+    }
+
+    private static List<Integer> measureNumbers(String xml) {
+        String firstPart = xml.substring(xml.indexOf("<part "), xml.indexOf("</part>"));
+        List<Integer> numbers = new ArrayList<>();
+        Matcher matcher = Pattern.compile("<measure[^>]*number=\"(\\d+)\"").matcher(firstPart);
+        while (matcher.find()) {
+            numbers.add(Integer.parseInt(matcher.group(1)));
+        }
+        return numbers;
+    }
+}
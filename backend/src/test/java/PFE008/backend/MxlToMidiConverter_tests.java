@@ -0,0 +1,225 @@
+package PFE008.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the Java MusicXML to MIDI converter
+ * 
+ * @version 2026.10.17
+ */
+class MxlToMidiConverter_tests {
+
+    private static final String MXLPATH = System.getProperty("user.dir") + File.separator
+    + "src" + File.separator + "test" + File.separator + "java" + File.separator + "PFE008" + File.separator
+    + "backend" + File.separator + "resources" + File.separator + "manual_tests" + File.separator + "mxl";
+
+    private static final String HEADER = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <!DOCTYPE score-partwise PUBLIC "-//Recordare//DTD MusicXML 4.0 Partwise//EN" "http://www.musicxml.org/dtds/partwise.dtd">
+        <score-partwise version="4.0">
+          <part-list><score-part id="P1"><part-name>Piano</part-name></score-part></part-list>
+          <part id="P1">
+        """;
+
+    private static final String FOOTER = """
+          </part>
+        </score-partwise>
+        """;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testConvertFixtures() throws Exception {
+        File[] fixtures = new File(MXLPATH).listFiles((dir, name) -> name.endsWith(".mxl"));
+        assertNotNull(fixtures);
+        assertTrue(fixtures.length > 0);
+
+        for (int i = 0; i < fixtures.length; i++) {
+            File fixture = fixtures[i];
+            Path midiPath = tempDir.resolve("fixture" + i + ".mid");
+            new MxlToMidiConverter().convert(fixture.toPath(), midiPath);
+
+            Sequence sequence = MidiSystem.getSequence(midiPath.toFile());
+            assertTrue(noteOns(sequence).size() > 0, "No notes in " + fixture.getName());
+            assertTrue(tempos(sequence).size() > 0, "No tempo in " + fixture.getName());
+        }
+    }
+
+    @Test
+    void testExtractScore() throws Exception {
+        Path xmlPath = tempDir.resolve("score.xml");
+        MxlToMidiConverter.extractScore(Path.of(MXLPATH, "Pachelbel-test.mxl"), xmlPath);
+
+        String xml = Files.readString(xmlPath);
+        assertTrue(xml.contains("<score-partwise"));
+    }
+
+    @Test
+    void testTempoFromWords() {
+        assertEquals(140, MxlToMidiConverter.tempoFromWords("Allegro"));
+        assertEquals(60, MxlToMidiConverter.tempoFromWords(" Lento (molto) "));
+        assertEquals(90, MxlToMidiConverter.tempoFromWords("J = 90"));
+        assertEquals(66, MxlToMidiConverter.tempoFromWords("J.=66"));
+        assertNull(MxlToMidiConverter.tempoFromWords("J = ninety"));
+        assertNull(MxlToMidiConverter.tempoFromWords("Swing"));
+    }
+
+    @Test
+    void testTempoTermsMatchThePythonTable() {
+        // The first list of the key 120 is overwritten by the second one in MxlToMidi.py
+        assertNull(MxlToMidiConverter.tempoFromWords("Allegretto"));
+        assertNull(MxlToMidiConverter.tempoFromWords("moderately fast"));
+        assertNull(MxlToMidiConverter.tempoFromWords("ein wenig schnell"));
+        assertEquals(120, MxlToMidiConverter.tempoFromWords("Allegro moderato"));
+        // Terms in several lists take the first one
+        assertEquals(74, MxlToMidiConverter.tempoFromWords("assez vite"));
+        assertEquals(54, MxlToMidiConverter.tempoFromWords("adagissimo"));
+        assertEquals(84, MxlToMidiConverter.tempoFromWords("mäßig"));
+        assertEquals(140, MxlToMidiConverter.tempoFromWords("vif"));
+    }
+
+    @Test
+    void testNotesAndDynamics() throws Exception {
+        Sequence sequence = convert(measure(1, "<attributes><divisions>2</divisions></attributes>"
+            + note("C", 4, 2) + direction("<dynamics><p/></dynamics>") + note("E", 4, 2)
+            + "<backup><duration>4</duration></backup>" + note("G", 3, 4)), null);
+
+        List<ShortMessage> notes = noteOns(sequence);
+        assertEquals(3, notes.size());
+        assertEquals(60, notes.get(0).getData1());
+        assertEquals(64, notes.get(0).getData2());
+        assertEquals(55, notes.get(1).getData1());
+        assertEquals(64, notes.get(1).getData2());
+        assertEquals(64, notes.get(2).getData1());
+        assertEquals(44, notes.get(2).getData2());
+    }
+
+    @Test
+    void testTiedNotesAreMerged() throws Exception {
+        Sequence sequence = convert(measure(1, "<attributes><divisions>1</divisions></attributes>"
+            + "<note><pitch><step>A</step><octave>4</octave></pitch><duration>2</duration><tie type=\"start\"/></note>"
+            + "<note><pitch><step>A</step><octave>4</octave></pitch><duration>2</duration><tie type=\"stop\"/></note>"), null);
+
+        assertEquals(1, noteOns(sequence).size());
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                if (track.get(i).getMessage() instanceof ShortMessage sm && sm.getCommand() == ShortMessage.NOTE_OFF) {
+                    assertEquals(4 * MxlToMidiConverter.RESOLUTION, track.get(i).getTick());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testWordAndCustomTempos() throws Exception {
+        String score = measure(1, "<attributes><divisions>1</divisions></attributes>"
+                + "<direction><direction-type><words></words></direction-type><sound tempo=\"100\"/></direction>"
+                + note("C", 4, 4))
+            + measure(2, direction("<words>Adagio</words>") + note("C", 4, 4))
+            + measure(3, note("C", 4, 4))
+            + measure(4, direction("<words>J = 90</words>") + note("C", 4, 4));
+        String tempos = "[{\"measure\": 2, \"tempo\": 50}, {\"measure\": 3, \"tempo\": 80}, {\"measure\": 4, \"tempo\": 50}]";
+
+        List<MidiEvent> tempoEvents = tempos(convert(score, tempos));
+
+        // The initial sound tempo is cleared, like in MxlToMidi.py
+        assertEquals(4, tempoEvents.size());
+        assertTempo(tempoEvents.get(0), 0, 120);
+        assertTempo(tempoEvents.get(1), 4 * MxlToMidiConverter.RESOLUTION, 71);
+        assertTempo(tempoEvents.get(2), 8 * MxlToMidiConverter.RESOLUTION, 80);
+        assertTempo(tempoEvents.get(3), 12 * MxlToMidiConverter.RESOLUTION, 90);
+    }
+
+    @Test
+    void testTemposOutOfTheMidiRangeAreClamped() throws Exception {
+        String score = measure(1, "<attributes><divisions>1</divisions></attributes>" + note("C", 4, 4))
+            + measure(2, note("C", 4, 4));
+        String tempos = "[{\"measure\":1,\"tempo\":2}, {\"measure\":2,\"tempo\":1e9}]";
+
+        List<MidiEvent> tempoEvents = tempos(convert(score, tempos));
+
+        assertEquals(2, tempoEvents.size());
+        assertArrayEquals(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF}, ((MetaMessage) tempoEvents.get(0).getMessage()).getData());
+        assertArrayEquals(new byte[] {0, 0, 1}, ((MetaMessage) tempoEvents.get(1).getMessage()).getData());
+        assertEquals(4 * MxlToMidiConverter.RESOLUTION, tempoEvents.get(1).getTick());
+    }
+
+    @Test
+    void testInvalidTempos() {
+        assertThrows(IOException.class, () -> convert(measure(1, note("C", 4, 1)), "not json"));
+    }
+
+    private Sequence convert(String measures, String tempos) throws IOException, InvalidMidiDataException {
+        Path xmlPath = tempDir.resolve("score.xml");
+        Path midiPath = tempDir.resolve("score.mid");
+        Files.writeString(xmlPath, HEADER + measures + FOOTER);
+
+        new MxlToMidiConverter(tempos).convert(xmlPath, midiPath);
+        return MidiSystem.getSequence(midiPath.toFile());
+    }
+
+    private static String measure(int number, String content) {
+        return "<measure number=\"" + number + "\">" + content + "</measure>";
+    }
+
+    private static String note(String step, int octave, int duration) {
+        return "<note><pitch><step>" + step + "</step><octave>" + octave + "</octave></pitch><duration>" + duration + "</duration></note>";
+    }
+
+    private static String direction(String directionType) {
+        return "<direction><direction-type>" + directionType + "</direction-type></direction>";
+    }
+
+    private static void assertTempo(MidiEvent event, long tick, int bpm) {
+        byte[] data = ((MetaMessage) event.getMessage()).getData();
+        int microseconds = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+        assertEquals(tick, event.getTick());
+        assertEquals(bpm, Math.round(60000000.0 / microseconds));
+    }
+
+    private static List<ShortMessage> noteOns(Sequence sequence) {
+        List<ShortMessage> notes = new ArrayList<>();
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                if (track.get(i).getMessage() instanceof ShortMessage sm && sm.getCommand() == ShortMessage.NOTE_ON) {
+                    notes.add(sm);
+                }
+            }
+        }
+        return notes;
+    }
+
+    private static List<MidiEvent> tempos(Sequence sequence) {
+        List<MidiEvent> tempos = new ArrayList<>();
+        Track conductor = sequence.getTracks()[0];
+        for (int i = 0; i < conductor.size(); i++) {
+            if (conductor.get(i).getMessage() instanceof MetaMessage meta && meta.getType() == 0x51) {
+                tempos.add(conductor.get(i));
+            }
+        }
+        return tempos;
+    }
+}
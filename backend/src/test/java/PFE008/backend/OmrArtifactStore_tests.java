@@ -0,0 +1,79 @@
+package PFE008.backend;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the OMR output store and MIDI re-rendering
+ * 
+ * @version 2026.10.17
+ */
+class OmrArtifactStore_tests {
+
+    private static final String MXLFILE = System.getProperty("user.dir") + File.separator
+    + "src" + File.separator + "test" + File.separator + "java" + File.separator + "PFE008" + File.separator
+    + "backend" + File.separator + "resources" + File.separator + "manual_tests" + File.separator + "mxl"
+    + File.separator + "Pachelbel-test.mxl";
+
+    private static final String UPLOAD_ID = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPutAndGet() throws Exception {
+        OmrArtifactStore store = new OmrArtifactStore(tempDir.resolve("omr").toString(), 60);
+        assertNull(store.get(UPLOAD_ID));
+
+        store.put(UPLOAD_ID, Path.of(MXLFILE));
+        Path mxlPath = store.get(UPLOAD_ID);
+        assertNotNull(mxlPath);
+        assertEquals(Files.size(Path.of(MXLFILE)), Files.size(mxlPath));
+
+        Path copy = store.copyTo(UPLOAD_ID, tempDir.resolve("out"), "abcd1234");
+        assertTrue(Files.exists(copy));
+        assertEquals("abcd1234.mxl", copy.getFileName().toString());
+    }
+
+    @Test
+    void testInvalidIdIsRejected() {
+        OmrArtifactStore store = new OmrArtifactStore(tempDir.resolve("omr").toString(), 60);
+        assertNull(store.get("../../etc"));
+    }
+
+    @Test
+    void testExpiredArtifactsArePurged() {
+        OmrArtifactStore store = new OmrArtifactStore(tempDir.resolve("omr").toString(), 0);
+        store.put(UPLOAD_ID, Path.of(MXLFILE));
+
+        store.purgeExpired();
+
+        assertNull(store.get(UPLOAD_ID));
+        assertTrue(!Files.exists(tempDir.resolve("omr").resolve(UPLOAD_ID)));
+    }
+
+    @Test
+    void testRenderWithNewTempos() throws Exception {
+        OmrArtifactStore store = new OmrArtifactStore(tempDir.resolve("omr").toString(), 60);
+        ConversionCache cache = new ConversionCache(false, tempDir.resolve("cache").toString(), 0, false);
+        ConversionService conversionService = new ConversionService(cache, store, new AudiverisSettings(), null, null, null, null, null, null, null, null, null, AudiverisController.MIDI_ENGINE_JAVA, false);
+        store.put(UPLOAD_ID, Path.of(MXLFILE));
+
+        Workspace workspace = new Workspace("test", tempDir.resolve("work"));
+        String midiPath = conversionService.render(UPLOAD_ID, "[{\"measure\": 2, \"tempo\": 60}]", workspace);
+        assertNotNull(midiPath);
+        assertTrue(Files.size(Path.of(midiPath)) > 0);
+        assertTrue(Path.of(midiPath).startsWith(workspace.dir().toAbsolutePath()));
+
+        assertThrows(UploadNotFoundException.class, () -> conversionService.render(UPLOAD_ID.replace('0', 'f'), null, workspace));
+    }
+}
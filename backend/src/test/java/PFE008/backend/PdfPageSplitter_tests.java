@@ -0,0 +1,59 @@
+package PFE008.backend;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the split of PDF music sheets into pages
+ * 
+ * @version 2026.10.17
+ */
+class PdfPageSplitter_tests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSplitMultiPagePdf() throws Exception {
+        Path pdf = writePdf("score.pdf", 3);
+
+        List<Path> pages = PdfPageSplitter.split(pdf, tempDir.resolve("pages"), "abc");
+
+        assertEquals(3, pages.size());
+        assertEquals("abc-p001.pdf", pages.get(0).getFileName().toString());
+        assertEquals("abc-p003.pdf", pages.get(2).getFileName().toString());
+        for (Path page : pages) {
+            try (PDDocument document = Loader.loadPDF(page.toFile())) {
+                assertEquals(1, document.getNumberOfPages());
+            }
+        }
+    }
+
+    @Test
+    void testSinglePagePdfIsNotSplit() throws Exception {
+        Path pdf = writePdf("score.pdf", 1);
+
+        assertTrue(PdfPageSplitter.split(pdf, tempDir.resolve("pages"), "abc").isEmpty());
+    }
+
+    private Path writePdf(String name, int pageCount) throws IOException {
+        Path path = tempDir.resolve(name);
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 0; i < pageCount; i++) {
+                document.addPage(new PDPage());
+            }
+            document.save(path.toFile());
+        }
+        return path;
+    }
+}
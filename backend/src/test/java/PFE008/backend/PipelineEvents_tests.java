@@ -0,0 +1,139 @@
+package PFE008.backend;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+/**
+ * Tests for the flight recorder events of the pipeline stages
+ *
+ * @version 2026.10.17
+ */
+class PipelineEvents_tests {
+
+    private static final String TESTPATH = System.getProperty("user.dir") + File.separator
+    + "src" + File.separator + "test" + File.separator + "java" + File.separator + "PFE008" + File.separator
+    + "backend" + File.separator + "resources" + File.separator;
+
+    @TempDir
+    Path tempDir;
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream().filter(event -> event.getEventType().getName().equals(name)).toList();
+        assertEquals(1, matching.size(), name);
+        return matching.get(0);
+    }
+
+    @Test
+    void testStagesCarryTheirConversion() throws Exception {
+        byte[] content = Files.readAllBytes(Paths.get(TESTPATH + "tests_java" + File.separator + "AudiverisController_java_tests.pdf"));
+        WorkspaceManager workspaces = new WorkspaceManager(tempDir.resolve("work").toString(), 60, Long.MAX_VALUE);
+        Workspace workspace = workspaces.create();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Path dump = tempDir.resolve("pipeline.jfr");
+
+        try (Recording recording = new Recording()) {
+            StageOutlierMonitor.EVENTS.forEach(recording::enable);
+            recording.start();
+
+            try (PipelineEvents.Scope job = PipelineEvents.enterJob("job-1")) {
+                SavedUpload upload = new UploadIngestor(10485760).ingest(
+                    new MockMultipartFile("file", "score.pdf", "application/pdf", content), workspace);
+                try (PipelineEvents.Scope conversion = PipelineEvents.enterConversion(upload)) {
+                    Path mxl = Files.copy(Path.of(TESTPATH + "manual_tests" + File.separator + "mxl" + File.separator + "Pachelbel-test.mxl"),
+                        workspace.dir().resolve("score.mxl"));
+                    new AudiverisController().renderMidi(mxl.toString());
+
+                    PipelineEvents.setPages(2);
+                    // A page run on another thread
+                    executor.submit(PipelineEvents.propagate(() -> {
+                        PipelineEvents.AudiverisEvent event = new PipelineEvents.AudiverisEvent();
+                        event.start(PipelineMetrics.STAGE_AUDIVERIS_PAGE);
+                        event.finish(3);
+                        return null;
+                    })).get();
+                }
+                workspaces.delete(workspace);
+            }
+
+            recording.stop();
+            recording.dump(dump);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        RecordedEvent ingest = single(events, "maestro.Ingest");
+        assertEquals("job-1", ingest.getString("jobId"));
+        assertEquals(workspace.id(), ingest.getString("workspaceId"));
+        assertEquals(content.length, ingest.getLong("fileSize"));
+        assertTrue(ingest.getBoolean("success"));
+
+        assertEquals("application/pdf", single(events, "maestro.TypeDetection").getString("contentType"));
+
+        RecordedEvent midi = single(events, "maestro.Midi");
+        assertEquals(PipelineMetrics.STAGE_MIDI_JAVA, midi.getString("stage"));
+        assertEquals("job-1", midi.getString("jobId"));
+        assertEquals(content.length, midi.getLong("fileSize"));
+        assertEquals(0, midi.getInt("exitCode"));
+
+        RecordedEvent page = single(events, "maestro.Audiveris");
+        assertEquals("job-1", page.getString("jobId"));
+        assertEquals(workspace.id(), page.getString("workspaceId"));
+        assertEquals(2, page.getInt("pages"));
+        assertEquals(3, page.getInt("exitCode"));
+
+        RecordedEvent cleanup = single(events, "maestro.Cleanup");
+        assertEquals("job-1", cleanup.getString("jobId"));
+        assertEquals(workspace.id(), cleanup.getString("workspaceId"));
+    }
+
+    @Test
+    void testScopeGivesBackThePreviousConversion() {
+        try (PipelineEvents.Scope job = PipelineEvents.enterJob("job-1")) {
+            try (PipelineEvents.Scope other = PipelineEvents.enterJob("job-2")) {
+                PipelineEvents.setPages(4);
+            }
+            assertEquals(0, PipelineEvents.getPages());
+        }
+        PipelineEvents.setPages(4);
+        assertEquals(0, PipelineEvents.getPages());
+
+        PipelineEvents.CleanupEvent event = new PipelineEvents.CleanupEvent();
+        event.start(PipelineMetrics.STAGE_CLEANUP);
+        assertNull(event.jobId);
+    }
+
+    @Test
+    void testSlowStagesAreLogged() throws Exception {
+        StageOutlierMonitor monitor = new StageOutlierMonitor(true, 0);
+        monitor.start();
+        try {
+            long deadline = System.currentTimeMillis() + 20000;
+            while (monitor.getOutliers() == 0 && System.currentTimeMillis() < deadline) {
+                PipelineEvents.MidiEvent event = new PipelineEvents.MidiEvent();
+                event.start(PipelineMetrics.STAGE_MIDI_JAVA);
+                Thread.sleep(5);
+                event.finish(0);
+                Thread.sleep(100);
+            }
+            assertTrue(monitor.getOutliers() > 0);
+        } finally {
+            monitor.stop();
+        }
+    }
+}
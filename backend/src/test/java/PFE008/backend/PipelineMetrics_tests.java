@@ -0,0 +1,80 @@
+package PFE008.backend;
+
+import java.util.List;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.Mockito.mock;
+
+import java.nio.file.Path;
+
+/**
+ * Tests for the metrics of the conversion pipeline
+ * 
+ * @version 2026.10.17
+ */
+class PipelineMetrics_tests {
+    private SimpleMeterRegistry registry;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setup() {
+        registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    void teardown() {
+        Metrics.removeRegistry(registry);
+    }
+
+    @Test
+    void testStageAndFileSize() {
+        PipelineMetrics.recordStage(PipelineMetrics.STAGE_AUDIVERIS, System.nanoTime(), true);
+        PipelineMetrics.recordStage(PipelineMetrics.STAGE_AUDIVERIS, System.nanoTime(), false);
+        PipelineMetrics.recordFileSize("in", 1000);
+
+        assertEquals(1, registry.get(PipelineMetrics.STAGE_DURATION).tags("stage", "audiveris", "outcome", "success").timer().count());
+        assertEquals(1, registry.get(PipelineMetrics.STAGE_DURATION).tags("stage", "audiveris", "outcome", "failure").timer().count());
+        assertEquals(1000, registry.get(PipelineMetrics.FILE_SIZE).tag("direction", "in").summary().totalAmount());
+    }
+
+    @Test
+    void testProcessExitIsCounted() {
+        PipelineMetrics.recordProcessExit(new ProcessResult("audiveris", 3, false, false, 10, List.of(), List.of()));
+        PipelineMetrics.recordProcessExit(new ProcessResult("audiveris", 137, true, false, 10, List.of(), List.of()));
+
+        assertEquals(1, registry.get(PipelineMetrics.PROCESS_EXITS).tags("stage", "audiveris", "exit_code", "3", "outcome", "failure").counter().count());
+        assertEquals(1, registry.get(PipelineMetrics.PROCESS_EXITS).tags("stage", "audiveris", "exit_code", "137", "outcome", "timeout").counter().count());
+    }
+
+    @Test
+    void testGauges() throws Exception {
+        WorkspaceManager workspaces = new WorkspaceManager(tempDir.resolve("work").toString(), 60, 1000);
+        JobService jobService = new JobService(null, workspaces,
+            new ResultStore(tempDir.resolve("results").toString(), 60), null, new ExecutionMode(false), 1, 1, 30, 30);
+        try {
+            new PipelineMeterBinder(jobService, new ConversionScheduler(2, 1, 60, 20, null),
+                new FileJobQueue(FileJobQueue.ROLE_ALL, tempDir.resolve("queue").toString(), 60000, 500, 600000, 3, 60), new CpuPermits(2), new AudiverisWorkerPool(new AudiverisSettings()),
+                new ConversionCache(true, tempDir.toString(), 1000, false), workspaces, mock(ConversionService.class)).bindTo(registry);
+
+            assertEquals(0, registry.get("maestro.jobs.queued").gauge().value());
+            assertEquals(0, registry.get("maestro.scheduler.waiting").gauge().value());
+            assertEquals(20, registry.get("maestro.scheduler.page.cost").tag("kind", "pdf").gauge().value());
+            assertEquals(0, registry.get("maestro.cpu.permits.in.use").gauge().value());
+            assertEquals(0, registry.get("maestro.cache.requests").tag("result", "hit").functionCounter().count());
+            assertEquals(0, registry.get("maestro.conversions.coalesced").functionCounter().count());
+            assertEquals(0, registry.get("maestro.workspaces").gauge().value());
+            assertEquals(0, registry.get("maestro.workspaces.reclaimed").tag("reason", "ttl").functionCounter().count());
+        } finally {
+            jobService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package PFE008.backend;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+/**
+ * Tests for the supervisor of the external processes
+ * 
+ * @version 2026.10.17
+ */
+@DisabledOnOs(OS.WINDOWS)
+class ProcessSupervisor_tests {
+
+    @Test
+    void testOutputIsCaptured() throws Exception {
+        ProcessResult result = ProcessSupervisor.run("test", List.of("sh", "-c", "echo out; echo err >&2; exit 3"), Duration.ofSeconds(30));
+
+        assertFalse(result.isSuccess());
+        assertEquals(3, result.exitCode());
+        assertEquals(List.of("out"), result.stdout());
+        assertEquals(List.of("err"), result.stderr());
+    }
+
+    @Test
+    void testEnvironmentIsPassed() throws Exception {
+        ProcessResult result = ProcessSupervisor.run("test", List.of("sh", "-c", "echo \"$JAVA_OPTS\""),
+            Map.of("JAVA_OPTS", "-Xmx1024m"), Duration.ofSeconds(30), null);
+
+        assertEquals(List.of("-Xmx1024m"), result.stdout());
+    }
+
+    @Test
+    void testChattyStderrDoesNotBlock() throws Exception {
+        ProcessResult result = ProcessSupervisor.run("test",
+            List.of("sh", "-c", "i=0; while [ $i -lt 20000 ]; do echo \"line $i\" >&2; i=$((i+1)); done"), Duration.ofSeconds(60));
+
+        assertTrue(result.isSuccess());
+        assertEquals(ProcessSupervisor.TAIL_LINES, result.stderr().size());
+        assertEquals("line 19999", result.stderr().get(result.stderr().size() - 1));
+    }
+
+    @Test
+    void testTimeoutKillsProcessTree() throws Exception {
+        long start = System.nanoTime();
+        ProcessResult result = ProcessSupervisor.run("test", List.of("sh", "-c", "sleep 60 & sleep 60"), Duration.ofSeconds(1));
+
+        assertTrue(result.timedOut());
+        assertFalse(result.isSuccess());
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(30).toNanos());
+    }
+
+    @Test
+    void testInterruptCancelsProcess() throws Exception {
+        AtomicReference<ProcessResult> result = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                result.set(ProcessSupervisor.run("test", List.of("sh", "-c", "sleep 60"), Duration.ofSeconds(60)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        Thread.sleep(500);
+        thread.interrupt();
+        thread.join(30000);
+
+        assertFalse(thread.isAlive());
+        assertTrue(result.get().cancelled());
+        assertFalse(result.get().isSuccess());
+    }
+}
@@ -0,0 +1,169 @@
+package PFE008.backend;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the conversions handed by an API node to a worker node
+ * through the shared queue and result store
+ *
+ * @version 2026.10.17
+ */
+class QueueWorker_tests {
+    private static final byte[] MIDI = {'M', 'T', 'h', 'd', 0, 0, 0, 6};
+
+    @TempDir
+    Path tempDir;
+
+    private ConversionService workerConversions;
+    private ResultStore sharedResults;
+    private FileJobQueue workerQueue;
+    private QueueWorker worker;
+    private ConversionService api;
+    private WorkspaceManager apiWorkspaces;
+
+    @BeforeEach
+    void setup() throws IOException {
+        String queueDir = tempDir.resolve("queue").toString();
+        String resultsDir = tempDir.resolve("results").toString();
+
+        workerConversions = mock(ConversionService.class);
+        sharedResults = new ResultStore(resultsDir, 60);
+        workerQueue = new FileJobQueue(FileJobQueue.ROLE_WORKER, queueDir, 60000, 10, 600000, 3, 60);
+        worker = new QueueWorker(workerQueue, workerConversions,
+            new WorkspaceManager(tempDir.resolve("worker-work").toString(), 60, Long.MAX_VALUE),
+            sharedResults, new ExecutionMode(false), 1, 20, 10);
+
+        // The API node has its own view of the result store, on the same directory
+        api = new ConversionService(new ConversionCache(false, tempDir.resolve("cache").toString(), 1000, false), null,
+            new AudiverisSettings(), null, null, null, null, null, null,
+            new FileJobQueue(FileJobQueue.ROLE_API, queueDir, 60000, 10, 600000, 3, 60), new ResultStore(resultsDir, 60),
+            null, AudiverisController.MIDI_ENGINE_JAVA, false);
+        apiWorkspaces = new WorkspaceManager(tempDir.resolve("api-work").toString(), 60, Long.MAX_VALUE);
+    }
+
+    @AfterEach
+    void teardown() {
+        worker.shutdown();
+    }
+
+    private SavedUpload upload() throws IOException {
+        Workspace workspace = apiWorkspaces.create();
+        Path path = Files.write(workspace.dir().resolve("sheet.pdf"), new byte[] {'%', 'P', 'D', 'F'});
+        return new SavedUpload(workspace, path, "abc", 4);
+    }
+
+    /**
+     * Make the worker convert by writing a MIDI file next to its copy of the upload
+     */
+    private void convertsTo(byte[] midi) {
+        when(workerConversions.convert(any(), any(), any())).thenAnswer(invocation -> {
+            SavedUpload upload = invocation.getArgument(0);
+            Consumer<ProgressEvent> progress = invocation.getArgument(2);
+            progress.accept(ProgressEvent.of(ProgressEvent.STAGE_OMR, "BEAMS", 1, 0.4, "Sheet 1: beams"));
+            // Long enough for a heartbeat to publish the progress
+            Thread.sleep(200);
+            return Files.write(upload.workspace().dir().resolve("sheet.mid"), midi).toString();
+        });
+    }
+
+    @Test
+    void testApiNodeGetsTheMidiFileOfTheWorker() throws Exception {
+        convertsTo(MIDI);
+        worker.start();
+
+        SavedUpload upload = upload();
+        List<ProgressEvent> events = new CopyOnWriteArrayList<>();
+        String midiPath = api.convert(upload, null, events::add);
+
+        assertNotNull(midiPath);
+        assertEquals(upload.workspace().dir().resolve("sheet.mid"), Path.of(midiPath));
+        assertArrayEquals(MIDI, Files.readAllBytes(Path.of(midiPath)));
+        assertEquals("BEAMS", events.get(0).step());
+        assertEquals(0, workerQueue.getRunningCount());
+    }
+
+    @Test
+    void testFailureOnTheWorkerFailsTheConversion() throws Exception {
+        when(workerConversions.convert(any(), any(), any())).thenReturn(null);
+        worker.start();
+
+        assertNull(api.convert(upload(), null, null));
+    }
+
+    @Test
+    void testCancelledConversionStopsTheWorker() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(workerConversions.convert(any(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        worker.start();
+
+        Thread waiting = new Thread(() -> {
+            try {
+                api.convert(upload(), null, null);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        waiting.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        waiting.interrupt();
+        waiting.join(5000);
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testApiNodeDoesNotConvert() throws Exception {
+        // No worker: the job stays in the queue
+        Thread waiting = new Thread(() -> {
+            try {
+                api.convert(upload(), null, null);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        waiting.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (workerQueue.getPendingCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, workerQueue.getPendingCount());
+        waiting.interrupt();
+        waiting.join(5000);
+
+        assertEquals(0, workerQueue.getPendingCount());
+        verify(workerConversions, never()).convert(any(), any(), any());
+        assertFalse(waiting.isAlive());
+    }
+}
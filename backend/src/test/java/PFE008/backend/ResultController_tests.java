@@ -0,0 +1,123 @@
+package PFE008.backend;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tests for the result downloads: ETag, conditional GET and byte ranges
+ * 
+ * @version 2026.10.17
+ */
+class ResultController_tests {
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes();
+
+    @TempDir
+    Path tempDir;
+
+    private MockMvc mockMvc;
+    private StoredResult result;
+
+    @BeforeEach
+    void setup() throws Exception {
+        ResultStore store = new ResultStore(tempDir.resolve("results").toString(), 60);
+        result = store.put(Files.write(tempDir.resolve("abcd1234.mid"), CONTENT));
+        mockMvc = MockMvcBuilders.standaloneSetup(new ResultController(store)).build();
+    }
+
+    @Test
+    void testDownload() throws Exception {
+        MvcResult response = mockMvc.perform(get(result.uri()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, result.etag()))
+            .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+            .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length))
+            .andExpect(content().contentType(ResultController.MIDI_CONTENT_TYPE))
+            .andReturn();
+
+        assertArrayEquals(CONTENT, response.getResponse().getContentAsByteArray());
+    }
+
+    @Test
+    void testNotModified() throws Exception {
+        mockMvc.perform(get(result.uri()).header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + result.etag()))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, result.etag()))
+            .andExpect(content().bytes(new byte[0]));
+
+        mockMvc.perform(get(result.uri()).header(HttpHeaders.IF_NONE_MATCH, "\"other\""))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    void testRanges() throws Exception {
+        mockMvc.perform(get(result.uri()).header(HttpHeaders.RANGE, "bytes=2-5"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/20"))
+            .andExpect(content().bytes("2345".getBytes()));
+
+        mockMvc.perform(get(result.uri()).header(HttpHeaders.RANGE, "bytes=16-"))
+            .andExpect(status().isPartialContent())
+            .andExpect(content().bytes("ghij".getBytes()));
+
+        mockMvc.perform(get(result.uri()).header(HttpHeaders.RANGE, "bytes=-3"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 17-19/20"))
+            .andExpect(content().bytes("hij".getBytes()));
+
+        mockMvc.perform(get(result.uri()).header(HttpHeaders.RANGE, "bytes=15-100"))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 15-19/20"));
+    }
+
+    @Test
+    void testUnsatisfiableRange() throws Exception {
+        mockMvc.perform(get(result.uri()).header(HttpHeaders.RANGE, "bytes=20-30"))
+            .andExpect(status().isRequestedRangeNotSatisfiable())
+            .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */20"));
+    }
+
+    @Test
+    void testRangeOfChangedFileIsIgnored() throws Exception {
+        mockMvc.perform(get(result.uri()).header(HttpHeaders.RANGE, "bytes=2-5").header(HttpHeaders.IF_RANGE, "\"other\""))
+            .andExpect(status().isOk())
+            .andExpect(content().bytes(CONTENT));
+
+        mockMvc.perform(get(result.uri()).header(HttpHeaders.RANGE, "bytes=0-1,4-5"))
+            .andExpect(status().isOk())
+            .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void testTomcatSendsTheFileWhenItCan() throws Exception {
+        mockMvc.perform(get(result.uri()).header(HttpHeaders.RANGE, "bytes=2-5")
+                .requestAttr(ResultController.SENDFILE_SUPPORTED, Boolean.TRUE))
+            .andExpect(status().isPartialContent())
+            .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+            .andExpect(request().attribute(ResultController.SENDFILE_FILENAME, result.path().toRealPath().toString()))
+            .andExpect(request().attribute(ResultController.SENDFILE_START, 2L))
+            .andExpect(request().attribute(ResultController.SENDFILE_END, 6L))
+            // Nothing is written by the controller
+            .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void testUnknownResult() throws Exception {
+        mockMvc.perform(get("/results/" + "0".repeat(64)))
+            .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,100 @@
+package PFE008.backend;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the store of converted MIDI files
+ * 
+ * @version 2026.10.17
+ */
+class ResultStore_tests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testResultIsStoredByContentHash() throws Exception {
+        ResultStore store = new ResultStore(tempDir.resolve("results").toString(), 60);
+        byte[] content = "MThd test content".getBytes();
+        Path midiPath = Files.write(tempDir.resolve("abcd1234.mid"), content);
+
+        StoredResult result = store.put(midiPath);
+
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), result.id());
+        assertEquals("\"" + result.id() + "\"", result.etag());
+        assertEquals("/results/" + result.id(), result.uri());
+        assertEquals(content.length, result.size());
+        assertArrayEquals(content, Files.readAllBytes(result.path()));
+
+        // The workspace file can go away, the stored result stays
+        Files.delete(midiPath);
+        assertEquals(result, store.get(result.id()));
+    }
+
+    @Test
+    void testSameContentIsStoredOnce() throws Exception {
+        ResultStore store = new ResultStore(tempDir.resolve("results").toString(), 60);
+        StoredResult first = store.put(Files.write(tempDir.resolve("first.mid"), "MThd".getBytes()));
+        StoredResult second = store.put(Files.write(tempDir.resolve("second.mid"), "MThd".getBytes()));
+
+        assertEquals(first, second);
+        try (var files = Files.list(tempDir.resolve("results"))) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testResultsOfPreviousRunAreKept() throws Exception {
+        StoredResult result = new ResultStore(tempDir.resolve("results").toString(), 60)
+            .put(Files.write(tempDir.resolve("abcd1234.mid"), "MThd".getBytes()));
+
+        assertNotNull(new ResultStore(tempDir.resolve("results").toString(), 60).get(result.id()));
+    }
+
+    @Test
+    void testResultOfAnotherNodeIsFoundAndKept() throws Exception {
+        ResultStore worker = new ResultStore(tempDir.resolve("results").toString(), 1);
+        ResultStore api = new ResultStore(tempDir.resolve("results").toString(), 1);
+        StoredResult result = worker.put(Files.write(tempDir.resolve("abcd1234.mid"), "MThd".getBytes()));
+        assertNotNull(api.get(result.id()));
+
+        // Written two minutes ago, and just served by the API node: the worker keeps it
+        Files.setLastModifiedTime(result.path(), FileTime.from(Instant.now().minusSeconds(120)));
+        ResultStore restartedWorker = new ResultStore(tempDir.resolve("results").toString(), 1);
+        assertNotNull(api.get(result.id()));
+        restartedWorker.purgeExpired();
+        assertTrue(Files.exists(result.path()));
+    }
+
+    @Test
+    void testExpiredResultsArePurged() throws Exception {
+        ResultStore store = new ResultStore(tempDir.resolve("results").toString(), 0);
+        StoredResult result = store.put(Files.write(tempDir.resolve("abcd1234.mid"), "MThd".getBytes()));
+        Thread.sleep(5);
+
+        store.purgeExpired();
+
+        assertNull(store.get(result.id()));
+        assertTrue(Files.notExists(result.path()));
+    }
+
+    @Test
+    void testInvalidIdIsRejected() {
+        ResultStore store = new ResultStore(tempDir.resolve("results").toString(), 60);
+        assertNull(store.get("../../etc/passwd"));
+        assertNull(store.get(null));
+    }
+}
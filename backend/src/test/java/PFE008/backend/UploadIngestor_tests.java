@@ -0,0 +1,83 @@
+package PFE008.backend;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+/**
+ * Tests for the single-pass upload ingest
+ * 
+ * @version 2026.10.17
+ */
+class UploadIngestor_tests {
+
+    private static final String TESTPATH = System.getProperty("user.dir") + File.separator
+    + "src" + File.separator + "test" + File.separator + "java" + File.separator + "PFE008" + File.separator
+    + "backend" + File.separator + "resources" + File.separator + "tests_java" + File.separator;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPdfIsSavedAndHashed() throws Exception {
+        byte[] content = Files.readAllBytes(Paths.get(TESTPATH + "AudiverisController_java_tests.pdf"));
+        UploadIngestor ingestor = new UploadIngestor(10485760);
+
+        SavedUpload upload = ingestor.ingest(new MockMultipartFile("file", "score.pdf", "application/pdf", content), workspace());
+
+        assertEquals(tempDir, upload.path().getParent());
+        assertTrue(upload.path().getFileName().toString().endsWith(".pdf"));
+        assertArrayEquals(content, Files.readAllBytes(upload.path()));
+        assertEquals(content.length, upload.size());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), upload.sha256());
+    }
+
+    @Test
+    void testWrongTypeIsRejected() throws Exception {
+        UploadIngestor ingestor = new UploadIngestor(10485760);
+
+        InvalidUploadException e = assertThrows(InvalidUploadException.class,
+            () -> ingestor.ingest(new MockMultipartFile("file", "score.pdf", "application/pdf", "test data".getBytes()), workspace()));
+
+        assertEquals("File is invalid. Must be a pdf, jpg, jpeg or png", e.getMessage());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testTooLargeIsRejected() throws Exception {
+        byte[] content = Files.readAllBytes(Paths.get(TESTPATH + "AudiverisController_java_tests.pdf"));
+        UploadIngestor ingestor = new UploadIngestor(content.length - 1);
+
+        InvalidUploadException e = assertThrows(InvalidUploadException.class,
+            () -> ingestor.ingest(new MockMultipartFile("file", "score.pdf", "application/pdf", content), workspace()));
+
+        assertEquals("File is too large", e.getMessage());
+    }
+
+    @Test
+    void testEmptyIsRejected() {
+        UploadIngestor ingestor = new UploadIngestor(10485760);
+
+        InvalidUploadException e = assertThrows(InvalidUploadException.class,
+            () -> ingestor.ingest(new MockMultipartFile("file", "score.pdf", "application/pdf", new byte[0]), workspace()));
+
+        assertEquals("Please select a file", e.getMessage());
+    }
+
+    private Workspace workspace() {
+        return new Workspace("test", tempDir);
+    }
+}
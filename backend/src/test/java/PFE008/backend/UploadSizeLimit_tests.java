@@ -0,0 +1,50 @@
+package PFE008.backend;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests for the early rejection of the single uploads over the limit
+ *
+ * @version 2026.10.17
+ */
+class UploadSizeLimit_tests {
+    private final UploadSizeLimit limit = new UploadSizeLimit(new UploadIngestor(1000));
+
+    private static MockHttpServletRequest request(String method, long bodyBytes) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/jobs");
+        request.setContent(new byte[(int) bodyBytes]);
+        return request;
+    }
+
+    @Test
+    void testUploadOverTheLimitIsRejectedBeforeItIsRead() throws Exception {
+        MockHttpServletRequest request = request("POST", 1000 + UploadSizeLimit.MULTIPART_OVERHEAD_BYTES + 1);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertFalse(limit.preHandle(request, response, null));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE.value(), response.getStatus());
+        assertEquals("File is too large", response.getContentAsString());
+    }
+
+    @Test
+    void testUploadWithinTheLimitGoesThrough() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(limit.preHandle(request("POST", 1000 + UploadSizeLimit.MULTIPART_OVERHEAD_BYTES), response, null));
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+    }
+
+    @Test
+    void testUploadWithoutContentLengthIsLeftToTheIngestor() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/convert");
+
+        assertEquals(-1, request.getContentLengthLong());
+        assertTrue(limit.preHandle(request, new MockHttpServletResponse(), null));
+    }
+}
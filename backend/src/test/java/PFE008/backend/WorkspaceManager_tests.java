@@ -0,0 +1,154 @@
+package PFE008.backend;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the conversion workspaces and their janitor
+ * 
+ * @version 2026.10.17
+ */
+class WorkspaceManager_tests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testWorkspaceIsDeletedWithItsFiles() throws Exception {
+        WorkspaceManager workspaces = new WorkspaceManager(tempDir.toString(), 60, Long.MAX_VALUE);
+        Workspace first = workspaces.create();
+        Workspace second = workspaces.create();
+        assertNotEquals(first.dir(), second.dir());
+
+        Files.write(first.dir().resolve("abcd1234.pdf"), new byte[10]);
+        Files.createDirectories(first.dir().resolve("abcd1234-pages"));
+        Files.write(first.dir().resolve("abcd1234-pages").resolve("abcd1234-p001.pdf"), new byte[10]);
+        Files.write(second.dir().resolve("efgh5678.pdf"), new byte[10]);
+
+        workspaces.delete(first);
+
+        assertTrue(Files.notExists(first.dir()));
+        assertTrue(Files.exists(second.dir().resolve("efgh5678.pdf")));
+        assertEquals(1, workspaces.getWorkspaceCount());
+    }
+
+    @Test
+    void testExpiredWorkspacesAreReclaimed() throws Exception {
+        WorkspaceManager workspaces = new WorkspaceManager(tempDir.toString(), 0, Long.MAX_VALUE);
+        Workspace workspace = workspaces.create();
+        Files.write(workspace.dir().resolve("abcd1234.pdf"), new byte[10]);
+        workspaces.markIdle(workspace);
+        Thread.sleep(5);
+
+        workspaces.sweep();
+
+        assertTrue(Files.notExists(workspace.dir()));
+        assertEquals(0, workspaces.getWorkspaceCount());
+        assertEquals(1, workspaces.getReclaimedByTtl());
+    }
+
+    @Test
+    void testBusyWorkspaceOutlivesTheTtl() throws Exception {
+        WorkspaceManager workspaces = new WorkspaceManager(tempDir.toString(), 0, Long.MAX_VALUE);
+        Workspace workspace = workspaces.create();
+        Files.write(workspace.dir().resolve("abcd1234.pdf"), new byte[10]);
+        Thread.sleep(5);
+
+        // Its conversion is still waiting for a slot
+        workspaces.sweep();
+        assertTrue(Files.exists(workspace.dir().resolve("abcd1234.pdf")));
+        assertEquals(0, workspaces.getReclaimedByTtl());
+
+        workspaces.markIdle(workspace);
+        Thread.sleep(5);
+        workspaces.sweep();
+        assertTrue(Files.notExists(workspace.dir()));
+        assertEquals(1, workspaces.getReclaimedByTtl());
+    }
+
+    @Test
+    void testWorkspacesOfPreviousRunAreReclaimed() throws Exception {
+        Path abandoned = Files.createDirectories(tempDir.resolve("abandoned"));
+        Files.write(abandoned.resolve("abcd1234.mid"), new byte[10]);
+        Files.setLastModifiedTime(abandoned, FileTime.from(Instant.now().minus(2, ChronoUnit.HOURS)));
+
+        WorkspaceManager workspaces = new WorkspaceManager(tempDir.toString(), 60, Long.MAX_VALUE);
+        Workspace fresh = workspaces.create();
+        assertEquals(2, workspaces.getWorkspaceCount());
+
+        workspaces.sweep();
+
+        assertTrue(Files.notExists(abandoned));
+        assertTrue(Files.exists(fresh.dir()));
+        assertEquals(1, workspaces.getReclaimedByTtl());
+    }
+
+    @Test
+    void testOldestIdleWorkspacesAreReclaimedOverCeiling() throws Exception {
+        WorkspaceManager workspaces = new WorkspaceManager(tempDir.toString(), 60, 250);
+        Workspace busy = workspaces.create();
+        Workspace oldest = workspaces.create();
+        Workspace newest = workspaces.create();
+        Files.write(busy.dir().resolve("busy.pdf"), new byte[100]);
+        Files.write(oldest.dir().resolve("oldest.mid"), new byte[100]);
+        Files.write(newest.dir().resolve("newest.mid"), new byte[100]);
+        workspaces.markIdle(oldest);
+        Thread.sleep(5);
+        workspaces.markIdle(newest);
+
+        workspaces.sweep();
+
+        assertTrue(Files.exists(busy.dir()));
+        assertTrue(Files.notExists(oldest.dir()));
+        assertTrue(Files.exists(newest.dir()));
+        assertEquals(200, workspaces.getTotalBytes());
+        assertEquals(1, workspaces.getReclaimedByDisk());
+    }
+
+    @Test
+    void testRetainedWorkspaceIsDeletedByTheLastHolder() throws Exception {
+        WorkspaceManager workspaces = new WorkspaceManager(tempDir.toString(), 60, Long.MAX_VALUE);
+        Workspace workspace = workspaces.create();
+        Files.write(workspace.dir().resolve("abcd1234.mid"), new byte[10]);
+        assertTrue(workspaces.retain(workspace));
+
+        workspaces.delete(workspace);
+        workspaces.sweep();
+        assertTrue(Files.exists(workspace.dir().resolve("abcd1234.mid")));
+
+        workspaces.delete(workspace);
+        assertTrue(Files.notExists(workspace.dir()));
+        assertFalse(workspaces.retain(workspace));
+    }
+
+    @Test
+    void testReleasedWorkspaceIsReclaimedAgain() throws Exception {
+        WorkspaceManager workspaces = new WorkspaceManager(tempDir.toString(), 0, Long.MAX_VALUE);
+        Workspace workspace = workspaces.create();
+        Files.write(workspace.dir().resolve("abcd1234.mid"), new byte[10]);
+        workspaces.markIdle(workspace);
+        assertTrue(workspaces.retain(workspace));
+        Thread.sleep(5);
+
+        // Not reclaimed while another conversion reads it
+        workspaces.sweep();
+        assertTrue(Files.exists(workspace.dir().resolve("abcd1234.mid")));
+
+        // Released by the other conversion, its own conversion never deletes it
+        workspaces.delete(workspace);
+        Thread.sleep(5);
+        workspaces.sweep();
+        assertTrue(Files.notExists(workspace.dir()));
+        assertEquals(1, workspaces.getReclaimedByTtl());
+    }
+}
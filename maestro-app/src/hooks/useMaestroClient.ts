@@ -1,31 +1,130 @@
-import { useState } from 'react';
+import { useEffect, useRef, useState } from 'react';
+
+const API_URL = 'http://localhost:8080';
 
 interface UseMaestroClientResult {
   loading: boolean;
   error: string | null;
+  progress: number | null;
   convert: (formData: FormData) => Promise<void>;
+  cancel: () => void;
+}
+
+interface JobStatus {
+  jobId: string;
+  status: 'QUEUED' | 'RUNNING' | 'SUCCEEDED' | 'FAILED' | 'CANCELLED';
+  message?: string;
+  downloadUri?: string;
+  progress: number;
 }
 
 const useMaestroClient = (): UseMaestroClientResult => {
   const [loading, setLoading] = useState<boolean>(false);
   const [error, setError] = useState<string | null>(null);
+  const [progress, setProgress] = useState<number | null>(null);
+  const jobId = useRef<string | null>(null);
+  const events = useRef<EventSource | null>(null);
+  const following = useRef<{ resolve: (status: JobStatus) => void; reject: (error: Error) => void } | null>(null);
+
+  const closeEvents = () => {
+    events.current?.close();
+    events.current = null;
+  };
+
+  const cancelJob = (keepalive = false) => {
+    if (jobId.current !== null) {
+      fetch(`${API_URL}/jobs/${jobId.current}`, { method: 'DELETE', mode: 'cors', keepalive });
+    }
+  };
+
+  // Open the event stream of the job, its final status settles the conversion being followed
+  const openEvents = (id: string) => {
+    const source = new EventSource(`${API_URL}/jobs/${id}/events`);
+    events.current = source;
+
+    source.addEventListener('progress', (event) => {
+      const data = JSON.parse((event as MessageEvent).data);
+      setProgress((current) => Math.max(current ?? 0, data.progress));
+    });
+
+    source.addEventListener('status', (event) => {
+      const status: JobStatus = JSON.parse((event as MessageEvent).data);
+      setProgress((current) => Math.max(current ?? 0, status.progress));
+      if (status.status === 'SUCCEEDED' || status.status === 'FAILED' || status.status === 'CANCELLED') {
+        source.close();
+        following.current?.resolve(status);
+      }
+    });
+
+    // EventSource reconnects by itself, only give up once the stream is closed for good
+    source.onerror = () => {
+      if (source.readyState === EventSource.CLOSED) {
+        following.current?.reject(new Error('Lost the connection to the server'));
+      }
+    };
+  };
+
+  // Cancel the running job when the form goes away or the page is closed. The stream
+  // doesn't cancel it on disconnect, so EventSource can reconnect after a network drop.
+  // A page kept in the back/forward cache keeps its job, and follows it again when it is shown.
+  useEffect(() => {
+    const onPageHide = (event: PageTransitionEvent) => {
+      if (event.persisted) {
+        closeEvents();
+      } else {
+        cancelJob(true);
+      }
+    };
+    const onPageShow = (event: PageTransitionEvent) => {
+      if (event.persisted && jobId.current !== null && events.current === null) {
+        openEvents(jobId.current);
+      }
+    };
+    window.addEventListener('pagehide', onPageHide);
+    window.addEventListener('pageshow', onPageShow);
+    return () => {
+      window.removeEventListener('pagehide', onPageHide);
+      window.removeEventListener('pageshow', onPageShow);
+      cancelJob(true);
+      closeEvents();
+    };
+  }, []);
+
+  // Follow the job on /jobs/{id}/events until it is finished
+  const follow = (id: string): Promise<JobStatus> =>
+    new Promise((resolve, reject) => {
+      following.current = { resolve, reject };
+      openEvents(id);
+    });
 
   const convert = async (formData: FormData): Promise<void> => {
     setLoading(true);
     setError(null);
+    setProgress(0);
 
     try {
-      const response = await fetch('http://localhost:8080/convert', {
+      const response = await fetch(`${API_URL}/jobs`, {
         method: 'POST',
         mode: 'cors',
         body: formData,
       });
 
       if (!response.ok) {
-        const errorData = await response.json();
-        throw new Error(errorData.message || 'An error occurred');
+        throw new Error((await response.text()) || 'An error occurred');
+      }
+      const job: JobStatus = await response.json();
+      jobId.current = job.jobId;
+
+      const status = await follow(job.jobId);
+      if (status.status !== 'SUCCEEDED' || !status.downloadUri) {
+        throw new Error(status.message || 'An error occurred');
       }
-      const blob = await response.blob();
+
+      const result = await fetch(`${API_URL}${status.downloadUri}`, { mode: 'cors' });
+      if (!result.ok) {
+        throw new Error('Could not download the MIDI file');
+      }
+      const blob = await result.blob();
 
       var fileDownload = require('js-file-download');
       fileDownload(blob, `${formData.get("midiFileName")?.toString()}.mid` ?? "myFile.mid");
@@ -33,11 +132,18 @@ const useMaestroClient = (): UseMaestroClientResult => {
     } catch (err) {
       setError((err as Error).message);
     } finally {
+      closeEvents();
+      following.current = null;
+      jobId.current = null;
+      setProgress(null);
       setLoading(false);
     }
   };
 
-  return { loading, error, convert };
+  // The status event of the cancelled job ends the conversion
+  const cancel = () => cancelJob();
+
+  return { loading, error, progress, convert, cancel };
 };
 
 export default useMaestroClient;
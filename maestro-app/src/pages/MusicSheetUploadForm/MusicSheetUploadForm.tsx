@@ -1,11 +1,13 @@
 import React from "react";
 import {
   Box,
+  Button,
   Container,
   Divider,
   FormLabel,
   Grid,
   IconButton,
+  LinearProgress,
   Switch,
   TextField,
   Typography,
@@ -29,7 +31,7 @@ const DEFAULT_FALLBACK_TEMPO = 120;
 const MusicSheetUploadForm: React.FC = () => {
   const { t } = useTranslation("musicSheetUploadForm");
 
-  const { convert, loading, error } = useMaestroClient();
+  const { convert, cancel, loading, error, progress } = useMaestroClient();
 
   const {
     control,
@@ -214,6 +216,16 @@ const MusicSheetUploadForm: React.FC = () => {
           <Box width="100%">
             <Divider sx={{ my: 2 }} />
             <Typography>{t("ConvertLoading")}</Typography>
+            <Box display="flex" alignItems="center" mt={1}>
+              <LinearProgress
+                sx={{ flexGrow: 1, mr: 2 }}
+                variant={progress ? "determinate" : "indeterminate"}
+                value={Math.round((progress ?? 0) * 100)}
+              />
+              <Button size="small" onClick={cancel}>
+                {t("ConvertCancel")}
+              </Button>
+            </Box>
           </Box>
         )}
         {!loading && error !== null && (